@@ -0,0 +1,43 @@
+package com.tumblr.cardboard;
+
+import android.graphics.Bitmap;
+
+/**
+ * A photo lent to a background thread, e.g. to be compressed, while its Glide target still holds
+ * it. The slot revokes the lease before it clears the target, which waits for a reader that is
+ * still going, so the bitmap is never read after it goes back to the pool.
+ */
+class BitmapLease {
+
+	/**
+	 * Reads the photo's pixels, on a background thread.
+	 */
+	interface Reader {
+		void read(Bitmap bitmap);
+	}
+
+	private Bitmap mBitmap;
+
+	BitmapLease(Bitmap bitmap) {
+		mBitmap = bitmap;
+	}
+
+	/**
+	 * @return false if the lease was revoked, and the reader wasn't called
+	 */
+	synchronized boolean read(Reader reader) {
+		if (mBitmap == null || mBitmap.isRecycled()) {
+			return false;
+		}
+
+		reader.read(mBitmap);
+		return true;
+	}
+
+	/**
+	 * Called on the main thread before the bitmap is released.
+	 */
+	synchronized void revoke() {
+		mBitmap = null;
+	}
+}
@@ -0,0 +1,309 @@
+package com.tumblr.cardboard;
+
+import android.os.SystemClock;
+
+import com.bumptech.glide.Priority;
+import com.tumblr.cardboard.log.Logger;
+import com.tumblr.jumblr.types.PhotoSize;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides the order in which photos are downloaded. The photo in the theater goes first, then the
+ * photos closest to where the user is looking. Only a limited number of downloads run at once, so
+ * the remaining ones are re-prioritized as the head moves.
+ * <p/>
+ * Downloads are also held back while the stages after them are backed up, so that decoded photos
+ * don't pile up waiting for the GL thread.
+ * <p/>
+ * {@link #enqueue}, {@link #reset}, {@link #resume} and the load callbacks are called on the main
+ * thread, the gaze is updated from the GL thread.
+ */
+class DownloadScheduler {
+
+	private static final String TAG = DownloadScheduler.class.getSimpleName();
+
+	static final int DEFAULT_MAX_CONCURRENT = 4;
+
+	/**
+	 * Cosine of the angle within which a slot is considered to be looked at.
+	 */
+	private static final float GAZE_COS = (float) Math.cos(Math.toRadians(15));
+	/**
+	 * Cosine of the angle within which a slot is considered to be near the gaze.
+	 */
+	private static final float NEAR_GAZE_COS = (float) Math.cos(Math.toRadians(45));
+
+	/**
+	 * Starts downloads chosen by the scheduler.
+	 */
+	interface Loader {
+		void load(int texIndex, PhotoSize size, Priority priority);
+
+		/**
+		 * @return true to hold back downloads until {@link #resume()} is called
+		 */
+		boolean isBackedUp();
+	}
+
+	private static class Request {
+		final int texIndex;
+		final PhotoSize size;
+
+		Request(int texIndex, PhotoSize size) {
+			this.texIndex = texIndex;
+			this.size = size;
+		}
+	}
+
+	private final Loader mLoader;
+	private final List<Request> mPending = new ArrayList<>();
+	private final boolean[] mInFlight;
+	private final float[][] mSlotDirections;
+	/**
+	 * Slots showing a photo of the current page, rather than one left over from the previous page
+	 * or restored from the snapshot.
+	 */
+	private final boolean[] mShown;
+	private final float[] mForward = new float[]{0f, 0f, -1f};
+
+	private int mMaxConcurrent;
+	private int mNumInFlight;
+	private int mTheaterIndex = -1;
+
+	private long mPageStart;
+	private boolean mGazeLatencyRecorded;
+	private long mLastGazeLatency;
+	private float mAverageGazeLatency;
+
+	DownloadScheduler(int numTextures, Loader loader) {
+		this(numTextures, DEFAULT_MAX_CONCURRENT, loader);
+	}
+
+	DownloadScheduler(int numTextures, int maxConcurrent, Loader loader) {
+		mLoader = loader;
+		mInFlight = new boolean[numTextures];
+		mSlotDirections = new float[numTextures][];
+		mShown = new boolean[numTextures];
+		setMaxConcurrent(maxConcurrent);
+	}
+
+	/**
+	 * @param maxConcurrent the number of downloads that may run at once
+	 */
+	synchronized void setMaxConcurrent(int maxConcurrent) {
+		if (maxConcurrent <= 0) {
+			throw new IllegalArgumentException("Must allow at least one download at a time");
+		}
+		mMaxConcurrent = maxConcurrent;
+	}
+
+	/**
+	 * @param texIndex  the slot
+	 * @param direction the unit vector from the camera to the slot, or null if it has no fixed place
+	 */
+	synchronized void setSlotDirection(int texIndex, float[] direction) {
+		mSlotDirections[texIndex] = direction;
+	}
+
+	/**
+	 * @param texIndex the slot that is shown in the theater, which is always loaded first
+	 */
+	synchronized void setTheaterIndex(int texIndex) {
+		mTheaterIndex = texIndex;
+	}
+
+	/**
+	 * Updates the direction the user is looking in. Called every frame.
+	 *
+	 * @param forward the unit forward vector of the head
+	 */
+	synchronized void setGaze(float[] forward) {
+		mForward[0] = forward[0];
+		mForward[1] = forward[1];
+		mForward[2] = forward[2];
+	}
+
+	/**
+	 * Drops every pending download, for example when a new page is loaded.
+	 */
+	synchronized void reset() {
+		mPending.clear();
+
+		for (int i = 0; i < mInFlight.length; i++) {
+			mInFlight[i] = false;
+		}
+		mNumInFlight = 0;
+
+		for (int i = 0; i < mShown.length; i++) {
+			mShown[i] = false;
+		}
+
+		mPageStart = SystemClock.uptimeMillis();
+		mGazeLatencyRecorded = false;
+	}
+
+	/**
+	 * Queues a download, replacing any pending download for the same slot.
+	 */
+	void enqueue(int texIndex, PhotoSize size) {
+		synchronized (this) {
+			removePending(texIndex);
+			mPending.add(new Request(texIndex, size));
+		}
+
+		dispatch();
+	}
+
+	/**
+	 * Starts the downloads that were held back while the loader was backed up.
+	 */
+	void resume() {
+		dispatch();
+	}
+
+	void onLoadFinished(int texIndex) {
+		synchronized (this) {
+			if (mInFlight[texIndex]) {
+				mInFlight[texIndex] = false;
+				mNumInFlight--;
+			}
+		}
+
+		dispatch();
+	}
+
+	private void dispatch() {
+		while (true) {
+			final Request next;
+			final Priority priority;
+
+			synchronized (this) {
+				if (mNumInFlight >= mMaxConcurrent || mPending.isEmpty() || mLoader.isBackedUp()) {
+					return;
+				}
+
+				int best = 0;
+				float bestScore = getScore(mPending.get(0).texIndex);
+
+				for (int i = 1; i < mPending.size(); i++) {
+					final float score = getScore(mPending.get(i).texIndex);
+					if (score > bestScore) {
+						best = i;
+						bestScore = score;
+					}
+				}
+
+				next = mPending.remove(best);
+				priority = getPriority(bestScore);
+
+				if (!mInFlight[next.texIndex]) {
+					mInFlight[next.texIndex] = true;
+					mNumInFlight++;
+				}
+			}
+
+			mLoader.load(next.texIndex, next.size, priority);
+		}
+	}
+
+	/**
+	 * @return the slot closest to the gaze, if it is being looked at, otherwise -1
+	 */
+	synchronized int getGazedSlot() {
+		int gazed = -1;
+		float bestScore = GAZE_COS;
+
+		for (int i = 0; i < mSlotDirections.length; i++) {
+			if (mSlotDirections[i] != null) {
+				final float score = dot(mForward, mSlotDirections[i]);
+				if (score > bestScore) {
+					gazed = i;
+					bestScore = score;
+				}
+			}
+		}
+
+		return gazed;
+	}
+
+	/**
+	 * @return how close the slot is to the gaze, from -1 to 1, or above 1 for the theater
+	 */
+	synchronized float getGazeScore(int texIndex) {
+		return getScore(texIndex);
+	}
+
+	/**
+	 * Called from the GL thread once a photo of the current page is showing in the slot.
+	 */
+	synchronized void onSlotShown(int texIndex) {
+		mShown[texIndex] = true;
+	}
+
+	/**
+	 * Called from the GL thread every frame with the slot being looked at, to time how long it
+	 * took to show its photo.
+	 */
+	synchronized void onGazedSlot(int texIndex) {
+		if (mGazeLatencyRecorded || mPageStart == 0 || !mShown[texIndex]) {
+			return;
+		}
+
+		mGazeLatencyRecorded = true;
+		mLastGazeLatency = SystemClock.uptimeMillis() - mPageStart;
+		mAverageGazeLatency = mAverageGazeLatency == 0 ? mLastGazeLatency
+				: 0.8f * mAverageGazeLatency + 0.2f * mLastGazeLatency;
+
+		if (Logger.INFO) {
+			Logger.i(TAG, "Gazed photo visible after " + mLastGazeLatency + "ms, average: " + mAverageGazeLatency
+					+ "ms");
+		}
+	}
+
+	/**
+	 * @return the time from the last page load until the photo being looked at appeared
+	 */
+	synchronized long getLastGazeLatency() {
+		return mLastGazeLatency;
+	}
+
+	private void removePending(int texIndex) {
+		for (int i = mPending.size() - 1; i >= 0; i--) {
+			if (mPending.get(i).texIndex == texIndex) {
+				mPending.remove(i);
+			}
+		}
+	}
+
+	/**
+	 * @return higher is more important, the theater scores above any gaze direction
+	 */
+	private float getScore(int texIndex) {
+		if (texIndex == mTheaterIndex) {
+			return 2f;
+		}
+
+		if (mSlotDirections[texIndex] == null) {
+			return -1f;
+		}
+
+		return dot(mForward, mSlotDirections[texIndex]);
+	}
+
+	private static Priority getPriority(float score) {
+		if (score > 1f) {
+			return Priority.IMMEDIATE;
+		} else if (score > NEAR_GAZE_COS) {
+			return Priority.HIGH;
+		} else if (score > 0f) {
+			return Priority.NORMAL;
+		}
+		return Priority.LOW;
+	}
+
+	private static float dot(float[] a, float[] b) {
+		return a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
+	}
+}
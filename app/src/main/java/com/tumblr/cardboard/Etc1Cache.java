@@ -0,0 +1,332 @@
+package com.tumblr.cardboard;
+
+import android.graphics.Bitmap;
+import android.opengl.ETC1Util;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Encodes still photos to ETC1 in the background and keeps the compressed textures on disk, keyed
+ * by URL. Photos that have been seen before are uploaded with glCompressedTexImage2D without being
+ * downloaded or decoded again.
+ * <p/>
+ * Each file holds a full chain of mipmaps, one PKM texture per level down to 1x1, so that cached
+ * photos are drawn at the same level of detail and with the same filtering as downloaded ones.
+ */
+class Etc1Cache {
+
+	private static final String TAG = Etc1Cache.class.getSimpleName();
+
+	private static final String EXTENSION = ".pkm";
+	private static final long MAX_BYTES = 32 * 1024 * 1024;
+	private static final int HEADER_SIZE = 16;
+
+	/**
+	 * Receives compressed textures read from the cache, on a background thread.
+	 */
+	interface Callback {
+		/**
+		 * @param levels the chain of mipmaps, starting at the level the photo is drawn at
+		 * @param level  how many levels were skipped, see {@link TextureLod#getLevel}
+		 */
+		void onLoaded(ETC1Util.ETC1Texture[] levels, int level);
+
+		/**
+		 * Called if the photo hasn't been compressed yet, or couldn't be read.
+		 */
+		void onFailed();
+	}
+
+	private final File mDirectory;
+	private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+	Etc1Cache(File directory) {
+		mDirectory = directory;
+	}
+
+	/**
+	 * Reads a compressed photo in the background, if it is in the cache. Levels with more detail
+	 * than the rect can show aren't read.
+	 *
+	 * @param projectedWidth the width of the rect on screen, in pixels
+	 */
+	void load(final String url, final int projectedWidth, final Callback callback) {
+		mExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				final File file = getFile(url);
+				if (!file.exists()) {
+					callback.onFailed();
+					return;
+				}
+
+				try {
+					final InputStream in = new BufferedInputStream(new FileInputStream(file));
+					final ETC1Util.ETC1Texture[] levels;
+					final int level;
+					try {
+						// The size of the photo, from the first header.
+						in.mark(HEADER_SIZE);
+						final byte[] header = new byte[HEADER_SIZE];
+						readFully(in, header);
+						in.reset();
+
+						final int width = ((header[12] & 0xFF) << 8) | (header[13] & 0xFF);
+						final int height = ((header[14] & 0xFF) << 8) | (header[15] & 0xFF);
+						level = TextureLod.getLevel(width, projectedWidth);
+
+						for (int i = 0; i < level; i++) {
+							skipFully(in, HEADER_SIZE + getEncodedSize(width >> i, height >> i));
+						}
+
+						final List<ETC1Util.ETC1Texture> chain = new ArrayList<>();
+						ETC1Util.ETC1Texture texture;
+						do {
+							texture = ETC1Util.createTexture(in);
+							chain.add(texture);
+						} while (texture.getWidth() > 1 || texture.getHeight() > 1);
+						levels = chain.toArray(new ETC1Util.ETC1Texture[chain.size()]);
+					} finally {
+						in.close();
+					}
+
+					callback.onLoaded(levels, level);
+
+					// Keep recently used photos when trimming.
+					//noinspection ResultOfMethodCallIgnored
+					file.setLastModified(System.currentTimeMillis());
+				} catch (IOException e) {
+					Log.w(TAG, "Could not read " + file, e);
+					//noinspection ResultOfMethodCallIgnored
+					file.delete();
+					callback.onFailed();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Compresses a photo in the background. Only opaque RGB565 photos are compressed, since ETC1 has
+	 * no alpha channel. The pixels are copied in the background too, unless the lease has been
+	 * revoked by then.
+	 */
+	void encode(final String url, final BitmapLease lease) {
+		mExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				final File file = getFile(url);
+				if (file.exists()) {
+					return;
+				}
+
+				final PixelCopy copy = new PixelCopy();
+				if (!lease.read(copy) || copy.pixels == null) {
+					return;
+				}
+
+				final File temp = new File(file.getPath() + ".tmp");
+
+				try {
+					//noinspection ResultOfMethodCallIgnored
+					mDirectory.mkdirs();
+
+					final OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+					try {
+						ByteBuffer level = copy.pixels;
+						int levelWidth = copy.width;
+						int levelHeight = copy.height;
+
+						while (true) {
+							ETC1Util.writeTexture(
+									ETC1Util.compressTexture(level, levelWidth, levelHeight, 2, levelWidth * 2), out);
+
+							if (levelWidth == 1 && levelHeight == 1) {
+								break;
+							}
+
+							level = downsample(level, levelWidth, levelHeight);
+							levelWidth = Math.max(1, levelWidth / 2);
+							levelHeight = Math.max(1, levelHeight / 2);
+						}
+					} finally {
+						out.close();
+					}
+
+					if (!temp.renameTo(file)) {
+						throw new IOException("Could not rename " + temp);
+					}
+				} catch (IOException e) {
+					Log.w(TAG, "Could not write " + file, e);
+					//noinspection ResultOfMethodCallIgnored
+					temp.delete();
+				}
+
+				trim();
+			}
+		});
+	}
+
+	/**
+	 * Copies the pixels of an RGB565 photo.
+	 */
+	private static class PixelCopy implements BitmapLease.Reader {
+		ByteBuffer pixels;
+		int width;
+		int height;
+
+		@Override
+		public void read(Bitmap bitmap) {
+			if (bitmap.getConfig() != Bitmap.Config.RGB_565) {
+				return;
+			}
+
+			width = bitmap.getWidth();
+			height = bitmap.getHeight();
+			pixels = ByteBuffer.allocateDirect(width * height * 2).order(ByteOrder.nativeOrder());
+			bitmap.copyPixelsToBuffer(pixels);
+			pixels.position(0);
+		}
+	}
+
+	/**
+	 * Halves RGB565 pixels, averaging each 2x2 block, for the next level of the chain.
+	 *
+	 * @param pixels native order RGB565 pixels, from position 0
+	 * @return the pixels of the next level, which is max(1, width / 2) by max(1, height / 2)
+	 */
+	static ByteBuffer downsample(ByteBuffer pixels, int width, int height) {
+		final int halfWidth = Math.max(1, width / 2);
+		final int halfHeight = Math.max(1, height / 2);
+		final ShortBuffer src = pixels.asShortBuffer();
+		final ByteBuffer result = ByteBuffer.allocateDirect(halfWidth * halfHeight * 2).order(ByteOrder.nativeOrder());
+		final ShortBuffer dst = result.asShortBuffer();
+
+		for (int y = 0; y < halfHeight; y++) {
+			final int top = 2 * y * width;
+			final int bottom = Math.min(2 * y + 1, height - 1) * width;
+
+			for (int x = 0; x < halfWidth; x++) {
+				final int left = 2 * x;
+				final int right = Math.min(2 * x + 1, width - 1);
+
+				final int a = src.get(top + left);
+				final int b = src.get(top + right);
+				final int c = src.get(bottom + left);
+				final int d = src.get(bottom + right);
+
+				dst.put(y * halfWidth + x, (short) (average(a, b, c, d, 11, 0x1F) | average(a, b, c, d, 5, 0x3F)
+						| average(a, b, c, d, 0, 0x1F)));
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return the rounded average of one channel of four pixels, in place
+	 */
+	private static int average(int a, int b, int c, int d, int shift, int mask) {
+		final int sum = ((a >> shift) & mask) + ((b >> shift) & mask) + ((c >> shift) & mask) + ((d >> shift) & mask);
+		return ((sum + 2) >> 2) << shift;
+	}
+
+	/**
+	 * @return the size of an ETC1 level, which is stored in 4x4 blocks of 8 bytes
+	 */
+	static int getEncodedSize(int width, int height) {
+		return ((Math.max(1, width) + 3) / 4) * ((Math.max(1, height) + 3) / 4) * 8;
+	}
+
+	private static void readFully(InputStream in, byte[] buffer) throws IOException {
+		int read = 0;
+		while (read < buffer.length) {
+			final int count = in.read(buffer, read, buffer.length - read);
+			if (count < 0) {
+				throw new IOException("Unexpected end of file");
+			}
+			read += count;
+		}
+	}
+
+	private static void skipFully(InputStream in, long bytes) throws IOException {
+		while (bytes > 0) {
+			final long skipped = in.skip(bytes);
+			if (skipped <= 0) {
+				throw new IOException("Unexpected end of file");
+			}
+			bytes -= skipped;
+		}
+	}
+
+	/**
+	 * Deletes the least recently used photos until the cache fits in {@link #MAX_BYTES}.
+	 */
+	private void trim() {
+		final File[] files = mDirectory.listFiles();
+		if (files == null) {
+			return;
+		}
+
+		long total = 0;
+		for (File file : files) {
+			total += file.length();
+		}
+
+		if (total <= MAX_BYTES) {
+			return;
+		}
+
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File lhs, File rhs) {
+				final long left = lhs.lastModified();
+				final long right = rhs.lastModified();
+				return left < right ? -1 : (left == right ? 0 : 1);
+			}
+		});
+
+		for (int i = 0; i < files.length && total > MAX_BYTES; i++) {
+			final long length = files[i].length();
+			if (files[i].delete()) {
+				total -= length;
+			}
+		}
+	}
+
+	private File getFile(String url) {
+		return new File(mDirectory, hash(url) + EXTENSION);
+	}
+
+	private static String hash(String url) {
+		try {
+			final byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes("UTF-8"));
+			final StringBuilder sb = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				sb.append(String.format("%02x", b & 0xFF));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+			return Integer.toHexString(url.hashCode());
+		}
+	}
+}
@@ -0,0 +1,281 @@
+package com.tumblr.cardboard;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.v4.util.Pair;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DecodeFormat;
+import com.tumblr.cardboard.network.TumblrClient;
+import com.tumblr.cardboard.pipeline.Stage;
+import com.tumblr.jumblr.types.PhotoPost;
+import com.tumblr.jumblr.types.PhotoSize;
+
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the first page of a search, and the first few photos on it, while the user is still
+ * choosing the search term. The page is kept until {@link Tumblr3DActivity} takes it, or handed
+ * to the activity as soon as it loads if the activity asked for it first. The photos go into
+ * Glide's caches with the same requests, and at the same sizes, as the activity's, so both show up
+ * without waiting on the network.
+ * <p/>
+ * Shared by the whole process. Called on the main thread.
+ */
+final class FeedPrefetcher {
+
+	private static final String TAG = FeedPrefetcher.class.getSimpleName();
+
+	/**
+	 * How long a prefetched page is shown instead of loading a new one.
+	 */
+	private static final long MAX_AGE = 60 * 1000;
+	/**
+	 * The number of photos downloaded ahead, about the ones that are in view when the ring appears.
+	 */
+	private static final int NUM_PHOTOS = 4;
+
+	private static final FeedPrefetcher INSTANCE = new FeedPrefetcher();
+
+	/**
+	 * Receives a page that was still loading when it was taken, on the main thread.
+	 */
+	interface Callback {
+		/**
+		 * @param page the first page of the search, or null if it couldn't be loaded
+		 */
+		void onPageLoaded(Pair<Long, List<PhotoPost>> page);
+	}
+
+	// One page at a time, and only the newest term waits behind it.
+	private final Stage mStage = new Stage("prefetch", 1, 1);
+	private final TumblrClient mClient = new TumblrClient();
+	private final PhotoSizeSelector mSizeSelector = PhotoSizeSelector.getInstance();
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+	private String mTag;
+	private boolean mLoading;
+	private Pair<Long, List<PhotoPost>> mPage;
+	private long mLoadedAt;
+	/**
+	 * Waiting for the page that is loading.
+	 */
+	private Callback mWaiting;
+
+	private FeedPrefetcher() {
+	}
+
+	static FeedPrefetcher getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Starts loading a search term, in place of any term that is still loading.
+	 */
+	void prefetch(Context context, String tag) {
+		final Callback waiting;
+		synchronized (this) {
+			if (tag.equals(mTag) && (mLoading || mPage != null && !isStale())) {
+				return;
+			}
+
+			mTag = tag;
+			mLoading = true;
+			mPage = null;
+			waiting = mWaiting;
+			mWaiting = null;
+		}
+
+		if (waiting != null) {
+			// Its term won't be loaded after all.
+			waiting.onPageLoaded(null);
+		}
+
+		// Until the ring has been shown, assume it will be shown side by side across the display.
+		final DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+		mSizeSelector.guessEyeWidth(Math.max(metrics.widthPixels, metrics.heightPixels) / 2);
+
+		mStage.cancelAll();
+		mStage.submit(new PrefetchTask(context.getApplicationContext(), tag));
+	}
+
+	/**
+	 * Hands out the first page of the search: right away if it was prefetched recently, or once it
+	 * has loaded if it is still loading, so that it isn't requested twice. A page is only handed out
+	 * once.
+	 *
+	 * @param callback receives the page, or null if the prefetch failed
+	 * @return false if the search wasn't prefetched, and the page has to be loaded by the caller
+	 */
+	boolean take(String tag, Callback callback) {
+		final Pair<Long, List<PhotoPost>> page;
+		synchronized (this) {
+			if (!tag.equals(mTag)) {
+				return false;
+			}
+
+			if (mLoading) {
+				mWaiting = callback;
+				return true;
+			}
+
+			if (mPage == null || isStale()) {
+				return false;
+			}
+
+			page = mPage;
+			mPage = null;
+			mTag = null;
+		}
+
+		callback.onPageLoaded(page);
+		return true;
+	}
+
+	/**
+	 * Stops waiting for a page. The page is kept to be taken later.
+	 */
+	synchronized void removeCallback(Callback callback) {
+		if (mWaiting == callback) {
+			mWaiting = null;
+		}
+	}
+
+	private boolean isStale() {
+		return SystemClock.uptimeMillis() - mLoadedAt > MAX_AGE;
+	}
+
+	/**
+	 * @param page the page, or null if it couldn't be loaded
+	 * @return whether to preload the page's photos: false if the user has moved on to another term,
+	 * or if the page went straight to a waiting activity, which downloads them itself
+	 */
+	private boolean onPageLoaded(String tag, final Pair<Long, List<PhotoPost>> page) {
+		final Callback waiting;
+		synchronized (this) {
+			if (!tag.equals(mTag)) {
+				return false;
+			}
+
+			mLoading = false;
+			waiting = mWaiting;
+			mWaiting = null;
+
+			if (waiting == null) {
+				mPage = page;
+				mLoadedAt = SystemClock.uptimeMillis();
+				return page != null;
+			}
+
+			mTag = null;
+		}
+
+		mHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				waiting.onPageLoaded(page);
+			}
+		});
+		return false;
+	}
+
+	private class PrefetchTask extends Stage.Task {
+
+		private final Context mContext;
+		private final String mTag;
+
+		PrefetchTask(Context context, String tag) {
+			mContext = context;
+			mTag = tag;
+		}
+
+		@Override
+		protected void execute() {
+			Pair<Long, List<PhotoPost>> page;
+			try {
+				page = mClient.getPosts(mTag, 0, this);
+			} catch (RuntimeException e) {
+				Log.w(TAG, "Failed to prefetch " + mTag, e);
+				page = null;
+			}
+
+			if (isCancelled() || !onPageLoaded(mTag, page)) {
+				return;
+			}
+
+			final List<PhotoSize> sizes = getPhotoSizes(page.second);
+			resolveHosts(sizes);
+
+			mHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					if (!isCancelled()) {
+						preload(mContext, sizes);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * @return the sizes of the first few photos that the ring will download
+	 */
+	private List<PhotoSize> getPhotoSizes(List<PhotoPost> posts) {
+		final int ringWidth = Tumblr3DActivity.getRingWidth(mSizeSelector);
+		final List<PhotoSize> sizes = new ArrayList<>(NUM_PHOTOS);
+
+		for (int i = 0; i < posts.size() && sizes.size() < NUM_PHOTOS; i++) {
+			sizes.add(mSizeSelector.select(posts.get(i).getPhotos().get(0).getSizes(), ringWidth));
+		}
+
+		return sizes;
+	}
+
+	/**
+	 * Looks up the media hosts, so that the first downloads don't wait on DNS.
+	 */
+	private static void resolveHosts(List<PhotoSize> sizes) {
+		final List<String> hosts = new ArrayList<>();
+
+		for (PhotoSize size : sizes) {
+			try {
+				final String host = new URL(size.getUrl()).getHost();
+				if (!hosts.contains(host)) {
+					hosts.add(host);
+					InetAddress.getByName(host);
+				}
+			} catch (UnknownHostException e) {
+				Log.w(TAG, "Could not resolve " + size.getUrl());
+			} catch (MalformedURLException e) {
+				Log.w(TAG, "Bad photo url " + size.getUrl());
+			}
+		}
+	}
+
+	/**
+	 * Downloads and decodes photos into Glide's caches, the same way
+	 * {@link Tumblr3DActivity} loads them. The connections to the media hosts are kept alive for the
+	 * rest of the ring.
+	 */
+	private static void preload(Context context, List<PhotoSize> sizes) {
+		for (PhotoSize size : sizes) {
+			final String url = size.getUrl();
+
+			if (url.endsWith(".gif")) {
+				Glide.with(context).load(url).asGif().toBytes().priority(Priority.LOW).preload();
+			} else {
+				Glide.with(context).load(url).asBitmap().format(DecodeFormat.PREFER_RGB_565).priority(Priority.LOW)
+						.preload();
+			}
+		}
+	}
+}
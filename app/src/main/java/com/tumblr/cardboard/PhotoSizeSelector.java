@@ -0,0 +1,160 @@
+package com.tumblr.cardboard;
+
+import com.tumblr.jumblr.types.PhotoSize;
+
+import java.util.List;
+
+/**
+ * Chooses the smallest {@link PhotoSize} that still covers a rect's size on screen, taking the
+ * measured download throughput into account.
+ */
+class PhotoSizeSelector {
+
+	/**
+	 * Horizontal field of view of a single eye, in degrees.
+	 */
+	private static final float DEFAULT_FOV = 80f;
+	/**
+	 * Assume a 1080p phone until we know the size of the surface.
+	 */
+	private static final int DEFAULT_EYE_WIDTH = 960;
+	/**
+	 * How long we are willing to wait for a single photo, in milliseconds.
+	 */
+	private static final long DOWNLOAD_BUDGET = 1500;
+	/**
+	 * Weight given to the newest throughput sample.
+	 */
+	private static final float THROUGHPUT_ALPHA = 0.3f;
+
+	private static final PhotoSizeSelector INSTANCE = new PhotoSizeSelector();
+
+	private final float mTanHalfFov;
+
+	private volatile int mEyeWidth = DEFAULT_EYE_WIDTH;
+	private volatile boolean mEyeWidthMeasured;
+
+	/**
+	 * Pixels downloaded and decoded per millisecond, or 0 if nothing has been measured yet.
+	 */
+	private float mThroughput;
+
+	PhotoSizeSelector() {
+		this(DEFAULT_FOV);
+	}
+
+	PhotoSizeSelector(float fovDegrees) {
+		mTanHalfFov = (float) Math.tan(Math.toRadians(fovDegrees / 2));
+	}
+
+	/**
+	 * @return the selector shared by the {@link FeedPrefetcher} and {@link Tumblr3DActivity}, so that
+	 * photos are prefetched at the sizes the ring will ask for
+	 */
+	static PhotoSizeSelector getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @param eyeWidth the width of a single eye's viewport, in pixels
+	 */
+	void setEyeWidth(int eyeWidth) {
+		if (eyeWidth > 0) {
+			mEyeWidth = eyeWidth;
+			mEyeWidthMeasured = true;
+		}
+	}
+
+	/**
+	 * Sets the width of a single eye's viewport until it is measured by {@link #setEyeWidth}.
+	 */
+	void guessEyeWidth(int eyeWidth) {
+		if (eyeWidth > 0 && !mEyeWidthMeasured) {
+			mEyeWidth = eyeWidth;
+		}
+	}
+
+	/**
+	 * @param scale    the scale of the rect, which is two units wide before scaling
+	 * @param distance the distance of the rect from the camera
+	 * @return the width of the rect on screen, in pixels
+	 */
+	int getProjectedWidth(float scale, float distance) {
+		return (int) Math.ceil(mEyeWidth * scale / (distance * mTanHalfFov));
+	}
+
+	/**
+	 * @param sizes         the available sizes of a photo
+	 * @param requiredWidth the width of the rect on screen, in pixels
+	 * @return the smallest size wider than the rect, the largest size if there is none, or a smaller
+	 * size if the desired one can't be downloaded in time
+	 */
+	PhotoSize select(List<PhotoSize> sizes, int requiredWidth) {
+		PhotoSize best = null;
+		PhotoSize largest = null;
+
+		for (PhotoSize size : sizes) {
+			if (largest == null || size.getWidth() > largest.getWidth()) {
+				largest = size;
+			}
+
+			if (size.getWidth() >= requiredWidth && (best == null || size.getWidth() < best.getWidth())) {
+				best = size;
+			}
+		}
+
+		if (best == null) {
+			best = largest;
+		}
+
+		final long budget = getPixelBudget();
+		if (best != null && budget > 0 && getPixels(best) > budget) {
+			// The network is slow, pick the largest size we can get in time.
+			PhotoSize affordable = null;
+			PhotoSize smallest = null;
+
+			for (PhotoSize size : sizes) {
+				if (smallest == null || size.getWidth() < smallest.getWidth()) {
+					smallest = size;
+				}
+
+				if (getPixels(size) <= budget && (affordable == null || size.getWidth() > affordable.getWidth())) {
+					affordable = size;
+				}
+			}
+
+			best = affordable != null ? affordable : smallest;
+		}
+
+		return best;
+	}
+
+	/**
+	 * @param pixels the number of pixels in a photo that was loaded
+	 * @param millis the time it took to download and decode it
+	 */
+	synchronized void recordDownload(long pixels, long millis) {
+		if (pixels <= 0 || millis <= 0) {
+			return;
+		}
+
+		final float sample = (float) pixels / millis;
+
+		if (mThroughput == 0) {
+			mThroughput = sample;
+		} else {
+			mThroughput += THROUGHPUT_ALPHA * (sample - mThroughput);
+		}
+	}
+
+	/**
+	 * @return the number of pixels that can be loaded within the budget, or 0 if unknown
+	 */
+	private synchronized long getPixelBudget() {
+		return (long) (mThroughput * DOWNLOAD_BUDGET);
+	}
+
+	static long getPixels(PhotoSize size) {
+		return (long) size.getWidth() * size.getHeight();
+	}
+}
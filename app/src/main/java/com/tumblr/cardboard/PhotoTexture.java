@@ -1,12 +1,19 @@
 package com.tumblr.cardboard;
 
 import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.opengl.ETC1Util;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import com.bumptech.glide.request.animation.GlideAnimation;
 import com.bumptech.glide.request.target.SimpleTarget;
 import com.bumptech.glide.request.target.Target;
+import com.tumblr.cardboard.gif.GifAtlas;
 import com.tumblr.cardboard.gif.GifResourceDecoder;
 import com.tumblr.cardboard.gif.GifTexture;
+import com.tumblr.cardboard.gif.GifTextureResource;
+import com.tumblr.cardboard.pipeline.Stage;
 
 import java.lang.ref.WeakReference;
 
@@ -20,6 +27,22 @@ public class PhotoTexture {
 	int texIndex;
 	Bitmap bitmap;
 	boolean recycle;
+	/**
+	 * A compressed photo and its mipmaps, uploaded instead of the bitmap.
+	 */
+	ETC1Util.ETC1Texture[] etc1;
+	/**
+	 * How many times the compressed photo was halved to fit its rect.
+	 */
+	int etc1Level;
+	/**
+	 * Every frame of a short gif, uploaded once instead of frame by frame.
+	 */
+	GifAtlas atlas;
+	/**
+	 * When the photo was queued for upload, for the upload stage's metrics.
+	 */
+	long queuedNanos;
 
 	PhotoTexture(int texIndex, Bitmap bitmap, boolean recycle) {
 		this.texIndex = texIndex;
@@ -27,6 +50,26 @@ public class PhotoTexture {
 		this.recycle = recycle;
 	}
 
+	PhotoTexture(int texIndex, ETC1Util.ETC1Texture[] etc1, int etc1Level) {
+		this.texIndex = texIndex;
+		this.etc1 = etc1;
+		this.etc1Level = etc1Level;
+	}
+
+	PhotoTexture(int texIndex, GifAtlas atlas) {
+		this.texIndex = texIndex;
+		this.atlas = atlas;
+	}
+
+	/**
+	 * Notified when a photo or gif has been downloaded and decoded.
+	 */
+	interface LoadListener {
+		void onLoadFinished(int texIndex);
+
+		void onLoadFailed(int texIndex);
+	}
+
 	/**
 	 * Updates a texture with a photo.
 	 */
@@ -34,20 +77,39 @@ public class PhotoTexture {
 
 		private final int texIndex;
 		private final WeakReference<Texturizer> texturizer;
+		private final LoadListener loadListener;
 
 		public TextureTarget(int texIndex, Texturizer texturizer) {
+			this(texIndex, texturizer, null);
+		}
+
+		public TextureTarget(int texIndex, Texturizer texturizer, LoadListener loadListener) {
 			this.texIndex = texIndex;
 			this.texturizer = new WeakReference<>(texturizer);
+			this.loadListener = loadListener;
 		}
 
 		@Override
 		public void onResourceReady(Bitmap resource, GlideAnimation<? super Bitmap> glideAnimation) {
 			if (resource != null && texturizer.get() != null) {
 				texturizer.get().updateOrCreateTexture(texIndex, resource, true, false);
+
+				if (loadListener != null) {
+					loadListener.onLoadFinished(texIndex);
+				}
 			} else {
 				Log.e(TAG, "Null bitmap for " + texIndex);
 			}
 		}
+
+		@Override
+		public void onLoadFailed(Exception e, Drawable errorDrawable) {
+			Log.e(TAG, "Failed to load " + texIndex, e);
+
+			if (loadListener != null) {
+				loadListener.onLoadFailed(texIndex);
+			}
+		}
 	}
 
 	private static class TextureUpdateListener implements GifTexture.GifUpdateListener {
@@ -70,24 +132,57 @@ public class PhotoTexture {
 		}
 	}
 
+	/**
+	 * Decodes downloaded gifs on the decode stage, then plays them from the main thread.
+	 */
 	static class GifTextureTarget extends SimpleTarget<byte[]> {
 
+		private final int texIndex;
+		private final WeakReference<Texturizer> texturizer;
 		private final GifTexture.GifUpdateListener gifUpdateListener;
+		private final LoadListener loadListener;
+		private final Stage decodeStage;
+		private final Handler mainHandler = new Handler(Looper.getMainLooper());
 		private GifTexture gifTexture;
 		private GifResourceDecoder decoder;
+		private DecodeTask decodeTask;
+		private boolean paused;
+		private int minFrameDelay;
 
-		public GifTextureTarget(Texturizer texturizer, GifResourceDecoder decoder, int texIndex) {
+		public GifTextureTarget(Texturizer texturizer, GifResourceDecoder decoder, Stage decodeStage, int texIndex) {
+			this(texturizer, decoder, decodeStage, texIndex, null);
+		}
+
+		public GifTextureTarget(Texturizer texturizer, GifResourceDecoder decoder, Stage decodeStage, int texIndex,
+		                        LoadListener loadListener) {
+			this.texIndex = texIndex;
 			this.decoder = decoder;
+			this.decodeStage = decodeStage;
+			this.texturizer = new WeakReference<>(texturizer);
 			this.gifUpdateListener = new TextureUpdateListener(texIndex, texturizer);
+			this.loadListener = loadListener;
 		}
 
 		@Override
 		public void onResourceReady(byte[] resource, GlideAnimation<? super byte[]> glideAnimation) {
-			gifTexture = decoder.decode(resource, Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
+			if (decoder == null) {
+				return;
+			}
 
-			if (gifTexture != null) {
-				gifTexture.setGifUpdateListener(gifUpdateListener);
-				gifTexture.start();
+			decodeTask = new DecodeTask(decoder, resource);
+			if (!decodeStage.submit(decodeTask)) {
+				Log.w(TAG, "Decode stage is full, dropping gif " + texIndex);
+				decodeTask = null;
+				onLoadFailed(null, null);
+			}
+		}
+
+		@Override
+		public void onLoadFailed(Exception e, Drawable errorDrawable) {
+			Log.e(TAG, "Failed to load gif " + texIndex, e);
+
+			if (loadListener != null) {
+				loadListener.onLoadFailed(texIndex);
 			}
 		}
 
@@ -95,7 +190,7 @@ public class PhotoTexture {
 		public void onStart() {
 			super.onStart();
 
-			if (gifTexture != null) {
+			if (gifTexture != null && !paused) {
 				gifTexture.start();
 			}
 		}
@@ -109,6 +204,11 @@ public class PhotoTexture {
 
 		@Override
 		public void onDestroy() {
+			if (decodeTask != null) {
+				decodeTask.cancel();
+				decodeTask = null;
+			}
+
 			if (gifTexture != null) {
 				gifTexture.setGifUpdateListener(null);
 				gifTexture.stop();
@@ -118,5 +218,124 @@ public class PhotoTexture {
 			gifTexture = null;
 			decoder = null;
 		}
+
+		/**
+		 * @return whether the gif is played frame by frame, rather than animated from an atlas
+		 */
+		boolean isFrameByFrame() {
+			return gifTexture != null;
+		}
+
+		/**
+		 * Stops or restarts a gif that is played frame by frame, leaving its current frame showing.
+		 */
+		void setPaused(boolean paused) {
+			if (gifTexture != null) {
+				if (paused) {
+					gifTexture.stop();
+				} else {
+					gifTexture.start();
+				}
+			}
+			this.paused = paused;
+		}
+
+		/**
+		 * @return the first frame of a gif that plays frame by frame, which is kept until the target
+		 * is destroyed, or null
+		 */
+		Bitmap getFirstFrame() {
+			return gifTexture != null ? gifTexture.getFirstFrame() : null;
+		}
+
+		/**
+		 * @see GifTexture#setMinFrameDelay(int)
+		 */
+		void setMinFrameDelay(int minFrameDelay) {
+			this.minFrameDelay = minFrameDelay;
+			if (gifTexture != null) {
+				gifTexture.setMinFrameDelay(minFrameDelay);
+			}
+		}
+
+		/**
+		 * Called on the main thread once a gif that is played frame by frame has been decoded.
+		 * It starts playing even if it is paused, so that its first frame shows up.
+		 */
+		private void onDecoded(DecodeTask task, GifTextureResource gifResource) {
+			if (task.isCancelled()) {
+				if (gifResource != null) {
+					gifResource.recycle();
+				}
+				return;
+			}
+
+			decodeTask = null;
+			gifTexture = gifResource != null ? gifResource.get() : null;
+
+			if (gifTexture != null) {
+				gifTexture.setGifUpdateListener(gifUpdateListener);
+				gifTexture.setMinFrameDelay(minFrameDelay);
+				gifTexture.start();
+
+				if (loadListener != null) {
+					loadListener.onLoadFinished(texIndex);
+				}
+			} else if (loadListener != null) {
+				loadListener.onLoadFailed(texIndex);
+			}
+		}
+
+		private void onAtlasDecoded(DecodeTask task) {
+			if (task.isCancelled()) {
+				return;
+			}
+
+			decodeTask = null;
+			if (loadListener != null) {
+				loadListener.onLoadFinished(texIndex);
+			}
+		}
+
+		private class DecodeTask extends Stage.Task {
+
+			private final GifResourceDecoder decoder;
+			private final byte[] data;
+
+			DecodeTask(GifResourceDecoder decoder, byte[] data) {
+				this.decoder = decoder;
+				this.data = data;
+			}
+
+			@Override
+			protected void execute() {
+				// Short gifs are decoded once, and animated on the GPU.
+				final GifAtlas atlas = decoder.decodeAtlas(data);
+
+				if (atlas != null) {
+					if (isCancelled() || texturizer.get() == null) {
+						atlas.getBitmap().recycle();
+						return;
+					}
+
+					texturizer.get().updateOrCreateAtlas(texIndex, atlas);
+					mainHandler.post(new Runnable() {
+						@Override
+						public void run() {
+							onAtlasDecoded(DecodeTask.this);
+						}
+					});
+					return;
+				}
+
+				final GifTextureResource gifResource = decoder.decode(data, Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL);
+				mainHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						onDecoded(DecodeTask.this, gifResource);
+					}
+				});
+			}
+		}
 	}
 }
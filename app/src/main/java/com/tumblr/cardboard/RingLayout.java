@@ -0,0 +1,44 @@
+package com.tumblr.cardboard;
+
+/**
+ * Where each photo of a page goes on the ring around the user.
+ */
+final class RingLayout {
+
+	private RingLayout() {
+	}
+
+	/**
+	 * @param numImages the number of photos on the ring
+	 * @return the angle of the photo's slot in the XZ plane
+	 */
+	static float getAzimuth(int photoIndex, int numImages) {
+		return ((photoIndex + 1) * 300 / (numImages + 1) + 30) % 360;
+	}
+
+	/**
+	 * @return the up or down angle of the photo's slot
+	 */
+	static float getInclination(int photoIndex) {
+		if (photoIndex % 2 == 0) {
+			return 20;
+		} else {
+			return -20;
+		}
+	}
+
+	/**
+	 * @return the unit vector from the camera towards the photo's slot on the ring
+	 */
+	static float[] getSlotDirection(int photoIndex, int numImages) {
+		final double azimuth = Math.toRadians(getAzimuth(photoIndex, numImages));
+		final double inclination = Math.toRadians(getInclination(photoIndex));
+
+		// Rotate (0, 0, -1) about X by the inclination, then about Y by the azimuth.
+		return new float[]{
+				(float) (-Math.sin(azimuth) * Math.cos(inclination)),
+				(float) Math.sin(inclination),
+				(float) (-Math.cos(azimuth) * Math.cos(inclination))
+		};
+	}
+}
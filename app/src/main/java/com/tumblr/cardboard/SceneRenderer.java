@@ -0,0 +1,1248 @@
+package com.tumblr.cardboard;
+
+import android.graphics.Bitmap;
+import android.opengl.ETC1Util;
+import android.opengl.GLES20;
+import android.util.Log;
+
+import com.tumblr.cardboard.gif.GifAtlas;
+import com.tumblr.cardboard.gl.Gl;
+import com.tumblr.cardboard.gl.Matrix4;
+import com.tumblr.cardboard.hud.GlyphAtlas;
+import com.tumblr.cardboard.hud.Hud;
+import com.tumblr.cardboard.log.Logger;
+import com.tumblr.cardboard.log.TraceLog;
+import com.tumblr.cardboard.profile.FrameProfiler;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Locale;
+
+/**
+ * Draws the floor and the rects the photos are shown on, and uploads their textures, through a
+ * {@link Gl} so that the drawing can be run without a device. Everything here runs on the GL
+ * thread.
+ * <p/>
+ * Each rect has its own texture unit, the slot's index. The rect's size comes from the aspect
+ * ratio of its photo, and where it is comes from {@link #placePhoto} or {@link #placeInFront}.
+ */
+class SceneRenderer {
+
+	private static final String TAG = SceneRenderer.class.getSimpleName();
+
+	static final int INVALID_TEXTURE = 0;
+	/**
+	 * How many textures each frame by frame gif cycles through. The driver may still be drawing
+	 * the last two frames, so the next frame goes into a third texture.
+	 */
+	static final int DEFAULT_GIF_BUFFERS = 3;
+
+	private static final float CAMERA_Z = 0.01f;
+
+	private static final float YAW_LIMIT = 0.12f;
+	private static final float PITCH_LIMIT = 0.12f;
+
+	private static final float FLOOR_DEPTH = 20f;
+
+	private static final int COORDS_PER_VERTEX = 3;
+
+	/**
+	 * Where the HUD floats in front of the head, a little below the gaze so that it doesn't cover
+	 * the photo being looked at.
+	 */
+	private static final float HUD_DISTANCE = 2f;
+	private static final float HUD_Y = -0.2f;
+	/**
+	 * The height of a line of HUD text, in world units.
+	 */
+	private static final float HUD_LINE_HEIGHT = 0.1f;
+
+	/**
+	 * How much each fragment adds to the color buffer while measuring overdraw, out of 255. Must
+	 * match overdraw_fragment.shader. Up to 15 layers can be counted before the buffer saturates.
+	 */
+	static final int OVERDRAW_STEP = 16;
+	private static final int OVERDRAW_INTERVAL_FRAMES = 60;
+
+	// We keep the light always position just above the user.
+	private final float[] mLightPosInWorldSpace = new float[]{0.0f, 2.0f, 0.0f, 1.0f};
+
+	private final Gl mGl;
+	private final int mNumRects;
+	private final FrameProfiler mProfiler = FrameProfiler.getInstance();
+	private final TraceLog mTraceLog = TraceLog.getInstance();
+
+	private FloatBuffer mFloorVertices;
+	private FloatBuffer mFloorColors;
+	private FloatBuffer mFloorNormals;
+
+	private FloatBuffer mRectVertices;
+	private FloatBuffer mRectColors;
+	private FloatBuffer mRectFoundColors;
+	private FloatBuffer mRectNormals;
+
+	private FloatBuffer mRectTexCoords;
+	private FloatBuffer mRectFlippedTexCoords;
+
+	private int mGlProgram;
+	private int mPositionParam;
+	private int mNormalParam;
+	private int mColorParam;
+	private int mViewProjectionParam;
+	private int mEyeParam;
+	private int mLightPosParam;
+	private int mModelParam;
+	private int mIsFloorParam;
+
+	private int mRectTextureUniformParam;
+	private int mRectTextureCoordinateParam;
+	private int mTexOffsetParam;
+	private int mTexScaleParam;
+
+	private Hud mHud;
+	private int mHudProgram;
+	private int mHudViewProjectionParam;
+	private int mHudEyeParam;
+	private int mHudModelParam;
+	private int mHudColorParam;
+	private int mHudAlphaParam;
+	private int mHudTextureParam;
+	private int mHudPositionParam;
+	private int mHudTexCoordParam;
+	private final int[] mHudTextureIds = new int[1];
+	private final float[] mHudOffset = new float[16];
+	private final float[] mHudModel = new float[16];
+	private final float[] mHeadInverse = new float[16];
+	private long mFrameTimeMillis;
+
+	private final TextureUploader mUploader;
+	private final int[] mDeletedTextureIds = new int[1];
+
+	private final int[] mTextureIds;
+	private final int[] mRectTextureIds;
+	/**
+	 * The textures each frame by frame gif cycles through, one of which is in {@link #mTextureIds},
+	 * or null until the gif's second frame.
+	 */
+	private final int[][] mGifTextureIds;
+	/**
+	 * The frame each gif last moved to its next texture.
+	 */
+	private final long[] mGifSwapFrames;
+	private final int mGifBuffers;
+	/**
+	 * Counts calls to {@link #drawScene}.
+	 */
+	private long mFrame;
+	private final float[][] mImageRect;
+	private final float[][] mModelRect;
+	/**
+	 * Rects whose images are drawn rotated by 180 degrees, using flipped texture coordinates.
+	 */
+	private final boolean[] mFlippedRects;
+
+	/**
+	 * The atlas that each rect's gif is animated from, or null.
+	 */
+	private final GifAtlas[] mAtlases;
+	private final long[] mAtlasStartTimes;
+	/**
+	 * The part of each rect's texture that is shown, as an x and y offset and scale per rect.
+	 */
+	private final float[] mTexOffsets;
+	private final float[] mTexScales;
+
+	/**
+	 * The center of each rect in world space, recomputed in {@link #setHeadView} after the rect moves.
+	 */
+	private final float[][] mRectCenters;
+	private final boolean[] mRectMoved;
+	/**
+	 * The radius of the sphere around each rect, for culling.
+	 */
+	private final float[] mRectRadii;
+	/**
+	 * Whether any of each rect is in front of the head.
+	 */
+	private final boolean[] mRectVisible;
+	/**
+	 * Whether the user is looking at each rect, computed once per frame.
+	 */
+	private final boolean[] mLookingAt;
+	/**
+	 * How far in front of the head each rect is, and the rects in the order they are drawn, nearest
+	 * first so that the depth test rejects what they hide before it is shaded.
+	 */
+	private final float[] mRectDepths;
+	private final int[] mDrawOrder;
+	private boolean mFrontToBack = true;
+
+	private boolean mMeasuringOverdraw;
+	private ByteBuffer mOverdrawPixels;
+
+	private int mSelectedTexIndex = -1;
+
+	private final float[] mModelFloor = new float[16];
+	private final float[] mCamera = new float[16];
+	private final float[] mView = new float[16];
+	private final float[] mHeadView = new float[16];
+	/**
+	 * The perspective and view of each eye being drawn, combined.
+	 */
+	private final float[] mViewProjections = new float[2 * 16];
+	private final int[][] mViewports = new int[2][4];
+	private final boolean[] mRightEyes = new boolean[2];
+	private int mNumEyes;
+	/**
+	 * The eye whose viewport is currently set.
+	 */
+	private int mDrawEye;
+	/**
+	 * The end of the last timed section of drawing.
+	 */
+	private long mDrawMark;
+
+	// Scratch space, so that placing photos and testing the gaze doesn't allocate.
+	private static final float[] ORIGIN = new float[]{0f, 0f, 0f, 1f};
+	private final float[] mAzimuthMatrix = new float[16];
+	private final float[] mInclinationMatrix = new float[16];
+	private final float[] mRotationMatrix = new float[16];
+	private final float[] mRectCenterInHeadSpace = new float[4];
+
+	SceneRenderer(Gl gl, int numRects) {
+		this(gl, numRects, DEFAULT_GIF_BUFFERS);
+	}
+
+	/**
+	 * @param gifBuffers how many textures each frame by frame gif cycles through, or 1 to update
+	 *                   gifs in place
+	 */
+	SceneRenderer(Gl gl, int numRects, int gifBuffers) {
+		mGl = gl;
+		mNumRects = numRects;
+		mUploader = new TextureUploader(gl);
+		mGifBuffers = gifBuffers;
+
+		mTextureIds = new int[numRects];
+		mRectTextureIds = new int[numRects];
+		mGifTextureIds = new int[numRects][];
+		mGifSwapFrames = new long[numRects];
+		mImageRect = new float[numRects][16];
+		mModelRect = new float[numRects][16];
+		mFlippedRects = new boolean[numRects];
+		mAtlases = new GifAtlas[numRects];
+		mAtlasStartTimes = new long[numRects];
+		mTexOffsets = new float[numRects * 2];
+		mTexScales = new float[numRects * 2];
+		mRectCenters = new float[numRects][4];
+		mRectMoved = new boolean[numRects];
+		mRectRadii = new float[numRects];
+		mRectVisible = new boolean[numRects];
+		mLookingAt = new boolean[numRects];
+		mRectDepths = new float[numRects];
+		mDrawOrder = new int[numRects];
+
+		for (int i = 0; i < numRects; i++) {
+			mDrawOrder[i] = i;
+			mRectTextureIds[i] = -1;
+			mGifSwapFrames[i] = -1;
+			clearAtlas(i);
+		}
+
+		// Build the camera matrix, which is applied to the ModelView.
+		Matrix4.setLookAtM(mCamera, 0, 0.0f, 0.0f, CAMERA_Z, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+
+		Matrix4.setIdentityM(mModelFloor, 0);
+		Matrix4.translateM(mModelFloor, 0, 0, -FLOOR_DEPTH, 0); // Floor appears below user
+
+		Matrix4.setIdentityM(mHudOffset, 0);
+		Matrix4.translateM(mHudOffset, 0, 0f, HUD_Y, -HUD_DISTANCE);
+		Matrix4.scaleM(mHudOffset, 0, HUD_LINE_HEIGHT, HUD_LINE_HEIGHT, 1f);
+	}
+
+	/**
+	 * Creates the buffers and the program. OpenGL doesn't use Java arrays, but rather needs data in
+	 * a format it can understand. Hence we use ByteBuffers.
+	 *
+	 * @param vertexShader   the source of the vertex shader
+	 * @param fragmentShader the source of the fragment shader
+	 */
+	void onSurfaceCreated(String vertexShader, String fragmentShader) {
+		mGl.glClearColor(0.1f, 0.1f, 0.1f, 0.5f); // Dark background so text shows up well
+
+		mRectVertices = createBuffer(WorldLayoutData.RECT_COORDS);
+		mRectColors = createBuffer(WorldLayoutData.RECT_COLORS);
+		mRectFoundColors = createBuffer(WorldLayoutData.RECT_FOUND_COLORS);
+		mRectNormals = createBuffer(WorldLayoutData.RECT_NORMALS);
+		mRectTexCoords = createBuffer(WorldLayoutData.RECT_TEX_COORDS);
+		mRectFlippedTexCoords = createBuffer(WorldLayoutData.RECT_TEX_COORDS_FLIPPED);
+
+		// make a floor
+		mFloorVertices = createBuffer(WorldLayoutData.FLOOR_COORDS);
+		mFloorNormals = createBuffer(WorldLayoutData.FLOOR_NORMALS);
+		mFloorColors = createBuffer(WorldLayoutData.FLOOR_COLORS);
+
+		mGlProgram = mGl.glCreateProgram();
+		mGl.glAttachShader(mGlProgram, loadGLShader(GLES20.GL_VERTEX_SHADER, vertexShader));
+		mGl.glAttachShader(mGlProgram, loadGLShader(GLES20.GL_FRAGMENT_SHADER, fragmentShader));
+		mGl.glLinkProgram(mGlProgram);
+
+		// The locations don't change until the program is relinked.
+		mViewProjectionParam = mGl.glGetUniformLocation(mGlProgram, "u_ViewProjection");
+		mEyeParam = mGl.glGetUniformLocation(mGlProgram, "u_Eye");
+		mLightPosParam = mGl.glGetUniformLocation(mGlProgram, "u_LightPos");
+		mModelParam = mGl.glGetUniformLocation(mGlProgram, "u_Model");
+		mIsFloorParam = mGl.glGetUniformLocation(mGlProgram, "u_IsFloor");
+		mRectTextureUniformParam = mGl.glGetUniformLocation(mGlProgram, "u_Texture");
+		mTexOffsetParam = mGl.glGetUniformLocation(mGlProgram, "u_TexOffset");
+		mTexScaleParam = mGl.glGetUniformLocation(mGlProgram, "u_TexScale");
+
+		mPositionParam = mGl.glGetAttribLocation(mGlProgram, "a_Position");
+		mNormalParam = mGl.glGetAttribLocation(mGlProgram, "a_Normal");
+		mColorParam = mGl.glGetAttribLocation(mGlProgram, "a_Color");
+		mRectTextureCoordinateParam = mGl.glGetAttribLocation(mGlProgram, "a_TexCoordinate");
+
+		mGl.glEnable(GLES20.GL_DEPTH_TEST);
+
+		mUploader.onContextCreated();
+
+		checkGLError("onSurfaceCreated");
+	}
+
+	/**
+	 * Creates the program and the glyph texture that the HUD is drawn with. Called after
+	 * {@link #onSurfaceCreated}.
+	 *
+	 * @param hud            the messages to show
+	 * @param vertexShader   the source of the HUD's vertex shader
+	 * @param fragmentShader the source of the HUD's fragment shader
+	 */
+	void setHud(Hud hud, String vertexShader, String fragmentShader) {
+		mHud = hud;
+
+		mHudProgram = mGl.glCreateProgram();
+		mGl.glAttachShader(mHudProgram, loadGLShader(GLES20.GL_VERTEX_SHADER, vertexShader));
+		mGl.glAttachShader(mHudProgram, loadGLShader(GLES20.GL_FRAGMENT_SHADER, fragmentShader));
+		mGl.glLinkProgram(mHudProgram);
+
+		mHudViewProjectionParam = mGl.glGetUniformLocation(mHudProgram, "u_ViewProjection");
+		mHudEyeParam = mGl.glGetUniformLocation(mHudProgram, "u_Eye");
+		mHudModelParam = mGl.glGetUniformLocation(mHudProgram, "u_Model");
+		mHudColorParam = mGl.glGetUniformLocation(mHudProgram, "u_Color");
+		mHudAlphaParam = mGl.glGetUniformLocation(mHudProgram, "u_Alpha");
+		mHudTextureParam = mGl.glGetUniformLocation(mHudProgram, "u_Texture");
+		mHudPositionParam = mGl.glGetAttribLocation(mHudProgram, "a_Position");
+		mHudTexCoordParam = mGl.glGetAttribLocation(mHudProgram, "a_TexCoordinate");
+
+		// The glyphs share the first texture unit, since every rect binds its own texture to draw.
+		mGl.glGenTextures(1, mHudTextureIds, 0);
+		mGl.glActiveTexture(GLES20.GL_TEXTURE0);
+		mGl.glBindTexture(GLES20.GL_TEXTURE_2D, mHudTextureIds[0]);
+		mUploader.setParameters(false);
+
+		final Bitmap glyphs = hud.getAtlas().getBitmap();
+		if (glyphs != null) {
+			mGl.texImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, glyphs, GLES20.GL_UNSIGNED_BYTE);
+		}
+
+		checkGLError("setHud");
+	}
+
+	private static FloatBuffer createBuffer(float[] data) {
+		ByteBuffer bb = ByteBuffer.allocateDirect(data.length * 4);
+		bb.order(ByteOrder.nativeOrder());
+		FloatBuffer buffer = bb.asFloatBuffer();
+		buffer.put(data);
+		buffer.position(0);
+		return buffer;
+	}
+
+	/**
+	 * Compiles an OpenGL ES shader.
+	 *
+	 * @param type The type of shader we will be creating.
+	 * @param code The source of the shader.
+	 * @return the id of the shader
+	 */
+	private int loadGLShader(int type, String code) {
+		int shader = mGl.glCreateShader(type);
+		mGl.glShaderSource(shader, code);
+		mGl.glCompileShader(shader);
+
+		// Get the compilation status.
+		final int[] compileStatus = new int[1];
+		mGl.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
+
+		// If the compilation failed, delete the shader.
+		if (compileStatus[0] == 0) {
+			Log.e(TAG, "Error compiling shader: " + mGl.glGetShaderInfoLog(shader));
+			mGl.glDeleteShader(shader);
+			shader = 0;
+		}
+
+		if (shader == 0) {
+			throw new RuntimeException("Error creating shader.");
+		}
+
+		return shader;
+	}
+
+	/**
+	 * Attributes that the shaders don't use are optimized away and have no location, e.g. all but
+	 * the position in the overdraw shader. Passing -1 on to GL raises GL_INVALID_VALUE, so they are
+	 * skipped.
+	 */
+	private void enableAttribute(int location) {
+		if (location >= 0) {
+			mGl.glEnableVertexAttribArray(location);
+		}
+	}
+
+	private void disableAttribute(int location) {
+		if (location >= 0) {
+			mGl.glDisableVertexAttribArray(location);
+		}
+	}
+
+	/**
+	 * Points an attribute at tightly packed floats, see {@link #enableAttribute(int)}.
+	 */
+	private void setAttribute(int location, int size, Buffer buffer) {
+		if (location >= 0) {
+			mGl.glVertexAttribPointer(location, size, GLES20.GL_FLOAT, false, 0, buffer);
+		}
+	}
+
+	/**
+	 * Checks if we've had an error inside of OpenGL ES, and if so what that error is.
+	 *
+	 * @param func the name of the function that was just called (for debugging)
+	 */
+	void checkGLError(String func) {
+		int error;
+		//noinspection LoopStatementThatDoesntLoop
+		while ((error = mGl.glGetError()) != GLES20.GL_NO_ERROR) {
+			Log.e(TAG, func + ": glError " + error);
+			throw new RuntimeException(func + ": glError " + error);
+		}
+	}
+
+	/**
+	 * @return whether a texture has been created for the slot
+	 */
+	boolean hasTexture(int texIndex) {
+		return mTextureIds[texIndex] != INVALID_TEXTURE;
+	}
+
+	/**
+	 * @return whether the slot's rect has something to show
+	 */
+	boolean isShowing(int texIndex) {
+		return mRectTextureIds[texIndex] > INVALID_TEXTURE;
+	}
+
+	void setFlipped(int texIndex, boolean flipped) {
+		mFlippedRects[texIndex] = flipped;
+	}
+
+	/**
+	 * @param texIndex the slot in the theater, which is always highlighted
+	 */
+	void setSelectedIndex(int texIndex) {
+		mSelectedTexIndex = texIndex;
+	}
+
+	private boolean createTexture(int texIndex) {
+		if (mTextureIds[texIndex] == INVALID_TEXTURE) {
+			mGl.glGenTextures(1, mTextureIds, texIndex);
+		}
+
+		if (mTextureIds[texIndex] == INVALID_TEXTURE) {
+			return false;
+		}
+
+		// A new photo is uploaded in place, so the gif's other textures aren't needed.
+		releaseGifTextures(texIndex);
+
+		// Set the active texture unit
+		mGl.glActiveTexture(GLES20.GL_TEXTURE0 + texIndex);
+
+		// Bind to the texture in OpenGL
+		mGl.glBindTexture(GLES20.GL_TEXTURE_2D, mTextureIds[texIndex]);
+		return true;
+	}
+
+	/**
+	 * Shows the whole texture, e.g. when an atlas is replaced by a photo.
+	 */
+	private void clearAtlas(int texIndex) {
+		mAtlases[texIndex] = null;
+		mTexOffsets[texIndex * 2] = 0f;
+		mTexOffsets[texIndex * 2 + 1] = 0f;
+		mTexScales[texIndex * 2] = 1f;
+		mTexScales[texIndex * 2 + 1] = 1f;
+	}
+
+	private void setAspectRatio(int texIndex, int width, int height) {
+		Matrix4.setIdentityM(mImageRect[texIndex], 0);
+		Matrix4.scaleM(mImageRect[texIndex], 0, 1f, (float) height / width, 1f);
+	}
+
+	/**
+	 * Loads a bitmap into OpenGL.
+	 *
+	 * @param texIndex       the desired texture index
+	 * @param bitmap         the bitmap to put into OpenGL
+	 * @param mipmap         whether to build mipmaps, which also scales the photo down to the
+	 *                       level it is drawn at
+	 * @param projectedWidth the width of the rect on screen, in pixels
+	 * @return how many times the photo was halved before it was uploaded, or -1 if it wasn't
+	 */
+	int uploadBitmap(int texIndex, Bitmap bitmap, boolean mipmap, int projectedWidth) {
+		if (bitmap == null || bitmap.isRecycled() || !createTexture(texIndex)) {
+			Log.w(TAG, "Failed to load: " + texIndex);
+			return -1;
+		}
+
+		mTraceLog.log(TraceLog.EVENT_UPLOAD, texIndex, mTextureIds[texIndex]);
+
+		clearAtlas(texIndex);
+		setAspectRatio(texIndex, bitmap.getWidth(), bitmap.getHeight());
+
+		final int level = mipmap ? TextureLod.getLevel(bitmap.getWidth(), projectedWidth) : 0;
+
+		mUploader.setParameters(mipmap);
+
+		// Load the bitmap into the bound texture.
+		final int bytes = mUploader.uploadBitmap(bitmap, mipmap, level);
+
+		mProfiler.count(FrameProfiler.COUNTER_UPLOADS, 1);
+		mProfiler.count(FrameProfiler.COUNTER_UPLOAD_BYTES, bytes);
+
+		mRectTextureIds[texIndex] = mTextureIds[texIndex];
+		return level;
+	}
+
+	/**
+	 * Loads raw pixels into OpenGL, without mipmaps.
+	 */
+	void uploadPixels(int texIndex, int width, int height, int format, int type, Buffer pixels) {
+		if (!createTexture(texIndex)) {
+			Log.e(TAG, "Error loading texture.");
+			return;
+		}
+
+		clearAtlas(texIndex);
+		setAspectRatio(texIndex, width, height);
+		mUploader.setParameters(false);
+
+		mGl.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, format, width, height, 0, format, type, pixels);
+		mProfiler.count(FrameProfiler.COUNTER_UPLOADS, 1);
+		mProfiler.count(FrameProfiler.COUNTER_UPLOAD_BYTES, pixels.capacity());
+
+		mRectTextureIds[texIndex] = mTextureIds[texIndex];
+	}
+
+	/**
+	 * Loads an ETC1 compressed photo and its mipmaps into OpenGL. If the device can't sample ETC1,
+	 * it is decoded to RGB565 instead.
+	 *
+	 * @param texIndex the desired texture index
+	 * @param levels   the compressed photo, then its mipmaps down to 1x1
+	 */
+	void uploadCompressed(int texIndex, ETC1Util.ETC1Texture[] levels) {
+		if (!createTexture(texIndex)) {
+			Log.e(TAG, "Error loading compressed texture.");
+			return;
+		}
+
+		clearAtlas(texIndex);
+		setAspectRatio(texIndex, levels[0].getWidth(), levels[0].getHeight());
+
+		mTraceLog.log(TraceLog.EVENT_UPLOAD_COMPRESSED, texIndex, mTextureIds[texIndex]);
+		mProfiler.count(FrameProfiler.COUNTER_UPLOADS, 1);
+		mProfiler.count(FrameProfiler.COUNTER_UPLOAD_BYTES, mUploader.uploadCompressed(levels));
+
+		mRectTextureIds[texIndex] = mTextureIds[texIndex];
+	}
+
+	/**
+	 * Loads every frame of a gif into OpenGL at once. The gif then plays without any more uploads,
+	 * by moving across the atlas in {@link #setFrameTime}.
+	 *
+	 * @param texIndex   the desired texture index
+	 * @param atlas      the frames of the gif
+	 * @param timeMillis when the gif starts playing, in the same time base as {@link #setFrameTime}
+	 */
+	void uploadAtlas(int texIndex, GifAtlas atlas, long timeMillis) {
+		final Bitmap bitmap = atlas.getBitmap();
+		if (bitmap == null || bitmap.isRecycled() || !createTexture(texIndex)) {
+			Log.w(TAG, "Failed to load atlas: " + texIndex);
+			return;
+		}
+
+		mTraceLog.log(TraceLog.EVENT_UPLOAD, texIndex, mTextureIds[texIndex]);
+
+		setAspectRatio(texIndex, atlas.getFrameWidth(), atlas.getFrameHeight());
+		mUploader.setParameters(false);
+
+		mProfiler.count(FrameProfiler.COUNTER_UPLOADS, 1);
+		mProfiler.count(FrameProfiler.COUNTER_UPLOAD_BYTES, mUploader.uploadBitmap(bitmap, false, 0));
+
+		setAtlas(texIndex, atlas, timeMillis);
+
+		mRectTextureIds[texIndex] = mTextureIds[texIndex];
+	}
+
+	/**
+	 * Shows a texture that was uploaded by the {@link TextureUploadThread}, in place of the slot's
+	 * current one, which is deleted. Rects that shared the current texture are moved over too.
+	 *
+	 * @param texIndex  the slot the texture was uploaded for
+	 * @param textureId the finished texture
+	 * @param width     the width of the photo
+	 * @param height    the height of the photo
+	 * @param bytes     the number of bytes uploaded, for profiling
+	 */
+	void adoptTexture(int texIndex, int textureId, int width, int height, int bytes) {
+		final int previous = mTextureIds[texIndex];
+
+		mTraceLog.log(TraceLog.EVENT_UPLOAD, texIndex, textureId);
+
+		releaseGifTextures(texIndex);
+		mTextureIds[texIndex] = textureId;
+		if (previous != INVALID_TEXTURE) {
+			replaceRectTextures(previous, textureId);
+
+			mDeletedTextureIds[0] = previous;
+			mGl.glDeleteTextures(1, mDeletedTextureIds, 0);
+		}
+
+		clearAtlas(texIndex);
+		setAspectRatio(texIndex, width, height);
+
+		mProfiler.count(FrameProfiler.COUNTER_UPLOADS, 1);
+		mProfiler.count(FrameProfiler.COUNTER_UPLOAD_BYTES, bytes);
+
+		mRectTextureIds[texIndex] = textureId;
+	}
+
+	/**
+	 * Shows an atlas that was uploaded by the {@link TextureUploadThread}.
+	 *
+	 * @see #adoptTexture
+	 * @see #uploadAtlas
+	 */
+	void adoptAtlas(int texIndex, int textureId, GifAtlas atlas, int bytes, long timeMillis) {
+		adoptTexture(texIndex, textureId, atlas.getFrameWidth(), atlas.getFrameHeight(), bytes);
+		setAtlas(texIndex, atlas, timeMillis);
+	}
+
+	private void setAtlas(int texIndex, GifAtlas atlas, long timeMillis) {
+		mAtlases[texIndex] = atlas;
+		mAtlasStartTimes[texIndex] = timeMillis;
+		// Each frame is sampled from the centre of its first texel to the centre of its last, so that
+		// linear filtering never blends in the frames next to it.
+		mTexScales[texIndex * 2] = (atlas.getFrameWidth() - 1f) / (atlas.getColumns() * atlas.getFrameWidth());
+		mTexScales[texIndex * 2 + 1] = (atlas.getFrameHeight() - 1f) / (atlas.getRows() * atlas.getFrameHeight());
+		setAtlasFrame(texIndex, 0);
+	}
+
+	private void setAtlasFrame(int texIndex, int frame) {
+		final GifAtlas atlas = mAtlases[texIndex];
+		final int columns = atlas.getColumns();
+		final int rows = atlas.getRows();
+		mTexOffsets[texIndex * 2] = ((frame % columns) + 0.5f / atlas.getFrameWidth()) / columns;
+		mTexOffsets[texIndex * 2 + 1] = ((frame / columns) + 0.5f / atlas.getFrameHeight()) / rows;
+	}
+
+	/**
+	 * Moves every gif atlas to the frame that should be showing. Called once per frame.
+	 *
+	 * @param timeMillis the time of the frame, e.g. {@link android.os.SystemClock#uptimeMillis()}
+	 */
+	void setFrameTime(long timeMillis) {
+		mFrameTimeMillis = timeMillis;
+
+		for (int i = 0; i < mNumRects; i++) {
+			if (mAtlases[i] != null) {
+				setAtlasFrame(i, mAtlases[i].getFrameAt(timeMillis - mAtlasStartTimes[i]));
+			}
+		}
+	}
+
+	/**
+	 * Replaces the contents of an existing texture, e.g. with the next frame of a gif. The frame
+	 * goes into a texture that the GPU is done with, which is swapped in for this frame.
+	 */
+	void updateBitmap(int texIndex, Bitmap bitmap) {
+		if (mTextureIds[texIndex] != INVALID_TEXTURE && bitmap != null && !bitmap.isRecycled()) {
+			final int previous = mTextureIds[texIndex];
+			final int textureId = bindGifTexture(texIndex, bitmap.getWidth(), bitmap.getHeight());
+
+			// Load the bitmap into the bound texture. Uploading into a texture that is still being
+			// drawn blocks until the GPU is done with it, which shows up here.
+			final long uploadStart = mProfiler.begin();
+			mGl.texImage2D(GLES20.GL_TEXTURE_2D, 0, TextureFormat.getFormat(bitmap), bitmap,
+					TextureFormat.getType(bitmap));
+			mProfiler.end(FrameProfiler.PHASE_GIF_UPLOAD, uploadStart);
+			mProfiler.count(FrameProfiler.COUNTER_UPLOADS, 1);
+			mProfiler.count(FrameProfiler.COUNTER_UPLOAD_BYTES, bitmap.getByteCount());
+
+			swapGifTexture(texIndex, previous, textureId);
+		} else {
+			Log.w(TAG, "Failed to update: " + texIndex + " val: " + mTextureIds[texIndex]);
+		}
+	}
+
+	/**
+	 * Replaces the contents of an existing texture with raw pixels, in the same way as
+	 * {@link #updateBitmap}.
+	 */
+	void updatePixels(int texIndex, int width, int height, int format, int type, Buffer pixels) {
+		if (mTextureIds[texIndex] != INVALID_TEXTURE) {
+			final int previous = mTextureIds[texIndex];
+			final int textureId = bindGifTexture(texIndex, width, height);
+
+			final long uploadStart = mProfiler.begin();
+			mGl.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, format, width, height, 0, format, type, pixels);
+			mProfiler.end(FrameProfiler.PHASE_GIF_UPLOAD, uploadStart);
+			mProfiler.count(FrameProfiler.COUNTER_UPLOADS, 1);
+			mProfiler.count(FrameProfiler.COUNTER_UPLOAD_BYTES, pixels.capacity());
+
+			swapGifTexture(texIndex, previous, textureId);
+		} else {
+			Log.w(TAG, "Failed to update: " + texIndex + " val: " + mTextureIds[texIndex]);
+		}
+	}
+
+	/**
+	 * Binds the texture that a gif's next frame is uploaded into.
+	 */
+	private int bindGifTexture(int texIndex, int width, int height) {
+		final int textureId = nextGifTexture(texIndex);
+
+		// Set the active texture unit
+		mGl.glActiveTexture(GLES20.GL_TEXTURE0 + texIndex);
+
+		clearAtlas(texIndex);
+		setAspectRatio(texIndex, width, height);
+
+		// Bind to the texture in OpenGL
+		mGl.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+		return textureId;
+	}
+
+	/**
+	 * Shows the texture that a gif's frame was uploaded into.
+	 */
+	private void swapGifTexture(int texIndex, int previous, int textureId) {
+		if (textureId != previous) {
+			mTextureIds[texIndex] = textureId;
+			replaceRectTextures(previous, textureId);
+		}
+	}
+
+	/**
+	 * @return the texture to upload a gif's next frame into: the one that was drawn longest ago,
+	 * or the current one if it hasn't been drawn since it was last filled
+	 */
+	private int nextGifTexture(int texIndex) {
+		if (mGifBuffers <= 1 || mGifSwapFrames[texIndex] == mFrame) {
+			return mTextureIds[texIndex];
+		}
+
+		int[] textureIds = mGifTextureIds[texIndex];
+		if (textureIds == null) {
+			textureIds = new int[mGifBuffers];
+			textureIds[0] = mTextureIds[texIndex];
+			mGl.glGenTextures(mGifBuffers - 1, textureIds, 1);
+
+			mGl.glActiveTexture(GLES20.GL_TEXTURE0 + texIndex);
+			for (int i = 1; i < mGifBuffers; i++) {
+				if (textureIds[i] == INVALID_TEXTURE) {
+					return mTextureIds[texIndex];
+				}
+				mGl.glBindTexture(GLES20.GL_TEXTURE_2D, textureIds[i]);
+				mUploader.setParameters(false);
+			}
+			mGifTextureIds[texIndex] = textureIds;
+		}
+
+		mGifSwapFrames[texIndex] = mFrame;
+
+		for (int i = 0; i < mGifBuffers; i++) {
+			if (textureIds[i] == mTextureIds[texIndex]) {
+				return textureIds[(i + 1) % mGifBuffers];
+			}
+		}
+		return mTextureIds[texIndex];
+	}
+
+	/**
+	 * Deletes the textures a gif cycled through, except the one that is showing.
+	 */
+	private void releaseGifTextures(int texIndex) {
+		final int[] textureIds = mGifTextureIds[texIndex];
+		if (textureIds == null) {
+			return;
+		}
+
+		for (int i = 0; i < textureIds.length; i++) {
+			if (textureIds[i] != mTextureIds[texIndex] && textureIds[i] != INVALID_TEXTURE) {
+				mGl.glDeleteTextures(1, textureIds, i);
+			}
+		}
+		mGifTextureIds[texIndex] = null;
+		mGifSwapFrames[texIndex] = -1;
+	}
+
+	/**
+	 * Points every rect that showed one texture, e.g. the reblogs of a photo, at another.
+	 */
+	private void replaceRectTextures(int fromTextureId, int toTextureId) {
+		for (int i = 0; i < mNumRects; i++) {
+			if (mRectTextureIds[i] == fromTextureId) {
+				mRectTextureIds[i] = toTextureId;
+			}
+		}
+	}
+
+	/**
+	 * Points a rect at another slot's texture, e.g. for a reblog of the same photo. The rect still
+	 * has to be placed.
+	 */
+	void shareTexture(int fromTexIndex, int toTexIndex) {
+		mRectTextureIds[toTexIndex] = mRectTextureIds[fromTexIndex];
+		System.arraycopy(mImageRect[fromTexIndex], 0, mImageRect[toTexIndex], 0, 16);
+
+		mAtlases[toTexIndex] = mAtlases[fromTexIndex];
+		mAtlasStartTimes[toTexIndex] = mAtlasStartTimes[fromTexIndex];
+		System.arraycopy(mTexOffsets, fromTexIndex * 2, mTexOffsets, toTexIndex * 2, 2);
+		System.arraycopy(mTexScales, fromTexIndex * 2, mTexScales, toTexIndex * 2, 2);
+	}
+
+	/**
+	 * Puts a rect on a sphere around the camera.
+	 *
+	 * @param azimuth     the angle in the XZ plane, in degrees
+	 * @param inclination the angle above or below the horizon, in degrees
+	 * @param translate   how far to move the rect along its own z axis
+	 */
+	void placePhoto(int texIndex, float scale, float azimuth, float inclination, float translate) {
+		Matrix4.setRotateM(mAzimuthMatrix, 0, azimuth, 0, 1, 0);
+		Matrix4.setRotateM(mInclinationMatrix, 0, inclination, 1, 0, 0);
+		Matrix4.multiplyMM(mRotationMatrix, 0, mAzimuthMatrix, 0, mInclinationMatrix, 0);
+
+		Matrix4.multiplyMM(mModelRect[texIndex], 0, mImageRect[texIndex], 0, mRotationMatrix, 0);
+		Matrix4.translateM(mModelRect[texIndex], 0, 0f, 0f, translate);
+		Matrix4.scaleM(mModelRect[texIndex], 0, scale, scale, 1f);
+		mRectMoved[texIndex] = true;
+	}
+
+	/**
+	 * Puts a rect straight ahead of the camera, e.g. in the theater.
+	 */
+	void placeInFront(int texIndex, float scale, float distance) {
+		Matrix4.scaleM(mModelRect[texIndex], 0, mImageRect[texIndex], 0, scale, scale, 1f);
+		Matrix4.translateM(mModelRect[texIndex], 0, 0f, 0f, -distance);
+		mRectMoved[texIndex] = true;
+	}
+
+	/**
+	 * Finds what the user is looking at and which rects are behind them. Called once per frame.
+	 */
+	void setHeadView(float[] headView) {
+		System.arraycopy(headView, 0, mHeadView, 0, 16);
+
+		for (int i = 0; i < mNumRects; i++) {
+			if (mRectMoved[i]) {
+				Matrix4.multiplyMV(mRectCenters[i], 0, mModelRect[i], 0, ORIGIN, 0);
+				mRectRadii[i] = getBoundingRadius(mModelRect[i]);
+				mRectMoved[i] = false;
+			}
+
+			// Convert the center of the object to camera space.
+			Matrix4.multiplyMV(mRectCenterInHeadSpace, 0, mHeadView, 0, mRectCenters[i], 0);
+			mLookingAt[i] = isLookingAtObject(mRectCenterInHeadSpace);
+			// Forward is -z, so the rect is behind the head if even its nearest edge has a positive z.
+			mRectVisible[i] = mRectCenterInHeadSpace[2] < mRectRadii[i];
+			// The theater covers most of the view, so it goes first whatever its depth.
+			mRectDepths[i] = i == mSelectedTexIndex ? -Float.MAX_VALUE : -mRectCenterInHeadSpace[2];
+		}
+
+		sortDrawOrder();
+	}
+
+	/**
+	 * Sorts the rects nearest first. The order barely changes from one frame to the next, so an
+	 * insertion sort of the last frame's order is close to linear.
+	 */
+	private void sortDrawOrder() {
+		for (int i = 1; i < mNumRects; i++) {
+			final int texIndex = mDrawOrder[i];
+			final float depth = mRectDepths[texIndex];
+
+			int j = i - 1;
+			while (j >= 0 && mRectDepths[mDrawOrder[j]] > depth) {
+				mDrawOrder[j + 1] = mDrawOrder[j];
+				j--;
+			}
+			mDrawOrder[j + 1] = texIndex;
+		}
+	}
+
+	// Visible for testing.
+	int[] getDrawOrder() {
+		return mDrawOrder;
+	}
+
+	/**
+	 * @param frontToBack whether to draw the rects nearest first and the floor last, or the floor and
+	 *                    then the rects in slot order, e.g. to compare their overdraw
+	 */
+	void setFrontToBack(boolean frontToBack) {
+		mFrontToBack = frontToBack;
+	}
+
+	/**
+	 * Counts how many times each pixel is shaded, for a scene program built with
+	 * overdraw_fragment.shader. Each fragment adds to the color buffer, so the brighter a pixel the
+	 * more it was drawn over, and the average is logged and shown on the HUD every
+	 * {@link #OVERDRAW_INTERVAL_FRAMES} frames. Called after {@link #onSurfaceCreated}.
+	 */
+	void setMeasuringOverdraw(boolean measuring) {
+		mMeasuringOverdraw = measuring;
+		if (measuring) {
+			mGl.glClearColor(0f, 0f, 0f, 0f);
+		}
+	}
+
+	/**
+	 * Finds the object the user was looking at in the last frame.
+	 *
+	 * @return -1 if not looking at object
+	 */
+	int getLookingAt() {
+		for (int i = 0; i < mNumRects; i++) {
+			if (mLookingAt[i]) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Check if user is looking at object by calculating where the object is in eye-space.
+	 *
+	 * @param center the center of the object in camera space
+	 */
+	private static boolean isLookingAtObject(float[] center) {
+		float pitch = (float) Math.atan2(center[1], -center[2]);
+		float yaw = (float) Math.atan2(center[0], -center[2]);
+
+		return (Math.abs(pitch) < PITCH_LIMIT) && (Math.abs(yaw) < YAW_LIMIT);
+	}
+
+	/**
+	 * @return the distance from the center of a rect to its corners, in world space
+	 */
+	private static float getBoundingRadius(float[] model) {
+		// The rect spans -1 to 1 along its x and y axes, which are the first two columns.
+		final float xx = model[0] * model[0] + model[1] * model[1] + model[2] * model[2];
+		final float yy = model[4] * model[4] + model[5] * model[5] + model[6] * model[6];
+		return (float) Math.sqrt(xx + yy);
+	}
+
+	/**
+	 * Clears both eyes at once, for single pass rendering.
+	 */
+	void clear() {
+		mGl.glDisable(GLES20.GL_SCISSOR_TEST);
+		mGl.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+	}
+
+	/**
+	 * Clears the eye that is about to be drawn.
+	 */
+	void clearEye() {
+		mGl.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+	}
+
+	/**
+	 * Sets up an eye for the next {@link #drawScene(int)}.
+	 *
+	 * @param eye         0 for the first eye, 1 for the second
+	 * @param eyeView     the eye's view matrix
+	 * @param perspective the eye's projection matrix
+	 * @param viewport    the eye's viewport, as x, y, width and height
+	 * @param right       whether this is the right eye, for profiling
+	 */
+	void setEye(int eye, float[] eyeView, float[] perspective, int[] viewport, boolean right) {
+		final long matricesStart = mProfiler.begin();
+
+		// Apply the eye transformation to the camera.
+		Matrix4.multiplyMM(mView, 0, eyeView, 0, mCamera, 0);
+		Matrix4.multiplyMM(mViewProjections, eye * 16, perspective, 0, mView, 0);
+		System.arraycopy(viewport, 0, mViewports[eye], 0, 4);
+		mRightEyes[eye] = right;
+
+		mProfiler.end(FrameProfiler.PHASE_MATRICES, matricesStart);
+	}
+
+	/**
+	 * Draws the floor and rects into the eyes given to {@link #setEye}. Each object's state is set
+	 * once, then it is drawn into each eye's viewport, picking that eye's view projection in the
+	 * shader.
+	 *
+	 * @param numEyes 1 for one eye at a time, 2 to draw both eyes in a single pass
+	 */
+	void drawScene(int numEyes) {
+		mFrame++;
+		mNumEyes = numEyes;
+		mDrawMark = mProfiler.begin();
+
+		mGl.glUseProgram(mGlProgram);
+		mGl.glUniformMatrix4fv(mViewProjectionParam, mNumEyes, false, mViewProjections, 0);
+
+		mDrawEye = 0;
+		setViewport(mDrawEye);
+		mGl.glUniform1f(mEyeParam, mDrawEye);
+
+		enableAttribute(mPositionParam);
+		enableAttribute(mNormalParam);
+		enableAttribute(mColorParam);
+		checkGLError("mColorParam");
+
+		// Set the position of the light, which is in world space so that it is the same for each eye.
+		mGl.glUniform3f(mLightPosParam, mLightPosInWorldSpace[0], mLightPosInWorldSpace[1],
+				mLightPosInWorldSpace[2]);
+
+		if (mMeasuringOverdraw) {
+			mGl.glEnable(GLES20.GL_BLEND);
+			mGl.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE);
+		}
+
+		if (!mFrontToBack) {
+			drawFloor();
+		}
+
+		for (int n = 0; n < mNumRects; n++) {
+			final int i = mFrontToBack ? mDrawOrder[n] : n;
+			if (!mRectVisible[i]) {
+				if (mRectTextureIds[i] > INVALID_TEXTURE) {
+					mProfiler.count(FrameProfiler.COUNTER_CULLED, 1);
+				}
+				continue;
+			}
+
+			drawRect(i);
+		}
+
+		// Most of the floor is hidden behind the rects, so it is drawn last.
+		if (mFrontToBack) {
+			drawFloor();
+		}
+
+		if (mMeasuringOverdraw) {
+			mGl.glDisable(GLES20.GL_BLEND);
+			if (mFrame % OVERDRAW_INTERVAL_FRAMES == 0) {
+				reportOverdraw();
+			}
+		}
+
+		if (mHud != null && mHud.update(mFrameTimeMillis)) {
+			drawHud();
+		}
+	}
+
+	/**
+	 * Reads back the eyes that were just drawn, and reports how many fragments were shaded per
+	 * pixel. Stalls until the GPU has finished, so it is only done while measuring.
+	 */
+	private void reportOverdraw() {
+		long fragments = 0;
+		long pixels = 0;
+		int maxLayers = 0;
+
+		for (int eye = 0; eye < mNumEyes; eye++) {
+			final int[] viewport = mViewports[eye];
+			final int size = viewport[2] * viewport[3] * 4;
+			if (mOverdrawPixels == null || mOverdrawPixels.capacity() < size) {
+				mOverdrawPixels = ByteBuffer.allocateDirect(size);
+			}
+
+			mOverdrawPixels.clear();
+			mGl.glReadPixels(viewport[0], viewport[1], viewport[2], viewport[3], GLES20.GL_RGBA,
+					GLES20.GL_UNSIGNED_BYTE, mOverdrawPixels);
+
+			for (int i = 0; i < size; i += 4) {
+				final int layers = ((mOverdrawPixels.get(i) & 0xff) + OVERDRAW_STEP / 2) / OVERDRAW_STEP;
+				fragments += layers;
+				maxLayers = Math.max(maxLayers, layers);
+			}
+			pixels += size / 4;
+		}
+
+		if (pixels == 0) {
+			return;
+		}
+
+		final String report = String.format(Locale.US, "overdraw %.2f\nmax %d", (float) fragments / pixels,
+				maxLayers);
+		Logger.i(TAG, report.replace('\n', ' '));
+		if (mHud != null) {
+			mHud.show(report);
+		}
+	}
+
+	private void setViewport(int eye) {
+		final int[] viewport = mViewports[eye];
+		mGl.glViewport(viewport[0], viewport[1], viewport[2], viewport[3]);
+	}
+
+	/**
+	 * Draws the current object into each eye. The eyes are visited starting from the one that was
+	 * drawn last, so the viewport only changes once per object.
+	 *
+	 * @param numVertices the number of vertices to draw
+	 * @param eyeParam    the current program's eye uniform
+	 */
+	private void drawArraysForEachEye(int numVertices, int eyeParam) {
+		for (int i = 0; i < mNumEyes; i++) {
+			if (i > 0) {
+				mDrawEye = (mDrawEye + 1) % mNumEyes;
+				setViewport(mDrawEye);
+				mGl.glUniform1f(eyeParam, mDrawEye);
+			}
+			mGl.glDrawArrays(GLES20.GL_TRIANGLES, 0, numVertices);
+
+			// Everything since the last draw was for this eye.
+			mDrawMark = mProfiler.end(mRightEyes[mDrawEye]
+					? FrameProfiler.PHASE_DRAW_RIGHT : FrameProfiler.PHASE_DRAW_LEFT, mDrawMark);
+			mProfiler.count(FrameProfiler.COUNTER_DRAWS, 1);
+		}
+	}
+
+	/**
+	 * Draw the rect. We've set all of our transformation matrices. Now we simply pass them into
+	 * the shader.
+	 */
+	private void drawRect(int texIndex) {
+		if (mRectTextureIds[texIndex] < INVALID_TEXTURE) {
+			// can't draw this rectangle
+			return;
+		}
+
+		// This is not the floor!
+		mGl.glUniform1f(mIsFloorParam, 0f);
+
+		// Set the active texture unit
+		mGl.glActiveTexture(GLES20.GL_TEXTURE0 + texIndex);
+
+		// Bind the texture to this unit.
+		mGl.glBindTexture(GLES20.GL_TEXTURE_2D, mRectTextureIds[texIndex]);
+
+		// Tell the texture uniform sampler to use this texture in the shader by binding to texture unit 0.
+		mGl.glUniform1i(mRectTextureUniformParam, texIndex);
+
+		// Set the part of the texture to show, for gif atlases
+		mGl.glUniform2f(mTexOffsetParam, mTexOffsets[texIndex * 2], mTexOffsets[texIndex * 2 + 1]);
+		mGl.glUniform2f(mTexScaleParam, mTexScales[texIndex * 2], mTexScales[texIndex * 2 + 1]);
+
+		// Set the Model in the shader, used to calculate the position and lighting
+		mGl.glUniformMatrix4fv(mModelParam, 1, false, mModelRect[texIndex], 0);
+
+		// Set the position of the rect
+		setAttribute(mPositionParam, COORDS_PER_VERTEX, mRectVertices);
+
+		// Set the normal positions of the rect, again for shading
+		setAttribute(mNormalParam, 3, mRectNormals);
+
+		// Connect texBuffer to "aTextureCoord".
+		setAttribute(mRectTextureCoordinateParam, 2,
+				mFlippedRects[texIndex] ? mRectFlippedTexCoords : mRectTexCoords);
+
+		// Enable the "aTextureCoord" vertex attribute.
+		enableAttribute(mRectTextureCoordinateParam);
+
+		if (texIndex == mSelectedTexIndex || mLookingAt[texIndex]) {
+			setAttribute(mColorParam, 4, mRectFoundColors);
+		} else {
+			setAttribute(mColorParam, 4, mRectColors);
+		}
+		drawArraysForEachEye(WorldLayoutData.RECT_COORDS.length / 3, mEyeParam); // 3 b/c triangles
+		checkGLError("Drawing rect");
+	}
+
+	/**
+	 * Draw the floor. This feeds in data for the floor into the shader. Note that this doesn't
+	 * feed in data about position of the light, so if we rewrite our code to draw the floor first,
+	 * the lighting might look strange.
+	 */
+	private void drawFloor() {
+		// This is the floor!
+		mGl.glUniform1f(mIsFloorParam, 1f);
+
+		// Set Model, position, normals, and color
+		mGl.glUniformMatrix4fv(mModelParam, 1, false, mModelFloor, 0);
+		setAttribute(mPositionParam, COORDS_PER_VERTEX, mFloorVertices);
+		setAttribute(mNormalParam, 3, mFloorNormals);
+		setAttribute(mColorParam, 4, mFloorColors);
+		drawArraysForEachEye(6, mEyeParam);
+
+		checkGLError("drawing floor");
+	}
+
+	/**
+	 * Draws the HUD over everything else, as a single batch of glyphs per eye. It is placed in
+	 * front of the head and drawn with each eye's view projection, so its depth in each eye comes
+	 * from the same projection as the rest of the scene.
+	 */
+	private void drawHud() {
+		Matrix4.invertRigidM(mHeadInverse, 0, mHeadView, 0);
+		Matrix4.multiplyMM(mHudModel, 0, mHeadInverse, 0, mHudOffset, 0);
+
+		// The HUD draws more vertices than the scene's attributes have.
+		disableAttribute(mPositionParam);
+		disableAttribute(mNormalParam);
+		disableAttribute(mColorParam);
+		disableAttribute(mRectTextureCoordinateParam);
+
+		mGl.glUseProgram(mHudProgram);
+		mGl.glUniformMatrix4fv(mHudViewProjectionParam, mNumEyes, false, mViewProjections, 0);
+		mGl.glUniform1f(mHudEyeParam, mDrawEye);
+		mGl.glUniformMatrix4fv(mHudModelParam, 1, false, mHudModel, 0);
+
+		final float[] color = mHud.getColor();
+		mGl.glUniform3f(mHudColorParam, color[0], color[1], color[2]);
+		mGl.glUniform1f(mHudAlphaParam, mHud.getAlpha());
+
+		mGl.glActiveTexture(GLES20.GL_TEXTURE0);
+		mGl.glBindTexture(GLES20.GL_TEXTURE_2D, mHudTextureIds[0]);
+		mGl.glUniform1i(mHudTextureParam, 0);
+
+		final int stride = GlyphAtlas.FLOATS_PER_VERTEX * 4;
+		mGl.glEnableVertexAttribArray(mHudPositionParam);
+		mGl.glEnableVertexAttribArray(mHudTexCoordParam);
+		mGl.glVertexAttribPointer(mHudPositionParam, 2, GLES20.GL_FLOAT, false, stride, mHud.getPositions());
+		mGl.glVertexAttribPointer(mHudTexCoordParam, 2, GLES20.GL_FLOAT, false, stride, mHud.getTexCoords());
+
+		// The glyphs have premultiplied alpha.
+		mGl.glDisable(GLES20.GL_DEPTH_TEST);
+		mGl.glEnable(GLES20.GL_BLEND);
+		mGl.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+
+		drawArraysForEachEye(mHud.getNumVertices(), mHudEyeParam);
+
+		mGl.glDisable(GLES20.GL_BLEND);
+		mGl.glEnable(GLES20.GL_DEPTH_TEST);
+		mGl.glDisableVertexAttribArray(mHudPositionParam);
+		mGl.glDisableVertexAttribArray(mHudTexCoordParam);
+
+		checkGLError("Drawing HUD");
+	}
+}
@@ -0,0 +1,341 @@
+package com.tumblr.cardboard;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.opengl.ETC1Util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * The last session's scene: the page that was showing, where each photo was placed and a small
+ * copy of each photo, either RGB565 pixels or a level of a compressed photo. The file is memory
+ * mapped on the next launch so that the photos can be uploaded straight into OpenGL.
+ * <p/>
+ * Layout, in native byte order:
+ * <pre>
+ * int magic, int version, int numImages, int selectedTexIndex, string searchTerm,
+ * int slotCount, then for each slot:
+ *     int texIndex, int format, int width, int height, string blogName, int length, length bytes
+ *     of pixels
+ * </pre>
+ * where strings are an int length followed by UTF-8 bytes.
+ */
+class SceneSnapshot {
+
+	private static final int MAGIC = 0x54334453; // T3DS
+	private static final int VERSION = 2;
+
+	static final int FORMAT_RGB565 = 0;
+	static final int FORMAT_ETC1 = 1;
+
+	/**
+	 * The longest side of a photo in the snapshot.
+	 */
+	private static final int MAX_SIZE = 256;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * A photo in the snapshot.
+	 */
+	static class Slot {
+		final int texIndex;
+		/**
+		 * {@link #FORMAT_RGB565} or {@link #FORMAT_ETC1}.
+		 */
+		final int format;
+		final int width;
+		final int height;
+		final ByteBuffer pixels;
+
+		Slot(int texIndex, int format, int width, int height, ByteBuffer pixels) {
+			this.texIndex = texIndex;
+			this.format = format;
+			this.width = width;
+			this.height = height;
+			this.pixels = pixels;
+		}
+	}
+
+	private final Slot[] mSlots;
+	private final String[] mBlogNames;
+	private String mSearchTerm;
+	private int mNumImages;
+	private int mSelectedTexIndex = -1;
+	/**
+	 * Incremented with every page, so that photos captured for an earlier page are dropped.
+	 */
+	private int mPage;
+
+	SceneSnapshot(int numTextures) {
+		mSlots = new Slot[numTextures];
+		mBlogNames = new String[numTextures];
+	}
+
+	/**
+	 * Starts a new page. The previous page's photos and blog names are dropped, along with photos
+	 * that are still being captured for it.
+	 */
+	synchronized void setPage(String searchTerm, int numImages) {
+		mSearchTerm = searchTerm;
+		mNumImages = numImages;
+		Arrays.fill(mSlots, null);
+		Arrays.fill(mBlogNames, null);
+		mPage++;
+	}
+
+	/**
+	 * @return the current page, to pass to {@link #capture}
+	 */
+	synchronized int getPage() {
+		return mPage;
+	}
+
+	synchronized void setSelectedTexIndex(int texIndex) {
+		mSelectedTexIndex = texIndex;
+	}
+
+	synchronized void setBlogName(int texIndex, String blogName) {
+		mBlogNames[texIndex] = blogName;
+	}
+
+	synchronized String getBlogName(int texIndex) {
+		return mBlogNames[texIndex];
+	}
+
+	/**
+	 * Keeps a small copy of a photo that was just loaded. Call on a background thread, while the
+	 * bitmap is still valid.
+	 *
+	 * @param texIndex the slot of the photo
+	 * @param page     the page the photo was loaded for, from {@link #getPage()}
+	 * @param bitmap   the photo
+	 * @param src      the part of the bitmap to keep, e.g. the first frame of a gif atlas, or null
+	 *                 for all of it
+	 */
+	void capture(int texIndex, int page, Bitmap bitmap, Rect src) {
+		if (bitmap == null || bitmap.isRecycled() || bitmap.getWidth() <= 0 || bitmap.getHeight() <= 0) {
+			return;
+		}
+
+		final int sourceWidth = src != null ? src.width() : bitmap.getWidth();
+		final int sourceHeight = src != null ? src.height() : bitmap.getHeight();
+		final float scale = Math.min(1f, (float) MAX_SIZE / Math.max(sourceWidth, sourceHeight));
+		// Keep the width even so that each row stays 4-byte aligned for glTexImage2D.
+		final int width = Math.max(2, Math.round(sourceWidth * scale) & ~1);
+		final int height = Math.max(1, Math.round(sourceHeight * scale));
+
+		final Bitmap small = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+		new Canvas(small).drawBitmap(bitmap, src, new Rect(0, 0, width, height), new Paint(Paint.FILTER_BITMAP_FLAG));
+
+		final ByteBuffer pixels = ByteBuffer.allocateDirect(width * height * 2).order(ByteOrder.nativeOrder());
+		small.copyPixelsToBuffer(pixels);
+		pixels.position(0);
+		small.recycle();
+
+		put(page, new Slot(texIndex, FORMAT_RGB565, width, height, pixels));
+	}
+
+	/**
+	 * Keeps the largest level of a compressed photo that is no larger than the snapshot's photos.
+	 * The level is kept as it is, without copying or decoding it.
+	 *
+	 * @param texIndex the slot of the photo
+	 * @param page     the page the photo was loaded for, from {@link #getPage()}
+	 * @param levels   the compressed photo, then its mipmaps down to 1x1
+	 */
+	void captureCompressed(int texIndex, int page, ETC1Util.ETC1Texture[] levels) {
+		for (ETC1Util.ETC1Texture level : levels) {
+			if (Math.max(level.getWidth(), level.getHeight()) <= MAX_SIZE) {
+				put(page, new Slot(texIndex, FORMAT_ETC1, level.getWidth(), level.getHeight(),
+						level.getData().duplicate()));
+				return;
+			}
+		}
+	}
+
+	private synchronized void put(int page, Slot slot) {
+		if (page == mPage) {
+			mSlots[slot.texIndex] = slot;
+		}
+	}
+
+	synchronized String getSearchTerm() {
+		return mSearchTerm;
+	}
+
+	synchronized int getNumImages() {
+		return mNumImages;
+	}
+
+	synchronized int getSelectedTexIndex() {
+		return mSelectedTexIndex;
+	}
+
+	/**
+	 * @return whether no photos have been captured
+	 */
+	synchronized boolean isEmpty() {
+		for (Slot slot : mSlots) {
+			if (slot != null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the photo in the slot, or null if there is none
+	 */
+	synchronized Slot getSlot(int texIndex) {
+		return mSlots[texIndex];
+	}
+
+	/**
+	 * Writes the snapshot, replacing the previous one. Call on a background thread.
+	 */
+	void writeTo(File file) throws IOException {
+		final Slot[] slots;
+		final String[] blogNames;
+		final String searchTerm;
+		final int numImages;
+		final int selectedTexIndex;
+
+		synchronized (this) {
+			slots = mSlots.clone();
+			blogNames = mBlogNames.clone();
+			searchTerm = mSearchTerm != null ? mSearchTerm : "";
+			numImages = mNumImages;
+			selectedTexIndex = mSelectedTexIndex;
+		}
+
+		int slotCount = 0;
+		for (Slot slot : slots) {
+			if (slot != null) {
+				slotCount++;
+			}
+		}
+
+		final File temp = new File(file.getPath() + ".tmp");
+		final FileOutputStream out = new FileOutputStream(temp);
+
+		try {
+			final FileChannel channel = out.getChannel();
+
+			final byte[] term = searchTerm.getBytes(UTF_8);
+			final ByteBuffer header = ByteBuffer.allocate(24 + term.length).order(ByteOrder.nativeOrder());
+			header.putInt(MAGIC).putInt(VERSION).putInt(numImages).putInt(selectedTexIndex);
+			header.putInt(term.length).put(term);
+			header.putInt(slotCount);
+			header.flip();
+			writeFully(channel, header);
+
+			for (Slot slot : slots) {
+				if (slot == null) {
+					continue;
+				}
+
+				final String name = blogNames[slot.texIndex];
+				final byte[] blogName = (name != null ? name : "").getBytes(UTF_8);
+				final ByteBuffer pixels = slot.pixels.duplicate();
+				pixels.position(0);
+
+				final ByteBuffer slotHeader = ByteBuffer.allocate(24 + blogName.length).order(ByteOrder.nativeOrder());
+				slotHeader.putInt(slot.texIndex).putInt(slot.format).putInt(slot.width).putInt(slot.height);
+				slotHeader.putInt(blogName.length).put(blogName);
+				slotHeader.putInt(pixels.remaining());
+				slotHeader.flip();
+				writeFully(channel, slotHeader);
+
+				writeFully(channel, pixels);
+			}
+
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+
+		if (!temp.renameTo(file)) {
+			throw new IOException("Could not replace " + file);
+		}
+	}
+
+	/**
+	 * Memory maps a snapshot. The pixels of each slot point straight into the mapped file.
+	 *
+	 * @return the snapshot, or null if there is none or it is unreadable
+	 */
+	static SceneSnapshot read(File file, int numTextures) throws IOException {
+		if (!file.exists()) {
+			return null;
+		}
+
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		final MappedByteBuffer map;
+		try {
+			map = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			// The mapping stays valid after the file is closed.
+			raf.close();
+		}
+		map.order(ByteOrder.nativeOrder());
+
+		try {
+			if (map.getInt() != MAGIC || map.getInt() != VERSION) {
+				return null;
+			}
+
+			final SceneSnapshot snapshot = new SceneSnapshot(numTextures);
+			snapshot.mNumImages = map.getInt();
+			snapshot.mSelectedTexIndex = map.getInt();
+			snapshot.mSearchTerm = readString(map);
+
+			final int slotCount = map.getInt();
+			for (int i = 0; i < slotCount; i++) {
+				final int texIndex = map.getInt();
+				final int format = map.getInt();
+				final int width = map.getInt();
+				final int height = map.getInt();
+				final String blogName = readString(map);
+
+				final int length = map.getInt();
+				final ByteBuffer pixels = map.slice();
+				pixels.limit(length);
+				map.position(map.position() + length);
+
+				if (texIndex >= 0 && texIndex < numTextures) {
+					snapshot.mSlots[texIndex] = new Slot(texIndex, format, width, height, pixels);
+					snapshot.mBlogNames[texIndex] = blogName;
+				}
+			}
+
+			return snapshot;
+		} catch (RuntimeException e) {
+			// Truncated or corrupt.
+			throw new IOException("Invalid snapshot " + file, e);
+		}
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		final byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
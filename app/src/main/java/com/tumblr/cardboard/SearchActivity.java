@@ -1,34 +1,99 @@
 package com.tumblr.cardboard;
 
 import android.content.Intent;
+import android.os.Handler;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.text.Editable;
 import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.view.View;
 import android.widget.Button;
 import android.widget.EditText;
 
 public class SearchActivity extends AppCompatActivity {
 
+	/**
+	 * How long the search term has to stay the same before its posts are prefetched.
+	 */
+	private static final long PREFETCH_DELAY = 600;
+	/**
+	 * Shorter terms are usually still being typed.
+	 */
+	private static final int MIN_PREFETCH_LENGTH = 3;
+
+	private final Handler mHandler = new Handler();
+	private EditText mEditText;
+
+	private final Runnable mPrefetch = new Runnable() {
+		@Override
+		public void run() {
+			prefetch();
+		}
+	};
+
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
 		setContentView(R.layout.activity_search);
 
-		final EditText editText = (EditText) findViewById(R.id.search_term);
+		mEditText = (EditText) findViewById(R.id.search_term);
 		final Button button = (Button) findViewById(R.id.start);
 
-		editText.setText("cat gifs");
+		mEditText.setText("cat gifs");
+
+		mEditText.addTextChangedListener(new TextWatcher() {
+			@Override
+			public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+			}
+
+			@Override
+			public void onTextChanged(CharSequence s, int start, int before, int count) {
+			}
+
+			@Override
+			public void afterTextChanged(Editable s) {
+				mHandler.removeCallbacks(mPrefetch);
+				mHandler.postDelayed(mPrefetch, PREFETCH_DELAY);
+			}
+		});
 
 		button.setOnClickListener(new View.OnClickListener() {
 			@Override
 			public void onClick(final View v) {
-				if (!TextUtils.isEmpty(editText.getText())) {
+				if (!TextUtils.isEmpty(mEditText.getText())) {
+					// A prefetch that starts now would only race the activity's own load.
+					mHandler.removeCallbacks(mPrefetch);
+
 					Intent intent = new Intent(v.getContext(), Tumblr3DActivity.class);
-					intent.putExtra(Tumblr3DActivity.EXTRA_SEARCH_TERM, editText.getText().toString());
+					intent.putExtra(Tumblr3DActivity.EXTRA_SEARCH_TERM, mEditText.getText().toString());
 					SearchActivity.this.startActivity(intent);
 				}
 			}
 		});
 	}
+
+	@Override
+	protected void onResume() {
+		super.onResume();
+
+		mHandler.postDelayed(mPrefetch, PREFETCH_DELAY);
+	}
+
+	@Override
+	protected void onPause() {
+		super.onPause();
+
+		mHandler.removeCallbacks(mPrefetch);
+	}
+
+	/**
+	 * Loads the term's first page ahead, unless it is already loading.
+	 */
+	private void prefetch() {
+		final String term = mEditText.getText().toString();
+		if (term.length() >= MIN_PREFETCH_LENGTH) {
+			FeedPrefetcher.getInstance().prefetch(this, term);
+		}
+	}
 }
@@ -0,0 +1,40 @@
+package com.tumblr.cardboard;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+
+/**
+ * Maps bitmap configs to the matching OpenGL format and type, so that opaque RGB565 photos are
+ * uploaded and stored at 16 bits per pixel.
+ */
+final class TextureFormat {
+
+	private TextureFormat() {
+	}
+
+	/**
+	 * @return the OpenGL format (and internal format) for the bitmap's pixels
+	 */
+	static int getFormat(Bitmap bitmap) {
+		final Bitmap.Config config = bitmap.getConfig();
+
+		if (config == Bitmap.Config.RGB_565) {
+			return GLES20.GL_RGB;
+		} else if (config == Bitmap.Config.ALPHA_8) {
+			return GLES20.GL_ALPHA;
+		}
+		return GLES20.GL_RGBA;
+	}
+
+	/**
+	 * @return the OpenGL type for the bitmap's pixels
+	 */
+	static int getType(Bitmap bitmap) {
+		final Bitmap.Config config = bitmap.getConfig();
+
+		if (config == Bitmap.Config.RGB_565) {
+			return GLES20.GL_UNSIGNED_SHORT_5_6_5;
+		}
+		return GLES20.GL_UNSIGNED_BYTE;
+	}
+}
@@ -0,0 +1,72 @@
+package com.tumblr.cardboard;
+
+import android.graphics.Bitmap;
+
+/**
+ * Decides how much of a photo is uploaded. A rect that only covers a few hundred pixels on screen
+ * doesn't need a 1280px texture, so the base level is downsampled to the size it is drawn at.
+ * Mipmaps are then generated from the base level.
+ */
+final class TextureLod {
+
+	/**
+	 * The most a photo is ever downsampled, as a power of two.
+	 */
+	static final int MAX_LEVEL = 3;
+
+	private TextureLod() {
+	}
+
+	/**
+	 * @param sourceWidth    the width of the photo
+	 * @param projectedWidth the width of the rect on screen, in pixels
+	 * @return the number of times the photo can be halved while still covering the rect
+	 */
+	static int getLevel(int sourceWidth, int projectedWidth) {
+		int level = 0;
+		while (level < MAX_LEVEL && (sourceWidth >> (level + 1)) >= projectedWidth) {
+			level++;
+		}
+		return level;
+	}
+
+	/**
+	 * @return the power of two closest to the value, at least 1
+	 */
+	static int nearestPowerOfTwo(int value) {
+		if (value <= 1) {
+			return 1;
+		}
+
+		final int lower = Integer.highestOneBit(value);
+		final int upper = lower << 1;
+
+		// Compare in log space, so 0.75 * upper is the midpoint.
+		return value * 4 >= upper * 3 ? upper : lower;
+	}
+
+	/**
+	 * Scales a photo down to the level's size, and to power of two dimensions if the device can only
+	 * mipmap power of two textures.
+	 *
+	 * @param bitmap     the photo
+	 * @param level      the level to upload as the base level
+	 * @param powerOfTwo whether the result must have power of two dimensions
+	 * @return the bitmap to upload, which is the original if it doesn't need scaling
+	 */
+	static Bitmap scale(Bitmap bitmap, int level, boolean powerOfTwo) {
+		int width = Math.max(1, bitmap.getWidth() >> level);
+		int height = Math.max(1, bitmap.getHeight() >> level);
+
+		if (powerOfTwo) {
+			width = nearestPowerOfTwo(width);
+			height = nearestPowerOfTwo(height);
+		}
+
+		if (width == bitmap.getWidth() && height == bitmap.getHeight()) {
+			return bitmap;
+		}
+
+		return Bitmap.createScaledBitmap(bitmap, width, height, true);
+	}
+}
@@ -0,0 +1,235 @@
+package com.tumblr.cardboard;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLSurface;
+import android.opengl.GLES20;
+import android.os.Build;
+import android.util.Log;
+
+import com.tumblr.cardboard.gl.Gl;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Uploads photos on a thread of its own, in an EGL context that shares textures with the
+ * renderer's, so that large uploads don't hold up frames.
+ * <p/>
+ * Every upload goes into a new texture, and is finished before it is handed back, so the render
+ * thread only ever binds textures that are complete. It then swaps the new texture in with
+ * {@link SceneRenderer#adoptTexture}.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+class TextureUploadThread extends Thread {
+
+	private static final String TAG = TextureUploadThread.class.getSimpleName();
+
+	/**
+	 * A photo to upload, and once it is finished, the texture it was uploaded into.
+	 */
+	static class Upload {
+		final PhotoTexture texture;
+		final boolean mipmap;
+		final int level;
+
+		/**
+		 * The finished texture, or {@link SceneRenderer#INVALID_TEXTURE} if it couldn't be uploaded
+		 * here and should be uploaded on the render thread instead.
+		 */
+		int textureId = SceneRenderer.INVALID_TEXTURE;
+		int bytes;
+
+		/**
+		 * @param mipmap whether to build mipmaps
+		 * @param level  how many times to halve the photo first
+		 */
+		Upload(PhotoTexture texture, boolean mipmap, int level) {
+			this.texture = texture;
+			this.mipmap = mipmap;
+			this.level = level;
+		}
+	}
+
+	private final Gl mGl;
+	private final TextureUploader mUploader;
+	private final EGLDisplay mDisplay;
+	private final EGLContext mSharedContext;
+
+	private final BlockingQueue<Upload> mPending = new LinkedBlockingQueue<>();
+	/**
+	 * Notify the render thread of these textures.
+	 */
+	private final Queue<Upload> mFinished = new LinkedList<>();
+
+	private volatile boolean mQuit;
+	private final int[] mTextureIds = new int[1];
+
+	/**
+	 * @return whether shared contexts can be created on this device
+	 */
+	static boolean isSupported() {
+		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1;
+	}
+
+	/**
+	 * Must be created on the render thread, while the renderer's context is current.
+	 */
+	TextureUploadThread(Gl gl) {
+		super("TextureUpload");
+		mGl = gl;
+		mUploader = new TextureUploader(gl);
+		mDisplay = EGL14.eglGetCurrentDisplay();
+		mSharedContext = EGL14.eglGetCurrentContext();
+	}
+
+	void upload(Upload upload) {
+		mPending.add(upload);
+	}
+
+	/**
+	 * @return the next finished upload, or null
+	 */
+	Upload poll() {
+		synchronized (mFinished) {
+			return mFinished.poll();
+		}
+	}
+
+	/**
+	 * Stops uploading once the current upload finishes, and waits for the thread to end.
+	 *
+	 * @return the photos that weren't handed back, to be uploaded again
+	 */
+	List<PhotoTexture> quit() {
+		mQuit = true;
+		interrupt();
+
+		boolean interrupted = false;
+		while (isAlive()) {
+			try {
+				join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		final List<PhotoTexture> unfinished = new ArrayList<>();
+		synchronized (mFinished) {
+			for (Upload upload : mFinished) {
+				unfinished.add(upload.texture);
+			}
+			mFinished.clear();
+		}
+		for (Upload upload : mPending) {
+			unfinished.add(upload.texture);
+		}
+		mPending.clear();
+
+		return unfinished;
+	}
+
+	@Override
+	public void run() {
+		final EGLConfig config = chooseConfig();
+		final EGLContext context = config != null ? EGL14.eglCreateContext(mDisplay, config, mSharedContext,
+				new int[]{EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE}, 0) : EGL14.EGL_NO_CONTEXT;
+		// The context is never drawn to, but some drivers need a surface to make it current.
+		final EGLSurface surface = context != EGL14.EGL_NO_CONTEXT ? EGL14.eglCreatePbufferSurface(mDisplay, config,
+				new int[]{EGL14.EGL_WIDTH, 1, EGL14.EGL_HEIGHT, 1, EGL14.EGL_NONE}, 0) : EGL14.EGL_NO_SURFACE;
+
+		final boolean current = surface != EGL14.EGL_NO_SURFACE
+				&& EGL14.eglMakeCurrent(mDisplay, surface, surface, context);
+
+		if (current) {
+			mUploader.onContextCreated();
+		} else {
+			Log.w(TAG, "Could not create a shared context: 0x" + Integer.toHexString(EGL14.eglGetError()));
+		}
+
+		try {
+			while (!mQuit) {
+				final Upload upload = mPending.take();
+
+				if (current) {
+					uploadTexture(upload);
+				}
+
+				synchronized (mFinished) {
+					mFinished.add(upload);
+				}
+			}
+		} catch (InterruptedException e) {
+			// Quit.
+		} finally {
+			if (current) {
+				EGL14.eglMakeCurrent(mDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+			}
+			if (surface != EGL14.EGL_NO_SURFACE) {
+				EGL14.eglDestroySurface(mDisplay, surface);
+			}
+			if (context != EGL14.EGL_NO_CONTEXT) {
+				EGL14.eglDestroyContext(mDisplay, context);
+			}
+		}
+	}
+
+	private EGLConfig chooseConfig() {
+		final int[] attributes = new int[]{
+				EGL14.EGL_RED_SIZE, 8,
+				EGL14.EGL_GREEN_SIZE, 8,
+				EGL14.EGL_BLUE_SIZE, 8,
+				EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+				EGL14.EGL_SURFACE_TYPE, EGL14.EGL_PBUFFER_BIT,
+				EGL14.EGL_NONE
+		};
+		final EGLConfig[] configs = new EGLConfig[1];
+		final int[] numConfigs = new int[1];
+
+		if (!EGL14.eglChooseConfig(mDisplay, attributes, 0, configs, 0, 1, numConfigs, 0) || numConfigs[0] == 0) {
+			return null;
+		}
+		return configs[0];
+	}
+
+	private void uploadTexture(Upload upload) {
+		final PhotoTexture texture = upload.texture;
+		final Bitmap bitmap = texture.atlas != null ? texture.atlas.getBitmap() : texture.bitmap;
+
+		if (texture.etc1 == null && (bitmap == null || bitmap.isRecycled())) {
+			return;
+		}
+
+		mGl.glGenTextures(1, mTextureIds, 0);
+		mGl.glActiveTexture(GLES20.GL_TEXTURE0);
+		mGl.glBindTexture(GLES20.GL_TEXTURE_2D, mTextureIds[0]);
+
+		if (texture.etc1 != null) {
+			upload.bytes = mUploader.uploadCompressed(texture.etc1);
+		} else {
+			final boolean mipmap = upload.mipmap && texture.atlas == null;
+			mUploader.setParameters(mipmap);
+			upload.bytes = mUploader.uploadBitmap(bitmap, mipmap, upload.level);
+		}
+
+		// Wait for the texture to be complete, so that the render thread never samples it early.
+		mGl.glFinish();
+
+		if (mGl.glGetError() == GLES20.GL_NO_ERROR) {
+			upload.textureId = mTextureIds[0];
+		} else {
+			mGl.glDeleteTextures(1, mTextureIds, 0);
+		}
+	}
+}
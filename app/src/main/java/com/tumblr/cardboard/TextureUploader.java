@@ -0,0 +1,97 @@
+package com.tumblr.cardboard;
+
+import android.graphics.Bitmap;
+import android.opengl.ETC1Util;
+import android.opengl.GLES20;
+
+import com.tumblr.cardboard.gl.Gl;
+
+/**
+ * Fills the bound texture with a photo, on whichever thread owns the current context: the
+ * renderer's, or the {@link TextureUploadThread}'s.
+ */
+class TextureUploader {
+
+	private final Gl mGl;
+	/**
+	 * Whether non power of two textures can be mipmapped.
+	 */
+	private boolean mNpotMipmaps;
+
+	TextureUploader(Gl gl) {
+		mGl = gl;
+	}
+
+	/**
+	 * Checks what the current context supports, and sets up how pixels are read from memory.
+	 */
+	void onContextCreated() {
+		final String extensions = mGl.glGetString(GLES20.GL_EXTENSIONS);
+		mNpotMipmaps = extensions != null && extensions.contains("GL_OES_texture_npot");
+
+		// RGB565 and alpha rows aren't padded to 4 bytes, which is what GL expects by default, so a
+		// photo with an odd width would be read skewed.
+		mGl.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+	}
+
+	/**
+	 * Sets the wrapping and filtering of the bound texture.
+	 */
+	void setParameters(boolean mipmap) {
+		mGl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+		mGl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+		mGl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER,
+				mipmap ? GLES20.GL_LINEAR_MIPMAP_LINEAR : GLES20.GL_LINEAR);
+		mGl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+	}
+
+	/**
+	 * Loads a bitmap into the bound texture.
+	 *
+	 * @param mipmap whether to build mipmaps
+	 * @param level  how many times to halve the photo first, from {@link TextureLod#getLevel}
+	 * @return the number of bytes uploaded
+	 */
+	int uploadBitmap(Bitmap bitmap, boolean mipmap, int level) {
+		final Bitmap upload = mipmap ? TextureLod.scale(bitmap, level, !mNpotMipmaps) : bitmap;
+
+		mGl.texImage2D(GLES20.GL_TEXTURE_2D, 0, TextureFormat.getFormat(upload), upload,
+				TextureFormat.getType(upload));
+
+		if (mipmap) {
+			mGl.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+		}
+
+		final int bytes = upload.getByteCount();
+		if (upload != bitmap) {
+			upload.recycle();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Loads an ETC1 compressed photo and its mipmaps into the bound texture, and sets its
+	 * parameters. If the device can't sample ETC1, each level is decoded to RGB565 instead.
+	 *
+	 * @param levels the chain of mipmaps, down to 1x1
+	 * @return the number of bytes uploaded
+	 */
+	int uploadCompressed(ETC1Util.ETC1Texture[] levels) {
+		// Without GL_OES_texture_npot, only power of two textures can be mipmapped.
+		final boolean mipmap = levels.length > 1 && (mNpotMipmaps
+				|| (isPowerOfTwo(levels[0].getWidth()) && isPowerOfTwo(levels[0].getHeight())));
+		setParameters(mipmap);
+
+		int bytes = 0;
+		for (int level = 0; level < (mipmap ? levels.length : 1); level++) {
+			mGl.loadEtc1Texture(GLES20.GL_TEXTURE_2D, level, GLES20.GL_RGB, GLES20.GL_UNSIGNED_SHORT_5_6_5,
+					levels[level]);
+			bytes += levels[level].getData().capacity();
+		}
+		return bytes;
+	}
+
+	private static boolean isPowerOfTwo(int value) {
+		return (value & (value - 1)) == 0;
+	}
+}
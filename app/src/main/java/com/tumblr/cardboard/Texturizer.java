@@ -1,10 +1,17 @@
 package com.tumblr.cardboard;
 
 import android.graphics.Bitmap;
+import android.opengl.ETC1Util;
+
+import com.tumblr.cardboard.gif.GifAtlas;
 
 /**
  * Created by ericleong on 4/14/16.
  */
 public interface Texturizer {
 	void updateOrCreateTexture(int texIndex, Bitmap bitmap, boolean recycle, boolean force);
+
+	void updateOrCreateCompressedTexture(int texIndex, ETC1Util.ETC1Texture[] levels, int level);
+
+	void updateOrCreateAtlas(int texIndex, GifAtlas atlas);
 }
@@ -16,43 +16,75 @@
 
 package com.tumblr.cardboard;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.opengl.ETC1Util;
 import android.opengl.GLES20;
-import android.opengl.GLUtils;
-import android.opengl.Matrix;
-import android.os.AsyncTask;
+import android.os.BatteryManager;
 import android.os.Bundle;
 import android.os.CountDownTimer;
+import android.os.SystemClock;
 import android.os.Vibrator;
 import android.support.annotation.Nullable;
 import android.support.v4.util.Pair;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.TypedValue;
 import android.view.KeyEvent;
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.request.animation.GlideAnimation;
 import com.bumptech.glide.request.target.Target;
 import com.google.vrtoolkit.cardboard.CardboardActivity;
 import com.google.vrtoolkit.cardboard.CardboardView;
 import com.google.vrtoolkit.cardboard.Eye;
 import com.google.vrtoolkit.cardboard.HeadTransform;
 import com.google.vrtoolkit.cardboard.Viewport;
+import com.tumblr.cardboard.gif.GifAtlas;
 import com.tumblr.cardboard.gif.GifResourceDecoder;
+import com.tumblr.cardboard.gl.AndroidGl;
+import com.tumblr.cardboard.hud.GlyphAtlas;
+import com.tumblr.cardboard.hud.Hud;
+import com.tumblr.cardboard.log.Logger;
+import com.tumblr.cardboard.log.TraceLog;
+import com.tumblr.cardboard.network.MediaKey;
 import com.tumblr.cardboard.network.TumblrClient;
+import com.tumblr.cardboard.pipeline.Stage;
+import com.tumblr.cardboard.pipeline.StageMetrics;
+import com.tumblr.cardboard.profile.FrameProfiler;
+import com.tumblr.cardboard.profile.HeadTrace;
+import com.tumblr.cardboard.profile.LogSink;
+import com.tumblr.cardboard.profile.QualityGovernor;
 import com.tumblr.jumblr.types.PhotoPost;
 import com.tumblr.jumblr.types.PhotoSize;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Displays Tumblr photo posts in 3D!
@@ -61,24 +93,24 @@ import java.util.Queue;
  * Updated for Tumblr's Spring 2016 hackathon.
  */
 @SuppressWarnings("SpellCheckingInspection")
-public class Tumblr3DActivity extends CardboardActivity implements CardboardView.StereoRenderer, Texturizer {
+public class Tumblr3DActivity extends CardboardActivity implements CardboardView.StereoRenderer,
+		CardboardView.Renderer, Texturizer {
 
 	private static final String TAG = Tumblr3DActivity.class.getSimpleName();
 
 	public static final String EXTRA_SEARCH_TERM = "com.tumblr.cardboard.search_term";
 
-	private static final int INVALID_TEXTURE = 0;
 	private static final int STATIC_TEXTURE_ID_REFRESH = 0;
 	private static final int STATIC_TEXTURE_ID_PLAY = 1;
 	private static final int STATIC_TEXTURE_ID_PAUSE = 2;
 
-	private static final float CAMERA_Z = 0.01f;
-
 	private static final float Z_NEAR = 0.1f;
 	private static final float Z_FAR = 100.0f;
 
-	private static final float YAW_LIMIT = 0.12f;
-	private static final float PITCH_LIMIT = 0.12f;
+	/**
+	 * Whether both eyes are drawn in one pass, instead of drawing the whole scene once per eye.
+	 */
+	private static final boolean SINGLE_PASS_STEREO = true;
 
 	/**
 	 * 16 photos + 1 refresh icon.
@@ -86,65 +118,179 @@ public class Tumblr3DActivity extends CardboardActivity implements CardboardView
 	private static final int NUM_IMAGES_STATIC = 3;
 	private static final int NUM_IMAGES_DYNAMIC = 16;
 	private static final int NUM_TEXTURES = NUM_IMAGES_DYNAMIC + NUM_IMAGES_STATIC;
-	private static final int DESIRED_PHOTO_SIZE = 500;
 	private static final float SCALE_TV = 3f;
 	private static final float SCALE_TV_VR = 8f;
 	private static final float SCALE_THEATER = 6f;
 	private static final float SCALE_THEATER_VR = 20f;
 
-	private final float SPHERE_RADIUS = 40f;
-	@SuppressWarnings("FieldCanBeLocal")
-	private final float FLOOR_DEPTH = 20f;
+	private static final float SPHERE_RADIUS = 40f;
 
 	private static final long PLAY_NEXT = 2000;
 
-	// We keep the light always position just above the user.
-	private final float[] mLightPosInWorldSpace = new float[]{0.0f, 2.0f, 0.0f, 1.0f};
-	private final float[] mLightPosInEyeSpace = new float[4];
+	private static final String SNAPSHOT_FILE = "scene.snapshot";
 
-	private static final int COORDS_PER_VERTEX = 3;
+	/**
+	 * Whether reblogs of a photo that is already on the sphere are left out, instead of sharing the
+	 * photo's texture.
+	 */
+	private static final boolean FILTER_DUPLICATES = false;
+
+	/**
+	 * Whether still photos are compressed to ETC1 and cached on disk.
+	 */
+	private static final boolean ENABLE_ETC1 = true;
+	private static final String ETC1_DIRECTORY = "etc1";
 
-	private FloatBuffer mFloorVertices;
-	private FloatBuffer mFloorColors;
-	private FloatBuffer mFloorNormals;
+	/**
+	 * Whether new photos are uploaded on a {@link TextureUploadThread} instead of the render thread.
+	 */
+	private static final boolean ENABLE_UPLOAD_THREAD = true;
+	/**
+	 * How many textures each frame by frame gif cycles through. 1 updates gifs in place, e.g. to
+	 * compare the profiler's gif upload times.
+	 */
+	private static final int GIF_BUFFERS = SceneRenderer.DEFAULT_GIF_BUFFERS;
 
-	private FloatBuffer mRectVertices;
-	private FloatBuffer mRectColors;
-	private FloatBuffer mRectFoundColors;
-	private FloatBuffer mRectNormals;
+	/**
+	 * Whether the rects are drawn nearest first with the floor last, or the floor first and then
+	 * the rects in slot order. Turn off to compare the overdraw of the two.
+	 */
+	private static final boolean FRONT_TO_BACK = true;
+	/**
+	 * Whether the scene is drawn with a shader that counts how many times each pixel is shaded,
+	 * shown in VR and logged every second, instead of with its textures.
+	 */
+	private static final boolean MEASURE_OVERDRAW = false;
+
+	/**
+	 * The size and color of the messages shown in VR.
+	 */
+	private static final float HUD_TEXT_SIZE_DP = 14f;
+	private static final float[] HUD_COLOR = new float[]{103 / 255f, 194 / 255f, 149 / 255f};
+
+	/**
+	 * Whether the profiler's reports are shown in VR, and whether it keeps a trace that is written
+	 * out to {@link #TRACE_FILE} in the app's external files when the activity pauses.
+	 */
+	private static final boolean SHOW_PROFILER_HUD = false;
+	private static final boolean ENABLE_TRACE = false;
+	private static final String TRACE_FILE = "frames.trace.json";
+
+	/**
+	 * Whether the head pose and the arrival of photos are recorded, and written out to
+	 * {@link #HEAD_TRACE_FILE} in the app's external files when the activity pauses. Replayed on the
+	 * JVM with {@code ./gradlew :benchmarks:replay}.
+	 */
+	private static final boolean RECORD_HEAD_TRACE = false;
+	private static final String HEAD_TRACE_FILE = "head.trace";
+	/**
+	 * About 14 minutes at 60 frames per second.
+	 */
+	private static final int HEAD_TRACE_BYTES = 4 * 1024 * 1024;
 
-	private FloatBuffer mRectTexCoords;
+	private static final int MAX_CONCURRENT_DOWNLOADS = DownloadScheduler.DEFAULT_MAX_CONCURRENT;
+	/**
+	 * Downloads are held back while this many photos are waiting to be uploaded.
+	 */
+	private static final int MAX_PENDING_UPLOADS = 4;
+	private static final float[] THEATER_DIRECTION = new float[]{0f, 0f, -1f};
 
 	private float mScaleTV;
 	private float mScaleTheater;
 
-	private int mGlProgram;
-	private int mPositionParam;
-	private int mNormalParam;
-	private int mColorParam;
-	private int mModelViewProjectionParam;
-	private int mLightPosParam;
-	private int mModelViewParam;
-	private int mModelParam;
-	private int mIsFloorParam;
-
-	private int mRectTextureUniformParam;
-	private int mRectTextureCoordinateParam;
-
-	private int[] mTextureIds = new int[NUM_TEXTURES];
-	private int[] mRectTextureIds;
-	private float[][] mImageRect;
 	private Target<?>[] mTargets = new Target<?>[NUM_TEXTURES];
+	/**
+	 * The photo each slot's target holds, while background threads may still read it.
+	 */
+	private final BitmapLease[] mLeases = new BitmapLease[NUM_TEXTURES];
 
-	private float[][] mModelRect;
 
-	private float[] mCamera;
-	private float[] mView;
-	private float[] mHeadView;
-	private float[] mModelViewProjection;
-	private float[] mModelView;
+	/**
+	 * Draws the scene and owns its textures. Only used on the GL thread.
+	 */
+	private final SceneRenderer mRenderer = new SceneRenderer(new AndroidGl(), NUM_TEXTURES, GIF_BUFFERS);
+	private final float[] mHeadView = new float[16];
+	private final int[] mEyeViewport = new int[4];
+
+	/**
+	 * Enabled with {@code adb shell setprop log.tag.T3DTrace VERBOSE}, and dumped to the log when
+	 * the activity pauses.
+	 */
+	private static final String TRACE_LOG_TAG = "T3DTrace";
+	private final TraceLog mTraceLog = TraceLog.getInstance();
 
-	private float[] mModelFloor;
+	private final FrameProfiler mProfiler = FrameProfiler.getInstance();
+	private final HeadTrace.Recorder mHeadTrace = RECORD_HEAD_TRACE ? new HeadTrace.Recorder(HEAD_TRACE_BYTES) : null;
+	private final FrameProfiler.Sink mLogSink = new LogSink(TAG);
+	private final FrameProfiler.Sink mPipelineSink = new FrameProfiler.Sink() {
+		@Override
+		public void onReport(FrameProfiler.Report report) {
+			if (Logger.DEBUG) {
+				Logger.d(TAG, mPageStage + "\n" + mDecodeStage + "\n" + mUploadMetrics + "\n"
+						+ mGifResourceDecoder.getFramePool());
+			}
+			mPageStage.getMetrics().reset();
+			mDecodeStage.getMetrics().reset();
+			mUploadMetrics.reset();
+		}
+	};
+	private final FrameProfiler.Sink mHudSink = new FrameProfiler.Sink() {
+		@Override
+		public void onReport(final FrameProfiler.Report report) {
+			final String text = String.format(Locale.US, "upload %dus matrices %dus\nleft %dus right %dus\n%.0f draws",
+					report.p90Micros[FrameProfiler.PHASE_UPLOAD], report.p90Micros[FrameProfiler.PHASE_MATRICES],
+					report.p90Micros[FrameProfiler.PHASE_DRAW_LEFT], report.p90Micros[FrameProfiler.PHASE_DRAW_RIGHT],
+					report.getPerFrame(FrameProfiler.COUNTER_DRAWS));
+
+			mHud.show(text);
+		}
+	};
+
+	/**
+	 * Lowers the quality of the scene while frames are being dropped, or while the battery is hot.
+	 */
+	private final QualityGovernor mGovernor = new QualityGovernor(new QualityGovernor.Listener() {
+		@Override
+		public void onTierChanged(int tier, int previousTier, int reason) {
+			mQualityChanges++;
+			if (Logger.INFO) {
+				Logger.i(TAG, String.format(Locale.US, "Quality %s -> %s after %s, %d changes",
+						QualityGovernor.DEFAULT_TIERS[previousTier].name, QualityGovernor.DEFAULT_TIERS[tier].name,
+						QualityGovernor.getReasonName(reason), mQualityChanges));
+			}
+			mTraceLog.log(TraceLog.EVENT_QUALITY_TIER, tier, reason);
+
+			runOnUiThread(mUpdateAnimatedGifs);
+		}
+	});
+	private int mQualityChanges;
+
+	private final BroadcastReceiver mBatteryReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			final int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+			final int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, 100);
+			// In tenths of a degree.
+			final float celsius = intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, 0) / 10f;
+			final boolean charging = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+
+			mGovernor.setBattery(celsius, level >= 0 && scale > 0 ? level * 100 / scale : 100, charging);
+		}
+	};
+
+	private final Runnable mUpdateAnimatedGifs = new Runnable() {
+		@Override
+		public void run() {
+			updateAnimatedGifs();
+		}
+	};
+	private final int[] mGifSlots = new int[NUM_TEXTURES];
+	private final float[] mGifScores = new float[NUM_TEXTURES];
+	/**
+	 * The slot that was looked at in the last frame, to play the gifs around it. Only used on the GL
+	 * thread.
+	 */
+	private int mLastGazedTexIndex = -1;
 
 	private int mSelectedTexIndex = -1;
 
@@ -152,12 +298,28 @@ public class Tumblr3DActivity extends CardboardActivity implements CardboardView
 
 	private Vibrator mVibrator;
 
-	private CardboardOverlayView mOverlayView;
+	private Hud mHud;
 
 	private TumblrClient mTumblrClient;
 	private long mBefore;
-	@Nullable
-	private AsyncTask<?, ?, ?> mLoadTask;
+
+	/**
+	 * Loads pages of posts. Only one page loads at a time, further refreshes are turned away.
+	 */
+	private final Stage mPageStage = new Stage("page", 1, 0);
+	/**
+	 * Decodes downloaded gifs. Downloads are limited by the {@link DownloadScheduler}, so there is
+	 * room for each of them.
+	 */
+	private final Stage mDecodeStage = new Stage("decode", 1, MAX_CONCURRENT_DOWNLOADS);
+	/**
+	 * Photos from {@link #queueUpload} until they are showing.
+	 */
+	private final StageMetrics mUploadMetrics = new StageMetrics("upload");
+	/**
+	 * Whether the {@link DownloadScheduler} is waiting for uploads to catch up.
+	 */
+	private final AtomicBoolean mUploadsBackedUp = new AtomicBoolean();
 	@Nullable
 	private CountDownTimer mPlayTimer;
 
@@ -169,27 +331,161 @@ public class Tumblr3DActivity extends CardboardActivity implements CardboardView
 	 * Notify OpenGL to update these textures.
 	 */
 	private final Queue<PhotoTexture> mUpdatingPhotoTextures = new LinkedList<>();
+	/**
+	 * Only touched on the render thread.
+	 */
+	@Nullable
+	private TextureUploadThread mUploadThread;
 
-	private List<PhotoPost> mCurrentPosts;
+	private final String[] mBlogNames = new String[NUM_TEXTURES];
+
+	/**
+	 * Records this session's scene so that the next launch can show it immediately.
+	 */
+	private final SceneSnapshot mSnapshot = new SceneSnapshot(NUM_TEXTURES);
+	/**
+	 * The previous session's scene, uploaded as soon as the surface is created.
+	 */
+	@Nullable
+	private SceneSnapshot mRestoredSnapshot;
+	/**
+	 * Writes the snapshot when the activity pauses, one write at a time.
+	 */
+	private final ExecutorService mSnapshotExecutor = Executors.newSingleThreadExecutor();
+	/**
+	 * Slots that are showing a photo from the snapshot, which are replaced by the live photos. Read
+	 * on the main thread and written on the GL thread, so guarded by itself.
+	 */
+	private final boolean[] mSnapshotSlots = new boolean[NUM_TEXTURES];
+
+	/**
+	 * For each slot showing a reblog of a photo in another slot, the slot that downloads the photo
+	 * and owns the texture. Otherwise -1.
+	 */
+	private final int[] mAliasOf = new int[NUM_TEXTURES];
+
+	private Etc1Cache mEtc1Cache;
+	/**
+	 * Incremented every time a slot starts loading, so that stale cache reads are dropped.
+	 */
+	private final int[] mLoadGenerations = new int[NUM_TEXTURES];
 
 	private GifResourceDecoder mGifResourceDecoder;
 
+	private final PhotoSizeSelector mSizeSelector = PhotoSizeSelector.getInstance();
+	/**
+	 * The available sizes of the photo in each slot.
+	 */
+	private final List<List<PhotoSize>> mPhotoSizes =
+			new ArrayList<>(Collections.<List<PhotoSize>>nCopies(NUM_TEXTURES, null));
+	/**
+	 * The size of the photo that was last requested for each slot.
+	 */
+	private final PhotoSize[] mLoadedSizes = new PhotoSize[NUM_TEXTURES];
+	/**
+	 * Whether each slot shows a gif.
+	 */
+	private final boolean[] mAnimatedSlots = new boolean[NUM_TEXTURES];
+	/**
+	 * How many times the photo in each slot was halved before it was uploaded.
+	 */
+	private final int[] mUploadedLevels = new int[NUM_TEXTURES];
+	private final long[] mLoadStartTimes = new long[NUM_TEXTURES];
+	private final long[] mLoadPixels = new long[NUM_TEXTURES];
+
+	private final PhotoTexture.LoadListener mLoadListener = new PhotoTexture.LoadListener() {
+		@Override
+		public void onLoadFinished(int texIndex) {
+			mSizeSelector.recordDownload(mLoadPixels[texIndex],
+					SystemClock.uptimeMillis() - mLoadStartTimes[texIndex]);
+			mDownloadScheduler.onLoadFinished(texIndex);
+
+			if (mAnimatedSlots[texIndex]) {
+				updateAnimatedGifs();
+
+				// Gifs that play frame by frame keep their first frame until the target is cleared.
+				if (mTargets[texIndex] instanceof PhotoTexture.GifTextureTarget) {
+					final Bitmap firstFrame = ((PhotoTexture.GifTextureTarget) mTargets[texIndex]).getFirstFrame();
+					if (firstFrame != null) {
+						captureSnapshot(texIndex, lend(texIndex, firstFrame));
+					}
+				}
+			}
+		}
+
+		@Override
+		public void onLoadFailed(int texIndex) {
+			mDownloadScheduler.onLoadFinished(texIndex);
+		}
+	};
+
+	private final DownloadScheduler mDownloadScheduler = new DownloadScheduler(NUM_TEXTURES, MAX_CONCURRENT_DOWNLOADS,
+			new DownloadScheduler.Loader() {
+				@Override
+				public void load(int texIndex, PhotoSize size, Priority priority) {
+					loadPhoto(texIndex, size, priority);
+				}
+
+				@Override
+				public boolean isBackedUp() {
+					if (mUploadMetrics.getDepth() >= MAX_PENDING_UPLOADS) {
+						mUploadsBackedUp.set(true);
+						return true;
+					}
+					return false;
+				}
+			});
+
+	/**
+	 * The direction the head is facing, updated every frame.
+	 */
+	private final float[] mForward = new float[3];
+
 	private String mSearchTerm;
 
+	@Override
+	public void updateOrCreateCompressedTexture(int texIndex, ETC1Util.ETC1Texture[] levels, int level) {
+		mTraceLog.log(TraceLog.EVENT_REQUEST_CREATE, texIndex, levels[0].getWidth());
+		queueUpload(new PhotoTexture(texIndex, levels, level));
+	}
+
+	@Override
+	public void updateOrCreateAtlas(int texIndex, GifAtlas atlas) {
+		mTraceLog.log(TraceLog.EVENT_REQUEST_CREATE, texIndex, atlas.getFrameWidth());
+		// Called on the decode stage, before the atlas is uploaded and recycled.
+		mSnapshot.capture(texIndex, mSnapshot.getPage(), atlas.getBitmap(),
+				new Rect(0, 0, atlas.getFrameWidth(), atlas.getFrameHeight()));
+		queueUpload(new PhotoTexture(texIndex, atlas));
+	}
+
 	public void updateOrCreateTexture(int texIndex, Bitmap bitmap, boolean recycle, boolean force) {
-		if (mTextureIds[texIndex] == INVALID_TEXTURE || force) {
-			Log.d(TAG, "Request to create " + texIndex);
-			synchronized (mWaitingPhotoTextures) {
-				mWaitingPhotoTextures.add(new PhotoTexture(texIndex, bitmap, recycle));
-			}
+		final boolean fromSnapshot;
+		synchronized (mSnapshotSlots) {
+			fromSnapshot = mSnapshotSlots[texIndex];
+		}
+
+		if (!mRenderer.hasTexture(texIndex) || force || fromSnapshot) {
+			mTraceLog.log(TraceLog.EVENT_REQUEST_CREATE, texIndex, bitmap != null ? bitmap.getWidth() : 0);
+			queueUpload(new PhotoTexture(texIndex, bitmap, recycle));
 		} else {
-			Log.d(TAG, "Request to load " + texIndex);
+			// Called for every gif frame.
+			mTraceLog.log(TraceLog.EVENT_REQUEST_UPDATE, texIndex, 0);
 			synchronized (mUpdatingPhotoTextures) {
 				mUpdatingPhotoTextures.add(new PhotoTexture(texIndex, bitmap, false));
 			}
 		}
 	}
 
+	/**
+	 * Hands a new photo to the GL thread.
+	 */
+	private void queueUpload(PhotoTexture texture) {
+		texture.queuedNanos = mUploadMetrics.onQueued();
+		synchronized (mWaitingPhotoTextures) {
+			mWaitingPhotoTextures.add(texture);
+		}
+	}
+
 	private class PlayTimer extends CountDownTimer {
 		/**
 		 * @param millisInFuture
@@ -233,113 +529,338 @@ public class Tumblr3DActivity extends CardboardActivity implements CardboardView
 	}
 
 	/**
-	 * Loads photo posts in the background.
+	 * Receives the first page from the {@link FeedPrefetcher}.
 	 */
-	private class PostLoadTask extends AsyncTask<String, Void, Pair<Long, List<PhotoPost>>> {
-
+	private final FeedPrefetcher.Callback mPrefetchCallback = new FeedPrefetcher.Callback() {
 		@Override
-		protected Pair<Long, List<PhotoPost>> doInBackground(String... params) {
-			Log.w(TAG, "Loading posts for " + params[0] + " before: " + mBefore);
-			return mTumblrClient.getPosts(params[0], mBefore);
+		public void onPageLoaded(Pair<Long, List<PhotoPost>> page) {
+			if (page != null) {
+				Logger.i(TAG, "Using prefetched posts for " + mSearchTerm);
+				onPostsLoaded(page);
+			} else if (!isDestroyed()) {
+				mPageStage.submit(new PageTask(mSearchTerm));
+			}
 		}
+	};
 
-		@Override
-		protected void onPostExecute(Pair<Long, List<PhotoPost>> result) {
+	/**
+	 * Loads photo posts on the page stage.
+	 */
+	private class PageTask extends Stage.Task {
+
+		private final String mTag;
+
+		PageTask(String tag) {
+			mTag = tag;
+		}
 
-			if (Tumblr3DActivity.this.isDestroyed()) {
-				return;
+		@Override
+		protected void execute() {
+			Log.w(TAG, "Loading posts for " + mTag + " before: " + mBefore);
+
+			Pair<Long, List<PhotoPost>> posts;
+			try {
+				posts = mTumblrClient.getPosts(mTag, mBefore, this);
+			} catch (RuntimeException e) {
+				Log.e(TAG, "Failed to load posts for " + mTag + ", " + TumblrClient.getMetrics(), e);
+				posts = null;
 			}
 
-			mBefore = result.first;
+			final Pair<Long, List<PhotoPost>> result = posts;
+			runOnUiThread(new Runnable() {
+				@Override
+				public void run() {
+					if (!isCancelled()) {
+						onPostsLoaded(result);
+					}
+				}
+			});
+		}
+	}
 
-			mNumImages = Math.min(NUM_IMAGES_DYNAMIC, result.second.size());
+	/**
+	 * Lays out a page of posts and starts downloading their photos.
+	 *
+	 * @param result the posts and the timestamp to load the next page from, or null if the page
+	 *               couldn't be loaded
+	 */
+	private void onPostsLoaded(Pair<Long, List<PhotoPost>> result) {
+		if (isDestroyed()) {
+			return;
+		}
 
-			for (int i = 0; i < mNumImages; i++) {
-				List<PhotoSize> sizes = result.second.get(i).getPhotos().get(0).getSizes();
+		if (result == null) {
+			mHud.show("Couldn't load posts");
+			return;
+		}
 
-				String url = sizes.get(0).getUrl();
+		mBefore = result.first;
 
-				for (PhotoSize size : sizes) {
-					if (size.getWidth() == DESIRED_PHOTO_SIZE) {
-						url = size.getUrl();
-					}
-				}
+		final List<PhotoPost> posts = FILTER_DUPLICATES ? removeDuplicates(result.second) : result.second;
 
-				final int texIndex = NUM_IMAGES_STATIC + i;
+		mNumImages = Math.min(getMaxImages(), posts.size());
+		if (mHeadTrace != null) {
+			mHeadTrace.page(SystemClock.uptimeMillis(), mNumImages);
+		}
 
-				if (mTargets[texIndex] != null) {
-					Glide.clear(mTargets[texIndex]);
-					mTargets[texIndex].onDestroy();
-				}
+		final int ringWidth = mSizeSelector.getProjectedWidth(mScaleTV, SPHERE_RADIUS);
 
-				final Target<?> target;
+		// Stop downloading the previous page.
+		mDownloadScheduler.reset();
+		for (int texIndex = NUM_IMAGES_STATIC; texIndex < NUM_TEXTURES; texIndex++) {
+			clearTarget(texIndex);
+			mDownloadScheduler.setSlotDirection(texIndex, null);
+		}
+		mDownloadScheduler.setTheaterIndex(mSelectedTexIndex >= NUM_IMAGES_STATIC ? mSelectedTexIndex : -1);
+		mSnapshot.setPage(mSearchTerm, mNumImages);
 
-				if (url.endsWith(".gif")) {
-					PhotoTexture.GifTextureTarget gifTarget =
-							new PhotoTexture.GifTextureTarget(Tumblr3DActivity.this, mGifResourceDecoder, texIndex);
+		// Reblogs of the same photo share one download and one texture.
+		final Map<String, Integer> primaries = new HashMap<>();
 
-					target = gifTarget;
+		for (int i = 0; i < mNumImages; i++) {
+			final int texIndex = NUM_IMAGES_STATIC + i;
 
-					Glide.with(Tumblr3DActivity.this).load(url).asGif().toBytes().into(gifTarget);
-				} else {
-					PhotoTexture.TextureTarget photoTarget =
-							new PhotoTexture.TextureTarget(texIndex, Tumblr3DActivity.this);
+			mBlogNames[texIndex] = posts.get(i).getBlogName();
+			mSnapshot.setBlogName(texIndex, mBlogNames[texIndex]);
 
-					target = photoTarget;
+			mPhotoSizes.set(texIndex, posts.get(i).getPhotos().get(0).getSizes());
+			mLoadedSizes[texIndex] = null;
 
-					Glide.with(Tumblr3DActivity.this).load(url).asBitmap().into(photoTarget);
-				}
+			mDownloadScheduler.setSlotDirection(texIndex,
+					texIndex == mSelectedTexIndex ? THEATER_DIRECTION : RingLayout.getSlotDirection(i, mNumImages));
 
-				mTargets[texIndex] = target;
-			}
+			final String key = MediaKey.fromUrl(mPhotoSizes.get(texIndex).get(0).getUrl());
+			final Integer primary = primaries.get(key);
 
-			mCurrentPosts = result.second;
+			if (primary != null) {
+				mAliasOf[texIndex] = primary;
+			} else {
+				primaries.put(key, texIndex);
+				mAliasOf[texIndex] = -1;
+				mDownloadScheduler.enqueue(texIndex, mSizeSelector.select(mPhotoSizes.get(texIndex), ringWidth));
+			}
 		}
 	}
 
 	/**
-	 * Converts a raw text file, saved as a resource, into an OpenGL ES shader
-	 *
-	 * @param type  The type of shader we will be creating.
-	 * @param resId The resource ID of the raw text file about to be turned into a shader.
-	 * @return the id of the shader
+	 * @return the posts, without reblogs of photos that appear earlier in the list
 	 */
-	private int loadGLShader(int type, int resId) {
-		String code = readRawTextFile(resId);
-		int shader = GLES20.glCreateShader(type);
-		GLES20.glShaderSource(shader, code);
-		GLES20.glCompileShader(shader);
+	private static List<PhotoPost> removeDuplicates(List<PhotoPost> posts) {
+		final Set<String> keys = new HashSet<>();
+		final List<PhotoPost> unique = new ArrayList<>(posts.size());
 
-		// Get the compilation status.
-		final int[] compileStatus = new int[1];
-		GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
+		for (PhotoPost post : posts) {
+			if (keys.add(MediaKey.fromUrl(post.getPhotos().get(0).getSizes().get(0).getUrl()))) {
+				unique.add(post);
+			}
+		}
 
-		// If the compilation failed, delete the shader.
-		if (compileStatus[0] == 0) {
-			Log.e(TAG, "Error compiling shader: " + GLES20.glGetShaderInfoLog(shader));
-			GLES20.glDeleteShader(shader);
-			shader = 0;
+		return unique;
+	}
+
+	private void clearTarget(int texIndex) {
+		if (mLeases[texIndex] != null) {
+			mLeases[texIndex].revoke();
+			mLeases[texIndex] = null;
 		}
 
-		if (shader == 0) {
-			throw new RuntimeException("Error creating shader.");
+		if (mTargets[texIndex] != null) {
+			Glide.clear(mTargets[texIndex]);
+			mTargets[texIndex].onDestroy();
+			mTargets[texIndex] = null;
+		}
+	}
+
+	/**
+	 * Keeps a small copy of the slot's photo for the next launch, on the snapshot thread.
+	 */
+	private void captureSnapshot(final int texIndex, final BitmapLease lease) {
+		if (mSnapshotExecutor.isShutdown()) {
+			return;
 		}
 
-		return shader;
+		final int page = mSnapshot.getPage();
+		mSnapshotExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				lease.read(new BitmapLease.Reader() {
+					@Override
+					public void read(Bitmap bitmap) {
+						mSnapshot.capture(texIndex, page, bitmap, null);
+					}
+				});
+			}
+		});
 	}
 
 	/**
-	 * Checks if we've had an error inside of OpenGL ES, and if so what that error is.
+	 * Lends the slot's photo to background threads until the slot's target is cleared.
+	 */
+	private BitmapLease lend(int texIndex, Bitmap bitmap) {
+		if (mLeases[texIndex] != null) {
+			mLeases[texIndex].revoke();
+		}
+
+		mLeases[texIndex] = new BitmapLease(bitmap);
+		return mLeases[texIndex];
+	}
+
+	/**
+	 * Downloads a photo or gif into a slot, replacing whatever was loading there before. Called by
+	 * the {@link DownloadScheduler}.
 	 *
-	 * @param func the name of the function that was just called (for debugging)
+	 * @param texIndex the slot to load into
+	 * @param size     the size of the photo to download
+	 * @param priority the priority of the download
 	 */
-	private static void checkGLError(String func) {
-		int error;
-		//noinspection LoopStatementThatDoesntLoop
-		while ((error = GLES20.glGetError()) != GLES20.GL_NO_ERROR) {
-			Log.e(TAG, func + ": glError " + error);
-			throw new RuntimeException(func + ": glError " + error);
+	private void loadPhoto(final int texIndex, PhotoSize size, Priority priority) {
+		final String url = size.getUrl();
+
+		clearTarget(texIndex);
+		mLoadGenerations[texIndex]++;
+
+		mLoadedSizes[texIndex] = size;
+		mAnimatedSlots[texIndex] = url.endsWith(".gif");
+		mLoadPixels[texIndex] = PhotoSizeSelector.getPixels(size);
+		mLoadStartTimes[texIndex] = SystemClock.uptimeMillis();
+		mTraceLog.log(TraceLog.EVENT_LOAD_PHOTO, texIndex, size.getWidth());
+
+		final Target<?> target;
+
+		if (url.endsWith(".gif")) {
+			PhotoTexture.GifTextureTarget gifTarget =
+					new PhotoTexture.GifTextureTarget(this, mGifResourceDecoder, mDecodeStage, texIndex,
+							mLoadListener);
+
+			target = gifTarget;
+
+			Glide.with(this).load(url).asGif().toBytes().priority(priority).into(gifTarget);
+		} else if (ENABLE_ETC1) {
+			// Looking in the cache touches the disk, so it downloads the photo itself on a miss.
+			loadCompressedPhoto(texIndex, url, priority);
+			return;
+		} else {
+			target = loadStillPhoto(texIndex, url, priority);
 		}
+
+		mTargets[texIndex] = target;
+	}
+
+	/**
+	 * Downloads and decodes a still photo, and compresses it for next time.
+	 */
+	private Target<?> loadStillPhoto(final int texIndex, final String url, Priority priority) {
+		PhotoTexture.TextureTarget photoTarget =
+				new PhotoTexture.TextureTarget(texIndex, this, mLoadListener) {
+					@Override
+					public void onResourceReady(Bitmap resource, GlideAnimation<? super Bitmap> glideAnimation) {
+						super.onResourceReady(resource, glideAnimation);
+
+						if (resource == null) {
+							return;
+						}
+
+						// Copied in the background, while the target still holds the photo.
+						final BitmapLease lease = lend(texIndex, resource);
+						if (ENABLE_ETC1) {
+							mEtc1Cache.encode(url, lease);
+						}
+						captureSnapshot(texIndex, lease);
+					}
+				};
+
+		// JPEGs are decoded to RGB_565, photos with transparency stay ARGB_8888.
+		Glide.with(this).load(url).asBitmap().format(DecodeFormat.PREFER_RGB_565).priority(priority)
+				.into(photoTarget);
+
+		return photoTarget;
+	}
+
+	/**
+	 * Loads a photo that was compressed on a previous visit, skipping the download and decode.
+	 * Downloads it instead if it isn't in the cache.
+	 */
+	private void loadCompressedPhoto(final int texIndex, final String url, final Priority priority) {
+		final int generation = mLoadGenerations[texIndex];
+		final int page = mSnapshot.getPage();
+
+		mEtc1Cache.load(url, getProjectedWidth(texIndex), new Etc1Cache.Callback() {
+			@Override
+			public void onLoaded(final ETC1Util.ETC1Texture[] levels, final int level) {
+				mSnapshot.captureCompressed(texIndex, page, levels);
+
+				runOnUiThread(new Runnable() {
+					@Override
+					public void run() {
+						// Dropped if the slot has moved on to another photo, which reports its own load.
+						if (generation != mLoadGenerations[texIndex]) {
+							return;
+						}
+
+						updateOrCreateCompressedTexture(texIndex, levels, level);
+						// Not counted towards the download throughput, since nothing was downloaded.
+						mDownloadScheduler.onLoadFinished(texIndex);
+					}
+				});
+			}
+
+			@Override
+			public void onFailed() {
+				runOnUiThread(new Runnable() {
+					@Override
+					public void run() {
+						if (generation != mLoadGenerations[texIndex] || isDestroyed()) {
+							return;
+						}
+
+						mLoadStartTimes[texIndex] = SystemClock.uptimeMillis();
+						mTargets[texIndex] = loadStillPhoto(texIndex, url, priority);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Loads a larger version of a photo if the one in the slot is too small for the theater.
+	 *
+	 * @param texIndex the slot that was selected
+	 */
+	private void upgradePhoto(final int selectedTexIndex) {
+		runOnUiThread(new Runnable() {
+			@Override
+			public void run() {
+				// Reblogs are upgraded through the slot that owns the texture.
+				final int texIndex = mAliasOf[selectedTexIndex] >= 0 ? mAliasOf[selectedTexIndex] : selectedTexIndex;
+
+				if (isDestroyed() || mPhotoSizes.get(texIndex) == null) {
+					return;
+				}
+
+				final PhotoSize loaded = mLoadedSizes[texIndex];
+				final PhotoSize size = mSizeSelector.select(mPhotoSizes.get(texIndex),
+						mSizeSelector.getProjectedWidth(mScaleTheater, SPHERE_RADIUS));
+
+				if (loaded == null || size == null) {
+					return;
+				}
+
+				if (size.getWidth() > loaded.getWidth()) {
+					if (Logger.DEBUG) {
+						Logger.d(TAG, "Upgrading " + texIndex + " from " + loaded.getWidth() + " to " + size.getWidth());
+					}
+					mDownloadScheduler.setTheaterIndex(texIndex);
+					mDownloadScheduler.enqueue(texIndex, size);
+				} else if (mUploadedLevels[texIndex] > 0) {
+					// Uploaded at a lower level for the ring, reload the full photo (usually from memory).
+					if (Logger.DEBUG) {
+						Logger.d(TAG, "Uploading level 0 of " + texIndex);
+					}
+					mDownloadScheduler.setTheaterIndex(texIndex);
+					mDownloadScheduler.enqueue(texIndex, loaded);
+				}
+			}
+		});
 	}
 
 	/**
@@ -362,48 +883,59 @@ public class Tumblr3DActivity extends CardboardActivity implements CardboardView
 			mSearchTerm = savedInstanceState.getString(EXTRA_SEARCH_TERM);
 		}
 
+		try {
+			mRestoredSnapshot = SceneSnapshot.read(new File(getCacheDir(), SNAPSHOT_FILE), NUM_TEXTURES);
+		} catch (IOException e) {
+			Log.w(TAG, "Could not read snapshot", e);
+		}
+
+		if (mRestoredSnapshot != null) {
+			if (TextUtils.isEmpty(mSearchTerm)) {
+				mSearchTerm = mRestoredSnapshot.getSearchTerm();
+			} else if (!mSearchTerm.equals(mRestoredSnapshot.getSearchTerm())) {
+				mRestoredSnapshot = null;
+			}
+		}
+
 		setContentView(R.layout.common_ui);
 		CardboardView cardboardView = (CardboardView) findViewById(R.id.cardboard_view);
-		cardboardView.setRenderer(this);
+		if (SINGLE_PASS_STEREO) {
+			cardboardView.setRenderer((CardboardView.Renderer) this);
+		} else {
+			cardboardView.setRenderer((CardboardView.StereoRenderer) this);
+		}
 		setCardboardView(cardboardView);
 		cardboardView.setVRModeEnabled(true);
 
 		mScaleTV = cardboardView.getVRMode() ? SCALE_TV_VR : SCALE_TV;
 		mScaleTheater = cardboardView.getVRMode() ? SCALE_THEATER_VR : SCALE_THEATER;
 
-		mImageRect = new float[NUM_TEXTURES][16];
-		mModelRect = new float[NUM_TEXTURES][16];
-		mCamera = new float[16];
-		mView = new float[16];
-		mModelViewProjection = new float[16];
-		mModelView = new float[16];
-		mModelFloor = new float[16];
-		mHeadView = new float[16];
 		mVibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
 
-		mRectTextureIds = new int[NUM_TEXTURES];
-
 		for (int i = 0; i < NUM_TEXTURES; i++) {
-			mRectTextureIds[i] = -1;
+			mAliasOf[i] = -1;
 		}
 
-		mTextureIds = new int[NUM_TEXTURES];
-
 		mGifResourceDecoder = new GifResourceDecoder(this);
+		mEtc1Cache = new Etc1Cache(new File(getCacheDir(), ETC1_DIRECTORY));
 		mTumblrClient = new TumblrClient();
 
-		mOverlayView = (CardboardOverlayView) findViewById(R.id.overlay);
+		final float textSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, HUD_TEXT_SIZE_DP,
+				getResources().getDisplayMetrics());
+		mHud = new Hud(GlyphAtlas.bake(textSize, Color.DKGRAY), HUD_COLOR);
+
+		// The icons face the other way, so they are flipped when drawn.
+		mRenderer.setFlipped(STATIC_TEXTURE_ID_REFRESH, true);
+		mRenderer.setFlipped(STATIC_TEXTURE_ID_PLAY, true);
+		mRenderer.setFlipped(STATIC_TEXTURE_ID_PAUSE, true);
 
 		Glide.with(this).fromResource().asBitmap().load(R.drawable.ic_refresh_white_24dp)
-				.transform(new FlipTransformation(this))
 				.into(new PhotoTexture.TextureTarget(STATIC_TEXTURE_ID_REFRESH, this));
 
 		Glide.with(this).fromResource().asBitmap().load(R.drawable.ic_play_circle_outline_white_24dp)
-				.transform(new FlipTransformation(this))
 				.into(new PhotoTexture.TextureTarget(STATIC_TEXTURE_ID_PLAY, this));
 
 		Glide.with(this).fromResource().asBitmap().load(R.drawable.ic_pause_circle_outline_white_24dp)
-				.transform(new FlipTransformation(this))
 				.into(new PhotoTexture.TextureTarget(STATIC_TEXTURE_ID_PAUSE, this));
 	}
 
@@ -414,104 +946,237 @@ public class Tumblr3DActivity extends CardboardActivity implements CardboardView
 		outState.putString(EXTRA_SEARCH_TERM, mSearchTerm);
 	}
 
+	@Override
+	protected void onPause() {
+		super.onPause();
+
+		if (mTraceLog.isEnabled()) {
+			mTraceLog.dump(TRACE_LOG_TAG);
+		}
+
+		if (mProfiler.isEnabled()) {
+			mProfiler.removeSink(mLogSink);
+			mProfiler.removeSink(mPipelineSink);
+			mProfiler.removeSink(mHudSink);
+
+			if (ENABLE_TRACE) {
+				writeTrace();
+			}
+		}
+
+		if (mHeadTrace != null) {
+			writeHeadTrace();
+		}
+
+		unregisterReceiver(mBatteryReceiver);
+		mGovernor.reset();
+
+		// Keep the last snapshot if nothing loaded this time.
+		if (!mSnapshot.isEmpty()) {
+			final File file = new File(getCacheDir(), SNAPSHOT_FILE);
+			mSnapshotExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						mSnapshot.writeTo(file);
+					} catch (IOException e) {
+						Log.w(TAG, "Could not write snapshot", e);
+					}
+				}
+			});
+		}
+	}
+
 	@Override
 	protected void onResume() {
 		super.onResume();
 
+		mTraceLog.setEnabled(Log.isLoggable(TRACE_LOG_TAG, Log.VERBOSE));
+
+		// The battery's state is sticky, so it arrives right away.
+		registerReceiver(mBatteryReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+
+		if (mProfiler.isEnabled()) {
+			mProfiler.addSink(mLogSink);
+			mProfiler.addSink(mPipelineSink);
+			if (SHOW_PROFILER_HUD) {
+				mProfiler.addSink(mHudSink);
+			}
+			mProfiler.setTracing(ENABLE_TRACE);
+		}
+
 		load();
 	}
 
+	private void writeTrace() {
+		final File directory = getExternalFilesDir(null);
+		final File file = new File(directory != null ? directory : getCacheDir(), TRACE_FILE);
+
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					final FileWriter writer = new FileWriter(file);
+					try {
+						mProfiler.writeTrace(writer);
+					} finally {
+						writer.close();
+					}
+					Logger.i(TAG, "Wrote trace to " + file);
+				} catch (IOException e) {
+					Log.w(TAG, "Could not write trace", e);
+				}
+			}
+		}, "FrameTrace").start();
+	}
+
+	private void writeHeadTrace() {
+		final File directory = getExternalFilesDir(null);
+		final File file = new File(directory != null ? directory : getCacheDir(), HEAD_TRACE_FILE);
+
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					final FileOutputStream out = new FileOutputStream(file);
+					try {
+						mHeadTrace.writeTo(out);
+					} finally {
+						out.close();
+					}
+					Logger.i(TAG, "Wrote head trace to " + file + (mHeadTrace.isFull() ? ", which is full" : ""));
+				} catch (IOException e) {
+					Log.w(TAG, "Could not write head trace", e);
+				}
+			}
+		}, "HeadTrace").start();
+	}
+
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+
+		FeedPrefetcher.getInstance().removeCallback(mPrefetchCallback);
+		mPageStage.shutdown();
+		mDecodeStage.shutdown();
+		// Lets a pending snapshot write finish.
+		mSnapshotExecutor.shutdown();
+	}
+
+	@Override
+	public void onTrimMemory(int level) {
+		super.onTrimMemory(level);
+
+		if (level >= TRIM_MEMORY_RUNNING_LOW && mGifResourceDecoder != null) {
+			// Playing gifs keep their own frames.
+			mGifResourceDecoder.getFramePool().clear();
+		}
+	}
+
+	@Override
+	public void onLowMemory() {
+		super.onLowMemory();
+
+		if (mGifResourceDecoder != null) {
+			mGifResourceDecoder.getFramePool().clear();
+		}
+	}
+
 	private void load() {
-		if (mLoadTask == null || mLoadTask.getStatus() == AsyncTask.Status.FINISHED
-				&& !TextUtils.isEmpty(mSearchTerm)) {
-			mLoadTask = new PostLoadTask().execute(mSearchTerm);
+		// The first page may have been loaded, or may still be loading, while the search term was typed.
+		if (mBefore == 0 && FeedPrefetcher.getInstance().take(mSearchTerm, mPrefetchCallback)) {
+			return;
 		}
+
+		// Turned away if a page is already loading.
+		mPageStage.submit(new PageTask(mSearchTerm));
 	}
 
 	@Override
 	public void onRendererShutdown() {
-		Log.i(TAG, "onRendererShutdown");
+		Logger.i(TAG, "onRendererShutdown");
+
+		quitUploadThread();
 	}
 
 	@Override
 	public void onSurfaceChanged(int width, int height) {
-		Log.i(TAG, "onSurfaceChanged");
+		Logger.i(TAG, "onSurfaceChanged");
+
+		mSizeSelector.setEyeWidth(getCardboardView().getVRMode() ? width / 2 : width);
 	}
 
 	/**
-	 * Creates the buffers we use to store information about the 3D world. OpenGL doesn't use Java
-	 * arrays, but rather needs data in a format it can understand. Hence we use ByteBuffers.
+	 * Creates the buffers we use to store information about the 3D world.
 	 *
 	 * @param config The EGL configuration used when creating the surface.
 	 */
 	@Override
 	public void onSurfaceCreated(EGLConfig config) {
-		Log.i(TAG, "onSurfaceCreated");
-		GLES20.glClearColor(0.1f, 0.1f, 0.1f, 0.5f); // Dark background so text shows up well
-
-		ByteBuffer bbVertices = ByteBuffer.allocateDirect(WorldLayoutData.RECT_COORDS.length * 4);
-		bbVertices.order(ByteOrder.nativeOrder());
-		mRectVertices = bbVertices.asFloatBuffer();
-		mRectVertices.put(WorldLayoutData.RECT_COORDS);
-		mRectVertices.position(0);
-
-		ByteBuffer bbColors = ByteBuffer.allocateDirect(WorldLayoutData.RECT_COLORS.length * 4);
-		bbColors.order(ByteOrder.nativeOrder());
-		mRectColors = bbColors.asFloatBuffer();
-		mRectColors.put(WorldLayoutData.RECT_COLORS);
-		mRectColors.position(0);
-
-		ByteBuffer bbFoundColors = ByteBuffer.allocateDirect(WorldLayoutData.RECT_FOUND_COLORS.length * 4);
-		bbFoundColors.order(ByteOrder.nativeOrder());
-		mRectFoundColors = bbFoundColors.asFloatBuffer();
-		mRectFoundColors.put(WorldLayoutData.RECT_FOUND_COLORS);
-		mRectFoundColors.position(0);
-
-		ByteBuffer bbNormals = ByteBuffer.allocateDirect(WorldLayoutData.RECT_NORMALS.length * 4);
-		bbNormals.order(ByteOrder.nativeOrder());
-		mRectNormals = bbNormals.asFloatBuffer();
-		mRectNormals.put(WorldLayoutData.RECT_NORMALS);
-		mRectNormals.position(0);
-
-		ByteBuffer bbTextureCoordinates = ByteBuffer.allocateDirect(WorldLayoutData.RECT_TEX_COORDS.length * 4);
-		bbTextureCoordinates.order(ByteOrder.nativeOrder());
-		mRectTexCoords = bbTextureCoordinates.asFloatBuffer();
-		mRectTexCoords.put(WorldLayoutData.RECT_TEX_COORDS);
-		mRectTexCoords.position(0);
-
-		// make a floor
-		ByteBuffer bbFloorVertices = ByteBuffer.allocateDirect(WorldLayoutData.FLOOR_COORDS.length * 4);
-		bbFloorVertices.order(ByteOrder.nativeOrder());
-		mFloorVertices = bbFloorVertices.asFloatBuffer();
-		mFloorVertices.put(WorldLayoutData.FLOOR_COORDS);
-		mFloorVertices.position(0);
-
-		ByteBuffer bbFloorNormals = ByteBuffer.allocateDirect(WorldLayoutData.FLOOR_NORMALS.length * 4);
-		bbFloorNormals.order(ByteOrder.nativeOrder());
-		mFloorNormals = bbFloorNormals.asFloatBuffer();
-		mFloorNormals.put(WorldLayoutData.FLOOR_NORMALS);
-		mFloorNormals.position(0);
-
-		ByteBuffer bbFloorColors = ByteBuffer.allocateDirect(WorldLayoutData.FLOOR_COLORS.length * 4);
-		bbFloorColors.order(ByteOrder.nativeOrder());
-		mFloorColors = bbFloorColors.asFloatBuffer();
-		mFloorColors.put(WorldLayoutData.FLOOR_COLORS);
-		mFloorColors.position(0);
-
-		int vertexShader = loadGLShader(GLES20.GL_VERTEX_SHADER, R.raw.light_vertex);
-		int gridShader = loadGLShader(GLES20.GL_FRAGMENT_SHADER, R.raw.flat_fragment);
-
-		mGlProgram = GLES20.glCreateProgram();
-		GLES20.glAttachShader(mGlProgram, vertexShader);
-		GLES20.glAttachShader(mGlProgram, gridShader);
-		GLES20.glLinkProgram(mGlProgram);
-
-		GLES20.glEnable(GLES20.GL_DEPTH_TEST);
-
-		Matrix.setIdentityM(mModelFloor, 0);
-		Matrix.translateM(mModelFloor, 0, 0, -FLOOR_DEPTH, 0); // Floor appears below user
-
-		checkGLError("onSurfaceCreated");
+		Logger.i(TAG, "onSurfaceCreated");
+
+		mRenderer.onSurfaceCreated(readRawTextFile(R.raw.light_vertex),
+				readRawTextFile(MEASURE_OVERDRAW ? R.raw.overdraw_fragment : R.raw.flat_fragment));
+		mRenderer.setFrontToBack(FRONT_TO_BACK);
+		mRenderer.setMeasuringOverdraw(MEASURE_OVERDRAW);
+		mRenderer.setHud(mHud, readRawTextFile(R.raw.hud_vertex), readRawTextFile(R.raw.hud_fragment));
+
+		// The old context, and every texture it shared, is gone.
+		quitUploadThread();
+		if (ENABLE_UPLOAD_THREAD && TextureUploadThread.isSupported()) {
+			mUploadThread = new TextureUploadThread(new AndroidGl());
+			mUploadThread.start();
+		}
+
+		if (mRestoredSnapshot != null) {
+			restoreSnapshot(mRestoredSnapshot);
+			mRestoredSnapshot = null;
+		}
+
+		mRenderer.checkGLError("onSurfaceCreated");
+	}
+
+	/**
+	 * Uploads the previous session's photos straight from the mapped snapshot file, so that the
+	 * sphere is populated before anything has been downloaded.
+	 */
+	private void restoreSnapshot(SceneSnapshot snapshot) {
+		if (mSelectedTexIndex >= 0) {
+			// Live photos have already arrived.
+			return;
+		}
+
+		mNumImages = Math.min(getMaxImages(), snapshot.getNumImages());
+
+		for (int texIndex = NUM_IMAGES_STATIC; texIndex < NUM_TEXTURES; texIndex++) {
+			final SceneSnapshot.Slot slot = snapshot.getSlot(texIndex);
+			if (slot == null || texIndex - NUM_IMAGES_STATIC >= mNumImages) {
+				continue;
+			}
+
+			if (slot.format == SceneSnapshot.FORMAT_ETC1) {
+				mRenderer.uploadCompressed(texIndex,
+						new ETC1Util.ETC1Texture[]{new ETC1Util.ETC1Texture(slot.width, slot.height, slot.pixels)});
+			} else {
+				mRenderer.uploadPixels(texIndex, slot.width, slot.height, GLES20.GL_RGB,
+						GLES20.GL_UNSIGNED_SHORT_5_6_5, slot.pixels);
+			}
+
+			synchronized (mSnapshotSlots) {
+				mSnapshotSlots[texIndex] = true;
+			}
+			mBlogNames[texIndex] = snapshot.getBlogName(texIndex);
+
+			if (texIndex == snapshot.getSelectedTexIndex()) {
+				mSelectedTexIndex = texIndex;
+				mRenderer.setSelectedIndex(texIndex);
+				selectPhoto(texIndex - NUM_IMAGES_STATIC);
+			} else {
+				unselectPhoto(texIndex - NUM_IMAGES_STATIC);
+			}
+		}
+
+		Logger.i(TAG, "Restored snapshot of " + snapshot.getSearchTerm());
 	}
 
 	/**
@@ -544,20 +1209,23 @@ public class Tumblr3DActivity extends CardboardActivity implements CardboardView
 	 */
 	@Override
 	public void onNewFrame(HeadTransform headTransform) {
-		GLES20.glUseProgram(mGlProgram);
+		mGovernor.onFrame(System.nanoTime());
 
-		mModelViewProjectionParam = GLES20.glGetUniformLocation(mGlProgram, "u_MVP");
-		mLightPosParam = GLES20.glGetUniformLocation(mGlProgram, "u_LightPos");
-		mModelViewParam = GLES20.glGetUniformLocation(mGlProgram, "u_MVMatrix");
-		mModelParam = GLES20.glGetUniformLocation(mGlProgram, "u_Model");
-		mIsFloorParam = GLES20.glGetUniformLocation(mGlProgram, "u_IsFloor");
-		mRectTextureUniformParam = GLES20.glGetUniformLocation(mGlProgram, "u_Texture");
+		final long uploadStart = mProfiler.begin();
 
 		// load gif updates into OpenGL
 		synchronized (mUpdatingPhotoTextures) {
 			while (!mUpdatingPhotoTextures.isEmpty()) {
 				PhotoTexture texture = mUpdatingPhotoTextures.remove();
-				updateTexture(texture.texIndex, texture.bitmap);
+				if (mAnimatedSlots[texture.texIndex]) {
+					mRenderer.updateBitmap(texture.texIndex, texture.bitmap);
+					if (mHeadTrace != null) {
+						mHeadTrace.update(SystemClock.uptimeMillis(), texture.texIndex);
+					}
+				} else {
+					// Replacing a still photo, e.g. with a larger one, rebuilds its mipmaps.
+					loadTextureInternal(texture.texIndex, texture.bitmap);
+				}
 			}
 		}
 
@@ -566,160 +1234,252 @@ public class Tumblr3DActivity extends CardboardActivity implements CardboardView
 			// load downloaded photos into OpenGL
 			while (!mWaitingPhotoTextures.isEmpty()) {
 				PhotoTexture texture = mWaitingPhotoTextures.remove();
-				loadTextureInternal(texture.texIndex, texture.bitmap, texture.recycle);
-
-				if (texture.texIndex >= NUM_IMAGES_STATIC) {
-					// First image that loads shows up in the "theater!"
-					if (mSelectedTexIndex < 0) {
-						mSelectedTexIndex = texture.texIndex;
-						selectPhoto(texture.texIndex - NUM_IMAGES_STATIC);
-					} else {
-						// Put image in the right spot
-						unselectPhoto(texture.texIndex - NUM_IMAGES_STATIC);
-					}
-				} else if (texture.texIndex == STATIC_TEXTURE_ID_REFRESH) {
-					placePhoto(mModelRect, mImageRect, texture.texIndex, 1, 180, 30, SPHERE_RADIUS / 2);
-				} else if (texture.texIndex == STATIC_TEXTURE_ID_PLAY) {
-					placePhoto(mModelRect, mImageRect, texture.texIndex, 1, 210, 30, SPHERE_RADIUS / 2);
-				} else if (texture.texIndex == STATIC_TEXTURE_ID_PAUSE) {
-					placePhoto(mModelRect, mImageRect, texture.texIndex, 1, 150, 30, SPHERE_RADIUS / 2);
+				if (mUploadThread != null && (texture.atlas != null || !mAnimatedSlots[texture.texIndex])) {
+					// Frame by frame gifs need their texture right away, to update it.
+					final int level = texture.bitmap != null
+							? TextureLod.getLevel(texture.bitmap.getWidth(), getProjectedWidth(texture.texIndex)) : 0;
+					mUploadThread.upload(new TextureUploadThread.Upload(texture, !mAnimatedSlots[texture.texIndex],
+							level));
+				} else {
+					uploadPhoto(texture);
+					onPhotoUploaded(texture);
 				}
 			}
 		}
 
-		// Build the camera matrix and apply it to the ModelView.
-		Matrix.setLookAtM(mCamera, 0, 0.0f, 0.0f, CAMERA_Z, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+		// swap in photos uploaded in the background
+		if (mUploadThread != null) {
+			TextureUploadThread.Upload upload;
+			while ((upload = mUploadThread.poll()) != null) {
+				adoptPhoto(upload);
+				onPhotoUploaded(upload.texture);
+			}
+		}
+
+		final long matricesStart = mProfiler.end(FrameProfiler.PHASE_UPLOAD, uploadStart);
+
+		final long frameTime = SystemClock.uptimeMillis();
 
 		headTransform.getHeadView(mHeadView, 0);
+		mRenderer.setHeadView(mHeadView);
+		mRenderer.setFrameTime(frameTime);
 
-		checkGLError("onReadyToDraw");
-	}
+		mProfiler.end(FrameProfiler.PHASE_MATRICES, matricesStart);
 
-	/**
-	 * Draws a frame for an eye. The transformation for that eye (from the camera) is passed in as
-	 * a parameter.
-	 *
-	 * @param eye The transformations to apply to render this eye.
-	 */
-	@Override
-	public void onDrawEye(Eye eye) {
-		GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+		headTransform.getForwardVector(mForward, 0);
+		mDownloadScheduler.setGaze(mForward);
+
+		if (mHeadTrace != null) {
+			mHeadTrace.frame(frameTime, mHeadView, mForward);
+		}
 
-		mPositionParam = GLES20.glGetAttribLocation(mGlProgram, "a_Position");
-		mNormalParam = GLES20.glGetAttribLocation(mGlProgram, "a_Normal");
-		mColorParam = GLES20.glGetAttribLocation(mGlProgram, "a_Color");
-		mRectTextureCoordinateParam = GLES20.glGetAttribLocation(mGlProgram, "a_TexCoordinate");
+		final int gazedTexIndex = mDownloadScheduler.getGazedSlot();
+		if (gazedTexIndex >= 0) {
+			mDownloadScheduler.onGazedSlot(gazedTexIndex);
+		}
 
-		GLES20.glEnableVertexAttribArray(mPositionParam);
-		GLES20.glEnableVertexAttribArray(mNormalParam);
-		GLES20.glEnableVertexAttribArray(mColorParam);
-		checkGLError("mColorParam");
+		if (gazedTexIndex >= 0 && gazedTexIndex != mLastGazedTexIndex) {
+			runOnUiThread(mUpdateAnimatedGifs);
+		}
+		mLastGazedTexIndex = gazedTexIndex;
 
-		// Apply the eye transformation to the camera.
-		Matrix.multiplyMM(mView, 0, eye.getEyeView(), 0, mCamera, 0);
+		mRenderer.checkGLError("onReadyToDraw");
+	}
 
-		// Set the position of the light
-		Matrix.multiplyMV(mLightPosInEyeSpace, 0, mView, 0, mLightPosInWorldSpace, 0);
-		GLES20.glUniform3f(mLightPosParam, mLightPosInEyeSpace[0], mLightPosInEyeSpace[1],
-				mLightPosInEyeSpace[2]);
+	/**
+	 * Stops the upload thread, and queues the photos it hadn't handed back to be uploaded again.
+	 */
+	private void quitUploadThread() {
+		if (mUploadThread == null) {
+			return;
+		}
 
-		// Set mModelView for the floor, so we draw floor in the correct location
-		Matrix.multiplyMM(mModelView, 0, mView, 0, mModelFloor, 0);
-		Matrix.multiplyMM(mModelViewProjection, 0, eye.getPerspective(Z_NEAR, Z_FAR), 0,
-				mModelView, 0);
-		drawFloor(eye.getPerspective(Z_NEAR, Z_FAR));
+		final List<PhotoTexture> unfinished = mUploadThread.quit();
+		mUploadThread = null;
 
-		// Build the ModelView and ModelViewProjection matrices
-		// for calculating rect position and light.
-		for (int i = 0; i < mModelRect.length; i++) {
-			Matrix.multiplyMM(mModelView, 0, mView, 0, mModelRect[i], 0);
-			Matrix.multiplyMM(mModelViewProjection, 0, eye.getPerspective(Z_NEAR, Z_FAR), 0, mModelView, 0);
-			drawRect(i);
+		synchronized (mWaitingPhotoTextures) {
+			mWaitingPhotoTextures.addAll(unfinished);
 		}
 	}
 
-	@Override
-	public void onFinishFrame(Viewport viewport) {
+	/**
+	 * Uploads a downloaded photo on the render thread.
+	 */
+	private void uploadPhoto(PhotoTexture texture) {
+		if (texture.etc1 != null) {
+			mRenderer.uploadCompressed(texture.texIndex, texture.etc1);
+			mUploadedLevels[texture.texIndex] = texture.etc1Level;
+		} else if (texture.atlas != null) {
+			mRenderer.uploadAtlas(texture.texIndex, texture.atlas, SystemClock.uptimeMillis());
+			mUploadedLevels[texture.texIndex] = 0;
+			// The atlas isn't pooled, and it won't be uploaded again.
+			texture.atlas.getBitmap().recycle();
+		} else {
+			loadTextureInternal(texture.texIndex, texture.bitmap);
+		}
 	}
 
 	/**
-	 * Draw the rect. We've set all of our transformation matrices. Now we simply pass them into
-	 * the shader.
+	 * Swaps in a photo uploaded by the {@link TextureUploadThread}, or uploads it here if it
+	 * couldn't be.
 	 */
-	public void drawRect(int texIndex) {
-		if (mRectTextureIds[texIndex] < INVALID_TEXTURE) {
-			// can't draw this rectangle
-			return;
+	private void adoptPhoto(TextureUploadThread.Upload upload) {
+		final PhotoTexture texture = upload.texture;
+
+		if (upload.textureId == SceneRenderer.INVALID_TEXTURE) {
+			uploadPhoto(texture);
+		} else if (texture.etc1 != null) {
+			mRenderer.adoptTexture(texture.texIndex, upload.textureId, texture.etc1[0].getWidth(),
+					texture.etc1[0].getHeight(), upload.bytes);
+			mUploadedLevels[texture.texIndex] = texture.etc1Level;
+		} else if (texture.atlas != null) {
+			mRenderer.adoptAtlas(texture.texIndex, upload.textureId, texture.atlas, upload.bytes,
+					SystemClock.uptimeMillis());
+			mUploadedLevels[texture.texIndex] = 0;
+			texture.atlas.getBitmap().recycle();
+		} else {
+			mRenderer.adoptTexture(texture.texIndex, upload.textureId, texture.bitmap.getWidth(),
+					texture.bitmap.getHeight(), upload.bytes);
+			mUploadedLevels[texture.texIndex] = upload.mipmap ? upload.level : 0;
 		}
+	}
 
-		// This is not the floor!
-		GLES20.glUniform1f(mIsFloorParam, 0f);
+	/**
+	 * Puts a newly uploaded photo, and every reblog of it, in place.
+	 */
+	private void onPhotoUploaded(PhotoTexture texture) {
+		mUploadMetrics.onFinished(texture.queuedNanos);
+		if (mUploadMetrics.getDepth() < MAX_PENDING_UPLOADS && mUploadsBackedUp.compareAndSet(true, false)) {
+			runOnUiThread(new Runnable() {
+				@Override
+				public void run() {
+					mDownloadScheduler.resume();
+				}
+			});
+		}
 
-		// Set the active texture unit
-		GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + texIndex);
+		synchronized (mSnapshotSlots) {
+			mSnapshotSlots[texture.texIndex] = false;
+		}
 
-		// Bind the texture to this unit.
-		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mRectTextureIds[texIndex]);
+		if (mHeadTrace != null) {
+			recordPhoto(texture);
+		}
 
-		// Tell the texture uniform sampler to use this texture in the shader by binding to texture unit 0.
-		GLES20.glUniform1i(mRectTextureUniformParam, texIndex);
+		if (texture.texIndex >= NUM_IMAGES_STATIC) {
+			mDownloadScheduler.onSlotShown(texture.texIndex);
 
-		// Set the Model in the shader, used to calculate lighting
-		GLES20.glUniformMatrix4fv(mModelParam, 1, false, mModelRect[texIndex], 0);
+			// First image that loads shows up in the "theater!"
+			if (mSelectedTexIndex < 0) {
+				mSelectedTexIndex = texture.texIndex;
+				mRenderer.setSelectedIndex(mSelectedTexIndex);
+				mSnapshot.setSelectedTexIndex(mSelectedTexIndex);
+				selectPhoto(texture.texIndex - NUM_IMAGES_STATIC);
+			} else if (texture.texIndex == mSelectedTexIndex) {
+				// Replaces the photo in the theater, e.g. one from the snapshot
+				selectPhoto(texture.texIndex - NUM_IMAGES_STATIC);
+			} else {
+				// Put image in the right spot
+				unselectPhoto(texture.texIndex - NUM_IMAGES_STATIC);
+			}
 
-		// Set the ModelView in the shader, used to calculate lighting
-		GLES20.glUniformMatrix4fv(mModelViewParam, 1, false, mModelView, 0);
+			shareTexture(texture.texIndex);
+		} else if (texture.texIndex == STATIC_TEXTURE_ID_REFRESH) {
+			mRenderer.placePhoto(texture.texIndex, 1, 180, 30, SPHERE_RADIUS / 2);
+		} else if (texture.texIndex == STATIC_TEXTURE_ID_PLAY) {
+			mRenderer.placePhoto(texture.texIndex, 1, 210, 30, SPHERE_RADIUS / 2);
+		} else if (texture.texIndex == STATIC_TEXTURE_ID_PAUSE) {
+			mRenderer.placePhoto(texture.texIndex, 1, 150, 30, SPHERE_RADIUS / 2);
+		}
+	}
 
-		// Set the position of the rect
-		GLES20.glVertexAttribPointer(mPositionParam, COORDS_PER_VERTEX, GLES20.GL_FLOAT,
-				false, 0, mRectVertices);
+	private void recordPhoto(PhotoTexture texture) {
+		final long time = SystemClock.uptimeMillis();
+
+		if (texture.atlas != null) {
+			mHeadTrace.photo(time, texture.texIndex, texture.atlas.getFrameWidth(), texture.atlas.getFrameHeight(),
+					texture.atlas.getNumFrames(), texture.atlas.getDuration());
+		} else if (texture.etc1 != null) {
+			mHeadTrace.photo(time, texture.texIndex, texture.etc1[0].getWidth(), texture.etc1[0].getHeight(), 1, 0);
+		} else if (texture.bitmap != null) {
+			mHeadTrace.photo(time, texture.texIndex, texture.bitmap.getWidth(), texture.bitmap.getHeight(),
+					mAnimatedSlots[texture.texIndex] ? 0 : 1, 0);
+		}
+	}
 
-		// Set the ModelViewProjection matrix in the shader.
-		GLES20.glUniformMatrix4fv(mModelViewProjectionParam, 1, false, mModelViewProjection, 0);
+	/**
+	 * Points every reblog of the photo in a slot at that slot's texture, and puts them in place.
+	 *
+	 * @param texIndex the slot that owns the texture
+	 */
+	private void shareTexture(int texIndex) {
+		for (int alias = NUM_IMAGES_STATIC; alias < NUM_TEXTURES; alias++) {
+			if (mAliasOf[alias] != texIndex) {
+				continue;
+			}
 
-		// Set the normal positions of the rect, again for shading
-		GLES20.glVertexAttribPointer(mNormalParam, 3, GLES20.GL_FLOAT,
-				false, 0, mRectNormals);
+			mRenderer.shareTexture(texIndex, alias);
+			synchronized (mSnapshotSlots) {
+				mSnapshotSlots[alias] = false;
+			}
+			mDownloadScheduler.onSlotShown(alias);
 
-		// Connect texBuffer to "aTextureCoord".
-		GLES20.glVertexAttribPointer(mRectTextureCoordinateParam, 2,
-				GLES20.GL_FLOAT, false, 0, mRectTexCoords);
+			if (alias == mSelectedTexIndex) {
+				selectPhoto(alias - NUM_IMAGES_STATIC);
+			} else {
+				unselectPhoto(alias - NUM_IMAGES_STATIC);
+			}
+		}
+	}
 
-		// Enable the "aTextureCoord" vertex attribute.
-		GLES20.glEnableVertexAttribArray(mRectTextureCoordinateParam);
+	/**
+	 * Draws a frame for an eye. The transformation for that eye (from the camera) is passed in as
+	 * a parameter.
+	 *
+	 * @param eye The transformations to apply to render this eye.
+	 */
+	@Override
+	public void onDrawEye(Eye eye) {
+		mRenderer.clearEye();
 
-		if (texIndex == mSelectedTexIndex || isLookingAtObject(texIndex)) {
-			GLES20.glVertexAttribPointer(mColorParam, 4, GLES20.GL_FLOAT, false,
-					0, mRectFoundColors);
-		} else {
-			GLES20.glVertexAttribPointer(mColorParam, 4, GLES20.GL_FLOAT, false,
-					0, mRectColors);
-		}
-		GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, WorldLayoutData.RECT_COORDS.length / 3); // 3 b/c triangles
-		checkGLError("Drawing rect");
+		setEye(0, eye);
+		mRenderer.drawScene(1);
 	}
 
 	/**
-	 * Draw the floor. This feeds in data for the floor into the shader. Note that this doesn't
-	 * feed in data about position of the light, so if we rewrite our code to draw the floor first,
-	 * the lighting might look strange.
+	 * Draws both eyes in a single pass.
+	 *
+	 * @param leftEye  the left eye, or the only eye when VR mode is off
+	 * @param rightEye the right eye, or null when VR mode is off
 	 */
-	@SuppressWarnings("UnusedParameters")
-	public void drawFloor(float[] perspective) {
-		// This is the floor!
-		GLES20.glUniform1f(mIsFloorParam, 1f);
+	@Override
+	public void onDrawFrame(HeadTransform headTransform, Eye leftEye, Eye rightEye) {
+		onNewFrame(headTransform);
+
+		// Clear both eyes at once.
+		mRenderer.clear();
+
+		setEye(0, leftEye);
+		if (rightEye != null) {
+			setEye(1, rightEye);
+		}
+		mRenderer.drawScene(rightEye != null ? 2 : 1);
+	}
 
-		// Set ModelView, MVP, position, normals, and color
-		GLES20.glUniformMatrix4fv(mModelParam, 1, false, mModelFloor, 0);
-		GLES20.glUniformMatrix4fv(mModelViewParam, 1, false, mModelView, 0);
-		GLES20.glUniformMatrix4fv(mModelViewProjectionParam, 1, false, mModelViewProjection, 0);
-		GLES20.glVertexAttribPointer(mPositionParam, COORDS_PER_VERTEX, GLES20.GL_FLOAT,
-				false, 0, mFloorVertices);
-		GLES20.glVertexAttribPointer(mNormalParam, 3, GLES20.GL_FLOAT, false, 0, mFloorNormals);
-		GLES20.glVertexAttribPointer(mColorParam, 4, GLES20.GL_FLOAT, false, 0, mFloorColors);
-		GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 6);
+	private void setEye(int index, Eye eye) {
+		final Viewport viewport = eye.getViewport();
+		mEyeViewport[0] = viewport.x;
+		mEyeViewport[1] = viewport.y;
+		mEyeViewport[2] = viewport.width;
+		mEyeViewport[3] = viewport.height;
 
-		checkGLError("drawing floor");
+		mRenderer.setEye(index, eye.getEyeView(), eye.getPerspective(Z_NEAR, Z_FAR), mEyeViewport,
+				eye.getType() == Eye.Type.RIGHT);
+	}
+
+	@Override
+	public void onFinishFrame(Viewport viewport) {
+		mProfiler.endFrame();
 	}
 
 	/**
@@ -728,19 +1488,19 @@ public class Tumblr3DActivity extends CardboardActivity implements CardboardView
 	 */
 	@Override
 	public void onCardboardTrigger() {
-		Log.i(TAG, "onCardboardTrigger");
+		Logger.i(TAG, "onCardboardTrigger");
 
-		int texIndex = isLookingAtObject();
+		int texIndex = mRenderer.getLookingAt();
 
 		if (texIndex >= 0) {
 			if (texIndex >= NUM_IMAGES_STATIC) {
 				final int photoIndex = texIndex - NUM_IMAGES_STATIC;
-				if (mCurrentPosts != null && photoIndex < mCurrentPosts.size()) {
-					mOverlayView.show3DToast(mCurrentPosts.get(photoIndex).getBlogName());
+				if (photoIndex < mNumImages && mBlogNames[texIndex] != null) {
+					mHud.show(mBlogNames[texIndex]);
 				}
 				select(texIndex);
 			} else if (texIndex == STATIC_TEXTURE_ID_REFRESH) {
-				mOverlayView.show3DToast("Refreshing");
+				mHud.show("Refreshing");
 				load();
 			} else if (texIndex == STATIC_TEXTURE_ID_PLAY) {
 				if (mPlayTimer == null) {
@@ -754,7 +1514,7 @@ public class Tumblr3DActivity extends CardboardActivity implements CardboardView
 				}
 			}
 		} else {
-			mOverlayView.show3DToast("Select objects when they are highlighted!");
+			mHud.show("Select objects when they are highlighted!");
 		}
 		// Always give user feedback
 		mVibrator.vibrate(50);
@@ -778,12 +1538,18 @@ public class Tumblr3DActivity extends CardboardActivity implements CardboardView
 					unselectPhoto(previousPhotoIndex);
 				}
 				mSelectedTexIndex = texIndex;
+				mRenderer.setSelectedIndex(texIndex);
+				mSnapshot.setSelectedTexIndex(texIndex);
+				mTraceLog.log(TraceLog.EVENT_SELECT, texIndex, 0);
+				if (mHeadTrace != null) {
+					mHeadTrace.select(SystemClock.uptimeMillis(), texIndex);
+				}
 				selectPhoto(photoIndex);
 			} else {
-				Log.i(TAG, "Selecting the same photo: " + texIndex);
+				Logger.i(TAG, "Selecting the same photo: " + texIndex);
 			}
 		} else {
-			Log.i(TAG, "Selecting invalid photo: " + texIndex);
+			Logger.i(TAG, "Selecting invalid photo: " + texIndex);
 		}
 	}
 
@@ -794,8 +1560,10 @@ public class Tumblr3DActivity extends CardboardActivity implements CardboardView
 	 */
 	private void selectPhoto(int photoIndex) {
 		final int i = NUM_IMAGES_STATIC + photoIndex;
-		Matrix.scaleM(mModelRect[i], 0, mImageRect[i], 0, mScaleTheater, mScaleTheater, 1f);
-		Matrix.translateM(mModelRect[i], 0, 0f, 0f, -SPHERE_RADIUS);
+		mRenderer.placeInFront(i, mScaleTheater, SPHERE_RADIUS);
+
+		mDownloadScheduler.setSlotDirection(i, THEATER_DIRECTION);
+		upgradePhoto(i);
 	}
 
 	/**
@@ -804,148 +1572,96 @@ public class Tumblr3DActivity extends CardboardActivity implements CardboardView
 	 * @param photoIndex the index of the texture to move
 	 */
 	private void unselectPhoto(int photoIndex) {
-
-		// First rotate in XZ plane.
-		float azimuth = ((photoIndex + 1) * 300 / (mNumImages + 1) + 30) % 360;
-
-		// Now get the up or down angle.
-		float inclination; // angle in Y plane
-		if (photoIndex % 2 == 0) {
-			inclination = 20;
-		} else {
-			inclination = -20;
-		}
-
 		final int i = NUM_IMAGES_STATIC + photoIndex;
 
-		placePhoto(mModelRect, mImageRect, i, mScaleTV, azimuth, inclination, -SPHERE_RADIUS);
-	}
-
-	private static void placePhoto(float[][] modelRects, float[][] imageRects, int texIndex,
-	                                float scale, float azimuth, float inclination, float yTranslate) {
-		float[] azimuthMatrix = new float[16];
-		Matrix.setRotateM(azimuthMatrix, 0, azimuth, 0, 1, 0);
-
-		float[] inclinationMatrix = new float[16];
-		Matrix.setRotateM(inclinationMatrix, 0, inclination, 1, 0, 0);
-
-		float[] rotationMatrix = new float[16];
-		Matrix.multiplyMM(rotationMatrix, 0, azimuthMatrix, 0, inclinationMatrix, 0);
+		mRenderer.placePhoto(i, mScaleTV, RingLayout.getAzimuth(photoIndex, mNumImages),
+				RingLayout.getInclination(photoIndex), -SPHERE_RADIUS);
 
-		Matrix.multiplyMM(modelRects[texIndex], 0, imageRects[texIndex], 0, rotationMatrix, 0);
-		Matrix.translateM(modelRects[texIndex], 0, 0f, 0f, yTranslate);
-		Matrix.scaleM(modelRects[texIndex], 0, scale, scale, 1f);
+		mDownloadScheduler.setSlotDirection(i, RingLayout.getSlotDirection(photoIndex, mNumImages));
 	}
 
 	/**
-	 * Check if user is looking at object by calculating where the object is in eye-space.
+	 * Loads a bitmap into OpenGL.
 	 *
-	 * @return -1 if not looking at object
+	 * @param texIndex the desired texture index
+	 * @param bitmap   the bitmap to put into OpenGL
 	 */
-	private int isLookingAtObject() {
-		float[] initVec = {0, 0, 0, 1.0f};
-		float[] objPositionVec = new float[4];
+	private void loadTextureInternal(int texIndex, Bitmap bitmap) {
+		// Gifs are updated every frame, so only still photos get mipmaps.
+		final int level = mRenderer.uploadBitmap(texIndex, bitmap, !mAnimatedSlots[texIndex],
+				getProjectedWidth(texIndex));
 
-		for (int i = 0; i < mModelRect.length; i++) {
-			if (isLookingAtObject(initVec, objPositionVec, i)) {
-				return i;
-			}
+		if (level >= 0) {
+			mUploadedLevels[texIndex] = level;
 		}
-
-		return -1;
 	}
 
-
 	/**
-	 * Check if user is looking at object by calculating where the object is in eye-space.
+	 * @return the width of a photo on the ring in VR, before the size of the surface is known
 	 */
-	private boolean isLookingAtObject(int texIndex) {
-		float[] initVec = {0, 0, 0, 1.0f};
-		float[] objPositionVec = new float[4];
-
-		return isLookingAtObject(initVec, objPositionVec, texIndex);
-	}
-
-	private boolean isLookingAtObject(float[] initVec, float[] objPositionVec, int texIndex) {
-		// Convert object space to camera space. Use the headView from onNewFrame.
-		Matrix.multiplyMM(mModelView, 0, mHeadView, 0, mModelRect[texIndex], 0);
-		Matrix.multiplyMV(objPositionVec, 0, mModelView, 0, initVec, 0);
-
-		float pitch = (float) Math.atan2(objPositionVec[1], -objPositionVec[2]);
-		float yaw = (float) Math.atan2(objPositionVec[0], -objPositionVec[2]);
-
-		Log.v(TAG, "Object position: X: " + objPositionVec[0]
-				+ "  Y: " + objPositionVec[1] + " Z: " + objPositionVec[2]);
-		Log.v(TAG, "Object Pitch: " + pitch + "  Yaw: " + yaw);
-
-		return (Math.abs(pitch) < PITCH_LIMIT) && (Math.abs(yaw) < YAW_LIMIT);
+	static int getRingWidth(PhotoSizeSelector sizeSelector) {
+		return sizeSelector.getProjectedWidth(SCALE_TV_VR, SPHERE_RADIUS);
 	}
 
 	/**
-	 * Loads a bitmap into OpenGL.
-	 *
-	 * @param texIndex the desired texture index
-	 * @param bitmap   the bitmap to put into OpenGL
+	 * @return the width of the slot's rect on screen, in pixels
 	 */
-	private void loadTextureInternal(int texIndex, Bitmap bitmap, boolean recycle) {
-
-		GLES20.glGenTextures(1, mTextureIds, texIndex);
-
-		Log.d(TAG, "loading texture: " + texIndex + " -> " + mTextureIds[texIndex]);
-
-		if (mTextureIds[texIndex] != INVALID_TEXTURE && bitmap != null && !bitmap.isRecycled()) {
-
-			// Set the active texture unit
-			GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + texIndex);
-
-			Matrix.setIdentityM(mImageRect[texIndex], 0);
-			Matrix.scaleM(mImageRect[texIndex], 0, 1f,
-					(float) bitmap.getHeight() / bitmap.getWidth(), 1f);
-
-			// Bind to the texture in OpenGL
-			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextureIds[texIndex]);
-
-			GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
-					GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
-			GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
-					GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
-
-			// Set filtering
-			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER,
-					GLES20.GL_NEAREST);
-			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER,
-					GLES20.GL_LINEAR);
-
-			// Load the bitmap into the bound texture.
-			GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
-
-			mRectTextureIds[texIndex] = mTextureIds[texIndex];
-		} else {
-			Log.w(TAG, "Failed to load: " + texIndex);
-		}
-
-		if (mTextureIds[texIndex] == INVALID_TEXTURE) {
-			Log.e(TAG, "Error loading texture.");
+	private int getProjectedWidth(int texIndex) {
+		if (texIndex < NUM_IMAGES_STATIC) {
+			return mSizeSelector.getProjectedWidth(1, SPHERE_RADIUS / 2);
+		} else if (texIndex == mSelectedTexIndex || mSelectedTexIndex < 0) {
+			// The first photo to load goes into the theater.
+			return mSizeSelector.getProjectedWidth(mScaleTheater, SPHERE_RADIUS);
 		}
+		// The ring is the first to lose detail when the device can't keep up.
+		return mSizeSelector.getProjectedWidth(mScaleTV, SPHERE_RADIUS) >> mGovernor.getTier().lodBias;
 	}
 
-	private void updateTexture(int texIndex, Bitmap bitmap) {
-		if (mTextureIds[texIndex] != INVALID_TEXTURE && bitmap != null && !bitmap.isRecycled()) {
+	/**
+	 * @return the most photos on the ring, which is fewer while the device can't keep up. Changes
+	 * with the next page, since the ring is laid out a page at a time.
+	 */
+	private int getMaxImages() {
+		return Math.min(NUM_IMAGES_DYNAMIC, mGovernor.getTier().maxSlots);
+	}
 
-			// Set the active texture unit
-			GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + texIndex);
+	/**
+	 * Plays the frame by frame gifs closest to the gaze, as many as the quality tier allows, and
+	 * pauses the rest. Gifs in atlases are left alone, they only cost a uniform per frame. Called on
+	 * the main thread.
+	 */
+	private void updateAnimatedGifs() {
+		final QualityGovernor.Tier tier = mGovernor.getTier();
+
+		int numGifs = 0;
+		for (int texIndex = 0; texIndex < NUM_TEXTURES; texIndex++) {
+			if (mTargets[texIndex] instanceof PhotoTexture.GifTextureTarget
+					&& ((PhotoTexture.GifTextureTarget) mTargets[texIndex]).isFrameByFrame()) {
+				mGifSlots[numGifs] = texIndex;
+				mGifScores[numGifs] = mDownloadScheduler.getGazeScore(texIndex);
+				numGifs++;
+			}
+		}
 
-			Matrix.setIdentityM(mImageRect[texIndex], 0);
-			Matrix.scaleM(mImageRect[texIndex], 0, 1f,
-					(float) bitmap.getHeight() / bitmap.getWidth(), 1f);
+		// Selection sort, closest to the gaze first. There are only a few gifs.
+		for (int i = 0; i < numGifs; i++) {
+			int closest = i;
+			for (int j = i + 1; j < numGifs; j++) {
+				if (mGifScores[j] > mGifScores[closest]) {
+					closest = j;
+				}
+			}
 
-			// Bind to the texture in OpenGL
-			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextureIds[texIndex]);
+			final int texIndex = mGifSlots[closest];
+			final float score = mGifScores[closest];
+			mGifSlots[closest] = mGifSlots[i];
+			mGifScores[closest] = mGifScores[i];
+			mGifSlots[i] = texIndex;
+			mGifScores[i] = score;
 
-			// Load the bitmap into the bound texture.
-			GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
-		} else {
-			Log.w(TAG, "Failed to update: " + texIndex + " val: " + mTextureIds[texIndex]);
+			final PhotoTexture.GifTextureTarget target = (PhotoTexture.GifTextureTarget) mTargets[texIndex];
+			target.setMinFrameDelay(tier.minGifFrameMillis);
+			target.setPaused(i >= tier.maxAnimatedGifs);
 		}
 	}
 }
@@ -71,6 +71,17 @@ public final class WorldLayoutData {
 		    1.0f, 0.0f,
     };
 
+    // Rotated 180 degrees, for images that are stored upside down.
+    public static final float[] RECT_TEX_COORDS_FLIPPED = new float[] {
+            // Front face
+            1.0f, 1.0f,
+            1.0f, 0.0f,
+            0.0f, 1.0f,
+            1.0f, 0.0f,
+            0.0f, 0.0f,
+            0.0f, 1.0f,
+    };
+
     public static final float[] FLOOR_COORDS = new float[] {
             200f, 0, -200f,
             -200f, 0, -200f,
@@ -0,0 +1,219 @@
+package com.tumblr.cardboard.gif;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buffers pooled by their exact size and config, and the counts that {@link GifFramePool} reports.
+ * Doesn't touch the buffers itself, so that the bookkeeping can be tested on the JVM, where there
+ * are no bitmaps.
+ *
+ * @param <T> the type of buffer
+ */
+abstract class BufferPool<T> {
+
+	private final int maxBytes;
+	private final Map<Long, ArrayDeque<T>> free = new HashMap<>();
+
+	private long bytesHeld;
+	private long bytesReserved;
+	private int hits;
+	private int misses;
+
+	BufferPool(int maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	abstract T create(int width, int height, Bitmap.Config config);
+
+	/**
+	 * @return the key of the buffer's size and config, see {@link #getKey(int, int, Bitmap.Config)}
+	 */
+	abstract long getKey(T buffer);
+
+	abstract int getByteCount(T buffer);
+
+	abstract boolean isRecycled(T buffer);
+
+	abstract boolean isMutable(T buffer);
+
+	abstract void recycle(T buffer);
+
+	public int getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @return a buffer with undefined contents
+	 */
+	synchronized T obtain(int width, int height, Bitmap.Config config) {
+		final ArrayDeque<T> buffers = free.get(getKey(width, height, config));
+
+		if (buffers != null && !buffers.isEmpty()) {
+			final T buffer = buffers.poll();
+			bytesHeld -= getByteCount(buffer);
+			hits++;
+			return buffer;
+		}
+
+		misses++;
+		return create(width, height, config);
+	}
+
+	/**
+	 * Keeps a buffer for the next gif of the same size, or recycles it if the pool is full.
+	 */
+	synchronized void release(T buffer) {
+		if (isRecycled(buffer) || !isMutable(buffer)) {
+			return;
+		}
+
+		final int bytes = getByteCount(buffer);
+		if (bytesHeld + bytes > maxBytes) {
+			recycle(buffer);
+			return;
+		}
+
+		final long key = getKey(buffer);
+		ArrayDeque<T> buffers = free.get(key);
+		if (buffers == null) {
+			buffers = new ArrayDeque<>();
+			free.put(key, buffers);
+		}
+
+		buffers.offer(buffer);
+		bytesHeld += bytes;
+	}
+
+	/**
+	 * Recycles every idle buffer, e.g. when the system is low on memory. Reservations keep theirs.
+	 */
+	public synchronized void clear() {
+		for (ArrayDeque<T> buffers : free.values()) {
+			for (T buffer : buffers) {
+				recycle(buffer);
+			}
+		}
+		free.clear();
+		bytesHeld = 0;
+	}
+
+	/**
+	 * @return the fraction of buffers that were reused instead of allocated, by the pool or by a
+	 * reservation
+	 */
+	public synchronized float getHitRate() {
+		final int total = hits + misses;
+		return total == 0 ? 0f : (float) hits / total;
+	}
+
+	/**
+	 * @return the bytes of idle buffers in the pool
+	 */
+	public synchronized long getBytesHeld() {
+		return bytesHeld;
+	}
+
+	/**
+	 * @return the bytes of idle buffers kept by reservations
+	 */
+	public synchronized long getBytesReserved() {
+		return bytesReserved;
+	}
+
+	/**
+	 * @return the number of buffers that had to be allocated
+	 */
+	public synchronized int getMisses() {
+		return misses;
+	}
+
+	private synchronized void onReserved(long bytes) {
+		bytesReserved += bytes;
+	}
+
+	private synchronized void onReservationHit(long bytes) {
+		bytesReserved -= bytes;
+		hits++;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "gif frames hit rate: " + Math.round(getHitRate() * 100) + "% misses: " + misses
+				+ " held: " + bytesHeld / 1024 + "KB reserved: " + bytesReserved / 1024 + "KB";
+	}
+
+	static long getKey(int width, int height, Bitmap.Config config) {
+		return ((long) width << 32) | ((long) height << 8) | (config != null ? config.ordinal() + 1 : 0);
+	}
+
+	/**
+	 * Buffers kept for a single user. Released buffers stay here until {@link #close()}, and are
+	 * only handed back to the same reservation.
+	 */
+	class Reservation {
+
+		private final List<T> reserved = new ArrayList<>();
+		private boolean closed;
+
+		public T obtain(int width, int height, Bitmap.Config config) {
+			final long key = getKey(width, height, config);
+
+			synchronized (this) {
+				for (int i = reserved.size() - 1; i >= 0; i--) {
+					final T buffer = reserved.get(i);
+					if (getKey(buffer) == key) {
+						reserved.remove(i);
+						onReservationHit(getByteCount(buffer));
+						return buffer;
+					}
+				}
+			}
+
+			return BufferPool.this.obtain(width, height, config);
+		}
+
+		/**
+		 * @return false if the buffer was recycled already
+		 */
+		public boolean put(T buffer) {
+			if (buffer == null || isRecycled(buffer)) {
+				return false;
+			}
+
+			synchronized (this) {
+				if (!closed) {
+					reserved.add(buffer);
+					onReserved(getByteCount(buffer));
+					return true;
+				}
+			}
+
+			BufferPool.this.release(buffer);
+			return true;
+		}
+
+		/**
+		 * Hands the buffers back to the pool. Buffers that are put afterwards go straight to the
+		 * pool.
+		 */
+		public void close() {
+			final List<T> buffers;
+			synchronized (this) {
+				closed = true;
+				buffers = new ArrayList<>(reserved);
+				reserved.clear();
+			}
+
+			for (T buffer : buffers) {
+				onReserved(-getByteCount(buffer));
+				BufferPool.this.release(buffer);
+			}
+		}
+	}
+}
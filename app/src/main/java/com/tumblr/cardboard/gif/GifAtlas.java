@@ -0,0 +1,208 @@
+package com.tumblr.cardboard.gif;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import com.bumptech.glide.gifdecoder.GifDecoder;
+import com.tumblr.cardboard.profile.FrameProfiler;
+
+/**
+ * Every frame of a short gif, decoded once and laid out in a grid on a single bitmap. Once it is
+ * uploaded, the gif is animated by moving the texture coordinates from frame to frame, without
+ * decoding or uploading anything.
+ */
+public class GifAtlas {
+
+	/**
+	 * Longer gifs are played frame by frame by {@link GifTexture}.
+	 */
+	public static final int MAX_FRAMES = 30;
+	/**
+	 * The largest width and height of the atlas, which every device can sample.
+	 */
+	public static final int MAX_SIZE = 2048;
+	/**
+	 * Larger downloads aren't parsed twice to find out whether they are short enough.
+	 */
+	public static final int MAX_BYTES = 1024 * 1024;
+	/**
+	 * The most memory the decoded frames may take. Gifs that are short but large would otherwise
+	 * hold up to a 2048x2048 bitmap, and as much again once uploaded.
+	 */
+	public static final int MAX_DECODED_BYTES = 4 * 1024 * 1024;
+
+	private final Bitmap bitmap;
+	private final int numFrames;
+	private final int columns;
+	private final int rows;
+	private final int frameWidth;
+	private final int frameHeight;
+	/**
+	 * How long each frame is shown, in milliseconds.
+	 */
+	private final int[] delays;
+	private final int duration;
+
+	// Visible for testing.
+	GifAtlas(Bitmap bitmap, int columns, int frameWidth, int frameHeight, int[] delays) {
+		this.bitmap = bitmap;
+		this.numFrames = delays.length;
+		this.columns = columns;
+		this.rows = (numFrames + columns - 1) / columns;
+		this.frameWidth = frameWidth;
+		this.frameHeight = frameHeight;
+		this.delays = delays;
+
+		int total = 0;
+		for (int delay : delays) {
+			total += delay;
+		}
+		this.duration = total;
+	}
+
+	/**
+	 * Decodes every frame of a gif into an atlas.
+	 *
+	 * @param decoder  a decoder that has been given the gif's data
+	 * @param provider where the decoder's frames come from, and go back to once they are drawn
+	 * @return null if the gif is too long or too large
+	 */
+	static GifAtlas decode(GifDecoder decoder, GifBitmapProvider provider) {
+		final int numFrames = decoder.getFrameCount();
+		final int frameWidth = decoder.getWidth();
+		final int frameHeight = decoder.getHeight();
+		final int columns = getColumns(numFrames, frameWidth, frameHeight);
+
+		if (columns <= 0) {
+			return null;
+		}
+
+		final FrameProfiler profiler = FrameProfiler.getInstance();
+		final long start = profiler.begin();
+
+		final int rows = (numFrames + columns - 1) / columns;
+		final int[] delays = new int[numFrames];
+		Bitmap atlas = null;
+		Canvas canvas = null;
+
+		for (int i = 0; i < numFrames; i++) {
+			decoder.advance();
+			final Bitmap frame = decoder.getNextFrame();
+
+			if (frame == null) {
+				if (atlas != null) {
+					atlas.recycle();
+				}
+				return null;
+			}
+
+			if (atlas == null) {
+				// As with frame by frame gifs, opaque gifs are stored at 16 bits per pixel.
+				final boolean opaque = !GifResourceDecoder.hasTransparentFrames(decoder.getData())
+						&& GifResourceDecoder.isOpaque(frame);
+				if (!fits(columns, rows, frameWidth, frameHeight, opaque ? 2 : 4)) {
+					provider.release(frame);
+					return null;
+				}
+
+				final Bitmap.Config config = opaque ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+				atlas = Bitmap.createBitmap(columns * frameWidth, rows * frameHeight, config);
+				canvas = new Canvas(atlas);
+			}
+
+			canvas.drawBitmap(frame, (i % columns) * frameWidth, (i / columns) * frameHeight, null);
+			provider.release(frame);
+
+			delays[i] = decoder.getDelay(i);
+		}
+
+		profiler.end(FrameProfiler.PHASE_GIF_DECODE, start);
+
+		return new GifAtlas(atlas, columns, frameWidth, frameHeight, delays);
+	}
+
+	/**
+	 * Lays the frames out in a grid that is about as wide as it is tall.
+	 *
+	 * @return the number of columns, or 0 if the gif shouldn't be put in an atlas
+	 */
+	static int getColumns(int numFrames, int frameWidth, int frameHeight) {
+		if (numFrames <= 1 || numFrames > MAX_FRAMES || frameWidth <= 0 || frameHeight <= 0) {
+			return 0;
+		}
+
+		final int maxColumns = MAX_SIZE / frameWidth;
+		final int columns = Math.min(maxColumns,
+				(int) Math.ceil(Math.sqrt((double) numFrames * frameHeight / frameWidth)));
+
+		if (columns <= 0) {
+			return 0;
+		}
+
+		final int rows = (numFrames + columns - 1) / columns;
+		if (rows * frameHeight > MAX_SIZE) {
+			return 0;
+		}
+
+		// Whether the gif is opaque isn't known until a frame is decoded, so this assumes the best.
+		final int used = Math.min(columns, numFrames);
+		return fits(used, rows, frameWidth, frameHeight, 2) ? used : 0;
+	}
+
+	/**
+	 * @return whether an atlas of this size stays within {@link #MAX_DECODED_BYTES}
+	 */
+	static boolean fits(int columns, int rows, int frameWidth, int frameHeight, int bytesPerPixel) {
+		return (long) columns * rows * frameWidth * frameHeight * bytesPerPixel <= MAX_DECODED_BYTES;
+	}
+
+	/**
+	 * @param elapsedMillis how long the gif has been playing
+	 * @return the frame to show, looping forever
+	 */
+	public int getFrameAt(long elapsedMillis) {
+		if (duration <= 0) {
+			return 0;
+		}
+
+		long time = elapsedMillis % duration;
+		for (int i = 0; i < numFrames; i++) {
+			time -= delays[i];
+			if (time < 0) {
+				return i;
+			}
+		}
+		return numFrames - 1;
+	}
+
+	public Bitmap getBitmap() {
+		return bitmap;
+	}
+
+	/**
+	 * @return how long the gif takes to play once, in milliseconds
+	 */
+	public int getDuration() {
+		return duration;
+	}
+
+	public int getNumFrames() {
+		return numFrames;
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public int getFrameWidth() {
+		return frameWidth;
+	}
+
+	public int getFrameHeight() {
+		return frameHeight;
+	}
+}
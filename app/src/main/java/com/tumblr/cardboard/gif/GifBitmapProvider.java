@@ -4,24 +4,24 @@ package com.tumblr.cardboard.gif;
 import android.graphics.Bitmap;
 
 import com.bumptech.glide.gifdecoder.GifDecoder;
-import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
 
+/**
+ * Frames for decoders that aren't playing a gif, e.g. decoding a first frame or an atlas.
+ */
 class GifBitmapProvider implements GifDecoder.BitmapProvider {
-	private final BitmapPool bitmapPool;
+	private final GifFramePool framePool;
 
-	public GifBitmapProvider(BitmapPool bitmapPool) {
-		this.bitmapPool = bitmapPool;
+	public GifBitmapProvider(GifFramePool framePool) {
+		this.framePool = framePool;
 	}
 
 	@Override
 	public Bitmap obtain(int width, int height, Bitmap.Config config) {
-		return bitmapPool.getDirty(width, height, config);
+		return framePool.obtain(width, height, config);
 	}
 
 	@Override
 	public void release(Bitmap bitmap) {
-		if (!bitmapPool.put(bitmap)) {
-			bitmap.recycle();
-		}
+		framePool.release(bitmap);
 	}
 }
@@ -34,14 +34,27 @@ public class GifFrameLoader {
 	private GenericRequestBuilder<GifDecoder, GifDecoder, Bitmap, Bitmap> requestBuilder;
 	private DelayTarget current;
 	private boolean isCleared;
+	private int minFrameDelay;
 
 	public interface FrameCallback {
 		void onFrameReady(int index);
 	}
 
 	public GifFrameLoader(Context context, FrameCallback callback, GifDecoder gifDecoder, int width, int height) {
-		this(callback, gifDecoder, null,
-				getRequestBuilder(context, gifDecoder, width, height, Glide.get(context).getBitmapPool()));
+		this(context, callback, gifDecoder, width, height, Bitmap.Config.ARGB_8888);
+	}
+
+	public GifFrameLoader(Context context, FrameCallback callback, GifDecoder gifDecoder, int width, int height,
+	                      Bitmap.Config config) {
+		this(context, callback, gifDecoder, width, height, config, Glide.get(context).getBitmapPool());
+	}
+
+	/**
+	 * @param bitmapPool where converted frames come from, and go back to once they are replaced
+	 */
+	public GifFrameLoader(Context context, FrameCallback callback, GifDecoder gifDecoder, int width, int height,
+	                      Bitmap.Config config, BitmapPool bitmapPool) {
+		this(callback, gifDecoder, null, getRequestBuilder(context, gifDecoder, width, height, bitmapPool, config));
 	}
 
 	GifFrameLoader(FrameCallback callback, GifDecoder gifDecoder, Handler handler,
@@ -63,6 +76,14 @@ public class GifFrameLoader {
 		requestBuilder = requestBuilder.transform(transformation);
 	}
 
+	/**
+	 * @param minFrameDelay the shortest time a frame is shown, in milliseconds. Faster gifs play
+	 *                      slower, since each frame is drawn over the one before and can't be skipped.
+	 */
+	public void setMinFrameDelay(int minFrameDelay) {
+		this.minFrameDelay = minFrameDelay;
+	}
+
 	public void start() {
 		if (isRunning) {
 			return;
@@ -98,7 +119,7 @@ public class GifFrameLoader {
 		isLoadPending = true;
 
 		gifDecoder.advance();
-		long targetTime = SystemClock.uptimeMillis() + gifDecoder.getNextDelay();
+		long targetTime = SystemClock.uptimeMillis() + Math.max(gifDecoder.getNextDelay(), minFrameDelay);
 		DelayTarget next = new DelayTarget(handler, gifDecoder.getCurrentFrameIndex(), targetTime);
 		requestBuilder
 				.signature(new FrameSignature())
@@ -168,8 +189,9 @@ public class GifFrameLoader {
 	}
 
 	private static GenericRequestBuilder<GifDecoder, GifDecoder, Bitmap, Bitmap> getRequestBuilder(Context context,
-	                                                                                               GifDecoder gifDecoder, int width, int height, BitmapPool bitmapPool) {
-		GifFrameResourceDecoder frameResourceDecoder = new GifFrameResourceDecoder(bitmapPool);
+	                                                                                               GifDecoder gifDecoder, int width, int height, BitmapPool bitmapPool,
+	                                                                                               Bitmap.Config config) {
+		GifFrameResourceDecoder frameResourceDecoder = new GifFrameResourceDecoder(bitmapPool, config);
 		GifFrameModelLoader frameLoader = new GifFrameModelLoader();
 		Encoder<GifDecoder> sourceEncoder = NullEncoder.get();
 		return Glide.with(context)
@@ -0,0 +1,114 @@
+package com.tumblr.cardboard.gif;
+
+import android.graphics.Bitmap;
+
+import com.bumptech.glide.gifdecoder.GifDecoder;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+
+/**
+ * Frame buffers for gifs, kept apart from Glide's pool so that gifs and still photos don't evict
+ * each other's bitmaps. Buffers are pooled by their exact size and config.
+ * <p/>
+ * Each playing gif takes a {@link WorkingSet}, which keeps the buffers it has used for itself
+ * until the gif is recycled. Once a gif has cycled through its frames, playing it allocates
+ * nothing.
+ */
+public class GifFramePool extends BufferPool<Bitmap> {
+
+	/**
+	 * Enough for a few large gifs to swap in and out without allocating.
+	 */
+	public static final int DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+
+	public GifFramePool(int maxBytes) {
+		super(maxBytes);
+	}
+
+	@Override
+	Bitmap create(int width, int height, Bitmap.Config config) {
+		return Bitmap.createBitmap(width, height, config);
+	}
+
+	@Override
+	long getKey(Bitmap bitmap) {
+		return getKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+	}
+
+	@Override
+	int getByteCount(Bitmap bitmap) {
+		return bitmap.getByteCount();
+	}
+
+	@Override
+	boolean isRecycled(Bitmap bitmap) {
+		return bitmap.isRecycled();
+	}
+
+	@Override
+	boolean isMutable(Bitmap bitmap) {
+		return bitmap.isMutable();
+	}
+
+	@Override
+	void recycle(Bitmap bitmap) {
+		bitmap.recycle();
+	}
+
+	/**
+	 * @return buffers for a single gif
+	 */
+	public WorkingSet newWorkingSet() {
+		return new WorkingSet();
+	}
+
+	/**
+	 * The buffers used by a single gif: the frames its decoder draws into, and the converted frames
+	 * that are uploaded. Released buffers stay here until {@link #close()}, and are only handed back
+	 * to this gif.
+	 * <p/>
+	 * Passed to the gif's decoder as its {@link GifDecoder.BitmapProvider}, and to its frame loads as
+	 * their {@link BitmapPool}.
+	 */
+	public class WorkingSet extends Reservation implements GifDecoder.BitmapProvider, BitmapPool {
+
+		private WorkingSet() {
+		}
+
+		@Override
+		public void release(Bitmap bitmap) {
+			put(bitmap);
+		}
+
+		@Override
+		public Bitmap get(int width, int height, Bitmap.Config config) {
+			final Bitmap bitmap = obtain(width, height, config);
+			bitmap.eraseColor(0);
+			return bitmap;
+		}
+
+		@Override
+		public Bitmap getDirty(int width, int height, Bitmap.Config config) {
+			return obtain(width, height, config);
+		}
+
+		@Override
+		public int getMaxSize() {
+			return getMaxBytes();
+		}
+
+		@Override
+		public void setSizeMultiplier(float sizeMultiplier) {
+			// The working set only ever holds the gif's own buffers.
+		}
+
+		@Override
+		public void clearMemory() {
+			// Kept until the gif is recycled.
+		}
+
+		@Override
+		public void trimMemory(int level) {
+			// Kept until the gif is recycled.
+		}
+	}
+}
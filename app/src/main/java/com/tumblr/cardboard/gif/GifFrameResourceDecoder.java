@@ -1,26 +1,67 @@
 package com.tumblr.cardboard.gif;
 
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
 
 import com.bumptech.glide.gifdecoder.GifDecoder;
 import com.bumptech.glide.load.ResourceDecoder;
 import com.bumptech.glide.load.engine.Resource;
 import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
 import com.bumptech.glide.load.resource.bitmap.BitmapResource;
+import com.tumblr.cardboard.profile.FrameProfiler;
 
 class GifFrameResourceDecoder implements ResourceDecoder<GifDecoder, Bitmap> {
 	private final BitmapPool bitmapPool;
+	private final Bitmap.Config config;
+	private final Paint paint = new Paint();
 
 	public GifFrameResourceDecoder(BitmapPool bitmapPool) {
+		this(bitmapPool, Bitmap.Config.ARGB_8888);
+	}
+
+	/**
+	 * @param config the config of the frames, {@link GifDecoder} always decodes to ARGB_8888 so
+	 *               opaque gifs are converted to RGB_565
+	 */
+	public GifFrameResourceDecoder(BitmapPool bitmapPool, Bitmap.Config config) {
 		this.bitmapPool = bitmapPool;
+		this.config = config;
 	}
 
 	@Override
 	public Resource<Bitmap> decode(GifDecoder source, int width, int height) {
+		final FrameProfiler profiler = FrameProfiler.getInstance();
+		final long start = profiler.begin();
+
 		Bitmap bitmap = source.getNextFrame();
+
+		if (bitmap != null && bitmap.getConfig() != config) {
+			bitmap = convert(bitmap);
+		}
+
+		profiler.end(FrameProfiler.PHASE_GIF_DECODE, start);
+
 		return BitmapResource.obtain(bitmap, bitmapPool);
 	}
 
+	private Bitmap convert(Bitmap frame) {
+		Bitmap converted = bitmapPool.getDirty(frame.getWidth(), frame.getHeight(), config);
+		if (converted == null) {
+			converted = Bitmap.createBitmap(frame.getWidth(), frame.getHeight(), config);
+		} else {
+			FrameProfiler.getInstance().count(FrameProfiler.COUNTER_POOL_HITS, 1);
+		}
+
+		new Canvas(converted).drawBitmap(frame, 0, 0, paint);
+
+		if (!bitmapPool.put(frame)) {
+			frame.recycle();
+		}
+
+		return converted;
+	}
+
 	@Override
 	public String getId() {
 		return "GifFrameResourceDecoder.com.bumptech.glide.load.resource.gif";
@@ -2,17 +2,17 @@ package com.tumblr.cardboard.gif;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
 import android.util.Log;
 
-import com.bumptech.glide.Glide;
 import com.bumptech.glide.gifdecoder.GifDecoder;
 import com.bumptech.glide.gifdecoder.GifHeader;
 import com.bumptech.glide.gifdecoder.GifHeaderParser;
 import com.bumptech.glide.load.ResourceDecoder;
 import com.bumptech.glide.load.Transformation;
-import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
 import com.bumptech.glide.load.resource.UnitTransformation;
 import com.bumptech.glide.util.Util;
+import com.tumblr.cardboard.profile.FrameProfiler;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -27,30 +27,37 @@ import java.util.Queue;
  */
 public class GifResourceDecoder implements ResourceDecoder<InputStream, GifTexture> {
 	private static final String TAG = "GifResourceDecoder";
+
+	private static final int EXTENSION = 0x21;
+	private static final int GRAPHIC_CONTROL = 0xF9;
+	private static final int IMAGE = 0x2C;
+	private static final int DISPOSAL_BACKGROUND = 2;
+
 	private static final GifHeaderParserPool PARSER_POOL = new GifHeaderParserPool();
 	private static final GifDecoderPool DECODER_POOL = new GifDecoderPool();
+	private static final GifFramePool FRAME_POOL = new GifFramePool(GifFramePool.DEFAULT_MAX_BYTES);
 
 	private final Context context;
 	private final GifHeaderParserPool parserPool;
-	private final BitmapPool bitmapPool;
+	private final GifFramePool framePool;
 	private final GifDecoderPool decoderPool;
 	private final GifBitmapProvider provider;
 
 	public GifResourceDecoder(Context context) {
-		this(context, Glide.get(context).getBitmapPool());
+		this(context, FRAME_POOL);
 	}
 
-	public GifResourceDecoder(Context context, BitmapPool bitmapPool) {
-		this(context, bitmapPool, PARSER_POOL, DECODER_POOL);
+	public GifResourceDecoder(Context context, GifFramePool framePool) {
+		this(context, framePool, PARSER_POOL, DECODER_POOL);
 	}
 
 	// Visible for testing.
-	GifResourceDecoder(Context context, BitmapPool bitmapPool, GifHeaderParserPool parserPool,
+	GifResourceDecoder(Context context, GifFramePool framePool, GifHeaderParserPool parserPool,
 	                   GifDecoderPool decoderPool) {
 		this.context = context;
-		this.bitmapPool = bitmapPool;
+		this.framePool = framePool;
 		this.decoderPool = decoderPool;
-		this.provider = new GifBitmapProvider(bitmapPool);
+		this.provider = new GifBitmapProvider(framePool);
 		this.parserPool = parserPool;
 	}
 
@@ -71,6 +78,33 @@ public class GifResourceDecoder implements ResourceDecoder<InputStream, GifTextu
 		}
 	}
 
+	/**
+	 * Decodes every frame of a short gif into a {@link GifAtlas}.
+	 *
+	 * @return null if the gif is too long or too large, and should be played frame by frame instead
+	 */
+	public GifAtlas decodeAtlas(byte[] data) {
+		if (data.length > GifAtlas.MAX_BYTES) {
+			return null;
+		}
+
+		final GifHeaderParser parser = parserPool.obtain(data);
+		final GifDecoder decoder = decoderPool.obtain(provider);
+		try {
+			final GifHeader header = parser.parseHeader();
+			if (header.getStatus() != GifDecoder.STATUS_OK
+					|| GifAtlas.getColumns(header.getNumFrames(), header.getWidth(), header.getHeight()) <= 0) {
+				return null;
+			}
+
+			decoder.setData(header, data);
+			return GifAtlas.decode(decoder, provider);
+		} finally {
+			parserPool.release(parser);
+			decoderPool.release(decoder);
+		}
+	}
+
 	private GifTextureResource decode(byte[] data, int width, int height, GifHeaderParser parser, GifDecoder decoder) {
 		final GifHeader header = parser.parseHeader();
 		if (header.getNumFrames() <= 0 || header.getStatus() != GifDecoder.STATUS_OK) {
@@ -83,18 +117,122 @@ public class GifResourceDecoder implements ResourceDecoder<InputStream, GifTextu
 			return null;
 		}
 
+		// The gif's frames come from buffers of its own while it plays.
+		final GifFramePool.WorkingSet frames = framePool.newWorkingSet();
+
+		if (!hasTransparentFrames(data) && isOpaque(firstFrame)) {
+			// Every frame will be converted to RGB_565, halving the memory needed for frames and textures.
+			firstFrame = toRgb565(firstFrame, frames);
+		}
+
 		Transformation<Bitmap> unitTransformation = UnitTransformation.get();
 
-		GifTexture gifDrawable = new GifTexture(context, provider, bitmapPool, unitTransformation, width, height,
+		GifTexture gifDrawable = new GifTexture(context, frames, unitTransformation, width, height,
 				header, data, firstFrame);
 
 		return new GifTextureResource(gifDrawable);
 	}
 
 	private Bitmap decodeFirstFrame(GifDecoder decoder, GifHeader header, byte[] data) {
+		final FrameProfiler profiler = FrameProfiler.getInstance();
+		final long start = profiler.begin();
+
 		decoder.setData(header, data);
 		decoder.advance();
-		return decoder.getNextFrame();
+		final Bitmap frame = decoder.getNextFrame();
+
+		profiler.end(FrameProfiler.PHASE_GIF_DECODE, start);
+		return frame;
+	}
+
+	/**
+	 * GifDecoder marks every frame as having alpha, so check the pixels of the first frame. Later
+	 * frames may still be transparent, see {@link #hasTransparentFrames(byte[])}.
+	 */
+	static boolean isOpaque(Bitmap bitmap) {
+		final int width = bitmap.getWidth();
+		final int[] row = new int[width];
+
+		for (int y = 0; y < bitmap.getHeight(); y++) {
+			bitmap.getPixels(row, 0, width, 0, y, width, 1);
+			for (int x = 0; x < width; x++) {
+				if ((row[x] >>> 24) != 0xFF) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Walks the gif's blocks for a frame that can leave transparent pixels behind: one with a
+	 * transparent color index, or one that is cleared to the background when it is disposed.
+	 * GifHeader keeps its frames to itself, so the blocks are read here.
+	 */
+	static boolean hasTransparentFrames(byte[] data) {
+		// The header and logical screen descriptor.
+		int pos = 13;
+		if (data.length < pos) {
+			return false;
+		}
+		pos += getColorTableSize(data[10]);
+
+		while (pos < data.length) {
+			final int code = data[pos++] & 0xFF;
+
+			if (code == EXTENSION && pos < data.length) {
+				final int label = data[pos++] & 0xFF;
+				// The block size comes first, then the packed fields.
+				if (label == GRAPHIC_CONTROL && pos + 1 < data.length) {
+					final int packed = data[pos + 1];
+					if ((packed & 0x01) != 0 || ((packed >> 2) & 0x07) == DISPOSAL_BACKGROUND) {
+						return true;
+					}
+				}
+				pos = skipSubBlocks(data, pos);
+			} else if (code == IMAGE && pos + 9 < data.length) {
+				// The image descriptor, local color table and LZW code size, then the image data.
+				pos += 9 + getColorTableSize(data[pos + 8]) + 1;
+				pos = skipSubBlocks(data, pos);
+			} else {
+				// The trailer, or data GifHeaderParser gives up on too.
+				break;
+			}
+		}
+
+		return false;
+	}
+
+	private static int getColorTableSize(byte packed) {
+		return (packed & 0x80) != 0 ? 3 * (2 << (packed & 0x07)) : 0;
+	}
+
+	private static int skipSubBlocks(byte[] data, int pos) {
+		while (pos < data.length) {
+			final int size = data[pos++] & 0xFF;
+			if (size == 0) {
+				break;
+			}
+			pos += size;
+		}
+		return pos;
+	}
+
+	private Bitmap toRgb565(Bitmap frame, GifFramePool.WorkingSet frames) {
+		final Bitmap converted = frames.getDirty(frame.getWidth(), frame.getHeight(), Bitmap.Config.RGB_565);
+
+		new Canvas(converted).drawBitmap(frame, 0, 0, null);
+		provider.release(frame);
+
+		return converted;
+	}
+
+	/**
+	 * @return the pool that every gif decoded by this decoder takes its frames from
+	 */
+	public GifFramePool getFramePool() {
+		return framePool;
 	}
 
 	@Override
@@ -102,7 +240,8 @@ public class GifResourceDecoder implements ResourceDecoder<InputStream, GifTextu
 		return "";
 	}
 
-	private static byte[] inputStreamToBytes(InputStream is) {
+	// Visible for testing.
+	static byte[] inputStreamToBytes(InputStream is) {
 		final int bufferSize = 16384;
 		ByteArrayOutputStream buffer = new ByteArrayOutputStream(bufferSize);
 		try {
@@ -63,10 +63,8 @@ public class GifTexture implements GifFrameLoader.FrameCallback {
 	 * @see #setFrameTransformation(com.bumptech.glide.load.Transformation, android.graphics.Bitmap)
 	 *
 	 * @param context A context.
-	 * @param bitmapProvider An {@link com.bumptech.glide.gifdecoder.GifDecoder.BitmapProvider} that can be used to
-	 *                       retrieve re-usable {@link android.graphics.Bitmap}s.
-	 * @param bitmapPool A {@link com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool} that can be used to return
-	 *                   the first frame when this gifTexture is recycled.
+	 * @param frames The buffers that this gifTexture decodes its frames into, which are handed back to their
+	 *               {@link GifFramePool} when it is recycled.
 	 * @param frameTransformation An {@link com.bumptech.glide.load.Transformation} that can be applied to each frame.
 	 * @param targetFrameWidth The desired width of the frames displayed by this gifTexture (the width of the view or
 	 *                         {@link com.bumptech.glide.request.target.Target} this gifTexture is being loaded into).
@@ -76,11 +74,12 @@ public class GifTexture implements GifFrameLoader.FrameCallback {
 	 * @param data The full bytes of the gif.
 	 * @param firstFrame The decoded and transformed first frame of this gif.
 	 */
-	public GifTexture(Context context, GifDecoder.BitmapProvider bitmapProvider, BitmapPool bitmapPool,
+	public GifTexture(Context context, GifFramePool.WorkingSet frames,
 	                   Transformation<Bitmap> frameTransformation, int targetFrameWidth, int targetFrameHeight,
 	                   GifHeader gifHeader, byte[] data, Bitmap firstFrame) {
 		this(new GifState(gifHeader, data, context, frameTransformation, targetFrameWidth, targetFrameHeight,
-				bitmapProvider, bitmapPool, firstFrame));
+				frames, frames, firstFrame));
+		state.frames = frames;
 	}
 
 	GifTexture(GifState state) {
@@ -91,7 +90,8 @@ public class GifTexture implements GifFrameLoader.FrameCallback {
 		this.state = state;
 		this.decoder = new GifDecoder(state.bitmapProvider);
 		decoder.setData(state.gifHeader, state.data);
-		frameLoader = new GifFrameLoader(state.context, this, decoder, state.targetWidth, state.targetHeight);
+		frameLoader = new GifFrameLoader(state.context, this, decoder, state.targetWidth, state.targetHeight,
+				state.firstFrame.getConfig(), state.bitmapPool);
 	}
 
 	// Visible for testing.
@@ -135,6 +135,13 @@ public class GifTexture implements GifFrameLoader.FrameCallback {
 		return decoder.getFrameCount();
 	}
 
+	/**
+	 * @see GifFrameLoader#setMinFrameDelay(int)
+	 */
+	public void setMinFrameDelay(int minFrameDelay) {
+		frameLoader.setMinFrameDelay(minFrameDelay);
+	}
+
 	private void resetLoopCount() {
 		loopCount = 0;
 	}
@@ -221,6 +228,10 @@ public class GifTexture implements GifFrameLoader.FrameCallback {
 		state.bitmapPool.put(state.firstFrame);
 		frameLoader.clear();
 		frameLoader.stop();
+
+		if (state.frames != null) {
+			state.frames.close();
+		}
 	}
 
 	// For testing.
@@ -261,6 +272,7 @@ public class GifTexture implements GifFrameLoader.FrameCallback {
 		int targetHeight;
 		GifDecoder.BitmapProvider bitmapProvider;
 		BitmapPool bitmapPool;
+		GifFramePool.WorkingSet frames;
 		Bitmap firstFrame;
 
 		public GifState(GifHeader header, byte[] data, Context context,
@@ -290,6 +302,7 @@ public class GifTexture implements GifFrameLoader.FrameCallback {
 				targetHeight = original.targetHeight;
 				bitmapProvider = original.bitmapProvider;
 				bitmapPool = original.bitmapPool;
+				frames = original.frames;
 				firstFrame = original.firstFrame;
 			}
 		}
@@ -0,0 +1,234 @@
+package com.tumblr.cardboard.gl;
+
+import android.graphics.Bitmap;
+import android.opengl.ETC1Util;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+
+import java.nio.Buffer;
+
+/**
+ * Forwards every call to {@link GLES20}, on the thread that owns the GL context.
+ */
+public class AndroidGl implements Gl {
+
+	@Override
+	public void glClearColor(float red, float green, float blue, float alpha) {
+		GLES20.glClearColor(red, green, blue, alpha);
+	}
+
+	@Override
+	public void glClear(int mask) {
+		GLES20.glClear(mask);
+	}
+
+	@Override
+	public void glEnable(int cap) {
+		GLES20.glEnable(cap);
+	}
+
+	@Override
+	public void glDisable(int cap) {
+		GLES20.glDisable(cap);
+	}
+
+	@Override
+	public void glViewport(int x, int y, int width, int height) {
+		GLES20.glViewport(x, y, width, height);
+	}
+
+	@Override
+	public void glBlendFunc(int sfactor, int dfactor) {
+		GLES20.glBlendFunc(sfactor, dfactor);
+	}
+
+	@Override
+	public void glReadPixels(int x, int y, int width, int height, int format, int type, Buffer pixels) {
+		GLES20.glReadPixels(x, y, width, height, format, type, pixels);
+	}
+
+	@Override
+	public void glPixelStorei(int name, int param) {
+		GLES20.glPixelStorei(name, param);
+	}
+
+	@Override
+	public String glGetString(int name) {
+		return GLES20.glGetString(name);
+	}
+
+	@Override
+	public int glGetError() {
+		return GLES20.glGetError();
+	}
+
+	@Override
+	public int glCreateShader(int type) {
+		return GLES20.glCreateShader(type);
+	}
+
+	@Override
+	public void glShaderSource(int shader, String source) {
+		GLES20.glShaderSource(shader, source);
+	}
+
+	@Override
+	public void glCompileShader(int shader) {
+		GLES20.glCompileShader(shader);
+	}
+
+	@Override
+	public void glGetShaderiv(int shader, int name, int[] params, int offset) {
+		GLES20.glGetShaderiv(shader, name, params, offset);
+	}
+
+	@Override
+	public String glGetShaderInfoLog(int shader) {
+		return GLES20.glGetShaderInfoLog(shader);
+	}
+
+	@Override
+	public void glDeleteShader(int shader) {
+		GLES20.glDeleteShader(shader);
+	}
+
+	@Override
+	public int glCreateProgram() {
+		return GLES20.glCreateProgram();
+	}
+
+	@Override
+	public void glAttachShader(int program, int shader) {
+		GLES20.glAttachShader(program, shader);
+	}
+
+	@Override
+	public void glLinkProgram(int program) {
+		GLES20.glLinkProgram(program);
+	}
+
+	@Override
+	public void glUseProgram(int program) {
+		GLES20.glUseProgram(program);
+	}
+
+	@Override
+	public int glGetUniformLocation(int program, String name) {
+		return GLES20.glGetUniformLocation(program, name);
+	}
+
+	@Override
+	public int glGetAttribLocation(int program, String name) {
+		return GLES20.glGetAttribLocation(program, name);
+	}
+
+	@Override
+	public void glUniform1f(int location, float x) {
+		GLES20.glUniform1f(location, x);
+	}
+
+	@Override
+	public void glUniform1i(int location, int x) {
+		GLES20.glUniform1i(location, x);
+	}
+
+	@Override
+	public void glUniform2f(int location, float x, float y) {
+		GLES20.glUniform2f(location, x, y);
+	}
+
+	@Override
+	public void glUniform3f(int location, float x, float y, float z) {
+		GLES20.glUniform3f(location, x, y, z);
+	}
+
+	@Override
+	public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+		GLES20.glUniformMatrix4fv(location, count, transpose, value, offset);
+	}
+
+	@Override
+	public void glEnableVertexAttribArray(int index) {
+		GLES20.glEnableVertexAttribArray(index);
+	}
+
+	@Override
+	public void glDisableVertexAttribArray(int index) {
+		GLES20.glDisableVertexAttribArray(index);
+	}
+
+	@Override
+	public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride,
+			Buffer pointer) {
+		GLES20.glVertexAttribPointer(index, size, type, normalized, stride, pointer);
+	}
+
+	@Override
+	public void glDrawArrays(int mode, int first, int count) {
+		GLES20.glDrawArrays(mode, first, count);
+	}
+
+	@Override
+	public void glGenTextures(int n, int[] textures, int offset) {
+		GLES20.glGenTextures(n, textures, offset);
+	}
+
+	@Override
+	public void glDeleteTextures(int n, int[] textures, int offset) {
+		GLES20.glDeleteTextures(n, textures, offset);
+	}
+
+	@Override
+	public void glActiveTexture(int texture) {
+		GLES20.glActiveTexture(texture);
+	}
+
+	@Override
+	public void glBindTexture(int target, int texture) {
+		GLES20.glBindTexture(target, texture);
+	}
+
+	@Override
+	public void glTexParameteri(int target, int name, int param) {
+		GLES20.glTexParameteri(target, name, param);
+	}
+
+	@Override
+	public void glTexImage2D(int target, int level, int internalFormat, int width, int height, int border,
+			int format, int type, Buffer pixels) {
+		GLES20.glTexImage2D(target, level, internalFormat, width, height, border, format, type, pixels);
+	}
+
+	@Override
+	public void glTexSubImage2D(int target, int level, int xOffset, int yOffset, int width, int height,
+			int format, int type, Buffer pixels) {
+		GLES20.glTexSubImage2D(target, level, xOffset, yOffset, width, height, format, type, pixels);
+	}
+
+	@Override
+	public void glGenerateMipmap(int target) {
+		GLES20.glGenerateMipmap(target);
+	}
+
+	@Override
+	public void glFinish() {
+		GLES20.glFinish();
+	}
+
+	@Override
+	public void texImage2D(int target, int level, int internalFormat, Bitmap bitmap, int type) {
+		GLUtils.texImage2D(target, level, internalFormat, bitmap, type, 0);
+	}
+
+	@Override
+	public void texSubImage2D(int target, int level, int xOffset, int yOffset, Bitmap bitmap, int format,
+			int type) {
+		GLUtils.texSubImage2D(target, level, xOffset, yOffset, bitmap, format, type);
+	}
+
+	@Override
+	public void loadEtc1Texture(int target, int level, int fallbackFormat, int fallbackType,
+			ETC1Util.ETC1Texture texture) {
+		ETC1Util.loadTexture(target, level, 0, fallbackFormat, fallbackType, texture);
+	}
+}
@@ -0,0 +1,111 @@
+package com.tumblr.cardboard.gl;
+
+import android.graphics.Bitmap;
+import android.opengl.ETC1Util;
+
+import java.nio.Buffer;
+
+/**
+ * The OpenGL ES 2.0 calls that the scene is drawn with. {@link AndroidGl} forwards them to
+ * {@link android.opengl.GLES20}, and {@link RecordingGl} counts them on the JVM, so that drawing can
+ * be tested and benchmarked without a device.
+ */
+public interface Gl {
+
+	void glClearColor(float red, float green, float blue, float alpha);
+
+	void glClear(int mask);
+
+	void glEnable(int cap);
+
+	void glDisable(int cap);
+
+	void glViewport(int x, int y, int width, int height);
+
+	void glBlendFunc(int sfactor, int dfactor);
+
+	void glReadPixels(int x, int y, int width, int height, int format, int type, Buffer pixels);
+
+	void glPixelStorei(int name, int param);
+
+	String glGetString(int name);
+
+	int glGetError();
+
+	int glCreateShader(int type);
+
+	void glShaderSource(int shader, String source);
+
+	void glCompileShader(int shader);
+
+	void glGetShaderiv(int shader, int name, int[] params, int offset);
+
+	String glGetShaderInfoLog(int shader);
+
+	void glDeleteShader(int shader);
+
+	int glCreateProgram();
+
+	void glAttachShader(int program, int shader);
+
+	void glLinkProgram(int program);
+
+	void glUseProgram(int program);
+
+	int glGetUniformLocation(int program, String name);
+
+	int glGetAttribLocation(int program, String name);
+
+	void glUniform1f(int location, float x);
+
+	void glUniform1i(int location, int x);
+
+	void glUniform2f(int location, float x, float y);
+
+	void glUniform3f(int location, float x, float y, float z);
+
+	void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+
+	void glEnableVertexAttribArray(int index);
+
+	void glDisableVertexAttribArray(int index);
+
+	void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer pointer);
+
+	void glDrawArrays(int mode, int first, int count);
+
+	void glGenTextures(int n, int[] textures, int offset);
+
+	void glDeleteTextures(int n, int[] textures, int offset);
+
+	void glActiveTexture(int texture);
+
+	void glBindTexture(int target, int texture);
+
+	void glTexParameteri(int target, int name, int param);
+
+	void glTexImage2D(int target, int level, int internalFormat, int width, int height, int border, int format,
+			int type, Buffer pixels);
+
+	void glTexSubImage2D(int target, int level, int xOffset, int yOffset, int width, int height, int format,
+			int type, Buffer pixels);
+
+	void glGenerateMipmap(int target);
+
+	void glFinish();
+
+	/**
+	 * Uploads a bitmap into the bound texture, like {@link android.opengl.GLUtils#texImage2D}.
+	 */
+	void texImage2D(int target, int level, int internalFormat, Bitmap bitmap, int type);
+
+	/**
+	 * Uploads a bitmap into part of the bound texture, like {@link android.opengl.GLUtils#texSubImage2D}.
+	 */
+	void texSubImage2D(int target, int level, int xOffset, int yOffset, Bitmap bitmap, int format, int type);
+
+	/**
+	 * Uploads an ETC1 texture into the bound texture, like {@link ETC1Util#loadTexture}.
+	 */
+	void loadEtc1Texture(int target, int level, int fallbackFormat, int fallbackType, ETC1Util.ETC1Texture texture);
+}
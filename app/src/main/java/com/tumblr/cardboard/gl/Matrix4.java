@@ -0,0 +1,198 @@
+package com.tumblr.cardboard.gl;
+
+/**
+ * The parts of {@link android.opengl.Matrix} that the scene uses, in plain Java so that they also
+ * run on the JVM. Matrices are column-major float[16]s, as in OpenGL. As with
+ * {@link android.opengl.Matrix}, results must not overlap the inputs.
+ */
+public final class Matrix4 {
+
+	private Matrix4() {
+	}
+
+	public static void setIdentityM(float[] m, int offset) {
+		for (int i = 0; i < 16; i++) {
+			m[offset + i] = i % 5 == 0 ? 1f : 0f;
+		}
+	}
+
+	/**
+	 * result = lhs x rhs
+	 */
+	public static void multiplyMM(float[] result, int resultOffset, float[] lhs, int lhsOffset,
+			float[] rhs, int rhsOffset) {
+		for (int column = 0; column < 4; column++) {
+			final float r0 = rhs[rhsOffset + 4 * column];
+			final float r1 = rhs[rhsOffset + 4 * column + 1];
+			final float r2 = rhs[rhsOffset + 4 * column + 2];
+			final float r3 = rhs[rhsOffset + 4 * column + 3];
+			for (int row = 0; row < 4; row++) {
+				result[resultOffset + 4 * column + row] = lhs[lhsOffset + row] * r0
+						+ lhs[lhsOffset + 4 + row] * r1
+						+ lhs[lhsOffset + 8 + row] * r2
+						+ lhs[lhsOffset + 12 + row] * r3;
+			}
+		}
+	}
+
+	/**
+	 * result = lhs x rhs, where rhs and result are 4 element column vectors
+	 */
+	public static void multiplyMV(float[] result, int resultOffset, float[] lhs, int lhsOffset,
+			float[] rhs, int rhsOffset) {
+		final float x = rhs[rhsOffset];
+		final float y = rhs[rhsOffset + 1];
+		final float z = rhs[rhsOffset + 2];
+		final float w = rhs[rhsOffset + 3];
+		for (int row = 0; row < 4; row++) {
+			result[resultOffset + row] = lhs[lhsOffset + row] * x
+					+ lhs[lhsOffset + 4 + row] * y
+					+ lhs[lhsOffset + 8 + row] * z
+					+ lhs[lhsOffset + 12 + row] * w;
+		}
+	}
+
+	/**
+	 * Scales m by x, y and z into sm.
+	 */
+	public static void scaleM(float[] sm, int smOffset, float[] m, int mOffset, float x, float y, float z) {
+		for (int i = 0; i < 4; i++) {
+			sm[smOffset + i] = m[mOffset + i] * x;
+			sm[smOffset + 4 + i] = m[mOffset + 4 + i] * y;
+			sm[smOffset + 8 + i] = m[mOffset + 8 + i] * z;
+			sm[smOffset + 12 + i] = m[mOffset + 12 + i];
+		}
+	}
+
+	/**
+	 * Scales m in place by x, y and z.
+	 */
+	public static void scaleM(float[] m, int offset, float x, float y, float z) {
+		for (int i = 0; i < 4; i++) {
+			m[offset + i] *= x;
+			m[offset + 4 + i] *= y;
+			m[offset + 8 + i] *= z;
+		}
+	}
+
+	/**
+	 * Translates m in place by x, y and z.
+	 */
+	public static void translateM(float[] m, int offset, float x, float y, float z) {
+		for (int i = 0; i < 4; i++) {
+			m[offset + 12 + i] += m[offset + i] * x + m[offset + 4 + i] * y + m[offset + 8 + i] * z;
+		}
+	}
+
+	/**
+	 * Sets rm to a rotation of a degrees around the axis (x, y, z).
+	 */
+	public static void setRotateM(float[] rm, int offset, float a, float x, float y, float z) {
+		final float radians = (float) Math.toRadians(a);
+		final float s = (float) Math.sin(radians);
+		final float c = (float) Math.cos(radians);
+
+		final float length = (float) Math.sqrt(x * x + y * y + z * z);
+		if (length != 1f) {
+			x /= length;
+			y /= length;
+			z /= length;
+		}
+
+		final float nc = 1f - c;
+		final float xy = x * y;
+		final float yz = y * z;
+		final float zx = z * x;
+		final float xs = x * s;
+		final float ys = y * s;
+		final float zs = z * s;
+
+		rm[offset] = x * x * nc + c;
+		rm[offset + 1] = xy * nc + zs;
+		rm[offset + 2] = zx * nc - ys;
+		rm[offset + 3] = 0f;
+		rm[offset + 4] = xy * nc - zs;
+		rm[offset + 5] = y * y * nc + c;
+		rm[offset + 6] = yz * nc + xs;
+		rm[offset + 7] = 0f;
+		rm[offset + 8] = zx * nc + ys;
+		rm[offset + 9] = yz * nc - xs;
+		rm[offset + 10] = z * z * nc + c;
+		rm[offset + 11] = 0f;
+		rm[offset + 12] = 0f;
+		rm[offset + 13] = 0f;
+		rm[offset + 14] = 0f;
+		rm[offset + 15] = 1f;
+	}
+
+	/**
+	 * Sets result to the inverse of m, which must only rotate and translate, e.g. a head view.
+	 */
+	public static void invertRigidM(float[] result, int resultOffset, float[] m, int mOffset) {
+		// The rotation is transposed, and the translation is undone by the transposed rotation.
+		for (int col = 0; col < 3; col++) {
+			for (int row = 0; row < 3; row++) {
+				result[resultOffset + col * 4 + row] = m[mOffset + row * 4 + col];
+			}
+			result[resultOffset + col * 4 + 3] = 0f;
+		}
+
+		final float x = m[mOffset + 12];
+		final float y = m[mOffset + 13];
+		final float z = m[mOffset + 14];
+		for (int row = 0; row < 3; row++) {
+			result[resultOffset + 12 + row] = -(m[mOffset + row * 4] * x + m[mOffset + row * 4 + 1] * y
+					+ m[mOffset + row * 4 + 2] * z);
+		}
+		result[resultOffset + 15] = 1f;
+	}
+
+	/**
+	 * Sets rm to a view matrix looking from the eye towards the center.
+	 */
+	public static void setLookAtM(float[] rm, int offset, float eyeX, float eyeY, float eyeZ,
+			float centerX, float centerY, float centerZ, float upX, float upY, float upZ) {
+		float fx = centerX - eyeX;
+		float fy = centerY - eyeY;
+		float fz = centerZ - eyeZ;
+
+		final float rlf = 1f / (float) Math.sqrt(fx * fx + fy * fy + fz * fz);
+		fx *= rlf;
+		fy *= rlf;
+		fz *= rlf;
+
+		// s = f x up
+		float sx = fy * upZ - fz * upY;
+		float sy = fz * upX - fx * upZ;
+		float sz = fx * upY - fy * upX;
+
+		final float rls = 1f / (float) Math.sqrt(sx * sx + sy * sy + sz * sz);
+		sx *= rls;
+		sy *= rls;
+		sz *= rls;
+
+		// u = s x f
+		final float ux = sy * fz - sz * fy;
+		final float uy = sz * fx - sx * fz;
+		final float uz = sx * fy - sy * fx;
+
+		rm[offset] = sx;
+		rm[offset + 1] = ux;
+		rm[offset + 2] = -fx;
+		rm[offset + 3] = 0f;
+		rm[offset + 4] = sy;
+		rm[offset + 5] = uy;
+		rm[offset + 6] = -fy;
+		rm[offset + 7] = 0f;
+		rm[offset + 8] = sz;
+		rm[offset + 9] = uz;
+		rm[offset + 10] = -fz;
+		rm[offset + 11] = 0f;
+		rm[offset + 12] = 0f;
+		rm[offset + 13] = 0f;
+		rm[offset + 14] = 0f;
+		rm[offset + 15] = 1f;
+
+		translateM(rm, offset, -eyeX, -eyeY, -eyeZ);
+	}
+}
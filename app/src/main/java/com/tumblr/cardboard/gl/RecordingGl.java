@@ -0,0 +1,422 @@
+package com.tumblr.cardboard.gl;
+
+import android.graphics.Bitmap;
+import android.opengl.ETC1Util;
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Counts draw calls, state changes and uploaded bytes instead of drawing, so that renderer tests
+ * run on the JVM. Objects get increasing ids and shaders always compile. The only error is
+ * GL_INVALID_VALUE, for an attribute without a location.
+ */
+public class RecordingGl implements Gl {
+
+	private static final int MAX_TEXTURE_UNITS = 32;
+
+	private final String extensions;
+
+	private int nextId = 1;
+	private final Map<String, Integer> locations = new HashMap<>();
+	private final Set<String> inactiveAttributes = new HashSet<>();
+	private int error = GLES20.GL_NO_ERROR;
+
+	private int activeUnit;
+	private final int[] boundTextures = new int[MAX_TEXTURE_UNITS];
+	private int program;
+	private int unpackAlignment = 4;
+	private int minFilter = GLES20.GL_NEAREST_MIPMAP_LINEAR;
+
+	private int drawCalls;
+	private int vertices;
+	private int clears;
+	private int programChanges;
+	private int viewportChanges;
+	private int textureBinds;
+	private int redundantTextureBinds;
+	private int uniformUpdates;
+	private int attributePointers;
+	private int uploads;
+	private long uploadBytes;
+	private int mipmaps;
+	private int deletedTextures;
+
+	public RecordingGl() {
+		this("");
+	}
+
+	/**
+	 * @param extensions the extensions the fake device reports
+	 */
+	public RecordingGl(String extensions) {
+		this.extensions = extensions;
+	}
+
+	/**
+	 * Makes an attribute report no location, as if the shaders didn't use it.
+	 */
+	public void setInactive(String attribute) {
+		inactiveAttributes.add(attribute);
+	}
+
+	/**
+	 * Clears the counts, but not the state, e.g. between frames.
+	 */
+	public void resetCounts() {
+		drawCalls = 0;
+		vertices = 0;
+		clears = 0;
+		programChanges = 0;
+		viewportChanges = 0;
+		textureBinds = 0;
+		redundantTextureBinds = 0;
+		uniformUpdates = 0;
+		attributePointers = 0;
+		uploads = 0;
+		uploadBytes = 0;
+		mipmaps = 0;
+		deletedTextures = 0;
+	}
+
+	public int getUnpackAlignment() {
+		return unpackAlignment;
+	}
+
+	public int getMinFilter() {
+		return minFilter;
+	}
+
+	public int getDrawCalls() {
+		return drawCalls;
+	}
+
+	public int getVertices() {
+		return vertices;
+	}
+
+	public int getClears() {
+		return clears;
+	}
+
+	public int getProgramChanges() {
+		return programChanges;
+	}
+
+	public int getViewportChanges() {
+		return viewportChanges;
+	}
+
+	public int getTextureBinds() {
+		return textureBinds;
+	}
+
+	/**
+	 * @return binds of the texture that was already bound to the active unit
+	 */
+	public int getRedundantTextureBinds() {
+		return redundantTextureBinds;
+	}
+
+	public int getUniformUpdates() {
+		return uniformUpdates;
+	}
+
+	public int getAttributePointers() {
+		return attributePointers;
+	}
+
+	public int getUploads() {
+		return uploads;
+	}
+
+	public long getUploadBytes() {
+		return uploadBytes;
+	}
+
+	public int getMipmaps() {
+		return mipmaps;
+	}
+
+	public int getDeletedTextures() {
+		return deletedTextures;
+	}
+
+	/**
+	 * @return the texture bound to the unit, e.g. 0 for {@link GLES20#GL_TEXTURE0}
+	 */
+	public int getBoundTexture(int unit) {
+		return boundTextures[unit];
+	}
+
+	static int getBytesPerPixel(int format, int type) {
+		switch (type) {
+			case GLES20.GL_UNSIGNED_SHORT_5_6_5:
+			case GLES20.GL_UNSIGNED_SHORT_4_4_4_4:
+			case GLES20.GL_UNSIGNED_SHORT_5_5_5_1:
+				return 2;
+			default:
+				switch (format) {
+					case GLES20.GL_ALPHA:
+					case GLES20.GL_LUMINANCE:
+						return 1;
+					case GLES20.GL_LUMINANCE_ALPHA:
+						return 2;
+					case GLES20.GL_RGB:
+						return 3;
+					default:
+						return 4;
+				}
+		}
+	}
+
+	@Override
+	public void glClearColor(float red, float green, float blue, float alpha) {
+	}
+
+	@Override
+	public void glClear(int mask) {
+		clears++;
+	}
+
+	@Override
+	public void glEnable(int cap) {
+	}
+
+	@Override
+	public void glDisable(int cap) {
+	}
+
+	@Override
+	public void glViewport(int x, int y, int width, int height) {
+		viewportChanges++;
+	}
+
+	@Override
+	public void glBlendFunc(int sfactor, int dfactor) {
+	}
+
+	@Override
+	public void glReadPixels(int x, int y, int width, int height, int format, int type, Buffer pixels) {
+	}
+
+	@Override
+	public void glPixelStorei(int name, int param) {
+		if (name == GLES20.GL_UNPACK_ALIGNMENT) {
+			unpackAlignment = param;
+		}
+	}
+
+	@Override
+	public String glGetString(int name) {
+		return name == GLES20.GL_EXTENSIONS ? extensions : "";
+	}
+
+	@Override
+	public int glGetError() {
+		final int last = error;
+		error = GLES20.GL_NO_ERROR;
+		return last;
+	}
+
+	@Override
+	public int glCreateShader(int type) {
+		return nextId++;
+	}
+
+	@Override
+	public void glShaderSource(int shader, String source) {
+	}
+
+	@Override
+	public void glCompileShader(int shader) {
+	}
+
+	@Override
+	public void glGetShaderiv(int shader, int name, int[] params, int offset) {
+		params[offset] = GLES20.GL_TRUE;
+	}
+
+	@Override
+	public String glGetShaderInfoLog(int shader) {
+		return "";
+	}
+
+	@Override
+	public void glDeleteShader(int shader) {
+	}
+
+	@Override
+	public int glCreateProgram() {
+		return nextId++;
+	}
+
+	@Override
+	public void glAttachShader(int program, int shader) {
+	}
+
+	@Override
+	public void glLinkProgram(int program) {
+	}
+
+	@Override
+	public void glUseProgram(int program) {
+		if (program != this.program) {
+			programChanges++;
+			this.program = program;
+		}
+	}
+
+	@Override
+	public int glGetUniformLocation(int program, String name) {
+		return getLocation(program + "/" + name);
+	}
+
+	@Override
+	public int glGetAttribLocation(int program, String name) {
+		return inactiveAttributes.contains(name) ? -1 : getLocation(program + "/" + name);
+	}
+
+	private int getLocation(String key) {
+		Integer location = locations.get(key);
+		if (location == null) {
+			location = locations.size();
+			locations.put(key, location);
+		}
+		return location;
+	}
+
+	@Override
+	public void glUniform1f(int location, float x) {
+		uniformUpdates++;
+	}
+
+	@Override
+	public void glUniform1i(int location, int x) {
+		uniformUpdates++;
+	}
+
+	@Override
+	public void glUniform2f(int location, float x, float y) {
+		uniformUpdates++;
+	}
+
+	@Override
+	public void glUniform3f(int location, float x, float y, float z) {
+		uniformUpdates++;
+	}
+
+	@Override
+	public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+		uniformUpdates++;
+	}
+
+	@Override
+	public void glEnableVertexAttribArray(int index) {
+		checkAttribute(index);
+	}
+
+	@Override
+	public void glDisableVertexAttribArray(int index) {
+		checkAttribute(index);
+	}
+
+	@Override
+	public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride,
+			Buffer pointer) {
+		checkAttribute(index);
+		attributePointers++;
+	}
+
+	private void checkAttribute(int index) {
+		if (index < 0 && error == GLES20.GL_NO_ERROR) {
+			error = GLES20.GL_INVALID_VALUE;
+		}
+	}
+
+	@Override
+	public void glDrawArrays(int mode, int first, int count) {
+		drawCalls++;
+		vertices += count;
+	}
+
+	@Override
+	public void glGenTextures(int n, int[] textures, int offset) {
+		for (int i = 0; i < n; i++) {
+			textures[offset + i] = nextId++;
+		}
+	}
+
+	@Override
+	public void glDeleteTextures(int n, int[] textures, int offset) {
+		deletedTextures += n;
+	}
+
+	@Override
+	public void glActiveTexture(int texture) {
+		activeUnit = texture - GLES20.GL_TEXTURE0;
+	}
+
+	@Override
+	public void glBindTexture(int target, int texture) {
+		textureBinds++;
+		if (boundTextures[activeUnit] == texture) {
+			redundantTextureBinds++;
+		}
+		boundTextures[activeUnit] = texture;
+	}
+
+	@Override
+	public void glTexParameteri(int target, int name, int param) {
+		if (name == GLES20.GL_TEXTURE_MIN_FILTER) {
+			minFilter = param;
+		}
+	}
+
+	@Override
+	public void glTexImage2D(int target, int level, int internalFormat, int width, int height, int border,
+			int format, int type, Buffer pixels) {
+		uploads++;
+		uploadBytes += (long) width * height * getBytesPerPixel(format, type);
+	}
+
+	@Override
+	public void glTexSubImage2D(int target, int level, int xOffset, int yOffset, int width, int height,
+			int format, int type, Buffer pixels) {
+		uploads++;
+		uploadBytes += (long) width * height * getBytesPerPixel(format, type);
+	}
+
+	@Override
+	public void glGenerateMipmap(int target) {
+		mipmaps++;
+	}
+
+	@Override
+	public void glFinish() {
+	}
+
+	@Override
+	public void texImage2D(int target, int level, int internalFormat, Bitmap bitmap, int type) {
+		uploads++;
+		uploadBytes += bitmap.getByteCount();
+	}
+
+	@Override
+	public void texSubImage2D(int target, int level, int xOffset, int yOffset, Bitmap bitmap, int format,
+			int type) {
+		uploads++;
+		uploadBytes += bitmap.getByteCount();
+	}
+
+	@Override
+	public void loadEtc1Texture(int target, int level, int fallbackFormat, int fallbackType,
+			ETC1Util.ETC1Texture texture) {
+		uploads++;
+		uploadBytes += texture.getData().capacity();
+	}
+}
@@ -0,0 +1,199 @@
+package com.tumblr.cardboard.hud;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+/**
+ * The printable ASCII characters, drawn once into a grid of equal cells, so that text can be drawn
+ * in GL as one textured quad per character.
+ * <p/>
+ * Text is laid out in units of the cell height, so a line of text is one unit tall.
+ */
+public class GlyphAtlas {
+
+	static final char FIRST_CHAR = ' ';
+	static final char LAST_CHAR = '~';
+	private static final char MISSING_CHAR = '?';
+
+	private static final int COLUMNS = 16;
+	/**
+	 * Room around each glyph for its shadow, in pixels.
+	 */
+	private static final int PADDING = 4;
+
+	private static final float SHADOW_RADIUS = 3f;
+
+	/**
+	 * The x and y position of a vertex in text units, then its texture coordinates.
+	 */
+	public static final int FLOATS_PER_VERTEX = 4;
+	public static final int VERTICES_PER_CHAR = 6;
+
+	private final Bitmap bitmap;
+	private final int columns;
+	private final int cellWidth;
+	private final int cellHeight;
+	private final int padding;
+	private final int textureWidth;
+	private final int textureHeight;
+	/**
+	 * How far each character moves the pen, in pixels.
+	 */
+	private final float[] advances;
+
+	// Visible for testing.
+	GlyphAtlas(Bitmap bitmap, int columns, int cellWidth, int cellHeight, int padding, int textureWidth,
+			int textureHeight, float[] advances) {
+		this.bitmap = bitmap;
+		this.columns = columns;
+		this.cellWidth = cellWidth;
+		this.cellHeight = cellHeight;
+		this.padding = padding;
+		this.textureWidth = textureWidth;
+		this.textureHeight = textureHeight;
+		this.advances = advances;
+	}
+
+	/**
+	 * Draws the glyphs in white with a shadow, so that they can be tinted in the shader.
+	 *
+	 * @param textSize    the size of the text in pixels, which is about how big it is on screen
+	 * @param shadowColor the color of the shadow that keeps the text readable on photos
+	 */
+	public static GlyphAtlas bake(float textSize, int shadowColor) {
+		final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+		paint.setTextSize(textSize);
+		paint.setTypeface(Typeface.DEFAULT_BOLD);
+		paint.setColor(Color.WHITE);
+		paint.setShadowLayer(SHADOW_RADIUS, 0f, 0f, shadowColor);
+
+		final int numChars = LAST_CHAR - FIRST_CHAR + 1;
+		final char[] chars = new char[numChars];
+		for (int i = 0; i < numChars; i++) {
+			chars[i] = (char) (FIRST_CHAR + i);
+		}
+
+		final float[] advances = new float[numChars];
+		paint.getTextWidths(chars, 0, numChars, advances);
+
+		float widest = 0f;
+		for (float advance : advances) {
+			widest = Math.max(widest, advance);
+		}
+
+		final Paint.FontMetrics metrics = paint.getFontMetrics();
+		final int cellWidth = (int) Math.ceil(widest) + 2 * PADDING;
+		final int cellHeight = (int) Math.ceil(metrics.descent - metrics.ascent) + 2 * PADDING;
+		final int rows = (numChars + COLUMNS - 1) / COLUMNS;
+
+		// Glyphs aren't mipmapped, so the atlas doesn't need to be a power of two.
+		final Bitmap bitmap = Bitmap.createBitmap(COLUMNS * cellWidth, rows * cellHeight, Bitmap.Config.ARGB_8888);
+		final Canvas canvas = new Canvas(bitmap);
+		for (int i = 0; i < numChars; i++) {
+			final float x = (i % COLUMNS) * cellWidth + PADDING;
+			final float y = (i / COLUMNS) * cellHeight + PADDING - metrics.ascent;
+			canvas.drawText(chars, i, 1, x, y, paint);
+		}
+
+		return new GlyphAtlas(bitmap, COLUMNS, cellWidth, cellHeight, PADDING, bitmap.getWidth(),
+				bitmap.getHeight(), advances);
+	}
+
+	public Bitmap getBitmap() {
+		return bitmap;
+	}
+
+	/**
+	 * @return the width of a line of text, in text units
+	 */
+	public float getWidth(CharSequence text, int start, int end) {
+		float width = 0f;
+		for (int i = start; i < end; i++) {
+			width += advances[getIndex(text.charAt(i))];
+		}
+		return width / cellHeight;
+	}
+
+	/**
+	 * Lays text out as two triangles per character, with each line centered on x = 0 and the lines
+	 * going down from y = 0. Doesn't allocate.
+	 *
+	 * @param vertices where the vertices go, {@link #FLOATS_PER_VERTEX} floats each
+	 * @param maxChars the most characters that fit in vertices, beyond which text is cut off
+	 * @return the number of vertices
+	 */
+	public int layout(CharSequence text, float[] vertices, int maxChars) {
+		int numChars = 0;
+		int lineStart = 0;
+		int line = 0;
+
+		while (lineStart <= text.length()) {
+			int lineEnd = lineStart;
+			while (lineEnd < text.length() && text.charAt(lineEnd) != '\n') {
+				lineEnd++;
+			}
+
+			float pen = -getWidth(text, lineStart, lineEnd) / 2;
+			final float top = -line;
+
+			for (int i = lineStart; i < lineEnd; i++) {
+				final int index = getIndex(text.charAt(i));
+
+				if (text.charAt(i) != ' ') {
+					if (numChars == maxChars) {
+						return numChars * VERTICES_PER_CHAR;
+					}
+					putGlyph(vertices, numChars * VERTICES_PER_CHAR * FLOATS_PER_VERTEX, index, pen, top);
+					numChars++;
+				}
+
+				pen += advances[index] / cellHeight;
+			}
+
+			lineStart = lineEnd + 1;
+			line++;
+		}
+
+		return numChars * VERTICES_PER_CHAR;
+	}
+
+	/**
+	 * Puts the glyph's whole cell, padding and all, with the pen at the start of the glyph.
+	 */
+	private void putGlyph(float[] vertices, int offset, int index, float pen, float top) {
+		final float left = pen - (float) padding / cellHeight;
+		final float right = left + (float) cellWidth / cellHeight;
+		final float bottom = top - 1f;
+
+		final float u0 = (float) ((index % columns) * cellWidth) / textureWidth;
+		final float v0 = (float) ((index / columns) * cellHeight) / textureHeight;
+		final float u1 = u0 + (float) cellWidth / textureWidth;
+		final float v1 = v0 + (float) cellHeight / textureHeight;
+
+		// The first row of the bitmap is at v = 0, the top of the glyph.
+		offset = putVertex(vertices, offset, left, top, u0, v0);
+		offset = putVertex(vertices, offset, left, bottom, u0, v1);
+		offset = putVertex(vertices, offset, right, top, u1, v0);
+		offset = putVertex(vertices, offset, right, top, u1, v0);
+		offset = putVertex(vertices, offset, left, bottom, u0, v1);
+		putVertex(vertices, offset, right, bottom, u1, v1);
+	}
+
+	private static int putVertex(float[] vertices, int offset, float x, float y, float u, float v) {
+		vertices[offset] = x;
+		vertices[offset + 1] = y;
+		vertices[offset + 2] = u;
+		vertices[offset + 3] = v;
+		return offset + FLOATS_PER_VERTEX;
+	}
+
+	private static int getIndex(char c) {
+		if (c < FIRST_CHAR || c > LAST_CHAR) {
+			c = MISSING_CHAR;
+		}
+		return c - FIRST_CHAR;
+	}
+}
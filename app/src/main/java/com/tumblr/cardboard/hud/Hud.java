@@ -0,0 +1,112 @@
+package com.tumblr.cardboard.hud;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * A message that floats in front of the user and fades out, drawn by the scene from a
+ * {@link GlyphAtlas}. Messages can be shown from any thread, and are laid out on the GL thread.
+ */
+public class Hud {
+
+	/**
+	 * How long a message takes to fade out, in milliseconds.
+	 */
+	public static final long FADE_MILLIS = 5000;
+	public static final int MAX_CHARS = 256;
+
+	private final GlyphAtlas atlas;
+	private final float[] color;
+
+	private final float[] vertices = new float[MAX_CHARS * GlyphAtlas.VERTICES_PER_CHAR
+			* GlyphAtlas.FLOATS_PER_VERTEX];
+	private final FloatBuffer positions;
+	private final FloatBuffer texCoords;
+	private int numVertices;
+
+	private String pendingText;
+	private long shownAt = -1;
+	private float alpha;
+
+	/**
+	 * @param color the color of the text, as red, green and blue from 0 to 1
+	 */
+	public Hud(GlyphAtlas atlas, float[] color) {
+		this.atlas = atlas;
+		this.color = color;
+
+		positions = ByteBuffer.allocateDirect(vertices.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		texCoords = positions.duplicate();
+		texCoords.position(2);
+	}
+
+	/**
+	 * Replaces the message, which starts fading out from the next frame.
+	 */
+	public synchronized void show(String text) {
+		pendingText = text;
+	}
+
+	/**
+	 * Lays out a new message, and fades the current one. Called on the GL thread once per frame.
+	 *
+	 * @param timeMillis the time of the frame
+	 * @return whether there is anything to draw
+	 */
+	public boolean update(long timeMillis) {
+		final String text;
+		synchronized (this) {
+			text = pendingText;
+			pendingText = null;
+		}
+
+		if (text != null) {
+			numVertices = atlas.layout(text, vertices, MAX_CHARS);
+			positions.position(0);
+			positions.put(vertices, 0, numVertices * GlyphAtlas.FLOATS_PER_VERTEX);
+			positions.position(0);
+			shownAt = timeMillis;
+		}
+
+		if (shownAt < 0 || numVertices == 0) {
+			return false;
+		}
+
+		alpha = 1f - (float) (timeMillis - shownAt) / FADE_MILLIS;
+		return alpha > 0f;
+	}
+
+	public GlyphAtlas getAtlas() {
+		return atlas;
+	}
+
+	public float[] getColor() {
+		return color;
+	}
+
+	/**
+	 * @return how faded the message is, from 1 when it is shown to 0
+	 */
+	public float getAlpha() {
+		return alpha;
+	}
+
+	public int getNumVertices() {
+		return numVertices;
+	}
+
+	/**
+	 * @return the x and y of each vertex, with a stride of {@link GlyphAtlas#FLOATS_PER_VERTEX}
+	 */
+	public FloatBuffer getPositions() {
+		return positions;
+	}
+
+	/**
+	 * @return the texture coordinates of each vertex, with the same stride
+	 */
+	public FloatBuffer getTexCoords() {
+		return texCoords;
+	}
+}
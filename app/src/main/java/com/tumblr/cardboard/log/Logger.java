@@ -0,0 +1,41 @@
+package com.tumblr.cardboard.log;
+
+import android.util.Log;
+
+import com.tumblr.cardboard.BuildConfig;
+
+/**
+ * Logging that is compiled out below {@link BuildConfig#LOG_LEVEL}.
+ * <p/>
+ * Hot paths should check the level before building a message, e.g.
+ * {@code if (Logger.DEBUG) Logger.d(TAG, "Uploading " + texIndex);}. The levels are compile time
+ * constants, so javac drops the whole statement, string concatenation included, when the level is
+ * off. ProGuard strips any calls that are left in release builds.
+ */
+public final class Logger {
+
+	public static final boolean VERBOSE = BuildConfig.LOG_LEVEL <= Log.VERBOSE;
+	public static final boolean DEBUG = BuildConfig.LOG_LEVEL <= Log.DEBUG;
+	public static final boolean INFO = BuildConfig.LOG_LEVEL <= Log.INFO;
+
+	private Logger() {
+	}
+
+	public static void v(String tag, String message) {
+		if (VERBOSE) {
+			Log.v(tag, message);
+		}
+	}
+
+	public static void d(String tag, String message) {
+		if (DEBUG) {
+			Log.d(tag, message);
+		}
+	}
+
+	public static void i(String tag, String message) {
+		if (INFO) {
+			Log.i(tag, message);
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.tumblr.cardboard.log;
+
+import java.io.IOException;
+
+/**
+ * A ring buffer of the last {@link #CAPACITY} events, for finding out what happened right before
+ * something went wrong. Events are an id and two numbers, so logging one doesn't allocate and can
+ * be left on in hot paths. Off unless enabled at runtime, see {@link #setEnabled(boolean)}.
+ */
+public final class TraceLog {
+
+	public static final int EVENT_REQUEST_CREATE = 0;
+	public static final int EVENT_REQUEST_UPDATE = 1;
+	public static final int EVENT_UPLOAD = 2;
+	public static final int EVENT_UPLOAD_COMPRESSED = 3;
+	public static final int EVENT_LOAD_PHOTO = 4;
+	public static final int EVENT_SELECT = 5;
+	public static final int EVENT_QUALITY_TIER = 6;
+	private static final String[] EVENT_NAMES = {
+			"request create", "request update", "upload", "upload compressed", "load photo", "select",
+			"quality tier"
+	};
+
+	static final int CAPACITY = 1024;
+
+	private static final TraceLog INSTANCE = new TraceLog();
+
+	private volatile boolean enabled;
+
+	private final int[] events = new int[CAPACITY];
+	private final long[] times = new long[CAPACITY];
+	private final long[] firstArgs = new long[CAPACITY];
+	private final long[] secondArgs = new long[CAPACITY];
+	private int next;
+	private int size;
+
+	TraceLog() {
+	}
+
+	public static TraceLog getInstance() {
+		return INSTANCE;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Records an event if the trace log is enabled.
+	 *
+	 * @param event one of the {@code EVENT_} constants
+	 */
+	public void log(int event, long firstArg, long secondArg) {
+		if (!enabled) {
+			return;
+		}
+
+		final long time = System.nanoTime();
+		synchronized (this) {
+			events[next] = event;
+			times[next] = time;
+			firstArgs[next] = firstArg;
+			secondArgs[next] = secondArg;
+			next = (next + 1) % CAPACITY;
+			size = Math.min(size + 1, CAPACITY);
+		}
+	}
+
+	/**
+	 * Writes the events, oldest first, one per line. Times are in milliseconds on the
+	 * {@link System#nanoTime()} clock.
+	 */
+	public synchronized void writeTo(Appendable out) throws IOException {
+		final int first = (next - size + CAPACITY) % CAPACITY;
+		for (int i = 0; i < size; i++) {
+			final int index = (first + i) % CAPACITY;
+			out.append(String.valueOf(times[index] / 1000000)).append(' ')
+					.append(EVENT_NAMES[events[index]]).append(' ')
+					.append(String.valueOf(firstArgs[index])).append(' ')
+					.append(String.valueOf(secondArgs[index])).append('\n');
+		}
+	}
+
+	/**
+	 * Writes the events to the log, then clears them.
+	 */
+	public void dump(String tag) {
+		final StringBuilder builder = new StringBuilder();
+		synchronized (this) {
+			try {
+				writeTo(builder);
+			} catch (IOException e) {
+				// StringBuilder doesn't throw.
+			}
+			size = 0;
+		}
+
+		for (String line : builder.toString().split("\n")) {
+			if (!line.isEmpty()) {
+				Logger.i(tag, line);
+			}
+		}
+	}
+}
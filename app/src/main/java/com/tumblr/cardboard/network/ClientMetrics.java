@@ -0,0 +1,76 @@
+package com.tumblr.cardboard.network;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts what happens to calls made by {@link TumblrClient}.
+ */
+public class ClientMetrics {
+
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger throttled = new AtomicInteger();
+	private final AtomicInteger retried = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+	private final AtomicInteger cacheFallbacks = new AtomicInteger();
+
+	void onRequest() {
+		requests.incrementAndGet();
+	}
+
+	void onThrottled() {
+		throttled.incrementAndGet();
+	}
+
+	void onRetry() {
+		retried.incrementAndGet();
+	}
+
+	void onFailed() {
+		failed.incrementAndGet();
+	}
+
+	void onCacheFallback() {
+		cacheFallbacks.incrementAndGet();
+	}
+
+	/**
+	 * @return the number of calls made to the API, including retries
+	 */
+	public int getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * @return the number of calls rejected by the server because of rate limiting
+	 */
+	public int getThrottled() {
+		return throttled.get();
+	}
+
+	/**
+	 * @return the number of calls that were retried
+	 */
+	public int getRetried() {
+		return retried.get();
+	}
+
+	/**
+	 * @return the number of pages that could not be loaded after all retries
+	 */
+	public int getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * @return the number of failed pages that were served from the cache instead
+	 */
+	public int getCacheFallbacks() {
+		return cacheFallbacks.get();
+	}
+
+	@Override
+	public String toString() {
+		return "requests: " + getRequests() + " throttled: " + getThrottled() + " retried: " + getRetried()
+				+ " failed: " + getFailed() + " cache fallbacks: " + getCacheFallbacks();
+	}
+}
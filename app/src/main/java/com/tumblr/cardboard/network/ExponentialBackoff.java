@@ -0,0 +1,39 @@
+package com.tumblr.cardboard.network;
+
+import java.util.Random;
+
+/**
+ * Computes jittered exponential retry delays.
+ */
+public class ExponentialBackoff {
+
+	private final long baseMillis;
+	private final long maxMillis;
+	private final Random random;
+
+	public ExponentialBackoff(long baseMillis, long maxMillis) {
+		this(baseMillis, maxMillis, new Random());
+	}
+
+	// Visible for testing.
+	ExponentialBackoff(long baseMillis, long maxMillis, Random random) {
+		this.baseMillis = baseMillis;
+		this.maxMillis = maxMillis;
+		this.random = random;
+	}
+
+	/**
+	 * Uses "full jitter", so that clients that failed at the same time do not retry at the same time.
+	 *
+	 * @param attempt         the number of attempts that have already failed, starting from 1
+	 * @param retryAfterMillis the delay requested by the server, or 0 if there is none
+	 * @return the number of milliseconds to wait before the next attempt
+	 */
+	public long getDelay(int attempt, long retryAfterMillis) {
+		final int shift = Math.min(Math.max(attempt - 1, 0), 30);
+		final long ceiling = Math.min(maxMillis, baseMillis << shift);
+		final long delay = (long) (random.nextDouble() * ceiling);
+
+		return Math.max(delay, retryAfterMillis);
+	}
+}
@@ -0,0 +1,57 @@
+package com.tumblr.cardboard.network;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Identifies the image behind a Tumblr media URL, so that reblogs of the same image can share a
+ * single download. Reblogs keep the file name of the original upload, only the host and the size
+ * suffix change.
+ */
+public final class MediaKey {
+
+	/**
+	 * Matches file names like {@code tumblr_nz1abcD1qz9tfmo1_500.gif} or
+	 * {@code tumblr_inline_nz1abcD1qz9tfmo1_r1_1280.jpg}.
+	 */
+	private static final Pattern TUMBLR_MEDIA =
+			Pattern.compile("tumblr_(?:inline_)?([A-Za-z0-9]+?)(?:_r\\d+)?_\\d+h?\\.\\w+$");
+
+	/**
+	 * Matches a size suffix at the end of any other file name.
+	 */
+	private static final Pattern SIZE_SUFFIX = Pattern.compile("_\\d+h?(\\.\\w+)$");
+
+	private MediaKey() {
+	}
+
+	/**
+	 * @param url the URL of any size of an image
+	 * @return a key that is equal for every size and copy of the same image
+	 */
+	public static String fromUrl(String url) {
+		if (url == null) {
+			return null;
+		}
+
+		final Matcher matcher = TUMBLR_MEDIA.matcher(url);
+		if (matcher.find()) {
+			return matcher.group(1);
+		}
+
+		// Not a Tumblr file name, use the path without the host or size.
+		String path = url;
+		final int scheme = path.indexOf("://");
+		if (scheme >= 0) {
+			final int slash = path.indexOf('/', scheme + 3);
+			path = slash >= 0 ? path.substring(slash) : "";
+		}
+
+		final int query = path.indexOf('?');
+		if (query >= 0) {
+			path = path.substring(0, query);
+		}
+
+		return SIZE_SUFFIX.matcher(path).replaceFirst("$1");
+	}
+}
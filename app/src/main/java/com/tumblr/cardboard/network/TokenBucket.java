@@ -0,0 +1,84 @@
+package com.tumblr.cardboard.network;
+
+/**
+ * A simple client-side token bucket. Each API call takes one token, tokens are refilled at a fixed
+ * rate up to the bucket's capacity.
+ */
+public class TokenBucket {
+
+	private final int capacity;
+	private final long refillIntervalMillis;
+
+	private double tokens;
+	private long lastRefill;
+
+	/**
+	 * @param capacity             the maximum number of calls that can be made in a burst
+	 * @param refillIntervalMillis the time it takes to refill a single token
+	 */
+	public TokenBucket(int capacity, long refillIntervalMillis) {
+		if (capacity <= 0 || refillIntervalMillis <= 0) {
+			throw new IllegalArgumentException("Capacity and refill interval must be positive");
+		}
+		this.capacity = capacity;
+		this.refillIntervalMillis = refillIntervalMillis;
+		this.tokens = capacity;
+		this.lastRefill = -1;
+	}
+
+	/**
+	 * Takes a token if one is available.
+	 *
+	 * @param now the current time in milliseconds
+	 * @return 0 if a token was taken, otherwise the number of milliseconds until one is available
+	 */
+	public synchronized long tryAcquire(long now) {
+		refill(now);
+
+		if (tokens >= 1) {
+			tokens -= 1;
+			return 0;
+		}
+
+		return (long) Math.ceil((1 - tokens) * refillIntervalMillis);
+	}
+
+	/**
+	 * Blocks until a token is available, then takes it.
+	 *
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public void acquire() throws InterruptedException {
+		long wait;
+		while ((wait = tryAcquire(System.currentTimeMillis())) > 0) {
+			Thread.sleep(wait);
+		}
+	}
+
+	/**
+	 * Empties the bucket, used when the server tells us that we are being throttled so that every
+	 * caller sharing this bucket slows down.
+	 *
+	 * @param now the current time in milliseconds
+	 */
+	public synchronized void drain(long now) {
+		refill(now);
+		tokens = 0;
+	}
+
+	public synchronized int getCapacity() {
+		return capacity;
+	}
+
+	private void refill(long now) {
+		if (lastRefill < 0) {
+			lastRefill = now;
+			return;
+		}
+
+		if (now > lastRefill) {
+			tokens = Math.min(capacity, tokens + (double) (now - lastRefill) / refillIntervalMillis);
+			lastRefill = now;
+		}
+	}
+}
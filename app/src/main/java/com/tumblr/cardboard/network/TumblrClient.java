@@ -1,8 +1,12 @@
 package com.tumblr.cardboard.network;
 
 import android.support.v4.util.Pair;
+import android.util.Log;
+import android.util.LruCache;
 import com.tumblr.cardboard.BuildConfig;
+import com.tumblr.cardboard.pipeline.Stage;
 import com.tumblr.jumblr.JumblrClient;
+import com.tumblr.jumblr.exceptions.JumblrException;
 import com.tumblr.jumblr.types.PhotoPost;
 import com.tumblr.jumblr.types.Post;
 
@@ -15,22 +19,151 @@ import java.util.Map;
 /**
  * Basic {@link com.tumblr.jumblr.JumblrClient} that downloads photos.
  * <p/>
+ * Calls are rate limited by a token bucket shared by every client in the process, failed calls are
+ * retried with jittered exponential backoff, and if a page still can't be loaded the last copy of
+ * it is returned instead.
+ * <p/>
  * Created by ericleong on 10/23/14.
  */
 public class TumblrClient {
 
+	private static final String TAG = TumblrClient.class.getSimpleName();
+
 	private static final String TUMBLR_CONSUMER_KEY = BuildConfig.TUMBLR_CONSUMER_KEY;
 	private static final String TUMBLR_SECRET_KEY = BuildConfig.TUMBLR_SECRET_KEY;
 
 	private static final String TYPE_PHOTO = "photo";
 
+	private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+	private static final int MAX_ATTEMPTS = 4;
+	private static final long BACKOFF_BASE = 500;
+	private static final long BACKOFF_MAX = 16000;
+	/**
+	 * Jumblr does not expose the response headers, so we can't read Retry-After. Wait at least this
+	 * long after being throttled instead.
+	 */
+	private static final long DEFAULT_RETRY_AFTER = 5000;
+	/**
+	 * How often a backoff checks whether its task was cancelled.
+	 */
+	private static final long CANCEL_CHECK_INTERVAL = 100;
+
+	private static final int BUCKET_CAPACITY = 5;
+	private static final long BUCKET_REFILL = 1000;
+	private static final int PAGE_CACHE_SIZE = 16;
+
+	private static final TokenBucket RATE_LIMITER = new TokenBucket(BUCKET_CAPACITY, BUCKET_REFILL);
+	private static final LruCache<String, Pair<Long, List<PhotoPost>>> PAGE_CACHE =
+			new LruCache<>(PAGE_CACHE_SIZE);
+	private static final ClientMetrics METRICS = new ClientMetrics();
+
 	private JumblrClient mApi = new JumblrClient(TUMBLR_CONSUMER_KEY, TUMBLR_SECRET_KEY);
+	private final ExponentialBackoff mBackoff = new ExponentialBackoff(BACKOFF_BASE, BACKOFF_MAX);
+
+	/**
+	 * @return the metrics shared by every client in this process
+	 */
+	public static ClientMetrics getMetrics() {
+		return METRICS;
+	}
 
 	/**
 	 * @param query the tagged search parameter
 	 * @return a list of photo posts
+	 * @throws RuntimeException if the page could not be loaded and has not been loaded before
 	 */
 	public Pair<Long, List<PhotoPost>> getPosts(String query, long before) {
+		return getPosts(query, before, null);
+	}
+
+	/**
+	 * Stops retrying as soon as the task is cancelled.
+	 *
+	 * @param query the tagged search parameter
+	 * @param task  the task loading the page, or null
+	 * @return a list of photo posts, or null if the task was cancelled
+	 * @throws RuntimeException if the page could not be loaded and has not been loaded before
+	 */
+	public Pair<Long, List<PhotoPost>> getPosts(String query, long before, Stage.Task task) {
+		final String cacheKey = query + "@" + before;
+		RuntimeException error = null;
+
+		for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+			if (isCancelled(task)) {
+				return null;
+			}
+
+			long retryAfter = 0;
+
+			try {
+				RATE_LIMITER.acquire();
+
+				METRICS.onRequest();
+				final Pair<Long, List<PhotoPost>> page = getPostsInternal(query, before);
+				PAGE_CACHE.put(cacheKey, page);
+				return page;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (JumblrException e) {
+				error = e;
+
+				if (e.getResponseCode() == HTTP_TOO_MANY_REQUESTS) {
+					METRICS.onThrottled();
+					RATE_LIMITER.drain(System.currentTimeMillis());
+					retryAfter = DEFAULT_RETRY_AFTER;
+				} else if (e.getResponseCode() >= 400 && e.getResponseCode() < 500) {
+					// The request itself is bad, trying again won't help.
+					break;
+				}
+			} catch (RuntimeException e) {
+				// Jumblr wraps network errors in runtime exceptions.
+				error = e;
+			}
+
+			if (attempt < MAX_ATTEMPTS) {
+				final long delay = mBackoff.getDelay(attempt, retryAfter);
+				Log.w(TAG, "Failed to load " + query + ", retrying in " + delay + "ms", error);
+				METRICS.onRetry();
+
+				try {
+					sleep(delay, task);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+
+		METRICS.onFailed();
+
+		final Pair<Long, List<PhotoPost>> cached = PAGE_CACHE.get(cacheKey);
+		if (cached != null) {
+			METRICS.onCacheFallback();
+			Log.w(TAG, "Using cached page for " + query + ", " + METRICS);
+			return cached;
+		}
+
+		throw error != null ? error : new IllegalStateException("Interrupted while loading " + query);
+	}
+
+	private static boolean isCancelled(Stage.Task task) {
+		return task != null && task.isCancelled();
+	}
+
+	/**
+	 * Sleeps in short steps, so that a cancelled task doesn't hold its thread for the whole backoff.
+	 */
+	private static void sleep(long millis, Stage.Task task) throws InterruptedException {
+		while (millis > 0 && !isCancelled(task)) {
+			final long step = Math.min(millis, CANCEL_CHECK_INTERVAL);
+			Thread.sleep(step);
+			millis -= step;
+		}
+	}
+
+	private Pair<Long, List<PhotoPost>> getPostsInternal(String query, long before) {
 		final Map<String, String> options = new HashMap<String, String>();
 
 		options.put("type", TYPE_PHOTO);
@@ -0,0 +1,164 @@
+package com.tumblr.cardboard.pipeline;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A step of the photo pipeline, e.g. loading a page of posts or decoding gifs, with its own
+ * threads and a bounded queue. A full stage turns new work away instead of holding on to it, so
+ * that the stage before it can hold back.
+ */
+public class Stage {
+
+	/**
+	 * Work done by a stage. Cancelled tasks are dropped from the queue, and running tasks should
+	 * check {@link #isCancelled()} before handing on their results.
+	 */
+	public abstract static class Task implements Runnable {
+
+		private volatile boolean cancelled;
+		private Stage stage;
+		private long queuedNanos;
+
+		/**
+		 * Runs on one of the stage's threads.
+		 */
+		protected abstract void execute();
+
+		@Override
+		public final void run() {
+			if (!cancelled) {
+				execute();
+			}
+			stage.onDone(this);
+		}
+
+		public void cancel() {
+			cancelled = true;
+
+			if (stage != null) {
+				stage.remove(this);
+			}
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+	}
+
+	private final StageMetrics metrics;
+	private final ThreadPoolExecutor executor;
+	private final Set<Task> tasks = new HashSet<>();
+
+	/**
+	 * @param name     the name of the stage and its threads
+	 * @param threads  the number of tasks that run at once
+	 * @param capacity the number of tasks that can wait for a thread, beyond which tasks are
+	 *                 rejected
+	 */
+	public Stage(final String name, int threads, int capacity) {
+		if (threads <= 0 || capacity < 0) {
+			throw new IllegalArgumentException("A stage needs a thread and a non-negative capacity");
+		}
+
+		final BlockingQueue<Runnable> queue = capacity > 0
+				? new ArrayBlockingQueue<Runnable>(capacity) : new SynchronousQueue<Runnable>();
+
+		metrics = new StageMetrics(name);
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, queue, new ThreadFactory() {
+			private int count;
+
+			@Override
+			public Thread newThread(Runnable r) {
+				return new Thread(r, name + "-" + ++count);
+			}
+		});
+	}
+
+	/**
+	 * Queues a task, unless the stage is full.
+	 *
+	 * @return false if the task was rejected
+	 */
+	public boolean submit(Task task) {
+		synchronized (tasks) {
+			task.stage = this;
+			task.queuedNanos = metrics.onQueued();
+			tasks.add(task);
+		}
+
+		try {
+			executor.execute(task);
+			return true;
+		} catch (RejectedExecutionException e) {
+			synchronized (tasks) {
+				tasks.remove(task);
+			}
+			metrics.onRejected();
+			return false;
+		}
+	}
+
+	/**
+	 * Cancels every queued and running task, e.g. when a new page replaces the photos they were for.
+	 */
+	public void cancelAll() {
+		final Task[] cancelled;
+		synchronized (tasks) {
+			cancelled = tasks.toArray(new Task[tasks.size()]);
+		}
+
+		for (Task task : cancelled) {
+			task.cancel();
+		}
+	}
+
+	/**
+	 * Cancels every task and stops the threads.
+	 */
+	public void shutdown() {
+		cancelAll();
+		executor.shutdown();
+	}
+
+	public StageMetrics getMetrics() {
+		return metrics;
+	}
+
+	private void remove(Task task) {
+		// Running tasks finish on their own, queued ones free their place right away.
+		if (executor.remove(task)) {
+			synchronized (tasks) {
+				if (tasks.remove(task)) {
+					metrics.onCancelled();
+				}
+			}
+		}
+	}
+
+	private void onDone(Task task) {
+		synchronized (tasks) {
+			if (!tasks.remove(task)) {
+				return;
+			}
+		}
+
+		if (task.cancelled) {
+			metrics.onCancelled();
+		} else {
+			metrics.onFinished(task.queuedNanos);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return metrics.toString();
+	}
+}
@@ -0,0 +1,95 @@
+package com.tumblr.cardboard.pipeline;
+
+import com.tumblr.cardboard.profile.Histogram;
+
+/**
+ * How backed up a stage of the photo pipeline is, and how long work spends in it, from being
+ * queued until it is finished.
+ */
+public class StageMetrics {
+
+	private final String name;
+	private final Histogram latency = new Histogram();
+
+	private int depth;
+	private int maxDepth;
+	private int finished;
+	private int rejected;
+	private int cancelled;
+
+	public StageMetrics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return the time the work was queued, to pass to {@link #onFinished(long)}
+	 */
+	public synchronized long onQueued() {
+		depth++;
+		maxDepth = Math.max(maxDepth, depth);
+		return System.nanoTime();
+	}
+
+	/**
+	 * Work that was turned away after {@link #onQueued()}, because the stage was full.
+	 */
+	public synchronized void onRejected() {
+		depth--;
+		rejected++;
+	}
+
+	/**
+	 * Work that left the stage without being finished.
+	 */
+	public synchronized void onCancelled() {
+		depth--;
+		cancelled++;
+	}
+
+	public synchronized void onFinished(long queuedNanos) {
+		depth--;
+		finished++;
+		latency.record(System.nanoTime() - queuedNanos);
+	}
+
+	/**
+	 * @return the amount of work that is queued or running
+	 */
+	public synchronized int getDepth() {
+		return depth;
+	}
+
+	public synchronized int getMaxDepth() {
+		return maxDepth;
+	}
+
+	public synchronized int getFinished() {
+		return finished;
+	}
+
+	public synchronized int getRejected() {
+		return rejected;
+	}
+
+	public synchronized int getCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Starts a new reporting period. The current depth is kept.
+	 */
+	public synchronized void reset() {
+		latency.reset();
+		maxDepth = depth;
+		finished = 0;
+		rejected = 0;
+		cancelled = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return name + " depth: " + depth + " max: " + maxDepth + " finished: " + finished
+				+ " p50: " + latency.getPercentileMicros(50) / 1000 + "ms p90: " + latency.getPercentileMicros(90) / 1000
+				+ "ms rejected: " + rejected + " cancelled: " + cancelled;
+	}
+}
@@ -0,0 +1,308 @@
+package com.tumblr.cardboard.profile;
+
+import com.tumblr.cardboard.BuildConfig;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Times the phases of each frame and counts what the renderer does, then hands a {@link Report}
+ * to every {@link Sink} every {@link #REPORT_INTERVAL_FRAMES} frames.
+ * <p/>
+ * Each phase's histogram holds the time spent in that phase per rendered frame, for the frames
+ * where the phase ran at all. Phases can be timed from any thread, e.g. gif decoding happens on
+ * Glide's threads. When tracing is on, every timed section is also kept in a ring buffer that can
+ * be written out as a Chrome trace, to be opened in chrome://tracing.
+ */
+public class FrameProfiler {
+
+	public static final int PHASE_UPLOAD = 0;
+	public static final int PHASE_MATRICES = 1;
+	public static final int PHASE_DRAW_LEFT = 2;
+	public static final int PHASE_DRAW_RIGHT = 3;
+	public static final int PHASE_GIF_DECODE = 4;
+	/**
+	 * Time spent uploading gif frames, including any wait for the GPU to finish with the texture.
+	 */
+	public static final int PHASE_GIF_UPLOAD = 5;
+	static final int NUM_PHASES = 6;
+	static final String[] PHASE_NAMES = {"upload", "matrices", "draw left", "draw right", "gif decode",
+			"gif upload"};
+
+	public static final int COUNTER_UPLOADS = 0;
+	public static final int COUNTER_UPLOAD_BYTES = 1;
+	public static final int COUNTER_DRAWS = 2;
+	public static final int COUNTER_CULLED = 3;
+	public static final int COUNTER_POOL_HITS = 4;
+	static final int NUM_COUNTERS = 5;
+	static final String[] COUNTER_NAMES = {"uploads", "upload bytes", "draws", "culled", "pool hits"};
+
+	public static final int REPORT_INTERVAL_FRAMES = 300;
+	private static final int TRACE_CAPACITY = 1 << 16;
+
+	/**
+	 * The shared profiler only records in debug builds.
+	 */
+	private static final FrameProfiler INSTANCE = new FrameProfiler(BuildConfig.DEBUG);
+
+	/**
+	 * Receives a summary of the last {@link #REPORT_INTERVAL_FRAMES} frames, on the render thread.
+	 */
+	public interface Sink {
+		void onReport(Report report);
+	}
+
+	/**
+	 * Summary of the phases and counters over a number of frames.
+	 */
+	public static class Report {
+		public final int frames;
+		public final long[] p50Micros = new long[NUM_PHASES];
+		public final long[] p90Micros = new long[NUM_PHASES];
+		public final long[] maxMicros = new long[NUM_PHASES];
+		public final long[] counters = new long[NUM_COUNTERS];
+
+		Report(int frames) {
+			this.frames = frames;
+		}
+
+		/**
+		 * @return the counter averaged over the frames in the report
+		 */
+		public float getPerFrame(int counter) {
+			return frames == 0 ? 0 : (float) counters[counter] / frames;
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder builder = new StringBuilder();
+			builder.append(frames).append(" frames");
+			for (int phase = 0; phase < NUM_PHASES; phase++) {
+				builder.append(String.format(Locale.US, "\n%s: p50 %dus p90 %dus max %dus",
+						PHASE_NAMES[phase], p50Micros[phase], p90Micros[phase], maxMicros[phase]));
+			}
+			for (int counter = 0; counter < NUM_COUNTERS; counter++) {
+				builder.append(String.format(Locale.US, "\n%s: %.1f/frame",
+						COUNTER_NAMES[counter], getPerFrame(counter)));
+			}
+			return builder.toString();
+		}
+	}
+
+	private final boolean enabled;
+	private final List<Sink> sinks = new CopyOnWriteArrayList<>();
+
+	private final Histogram[] histograms = new Histogram[NUM_PHASES];
+	private final long[] frameNanos = new long[NUM_PHASES];
+	private final boolean[] frameTimed = new boolean[NUM_PHASES];
+	private final long[] frameCounters = new long[NUM_COUNTERS];
+	private final long[] counters = new long[NUM_COUNTERS];
+	private int frames;
+
+	private boolean tracing;
+	// Trace events, in a ring buffer. Phases are complete events, counters are counter events.
+	// Allocated the first time tracing is turned on, since they take about 2.5MB.
+	private boolean[] traceIsCounter;
+	private int[] traceIds;
+	private long[] traceThreads;
+	private long[] traceStartNanos;
+	private long[] traceValues;
+	private int traceNext;
+	private int traceSize;
+
+	/**
+	 * @param enabled whether anything is recorded; if not, every call returns right away
+	 */
+	FrameProfiler(boolean enabled) {
+		this.enabled = enabled;
+		for (int phase = 0; phase < NUM_PHASES; phase++) {
+			histograms[phase] = new Histogram();
+		}
+	}
+
+	public static FrameProfiler getInstance() {
+		return INSTANCE;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void addSink(Sink sink) {
+		sinks.add(sink);
+	}
+
+	public void removeSink(Sink sink) {
+		sinks.remove(sink);
+	}
+
+	/**
+	 * @param tracing whether timed sections are kept for {@link #writeTrace(Writer)}
+	 */
+	public synchronized void setTracing(boolean tracing) {
+		if (tracing && traceIds == null) {
+			traceIsCounter = new boolean[TRACE_CAPACITY];
+			traceIds = new int[TRACE_CAPACITY];
+			traceThreads = new long[TRACE_CAPACITY];
+			traceStartNanos = new long[TRACE_CAPACITY];
+			traceValues = new long[TRACE_CAPACITY];
+		}
+		this.tracing = tracing;
+	}
+
+	/**
+	 * @return the start time to pass to {@link #end(int, long)}
+	 */
+	public long begin() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Adds the time since the start to the phase.
+	 *
+	 * @return the end time, so that back to back sections can be chained
+	 */
+	public long end(int phase, long startNanos) {
+		if (!enabled) {
+			return 0;
+		}
+
+		final long now = System.nanoTime();
+		record(phase, startNanos, now - startNanos);
+		return now;
+	}
+
+	synchronized void record(int phase, long startNanos, long nanos) {
+		frameNanos[phase] += nanos;
+		frameTimed[phase] = true;
+
+		if (tracing) {
+			trace(false, phase, startNanos, nanos);
+		}
+	}
+
+	public void count(int counter, long delta) {
+		if (!enabled) {
+			return;
+		}
+
+		synchronized (this) {
+			frameCounters[counter] += delta;
+		}
+	}
+
+	private void trace(boolean isCounter, int id, long startNanos, long value) {
+		traceIsCounter[traceNext] = isCounter;
+		traceIds[traceNext] = id;
+		traceThreads[traceNext] = Thread.currentThread().getId();
+		traceStartNanos[traceNext] = startNanos;
+		traceValues[traceNext] = value;
+		traceNext = (traceNext + 1) % TRACE_CAPACITY;
+		traceSize = Math.min(traceSize + 1, TRACE_CAPACITY);
+	}
+
+	/**
+	 * Closes the current frame. Called on the render thread once the frame has been drawn.
+	 */
+	public void endFrame() {
+		if (!enabled) {
+			return;
+		}
+
+		final Report report;
+		synchronized (this) {
+			final long now = System.nanoTime();
+			for (int phase = 0; phase < NUM_PHASES; phase++) {
+				if (frameTimed[phase]) {
+					histograms[phase].record(frameNanos[phase]);
+				}
+				frameNanos[phase] = 0;
+				frameTimed[phase] = false;
+			}
+			for (int counter = 0; counter < NUM_COUNTERS; counter++) {
+				if (tracing && frameCounters[counter] != 0) {
+					trace(true, counter, now, frameCounters[counter]);
+				}
+				counters[counter] += frameCounters[counter];
+				frameCounters[counter] = 0;
+			}
+
+			if (++frames < REPORT_INTERVAL_FRAMES) {
+				return;
+			}
+
+			report = new Report(frames);
+			for (int phase = 0; phase < NUM_PHASES; phase++) {
+				report.p50Micros[phase] = histograms[phase].getPercentileMicros(50);
+				report.p90Micros[phase] = histograms[phase].getPercentileMicros(90);
+				report.maxMicros[phase] = histograms[phase].getMaxMicros();
+				histograms[phase].reset();
+			}
+			System.arraycopy(counters, 0, report.counters, 0, NUM_COUNTERS);
+			for (int counter = 0; counter < NUM_COUNTERS; counter++) {
+				counters[counter] = 0;
+			}
+			frames = 0;
+		}
+
+		for (Sink sink : sinks) {
+			sink.onReport(report);
+		}
+	}
+
+	/**
+	 * Writes the traced sections in the Chrome trace event format.
+	 */
+	public void writeTrace(Writer writer) throws IOException {
+		final boolean[] isCounter;
+		final int[] ids;
+		final long[] threads;
+		final long[] startNanos;
+		final long[] values;
+		final int size;
+
+		// Copy the ring buffer out, so that the render thread isn't blocked by the writer.
+		synchronized (this) {
+			size = traceSize;
+			isCounter = new boolean[size];
+			ids = new int[size];
+			threads = new long[size];
+			startNanos = new long[size];
+			values = new long[size];
+
+			final int first = (traceNext - size + TRACE_CAPACITY) % TRACE_CAPACITY;
+			for (int i = 0; i < size; i++) {
+				final int index = (first + i) % TRACE_CAPACITY;
+				isCounter[i] = traceIsCounter[index];
+				ids[i] = traceIds[index];
+				threads[i] = traceThreads[index];
+				startNanos[i] = traceStartNanos[index];
+				values[i] = traceValues[index];
+			}
+		}
+
+		writer.write("{\"traceEvents\":[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				writer.write(",\n");
+			}
+
+			if (isCounter[i]) {
+				writer.write(String.format(Locale.US,
+						"{\"name\":\"%s\",\"cat\":\"counter\",\"ph\":\"C\",\"ts\":%.3f,\"pid\":0,\"tid\":%d,"
+								+ "\"args\":{\"value\":%d}}",
+						COUNTER_NAMES[ids[i]], startNanos[i] / 1000.0, threads[i], values[i]));
+			} else {
+				writer.write(String.format(Locale.US,
+						"{\"name\":\"%s\",\"cat\":\"phase\",\"ph\":\"X\",\"ts\":%.3f,\"dur\":%.3f,\"pid\":0,"
+								+ "\"tid\":%d}",
+						PHASE_NAMES[ids[i]], startNanos[i] / 1000.0, values[i] / 1000.0, threads[i]));
+			}
+		}
+		writer.write("]}\n");
+		writer.flush();
+	}
+}
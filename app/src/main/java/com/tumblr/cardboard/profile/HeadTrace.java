@@ -0,0 +1,263 @@
+package com.tumblr.cardboard.profile;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A compact binary recording of a session: the head pose every frame, and when pages, photos and
+ * gif frames arrived. Replayed without a GPU to measure how the scene logic performs for real
+ * head motion.
+ * <p/>
+ * The file starts with {@link #MAGIC} and {@link #VERSION}, followed by records of a type byte, the
+ * milliseconds since the first record as an int, and the record's fields, all big endian.
+ */
+public class HeadTrace {
+
+	public static final int MAGIC = 0x54334448; // "T3DH"
+	public static final int VERSION = 1;
+
+	/**
+	 * The head view matrix and forward vector of a frame, as 19 floats.
+	 */
+	public static final int FRAME = 1;
+	/**
+	 * A page of posts, as the number of photos on the ring.
+	 */
+	public static final int PAGE = 2;
+	/**
+	 * A photo that is now showing, as its slot, width, height, number of frames and the length of
+	 * its animation in milliseconds. Still photos have one frame, gifs that are played frame by
+	 * frame have none.
+	 */
+	public static final int PHOTO = 3;
+	/**
+	 * A photo that was put in the theater, as its slot.
+	 */
+	public static final int SELECT = 4;
+	/**
+	 * A gif frame uploaded in place, as its slot.
+	 */
+	public static final int UPDATE = 5;
+
+	private static final int HEADER_BYTES = 8;
+	private static final int RECORD_HEADER_BYTES = 5;
+	private static final int FRAME_BYTES = RECORD_HEADER_BYTES + 19 * 4;
+	private static final int PHOTO_BYTES = RECORD_HEADER_BYTES + 5 * 4;
+
+	private HeadTrace() {
+	}
+
+	/**
+	 * Records into a buffer that is allocated up front, so recording never allocates. Recording
+	 * stops once the buffer is full. Thread safe.
+	 */
+	public static class Recorder {
+
+		private final ByteBuffer buffer;
+		private long startMillis = -1;
+		private boolean full;
+
+		/**
+		 * @param capacityBytes about 80 bytes per frame
+		 */
+		public Recorder(int capacityBytes) {
+			buffer = ByteBuffer.allocate(capacityBytes).order(ByteOrder.BIG_ENDIAN);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+		}
+
+		public synchronized void frame(long timeMillis, float[] headView, float[] forward) {
+			if (start(FRAME, timeMillis, FRAME_BYTES)) {
+				for (int i = 0; i < 16; i++) {
+					buffer.putFloat(headView[i]);
+				}
+				buffer.putFloat(forward[0]);
+				buffer.putFloat(forward[1]);
+				buffer.putFloat(forward[2]);
+			}
+		}
+
+		public synchronized void page(long timeMillis, int numImages) {
+			if (start(PAGE, timeMillis, RECORD_HEADER_BYTES + 4)) {
+				buffer.putInt(numImages);
+			}
+		}
+
+		public synchronized void photo(long timeMillis, int texIndex, int width, int height, int numFrames,
+		                               int durationMillis) {
+			if (start(PHOTO, timeMillis, PHOTO_BYTES)) {
+				buffer.putInt(texIndex);
+				buffer.putInt(width);
+				buffer.putInt(height);
+				buffer.putInt(numFrames);
+				buffer.putInt(durationMillis);
+			}
+		}
+
+		public synchronized void select(long timeMillis, int texIndex) {
+			if (start(SELECT, timeMillis, RECORD_HEADER_BYTES + 4)) {
+				buffer.putInt(texIndex);
+			}
+		}
+
+		public synchronized void update(long timeMillis, int texIndex) {
+			if (start(UPDATE, timeMillis, RECORD_HEADER_BYTES + 4)) {
+				buffer.putInt(texIndex);
+			}
+		}
+
+		/**
+		 * @return whether recording stopped because the buffer filled up
+		 */
+		public synchronized boolean isFull() {
+			return full;
+		}
+
+		public synchronized void writeTo(OutputStream out) throws IOException {
+			out.write(buffer.array(), 0, buffer.position());
+		}
+
+		private boolean start(int type, long timeMillis, int bytes) {
+			if (full || buffer.remaining() < bytes) {
+				full = true;
+				return false;
+			}
+
+			if (startMillis < 0) {
+				startMillis = timeMillis;
+			}
+			buffer.put((byte) type);
+			buffer.putInt((int) (timeMillis - startMillis));
+			return true;
+		}
+	}
+
+	/**
+	 * Steps through the records of a trace. The fields of the current record are read with the
+	 * getters that match its type.
+	 */
+	public static class Reader {
+
+		private final ByteBuffer buffer;
+
+		private int type;
+		private int timeMillis;
+		private final float[] headView = new float[16];
+		private final float[] forward = new float[3];
+		private final int[] fields = new int[5];
+
+		public Reader(byte[] data) throws IOException {
+			buffer = ByteBuffer.wrap(data).order(ByteOrder.BIG_ENDIAN);
+
+			if (data.length < HEADER_BYTES || buffer.getInt() != MAGIC) {
+				throw new IOException("Not a head trace");
+			}
+			final int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported head trace version " + version);
+			}
+		}
+
+		/**
+		 * Moves to the next record.
+		 *
+		 * @return false at the end of the trace
+		 * @throws IOException if the trace is truncated or has an unknown record
+		 */
+		public boolean next() throws IOException {
+			if (!buffer.hasRemaining()) {
+				return false;
+			}
+
+			try {
+				type = buffer.get();
+				timeMillis = buffer.getInt();
+
+				switch (type) {
+					case FRAME:
+						for (int i = 0; i < 16; i++) {
+							headView[i] = buffer.getFloat();
+						}
+						for (int i = 0; i < 3; i++) {
+							forward[i] = buffer.getFloat();
+						}
+						break;
+					case PHOTO:
+						for (int i = 0; i < 5; i++) {
+							fields[i] = buffer.getInt();
+						}
+						break;
+					case PAGE:
+					case SELECT:
+					case UPDATE:
+						fields[0] = buffer.getInt();
+						break;
+					default:
+						throw new IOException("Unknown record " + type + " at " + buffer.position());
+				}
+			} catch (BufferUnderflowException e) {
+				throw new IOException("Truncated head trace");
+			}
+			return true;
+		}
+
+		/**
+		 * Goes back to the first record.
+		 */
+		public void rewind() {
+			buffer.position(HEADER_BYTES);
+		}
+
+		public int getType() {
+			return type;
+		}
+
+		/**
+		 * @return the time of the record, in milliseconds since the first record
+		 */
+		public int getTimeMillis() {
+			return timeMillis;
+		}
+
+		public float[] getHeadView() {
+			return headView;
+		}
+
+		public float[] getForward() {
+			return forward;
+		}
+
+		/**
+		 * @return the number of photos of a {@link #PAGE}
+		 */
+		public int getNumImages() {
+			return fields[0];
+		}
+
+		/**
+		 * @return the slot of a {@link #PHOTO}, {@link #SELECT} or {@link #UPDATE}
+		 */
+		public int getTexIndex() {
+			return fields[0];
+		}
+
+		public int getWidth() {
+			return fields[1];
+		}
+
+		public int getHeight() {
+			return fields[2];
+		}
+
+		public int getNumFrames() {
+			return fields[3];
+		}
+
+		public int getDurationMillis() {
+			return fields[4];
+		}
+	}
+}
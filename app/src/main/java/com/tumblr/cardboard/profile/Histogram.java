@@ -0,0 +1,72 @@
+package com.tumblr.cardboard.profile;
+
+/**
+ * Counts durations in power of two buckets of microseconds, so that recording never allocates.
+ * Bucket {@code b} holds durations in {@code [2^(b-1), 2^b)} microseconds, and the last bucket
+ * holds everything over about a second. Not thread safe.
+ */
+public class Histogram {
+
+	static final int NUM_BUCKETS = 21;
+
+	private final int[] buckets = new int[NUM_BUCKETS];
+	private int count;
+	private long totalNanos;
+	private long maxNanos;
+
+	public void record(long nanos) {
+		buckets[getBucket(nanos)]++;
+		count++;
+		totalNanos += nanos;
+		maxNanos = Math.max(maxNanos, nanos);
+	}
+
+	static int getBucket(long nanos) {
+		final long micros = nanos / 1000;
+		if (micros <= 0) {
+			return 0;
+		}
+		return Math.min(NUM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the upper bound of the bucket that the percentile falls in, in microseconds
+	 */
+	public long getPercentileMicros(float percentile) {
+		if (count == 0) {
+			return 0;
+		}
+
+		final int rank = (int) Math.ceil(count * percentile / 100f);
+		int seen = 0;
+		for (int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+			seen += buckets[bucket];
+			if (seen >= rank && seen > 0) {
+				return Math.min(1L << bucket, getMaxMicros());
+			}
+		}
+		return getMaxMicros();
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public long getMeanMicros() {
+		return count == 0 ? 0 : totalNanos / count / 1000;
+	}
+
+	public long getMaxMicros() {
+		return maxNanos / 1000;
+	}
+
+	public void reset() {
+		for (int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+			buckets[bucket] = 0;
+		}
+		count = 0;
+		totalNanos = 0;
+		maxNanos = 0;
+	}
+}
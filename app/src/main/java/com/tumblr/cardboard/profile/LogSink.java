@@ -0,0 +1,20 @@
+package com.tumblr.cardboard.profile;
+
+import com.tumblr.cardboard.log.Logger;
+
+/**
+ * Writes each report to the log.
+ */
+public class LogSink implements FrameProfiler.Sink {
+
+	private final String tag;
+
+	public LogSink(String tag) {
+		this.tag = tag;
+	}
+
+	@Override
+	public void onReport(FrameProfiler.Report report) {
+		Logger.d(tag, report.toString());
+	}
+}
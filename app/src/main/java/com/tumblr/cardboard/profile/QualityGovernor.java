@@ -0,0 +1,232 @@
+package com.tumblr.cardboard.profile;
+
+/**
+ * Trades image quality for frame rate. Watches how far apart frames are and how warm the battery
+ * is, and steps through {@link Tier}s: down as soon as frames are being dropped, and back up only
+ * after a long run of smooth frames, so that it doesn't flip back and forth between two tiers.
+ * <p/>
+ * Frames are timed on the GL thread, and the battery is updated from the main thread. The tier
+ * can be read from any thread.
+ */
+public class QualityGovernor {
+
+	/**
+	 * What the app may spend on each frame.
+	 */
+	public static class Tier {
+		public final String name;
+		/**
+		 * How many more times photos on the ring are halved before they are uploaded.
+		 */
+		public final int lodBias;
+		/**
+		 * The shortest time a gif frame is shown, which caps how often gifs decode and upload.
+		 */
+		public final int minGifFrameMillis;
+		/**
+		 * The most gifs that are played frame by frame at once.
+		 */
+		public final int maxAnimatedGifs;
+		/**
+		 * The most photos on the ring.
+		 */
+		public final int maxSlots;
+
+		public Tier(String name, int lodBias, int minGifFrameMillis, int maxAnimatedGifs, int maxSlots) {
+			this.name = name;
+			this.lodBias = lodBias;
+			this.minGifFrameMillis = minGifFrameMillis;
+			this.maxAnimatedGifs = maxAnimatedGifs;
+			this.maxSlots = maxSlots;
+		}
+	}
+
+	/**
+	 * From the best quality to the cheapest.
+	 */
+	public static final Tier[] DEFAULT_TIERS = {
+			new Tier("full", 0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE),
+			new Tier("reduced", 1, 50, 4, Integer.MAX_VALUE),
+			new Tier("low", 1, 100, 2, 12),
+			new Tier("minimal", 2, 200, 1, 8),
+	};
+
+	public static final int REASON_SLOW_FRAMES = 0;
+	public static final int REASON_SMOOTH_FRAMES = 1;
+	public static final int REASON_BATTERY = 2;
+	private static final String[] REASON_NAMES = {"slow frames", "smooth frames", "battery"};
+
+	/**
+	 * Called on the GL thread when the tier changes.
+	 */
+	public interface Listener {
+		void onTierChanged(int tier, int previousTier, int reason);
+	}
+
+	private static final long FRAME_NANOS = 1000000000L / 60;
+	/**
+	 * A frame further than this from the last one missed at least one vsync.
+	 */
+	private static final long SLOW_FRAME_NANOS = FRAME_NANOS * 3 / 2;
+	/**
+	 * Longer gaps are pauses, e.g. while the activity was in the background, not slow frames.
+	 */
+	private static final long MAX_FRAME_NANOS = 250 * 1000000L;
+
+	/**
+	 * Frames are judged in windows of about two seconds.
+	 */
+	static final int WINDOW_FRAMES = 120;
+	/**
+	 * A window with this many slow frames steps down a tier.
+	 */
+	static final int MAX_SLOW_FRAMES = 6;
+	/**
+	 * A window with at most this many slow frames counts as smooth.
+	 */
+	static final int SMOOTH_SLOW_FRAMES = 1;
+	/**
+	 * Smooth windows in a row before stepping up a tier. Doubled every time a step up has to be
+	 * taken back right away.
+	 */
+	static final int UPGRADE_WINDOWS = 5;
+	static final int MAX_UPGRADE_WINDOWS = UPGRADE_WINDOWS * 8;
+
+	/**
+	 * Battery temperatures that hold the device at least one and two tiers down, in degrees Celsius.
+	 * The tier is only let back up once the battery has cooled down a little further.
+	 */
+	private static final float WARM_CELSIUS = 40f;
+	private static final float HOT_CELSIUS = 43f;
+	private static final float COOL_DOWN_CELSIUS = 2f;
+	private static final int LOW_BATTERY_PERCENT = 15;
+
+	private final Tier[] mTiers;
+	private final Listener mListener;
+
+	private volatile int mTier;
+	/**
+	 * The best tier the battery allows.
+	 */
+	private volatile int mFloor;
+	private int mHeat;
+
+	private long mLastFrameNanos;
+	private int mWindowFrames;
+	private int mSlowFrames;
+	private int mSmoothWindows;
+	private int mUpgradeWindows = UPGRADE_WINDOWS;
+	private boolean mUpgradedLastWindow;
+
+	public QualityGovernor(Listener listener) {
+		this(DEFAULT_TIERS, listener);
+	}
+
+	public QualityGovernor(Tier[] tiers, Listener listener) {
+		mTiers = tiers;
+		mListener = listener;
+	}
+
+	public Tier getTier() {
+		return mTiers[mTier];
+	}
+
+	public int getTierIndex() {
+		return mTier;
+	}
+
+	public static String getReasonName(int reason) {
+		return REASON_NAMES[reason];
+	}
+
+	/**
+	 * Forgets the last frame, so that the gap until the next one isn't counted. Called when frames
+	 * stop for a while, e.g. when the activity pauses.
+	 */
+	public void reset() {
+		mLastFrameNanos = 0;
+	}
+
+	/**
+	 * Updates the tiers the battery allows. Called on the main thread.
+	 *
+	 * @param celsius  the temperature of the battery
+	 * @param percent  how full the battery is
+	 * @param charging whether the device is plugged in
+	 */
+	public void setBattery(float celsius, int percent, boolean charging) {
+		if (celsius >= HOT_CELSIUS || mHeat == 2 && celsius >= HOT_CELSIUS - COOL_DOWN_CELSIUS) {
+			mHeat = 2;
+		} else if (celsius >= WARM_CELSIUS || mHeat >= 1 && celsius >= WARM_CELSIUS - COOL_DOWN_CELSIUS) {
+			mHeat = 1;
+		} else {
+			mHeat = 0;
+		}
+
+		final int floor = !charging && percent <= LOW_BATTERY_PERCENT ? Math.max(mHeat, 1) : mHeat;
+		mFloor = Math.min(floor, mTiers.length - 1);
+	}
+
+	/**
+	 * Counts a frame, and steps to another tier at the end of a window. Called on the GL thread.
+	 *
+	 * @param frameNanos when the frame started, on the {@link System#nanoTime()} clock
+	 */
+	public void onFrame(long frameNanos) {
+		final long interval = frameNanos - mLastFrameNanos;
+		final boolean counted = mLastFrameNanos != 0 && interval <= MAX_FRAME_NANOS;
+		mLastFrameNanos = frameNanos;
+
+		final int floor = mFloor;
+		if (mTier < floor) {
+			setTier(floor, REASON_BATTERY);
+			return;
+		}
+
+		if (!counted) {
+			return;
+		}
+
+		mWindowFrames++;
+		if (interval > SLOW_FRAME_NANOS) {
+			mSlowFrames++;
+		}
+
+		if (mWindowFrames < WINDOW_FRAMES) {
+			return;
+		}
+
+		final int slowFrames = mSlowFrames;
+		final boolean upgradedLastWindow = mUpgradedLastWindow;
+		mWindowFrames = 0;
+		mSlowFrames = 0;
+		mUpgradedLastWindow = false;
+
+		if (slowFrames >= MAX_SLOW_FRAMES) {
+			mSmoothWindows = 0;
+			if (upgradedLastWindow) {
+				mUpgradeWindows = Math.min(mUpgradeWindows * 2, MAX_UPGRADE_WINDOWS);
+			}
+			if (mTier < mTiers.length - 1) {
+				setTier(mTier + 1, REASON_SLOW_FRAMES);
+			}
+		} else if (slowFrames > SMOOTH_SLOW_FRAMES) {
+			mSmoothWindows = 0;
+		} else if (++mSmoothWindows >= mUpgradeWindows && mTier > floor) {
+			mSmoothWindows = 0;
+			mUpgradedLastWindow = true;
+			setTier(mTier - 1, REASON_SMOOTH_FRAMES);
+		}
+	}
+
+	private void setTier(int tier, int reason) {
+		final int previous = mTier;
+		mTier = tier;
+		mWindowFrames = 0;
+		mSlowFrames = 0;
+
+		if (mListener != null) {
+			mListener.onTierChanged(tier, previous, reason);
+		}
+	}
+}
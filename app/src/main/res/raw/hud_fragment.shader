@@ -0,0 +1,12 @@
+precision mediump float;
+
+uniform sampler2D u_Texture;
+uniform vec3 u_Color;
+uniform float u_Alpha;
+
+varying vec2 v_TexCoordinate;
+
+void main() {
+    // The glyphs are white, with premultiplied alpha.
+    gl_FragColor = texture2D(u_Texture, v_TexCoordinate) * vec4(u_Color, 1.0) * u_Alpha;
+}
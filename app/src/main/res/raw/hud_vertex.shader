@@ -0,0 +1,12 @@
+uniform mat4 u_ViewProjection[2];
+uniform float u_Eye;
+uniform mat4 u_Model;
+attribute vec4 a_Position;
+attribute vec2 a_TexCoordinate;
+varying vec2 v_TexCoordinate;
+
+void main()
+{
+   v_TexCoordinate = a_TexCoordinate;
+   gl_Position = u_ViewProjection[int(u_Eye)] * u_Model * a_Position;
+}
@@ -1,8 +1,10 @@
-uniform mat4 u_MVP;
-uniform mat4 u_MVMatrix;
+uniform mat4 u_ViewProjection[2];
+uniform float u_Eye;
 uniform mat4 u_Model;
 uniform vec3 u_LightPos;
 uniform float u_IsFloor;
+uniform vec2 u_TexOffset;
+uniform vec2 u_TexScale;
 attribute vec4 a_Position;
 attribute vec4 a_Color;
 attribute vec3 a_Normal;
@@ -14,18 +16,19 @@ varying vec2 v_TexCoordinate;
 
 void main()
 {
-   vec3 modelVertex = vec3(u_Model * a_Position);
-   v_Grid = modelVertex;
+   vec4 modelVertex = u_Model * a_Position;
+   v_Grid = vec3(modelVertex);
 
-   vec3 modelViewVertex = vec3(u_MVMatrix * a_Position);
-   vec3 modelViewNormal = vec3(u_MVMatrix * vec4(a_Normal, 0.0));
-   float distance = length(u_LightPos - modelViewVertex);
-   vec3 lightVector = normalize(u_LightPos - modelViewVertex);
-   float diffuse = max(dot(modelViewNormal, lightVector), 0.5);
+   // Lighting is done in world space, so that it is the same for both eyes.
+   vec3 modelNormal = vec3(u_Model * vec4(a_Normal, 0.0));
+   float distance = length(u_LightPos - v_Grid);
+   vec3 lightVector = normalize(u_LightPos - v_Grid);
+   float diffuse = max(dot(modelNormal, lightVector), 0.5);
    diffuse = diffuse * (1.0 / (1.0 + (0.00001 * distance * distance)));
    v_Color = a_Color * diffuse;
-   gl_Position = u_MVP * a_Position;
+   gl_Position = u_ViewProjection[int(u_Eye)] * modelVertex;
 
    v_isFloor = u_IsFloor;
-   v_TexCoordinate = a_TexCoordinate;
+   // Picks the current frame out of a gif atlas, or the whole texture.
+   v_TexCoordinate = a_TexCoordinate * u_TexScale + u_TexOffset;
 }
\ No newline at end of file
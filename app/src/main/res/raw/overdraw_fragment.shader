@@ -0,0 +1,7 @@
+precision mediump float;
+
+void main() {
+    // Every fragment adds SceneRenderer.OVERDRAW_STEP / 255 with additive blending, so the color
+    // buffer counts how many times each pixel was shaded.
+    gl_FragColor = vec4(16.0 / 255.0);
+}
@@ -0,0 +1,55 @@
+package com.tumblr.cardboard;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Tests how the chain of mipmaps for a compressed photo is built.
+ */
+public class Etc1CacheTest extends TestCase {
+
+    private static final short WHITE = (short) 0xFFFF;
+    private static final short RED = (short) 0xF800;
+    private static final short BLACK = 0;
+
+    private static ByteBuffer pixels(short... colors) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(colors.length * 2).order(ByteOrder.nativeOrder());
+        buffer.asShortBuffer().put(colors);
+        return buffer;
+    }
+
+    /**
+     * Ensures that each 2x2 block is averaged into a single pixel.
+     */
+    public void testDownsample() {
+        final ByteBuffer half = Etc1Cache.downsample(pixels(
+                WHITE, WHITE, RED, RED,
+                WHITE, WHITE, RED, BLACK), 4, 2);
+
+        assertEquals(4, half.capacity());
+        assertEquals(WHITE, half.asShortBuffer().get(0));
+        // Three quarters red, rounded.
+        assertEquals((short) (23 << 11), half.asShortBuffer().get(1));
+    }
+
+    /**
+     * Ensures that odd sizes are rounded down, and that the last row or column is reused.
+     */
+    public void testDownsampleOdd() {
+        final ByteBuffer half = Etc1Cache.downsample(pixels(RED, RED, RED), 3, 1);
+
+        assertEquals(2, half.capacity());
+        assertEquals(RED, half.asShortBuffer().get(0));
+    }
+
+    /**
+     * Ensures that levels are stored in whole 4x4 blocks, so that skipped levels are skipped exactly.
+     */
+    public void testEncodedSize() {
+        assertEquals(8, Etc1Cache.getEncodedSize(1, 1));
+        assertEquals(8, Etc1Cache.getEncodedSize(4, 4));
+        assertEquals(16 * 8 * 8, Etc1Cache.getEncodedSize(64, 30));
+    }
+}
@@ -0,0 +1,198 @@
+package com.tumblr.cardboard;
+
+import android.opengl.ETC1Util;
+import android.opengl.GLES20;
+
+import com.tumblr.cardboard.gl.Matrix4;
+import com.tumblr.cardboard.gl.RecordingGl;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Draws a scripted scene into a {@link RecordingGl} and checks what it cost.
+ */
+public class SceneRendererTest extends TestCase {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 32;
+
+    private RecordingGl gl;
+    private SceneRenderer renderer;
+    private final float[] identity = new float[16];
+
+    @Override
+    protected void setUp() {
+        gl = new RecordingGl();
+        renderer = new SceneRenderer(gl, 3);
+        renderer.onSurfaceCreated("vertex", "fragment");
+
+        Matrix4.setIdentityM(identity, 0);
+        renderer.setEye(0, identity, identity, new int[]{0, 0, 100, 100}, false);
+        renderer.setEye(1, identity, identity, new int[]{100, 0, 100, 100}, true);
+    }
+
+    private void upload(int texIndex) {
+        renderer.uploadPixels(texIndex, WIDTH, HEIGHT, GLES20.GL_RGB, GLES20.GL_UNSIGNED_SHORT_5_6_5,
+                ByteBuffer.allocateDirect(WIDTH * HEIGHT * 2));
+    }
+
+    /**
+     * Ensures that uploads are counted by their size in memory, and that rows aren't expected to be
+     * padded.
+     */
+    public void testUploadBytes() {
+        assertEquals(1, gl.getUnpackAlignment());
+
+        gl.resetCounts();
+        upload(0);
+
+        assertEquals(1, gl.getUploads());
+        assertEquals(WIDTH * HEIGHT * 2, gl.getUploadBytes());
+        assertTrue(renderer.isShowing(0));
+        assertFalse(renderer.isShowing(1));
+    }
+
+    private static ETC1Util.ETC1Texture[] chain(int width, int height) {
+        final List<ETC1Util.ETC1Texture> levels = new ArrayList<>();
+        while (true) {
+            levels.add(new ETC1Util.ETC1Texture(width, height, ByteBuffer.allocateDirect(
+                    ((width + 3) / 4) * ((height + 3) / 4) * 8)));
+            if (width == 1 && height == 1) {
+                return levels.toArray(new ETC1Util.ETC1Texture[levels.size()]);
+            }
+            width = Math.max(1, width / 2);
+            height = Math.max(1, height / 2);
+        }
+    }
+
+    /**
+     * Ensures that a compressed photo is uploaded with its whole chain of mipmaps, unless the device
+     * can't mipmap its size.
+     */
+    public void testUploadCompressed() {
+        gl.resetCounts();
+        renderer.uploadCompressed(0, chain(64, 32));
+
+        assertEquals(7, gl.getUploads());
+        assertEquals(0, gl.getMipmaps());
+        assertEquals(GLES20.GL_LINEAR_MIPMAP_LINEAR, gl.getMinFilter());
+        assertTrue(renderer.isShowing(0));
+
+        gl.resetCounts();
+        renderer.uploadCompressed(1, chain(48, 32));
+
+        assertEquals(1, gl.getUploads());
+        assertEquals(GLES20.GL_LINEAR, gl.getMinFilter());
+    }
+
+    /**
+     * Ensures that each object is drawn once per eye, that rects behind the head are skipped and
+     * that the viewport only changes once per object.
+     */
+    public void testDrawBothEyes() {
+        upload(0);
+        upload(1);
+
+        // One in front of the camera, one behind it.
+        renderer.placePhoto(0, 1, 0, 0, -40);
+        renderer.placePhoto(1, 1, 180, 0, -40);
+
+        renderer.setHeadView(identity);
+        assertEquals(0, renderer.getLookingAt());
+
+        gl.resetCounts();
+        renderer.clear();
+        renderer.drawScene(2);
+
+        // The floor and the rect in front, in each eye.
+        assertEquals(4, gl.getDrawCalls());
+        assertEquals(1, gl.getClears());
+        assertEquals(1, gl.getTextureBinds());
+        assertEquals(3, gl.getViewportChanges());
+        assertEquals(0, gl.getUploads());
+    }
+
+    /**
+     * Ensures that a single eye only draws each object once.
+     */
+    public void testDrawOneEye() {
+        upload(0);
+        renderer.placeInFront(0, 6, 40);
+        renderer.setHeadView(identity);
+
+        gl.resetCounts();
+        renderer.drawScene(1);
+
+        assertEquals(2, gl.getDrawCalls());
+        assertEquals(1, gl.getViewportChanges());
+    }
+
+    /**
+     * Ensures that attributes the shaders optimized away, as the overdraw shader does, are skipped
+     * instead of raising GL errors.
+     */
+    public void testInactiveAttributes() {
+        gl = new RecordingGl();
+        gl.setInactive("a_Normal");
+        gl.setInactive("a_Color");
+        gl.setInactive("a_TexCoordinate");
+        renderer = new SceneRenderer(gl, 1);
+        renderer.onSurfaceCreated("vertex", "overdraw");
+        renderer.setEye(0, identity, identity, new int[]{0, 0, 100, 100}, false);
+
+        upload(0);
+        renderer.placeInFront(0, 6, 40);
+        renderer.setHeadView(identity);
+        renderer.drawScene(1);
+
+        assertEquals(GLES20.GL_NO_ERROR, gl.glGetError());
+        assertEquals(2, gl.getDrawCalls());
+    }
+
+    /**
+     * Ensures that rects are drawn nearest first, after the theater.
+     */
+    public void testDrawOrder() {
+        upload(0);
+        upload(1);
+        upload(2);
+        renderer.placePhoto(0, 1, 0, 0, -40);
+        renderer.placePhoto(1, 1, 10, 0, -20);
+        renderer.placeInFront(2, 6, 40);
+
+        renderer.setHeadView(identity);
+        assertEquals(1, renderer.getDrawOrder()[0]);
+        assertEquals(0, renderer.getDrawOrder()[1]);
+        assertEquals(2, renderer.getDrawOrder()[2]);
+
+        renderer.setSelectedIndex(2);
+        renderer.setHeadView(identity);
+        assertEquals(2, renderer.getDrawOrder()[0]);
+        assertEquals(1, renderer.getDrawOrder()[1]);
+        assertEquals(0, renderer.getDrawOrder()[2]);
+    }
+
+    /**
+     * Ensures that a texture from the upload thread replaces the slot's old one everywhere it was
+     * shown, and that the old one is deleted.
+     */
+    public void testAdoptTexture() {
+        upload(0);
+        renderer.shareTexture(0, 1);
+        renderer.placePhoto(1, 1, 0, 0, -40);
+        renderer.setHeadView(identity);
+
+        gl.resetCounts();
+        renderer.adoptTexture(0, 42, WIDTH, HEIGHT, WIDTH * HEIGHT * 4);
+        renderer.drawScene(1);
+
+        assertEquals(1, gl.getDeletedTextures());
+        assertEquals(0, gl.getUploads());
+        // The reblog in slot 1 is drawn with the new texture.
+        assertEquals(42, gl.getBoundTexture(1));
+    }
+}
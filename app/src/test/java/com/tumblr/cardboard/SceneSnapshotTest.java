@@ -0,0 +1,96 @@
+package com.tumblr.cardboard;
+
+import android.opengl.ETC1Util;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Tests which photos are kept in the snapshot, and that it reads back what was written.
+ */
+public class SceneSnapshotTest extends TestCase {
+
+    private static ETC1Util.ETC1Texture[] chain(int width, int height) {
+        final int levels = 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+        final ETC1Util.ETC1Texture[] chain = new ETC1Util.ETC1Texture[levels];
+
+        for (int i = 0; i < levels; i++) {
+            final int size = Etc1Cache.getEncodedSize(width, height);
+            final ByteBuffer data = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+            data.put(0, (byte) i);
+            chain[i] = new ETC1Util.ETC1Texture(width, height, data);
+            width = Math.max(1, width / 2);
+            height = Math.max(1, height / 2);
+        }
+        return chain;
+    }
+
+    /**
+     * Ensures that the largest level that fits is kept.
+     */
+    public void testCaptureCompressed() {
+        final SceneSnapshot snapshot = new SceneSnapshot(4);
+        snapshot.setPage("cats", 4);
+        snapshot.captureCompressed(1, snapshot.getPage(), chain(1024, 512));
+
+        final SceneSnapshot.Slot slot = snapshot.getSlot(1);
+        assertEquals(SceneSnapshot.FORMAT_ETC1, slot.format);
+        assertEquals(256, slot.width);
+        assertEquals(128, slot.height);
+        assertEquals(2, slot.pixels.get(0));
+    }
+
+    /**
+     * Ensures that a new page drops the previous page's photos and blog names, and photos that
+     * finish loading for it afterwards.
+     */
+    public void testSetPage() {
+        final SceneSnapshot snapshot = new SceneSnapshot(4);
+        snapshot.setPage("cats", 4);
+        final int oldPage = snapshot.getPage();
+        snapshot.setBlogName(1, "staff");
+        snapshot.captureCompressed(1, oldPage, chain(64, 64));
+
+        snapshot.setPage("dogs", 4);
+        assertTrue(snapshot.isEmpty());
+        assertNull(snapshot.getBlogName(1));
+
+        snapshot.captureCompressed(2, oldPage, chain(64, 64));
+        assertTrue(snapshot.isEmpty());
+    }
+
+    /**
+     * Ensures that the page, the photos and their blog names are read back from the file.
+     */
+    public void testWriteAndRead() throws IOException {
+        final SceneSnapshot snapshot = new SceneSnapshot(4);
+        snapshot.setPage("cats", 3);
+        snapshot.setSelectedTexIndex(2);
+        snapshot.setBlogName(2, "staff");
+        snapshot.captureCompressed(2, snapshot.getPage(), chain(8, 4));
+
+        final File file = File.createTempFile("snapshot", ".bin");
+        try {
+            snapshot.writeTo(file);
+
+            final SceneSnapshot read = SceneSnapshot.read(file, 4);
+            assertEquals("cats", read.getSearchTerm());
+            assertEquals(3, read.getNumImages());
+            assertEquals(2, read.getSelectedTexIndex());
+            assertEquals("staff", read.getBlogName(2));
+            assertNull(read.getSlot(1));
+
+            final SceneSnapshot.Slot slot = read.getSlot(2);
+            assertEquals(SceneSnapshot.FORMAT_ETC1, slot.format);
+            assertEquals(8, slot.width);
+            assertEquals(4, slot.height);
+            assertEquals(Etc1Cache.getEncodedSize(8, 4), slot.pixels.remaining());
+        } finally {
+            file.delete();
+        }
+    }
+}
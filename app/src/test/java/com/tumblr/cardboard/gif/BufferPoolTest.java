@@ -0,0 +1,135 @@
+package com.tumblr.cardboard.gif;
+
+import android.graphics.Bitmap;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the hit rate and byte counts that the gif frame pool reports, with fake buffers in place of
+ * bitmaps.
+ */
+public class BufferPoolTest extends TestCase {
+
+    private static final int SIZE = 10;
+    private static final int BYTES = SIZE * SIZE * 4;
+
+    private static class Buffer {
+        final long key;
+        final int bytes;
+        boolean recycled;
+
+        Buffer(int width, int height, Bitmap.Config config) {
+            key = BufferPool.getKey(width, height, config);
+            bytes = width * height * 4;
+        }
+    }
+
+    private static class FakePool extends BufferPool<Buffer> {
+        int created;
+
+        FakePool(int maxBytes) {
+            super(maxBytes);
+        }
+
+        @Override
+        Buffer create(int width, int height, Bitmap.Config config) {
+            created++;
+            return new Buffer(width, height, config);
+        }
+
+        @Override
+        long getKey(Buffer buffer) {
+            return buffer.key;
+        }
+
+        @Override
+        int getByteCount(Buffer buffer) {
+            return buffer.bytes;
+        }
+
+        @Override
+        boolean isRecycled(Buffer buffer) {
+            return buffer.recycled;
+        }
+
+        @Override
+        boolean isMutable(Buffer buffer) {
+            return true;
+        }
+
+        @Override
+        void recycle(Buffer buffer) {
+            buffer.recycled = true;
+        }
+    }
+
+    /**
+     * Ensures that released buffers are counted as held until they are reused, and that the pool
+     * recycles buffers past its limit.
+     */
+    public void testHeld() {
+        final FakePool pool = new FakePool(BYTES);
+
+        final Buffer first = pool.obtain(SIZE, SIZE, null);
+        final Buffer second = pool.obtain(SIZE, SIZE, null);
+        assertEquals(2, pool.getMisses());
+        assertEquals(0f, pool.getHitRate());
+
+        pool.release(first);
+        pool.release(second);
+        assertEquals(BYTES, pool.getBytesHeld());
+        assertTrue(second.recycled);
+
+        // A buffer of another size is a miss.
+        pool.obtain(SIZE, SIZE * 2, null);
+        assertEquals(3, pool.created);
+
+        assertSame(first, pool.obtain(SIZE, SIZE, null));
+        assertEquals(0, pool.getBytesHeld());
+        assertEquals(0.25f, pool.getHitRate());
+
+        pool.release(first);
+        pool.clear();
+        assertEquals(0, pool.getBytesHeld());
+        assertTrue(first.recycled);
+    }
+
+    /**
+     * Ensures that a reservation keeps its buffers to itself until it is closed, and that its hits
+     * count towards the hit rate.
+     */
+    public void testReserved() {
+        final FakePool pool = new FakePool(4 * BYTES);
+        final FakePool.Reservation gif = pool.new Reservation();
+        final FakePool.Reservation other = pool.new Reservation();
+
+        final Buffer buffer = gif.obtain(SIZE, SIZE, null);
+        assertTrue(gif.put(buffer));
+        assertEquals(BYTES, pool.getBytesReserved());
+        assertEquals(0, pool.getBytesHeld());
+
+        // Another gif of the same size can't take it.
+        assertNotSame(buffer, other.obtain(SIZE, SIZE, null));
+
+        assertSame(buffer, gif.obtain(SIZE, SIZE, null));
+        assertEquals(0, pool.getBytesReserved());
+        assertEquals(1f / 3, pool.getHitRate(), 0.001f);
+
+        gif.put(buffer);
+        gif.close();
+        assertEquals(0, pool.getBytesReserved());
+        assertEquals(BYTES, pool.getBytesHeld());
+
+        // Once closed, buffers go straight back to the pool.
+        final Buffer late = new Buffer(SIZE, SIZE, null);
+        assertTrue(gif.put(late));
+        assertEquals(0, pool.getBytesReserved());
+        assertEquals(2 * BYTES, pool.getBytesHeld());
+
+        assertSame(buffer, other.obtain(SIZE, SIZE, null));
+
+        // Recycled buffers are turned away.
+        late.recycled = true;
+        assertFalse(other.put(late));
+    }
+}
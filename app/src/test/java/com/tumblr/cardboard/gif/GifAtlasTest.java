@@ -0,0 +1,56 @@
+package com.tumblr.cardboard.gif;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the layout and timeline of gif atlases.
+ */
+public class GifAtlasTest extends TestCase {
+
+    /**
+     * Ensures that frames are laid out in a roughly square grid that holds all of them.
+     */
+    public void testColumns() {
+        assertEquals(4, GifAtlas.getColumns(16, 200, 200));
+        assertEquals(5, GifAtlas.getColumns(20, 200, 200));
+        // Wide frames stack in fewer columns.
+        assertEquals(2, GifAtlas.getColumns(10, 400, 100));
+    }
+
+    /**
+     * Ensures that long, large or still gifs are played frame by frame instead.
+     */
+    public void testNoAtlas() {
+        assertEquals(0, GifAtlas.getColumns(1, 200, 200));
+        assertEquals(0, GifAtlas.getColumns(GifAtlas.MAX_FRAMES + 1, 100, 100));
+        assertEquals(0, GifAtlas.getColumns(16, 600, 600));
+        assertEquals(0, GifAtlas.getColumns(2, GifAtlas.MAX_SIZE + 1, 100));
+        // Fits in the largest texture, but would take 8MB even at 16 bits per pixel.
+        assertEquals(0, GifAtlas.getColumns(16, 500, 500));
+    }
+
+    /**
+     * Ensures that transparent gifs, which take twice the memory, have to be smaller to fit.
+     */
+    public void testDecodedBytes() {
+        final int columns = GifAtlas.getColumns(16, 300, 300);
+        assertEquals(4, columns);
+        assertTrue(GifAtlas.fits(columns, 4, 300, 300, 2));
+        assertFalse(GifAtlas.fits(columns, 4, 300, 300, 4));
+    }
+
+    /**
+     * Ensures that each frame is shown for its own delay, and that the gif loops.
+     */
+    public void testFrameAt() {
+        final GifAtlas atlas = new GifAtlas(null, 2, 100, 100, new int[]{100, 50, 100});
+
+        assertEquals(2, atlas.getRows());
+        assertEquals(0, atlas.getFrameAt(0));
+        assertEquals(0, atlas.getFrameAt(99));
+        assertEquals(1, atlas.getFrameAt(100));
+        assertEquals(2, atlas.getFrameAt(150));
+        assertEquals(0, atlas.getFrameAt(250));
+        assertEquals(1, atlas.getFrameAt(2 * 250 + 120));
+    }
+}
@@ -0,0 +1,55 @@
+package com.tumblr.cardboard.gif;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Tests how gifs are checked for transparency before their frames are converted to RGB_565.
+ */
+public class GifResourceDecoderTest extends TestCase {
+
+    private static final int TRANSPARENT = 0x01;
+    private static final int DISPOSE_BACKGROUND = 2 << 2;
+
+    /**
+     * Builds a 1x1 gif with a two color table, and a graphic control block with the given flags
+     * before each frame.
+     */
+    private static byte[] gif(int... frameFlags) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(out, 'G', 'I', 'F', '8', '9', 'a', 1, 0, 1, 0, 0x80, 0, 0);
+        write(out, 0, 0, 0, 0xFF, 0xFF, 0xFF);
+
+        for (int flags : frameFlags) {
+            write(out, 0x21, 0xF9, 4, flags, 0, 0, 0, 0);
+            // The image data holds the same bytes as a transparent graphic control block.
+            write(out, 0x2C, 0, 0, 0, 0, 1, 0, 1, 0, 0, 2, 4, 0x21, 0xF9, 4, TRANSPARENT, 0);
+        }
+
+        write(out, 0x3B);
+        return out.toByteArray();
+    }
+
+    private static void write(ByteArrayOutputStream out, int... bytes) {
+        for (int b : bytes) {
+            out.write(b);
+        }
+    }
+
+    /**
+     * Ensures that a gif without transparent frames is found to be opaque.
+     */
+    public void testOpaque() {
+        assertFalse(GifResourceDecoder.hasTransparentFrames(gif(0, 0, 0)));
+        assertFalse(GifResourceDecoder.hasTransparentFrames(new byte[4]));
+    }
+
+    /**
+     * Ensures that a transparent color index or background disposal in any frame is found.
+     */
+    public void testTransparentFrames() {
+        assertTrue(GifResourceDecoder.hasTransparentFrames(gif(0, 0, TRANSPARENT)));
+        assertTrue(GifResourceDecoder.hasTransparentFrames(gif(0, DISPOSE_BACKGROUND)));
+    }
+}
@@ -0,0 +1,68 @@
+package com.tumblr.cardboard.hud;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Tests laying text out from a glyph atlas.
+ */
+public class GlyphAtlasTest extends TestCase {
+
+    private static final int STRIDE = GlyphAtlas.VERTICES_PER_CHAR * GlyphAtlas.FLOATS_PER_VERTEX;
+
+    private GlyphAtlas atlas;
+    private float[] vertices;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        // Cells 10 by 20 pixels with 2 pixels of padding, and every character 10 pixels wide.
+        final float[] advances = new float[GlyphAtlas.LAST_CHAR - GlyphAtlas.FIRST_CHAR + 1];
+        Arrays.fill(advances, 10f);
+        atlas = new GlyphAtlas(null, 16, 10, 20, 2, 160, 120, advances);
+        vertices = new float[8 * STRIDE];
+    }
+
+    /**
+     * Ensures that a line is centered, with each glyph's cell around its pen position.
+     */
+    public void testCentered() {
+        assertEquals(2 * GlyphAtlas.VERTICES_PER_CHAR, atlas.layout("!!", vertices, 8));
+
+        // The line is one unit wide, and the cell starts at the padding before the pen.
+        assertEquals(-0.6f, vertices[0], 1e-6f);
+        assertEquals(0f, vertices[1]);
+        assertEquals(-0.1f, vertices[STRIDE], 1e-6f);
+
+        // '!' is the second character, in the first row.
+        assertEquals(10f / 160f, vertices[2], 1e-6f);
+        assertEquals(0f, vertices[3]);
+    }
+
+    /**
+     * Ensures that spaces move the pen without drawing anything.
+     */
+    public void testSpaces() {
+        assertEquals(2 * GlyphAtlas.VERTICES_PER_CHAR, atlas.layout("! !", vertices, 8));
+        assertEquals(-0.85f, vertices[0], 1e-6f);
+        assertEquals(0.15f, vertices[STRIDE], 1e-6f);
+    }
+
+    /**
+     * Ensures that each line is centered on its own, below the one before.
+     */
+    public void testLines() {
+        assertEquals(3 * GlyphAtlas.VERTICES_PER_CHAR, atlas.layout("!!\n!", vertices, 8));
+        assertEquals(-0.35f, vertices[2 * STRIDE], 1e-6f);
+        assertEquals(-1f, vertices[2 * STRIDE + 1]);
+    }
+
+    /**
+     * Ensures that text is cut off instead of overflowing the vertices.
+     */
+    public void testMaxChars() {
+        assertEquals(GlyphAtlas.VERTICES_PER_CHAR, atlas.layout("!!!", vertices, 1));
+    }
+}
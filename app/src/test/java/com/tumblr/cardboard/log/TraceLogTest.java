@@ -0,0 +1,42 @@
+package com.tumblr.cardboard.log;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+
+/**
+ * Tests the trace log's ring buffer.
+ */
+public class TraceLogTest extends TestCase {
+
+    /**
+     * Ensures that nothing is recorded until the log is enabled.
+     */
+    public void testDisabled() throws IOException {
+        final TraceLog log = new TraceLog();
+        log.log(TraceLog.EVENT_UPLOAD, 1, 2);
+
+        final StringBuilder builder = new StringBuilder();
+        log.writeTo(builder);
+        assertEquals("", builder.toString());
+    }
+
+    /**
+     * Ensures that only the newest events are kept, oldest first.
+     */
+    public void testWrapsAround() throws IOException {
+        final TraceLog log = new TraceLog();
+        log.setEnabled(true);
+        for (int i = 0; i < TraceLog.CAPACITY + 2; i++) {
+            log.log(TraceLog.EVENT_UPLOAD, i, 0);
+        }
+
+        final StringBuilder builder = new StringBuilder();
+        log.writeTo(builder);
+        final String[] lines = builder.toString().split("\n");
+
+        assertEquals(TraceLog.CAPACITY, lines.length);
+        assertTrue(lines[0].endsWith("upload 2 0"));
+        assertTrue(lines[lines.length - 1].endsWith("upload " + (TraceLog.CAPACITY + 1) + " 0"));
+    }
+}
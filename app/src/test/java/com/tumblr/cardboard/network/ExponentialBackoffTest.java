@@ -0,0 +1,26 @@
+package com.tumblr.cardboard.network;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Tests the retry delays.
+ */
+public class ExponentialBackoffTest extends TestCase {
+
+    /**
+     * Ensures that the backoff grows, but never waits less than the server asked.
+     */
+    public void testBackoff() {
+        final ExponentialBackoff backoff = new ExponentialBackoff(100, 1000, new Random(0));
+
+        for (int attempt = 1; attempt < 10; attempt++) {
+            final long delay = backoff.getDelay(attempt, 0);
+            assertTrue(delay >= 0);
+            assertTrue(delay <= Math.min(1000, 100 << (attempt - 1)));
+        }
+
+        assertTrue(backoff.getDelay(1, 5000) >= 5000);
+    }
+}
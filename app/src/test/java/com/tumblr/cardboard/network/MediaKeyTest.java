@@ -0,0 +1,36 @@
+package com.tumblr.cardboard.network;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the media identity of photo URLs.
+ */
+public class MediaKeyTest extends TestCase {
+
+    /**
+     * Ensures that different sizes and hosts of the same image match.
+     */
+    public void testSameImage() {
+        final String key = MediaKey.fromUrl("http://33.media.tumblr.com/abc/tumblr_nz1abcD1qz9tfmo1_500.gif");
+
+        assertEquals("nz1abcD1qz9tfmo1", key);
+        assertEquals(key, MediaKey.fromUrl("https://66.media.tumblr.com/abc/tumblr_nz1abcD1qz9tfmo1_250.gif"));
+        assertEquals(key, MediaKey.fromUrl("https://66.media.tumblr.com/abc/tumblr_nz1abcD1qz9tfmo1_r1_1280.gif"));
+    }
+
+    /**
+     * Ensures that different images don't match.
+     */
+    public void testDifferentImage() {
+        assertFalse(MediaKey.fromUrl("http://33.media.tumblr.com/abc/tumblr_nz1abcD1qz9tfmo1_500.gif")
+                .equals(MediaKey.fromUrl("http://33.media.tumblr.com/abc/tumblr_nz1abcD1qz9tfmo2_500.gif")));
+    }
+
+    /**
+     * Ensures that other URLs fall back to the path without the size.
+     */
+    public void testOtherUrl() {
+        assertEquals("/photos/cat.jpg", MediaKey.fromUrl("https://example.com/photos/cat_500.jpg?x=1"));
+        assertEquals("/photos/cat.jpg", MediaKey.fromUrl("https://cdn.example.com/photos/cat_1280.jpg"));
+    }
+}
@@ -0,0 +1,36 @@
+package com.tumblr.cardboard.network;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the rate limiter.
+ */
+public class TokenBucketTest extends TestCase {
+
+    /**
+     * Ensures that a full bucket allows a burst, then waits for a refill.
+     */
+    public void testBurstThenRefill() {
+        final TokenBucket bucket = new TokenBucket(2, 1000);
+
+        assertEquals(0, bucket.tryAcquire(0));
+        assertEquals(0, bucket.tryAcquire(0));
+        assertEquals(1000, bucket.tryAcquire(0));
+
+        assertEquals(500, bucket.tryAcquire(500));
+        assertEquals(0, bucket.tryAcquire(1000));
+    }
+
+    /**
+     * Ensures that a throttled bucket makes every caller wait.
+     */
+    public void testDrain() {
+        final TokenBucket bucket = new TokenBucket(5, 100);
+
+        assertEquals(0, bucket.tryAcquire(0));
+        bucket.drain(0);
+
+        assertEquals(100, bucket.tryAcquire(0));
+        assertEquals(0, bucket.tryAcquire(100));
+    }
+}
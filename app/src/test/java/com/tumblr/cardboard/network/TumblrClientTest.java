@@ -1,6 +1,6 @@
 package com.tumblr.cardboard.network;
 
-import com.tumblr.jumblr.types.Post;
+import com.tumblr.jumblr.types.PhotoPost;
 
 import junit.framework.TestCase;
 
@@ -21,9 +21,9 @@ public class TumblrClientTest extends TestCase {
     public void testGetPosts() throws Exception {
 
         final TumblrClient client = new TumblrClient();
-        final List<Post> posts = client.getPosts("cat");
+        final List<PhotoPost> posts = client.getPosts("cat", 0).second;
 
-        for (final Post post : posts) {
+        for (final PhotoPost post : posts) {
             assertEquals("photo", post.getType());
         }
     }
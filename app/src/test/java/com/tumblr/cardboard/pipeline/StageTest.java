@@ -0,0 +1,90 @@
+package com.tumblr.cardboard.pipeline;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the backpressure and cancellation of pipeline stages.
+ */
+public class StageTest extends TestCase {
+
+    private static class BlockingTask extends Stage.Task {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        protected void execute() {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static class CountingTask extends Stage.Task {
+        final CountDownLatch done = new CountDownLatch(1);
+
+        @Override
+        protected void execute() {
+            done.countDown();
+        }
+    }
+
+    private Stage stage;
+
+    @Override
+    protected void setUp() {
+        stage = new Stage("test", 1, 1);
+    }
+
+    @Override
+    protected void tearDown() {
+        stage.shutdown();
+    }
+
+    /**
+     * Ensures that a full stage turns tasks away instead of queueing them.
+     */
+    public void testRejectsWhenFull() throws InterruptedException {
+        final BlockingTask running = new BlockingTask();
+        assertTrue(stage.submit(running));
+        assertTrue(running.started.await(1, TimeUnit.SECONDS));
+
+        final CountingTask queued = new CountingTask();
+        assertTrue(stage.submit(queued));
+        assertFalse(stage.submit(new CountingTask()));
+
+        assertEquals(2, stage.getMetrics().getDepth());
+        assertEquals(1, stage.getMetrics().getRejected());
+
+        running.release.countDown();
+        assertTrue(queued.done.await(1, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Ensures that cancelled tasks don't run, and free their place in the queue.
+     */
+    public void testCancel() throws InterruptedException {
+        final BlockingTask running = new BlockingTask();
+        stage.submit(running);
+        assertTrue(running.started.await(1, TimeUnit.SECONDS));
+
+        final CountingTask cancelled = new CountingTask();
+        stage.submit(cancelled);
+        cancelled.cancel();
+
+        assertEquals(1, stage.getMetrics().getDepth());
+        assertEquals(1, stage.getMetrics().getCancelled());
+
+        final CountingTask next = new CountingTask();
+        assertTrue(stage.submit(next));
+
+        running.release.countDown();
+        assertTrue(next.done.await(1, TimeUnit.SECONDS));
+        assertEquals(1, cancelled.done.getCount());
+    }
+}
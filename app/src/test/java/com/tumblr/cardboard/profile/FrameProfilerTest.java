@@ -0,0 +1,115 @@
+package com.tumblr.cardboard.profile;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Tests the histograms and trace output of the profiler.
+ */
+public class FrameProfilerTest extends TestCase {
+
+    /**
+     * Ensures that durations land in power of two buckets of microseconds.
+     */
+    public void testBuckets() {
+        assertEquals(0, Histogram.getBucket(999));
+        assertEquals(1, Histogram.getBucket(1000));
+        assertEquals(2, Histogram.getBucket(3000));
+        assertEquals(11, Histogram.getBucket(1500000));
+        assertEquals(Histogram.NUM_BUCKETS - 1, Histogram.getBucket(60000000000L));
+    }
+
+    /**
+     * Ensures that percentiles are bounded by the bucket and the slowest sample.
+     */
+    public void testPercentiles() {
+        final Histogram histogram = new Histogram();
+        for (int i = 0; i < 9; i++) {
+            histogram.record(100000); // 100us
+        }
+        histogram.record(5000000); // 5ms
+
+        assertEquals(128, histogram.getPercentileMicros(50));
+        assertEquals(128, histogram.getPercentileMicros(90));
+        assertEquals(5000, histogram.getPercentileMicros(100));
+        assertEquals(5000, histogram.getMaxMicros());
+        assertEquals(590, histogram.getMeanMicros());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMicros(50));
+    }
+
+    /**
+     * Ensures that a report is sent after a full interval of frames, with the counters summed.
+     */
+    public void testReport() {
+        final FrameProfiler profiler = new FrameProfiler(true);
+        final FrameProfiler.Report[] reports = new FrameProfiler.Report[1];
+        profiler.addSink(new FrameProfiler.Sink() {
+            @Override
+            public void onReport(FrameProfiler.Report report) {
+                reports[0] = report;
+            }
+        });
+
+        for (int frame = 0; frame < FrameProfiler.REPORT_INTERVAL_FRAMES - 1; frame++) {
+            profiler.count(FrameProfiler.COUNTER_DRAWS, 2);
+            profiler.endFrame();
+        }
+        assertNull(reports[0]);
+
+        profiler.count(FrameProfiler.COUNTER_DRAWS, 2);
+        profiler.endFrame();
+        assertNotNull(reports[0]);
+        assertEquals(FrameProfiler.REPORT_INTERVAL_FRAMES, reports[0].frames);
+        assertEquals(2f, reports[0].getPerFrame(FrameProfiler.COUNTER_DRAWS));
+    }
+
+    /**
+     * Ensures that traced sections are written as Chrome trace events.
+     */
+    public void testTrace() throws IOException {
+        final FrameProfiler profiler = new FrameProfiler(true);
+        profiler.setTracing(true);
+        profiler.record(FrameProfiler.PHASE_UPLOAD, 2000, 1500);
+        profiler.count(FrameProfiler.COUNTER_UPLOADS, 1);
+        profiler.endFrame();
+
+        final StringWriter writer = new StringWriter();
+        profiler.writeTrace(writer);
+        final String trace = writer.toString();
+
+        assertTrue(trace.startsWith("{\"traceEvents\":["));
+        assertTrue(trace.contains("\"name\":\"upload\",\"cat\":\"phase\",\"ph\":\"X\",\"ts\":2.000,\"dur\":1.500"));
+        assertTrue(trace.contains("\"name\":\"uploads\",\"cat\":\"counter\",\"ph\":\"C\""));
+        assertTrue(trace.trim().endsWith("]}"));
+    }
+
+    /**
+     * Ensures that a disabled profiler never reports, and that nothing is traced until tracing is
+     * turned on.
+     */
+    public void testDisabled() throws IOException {
+        final FrameProfiler profiler = new FrameProfiler(false);
+        final FrameProfiler.Report[] reports = new FrameProfiler.Report[1];
+        profiler.addSink(new FrameProfiler.Sink() {
+            @Override
+            public void onReport(FrameProfiler.Report report) {
+                reports[0] = report;
+            }
+        });
+
+        for (int frame = 0; frame < FrameProfiler.REPORT_INTERVAL_FRAMES; frame++) {
+            profiler.end(FrameProfiler.PHASE_UPLOAD, profiler.begin());
+            profiler.endFrame();
+        }
+        assertNull(reports[0]);
+
+        final StringWriter writer = new StringWriter();
+        profiler.writeTrace(writer);
+        assertEquals("{\"traceEvents\":[]}", writer.toString().trim());
+    }
+}
@@ -0,0 +1,84 @@
+package com.tumblr.cardboard.profile;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Tests recording and reading back head traces.
+ */
+public class HeadTraceTest extends TestCase {
+
+    /**
+     * Ensures that every record reads back as it was written, relative to the first.
+     */
+    public void testRoundTrip() throws IOException {
+        final float[] headView = new float[16];
+        for (int i = 0; i < 16; i++) {
+            headView[i] = i * 0.5f;
+        }
+        final float[] forward = new float[]{0f, 0.25f, -1f};
+
+        final HeadTrace.Recorder recorder = new HeadTrace.Recorder(1024);
+        recorder.page(1000, 16);
+        recorder.photo(1200, 5, 500, 375, 12, 1200);
+        recorder.frame(1216, headView, forward);
+        recorder.select(1300, 7);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        recorder.writeTo(out);
+        final HeadTrace.Reader reader = new HeadTrace.Reader(out.toByteArray());
+
+        assertTrue(reader.next());
+        assertEquals(HeadTrace.PAGE, reader.getType());
+        assertEquals(0, reader.getTimeMillis());
+        assertEquals(16, reader.getNumImages());
+
+        assertTrue(reader.next());
+        assertEquals(HeadTrace.PHOTO, reader.getType());
+        assertEquals(200, reader.getTimeMillis());
+        assertEquals(5, reader.getTexIndex());
+        assertEquals(500, reader.getWidth());
+        assertEquals(375, reader.getHeight());
+        assertEquals(12, reader.getNumFrames());
+        assertEquals(1200, reader.getDurationMillis());
+
+        assertTrue(reader.next());
+        assertEquals(HeadTrace.FRAME, reader.getType());
+        assertEquals(216, reader.getTimeMillis());
+        assertEquals(7.5f, reader.getHeadView()[15]);
+        assertEquals(0.25f, reader.getForward()[1]);
+
+        assertTrue(reader.next());
+        assertEquals(HeadTrace.SELECT, reader.getType());
+        assertEquals(7, reader.getTexIndex());
+
+        assertFalse(reader.next());
+
+        reader.rewind();
+        assertTrue(reader.next());
+        assertEquals(HeadTrace.PAGE, reader.getType());
+    }
+
+    /**
+     * Ensures that recording stops at the end of the buffer instead of growing it.
+     */
+    public void testFull() throws IOException {
+        final HeadTrace.Recorder recorder = new HeadTrace.Recorder(8 + 2 * 9);
+        recorder.page(0, 1);
+        recorder.page(1, 2);
+        assertFalse(recorder.isFull());
+
+        recorder.page(2, 3);
+        assertTrue(recorder.isFull());
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        recorder.writeTo(out);
+        final HeadTrace.Reader reader = new HeadTrace.Reader(out.toByteArray());
+        assertTrue(reader.next());
+        assertTrue(reader.next());
+        assertEquals(2, reader.getNumImages());
+        assertFalse(reader.next());
+    }
+}
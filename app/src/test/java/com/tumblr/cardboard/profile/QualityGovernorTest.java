@@ -0,0 +1,129 @@
+package com.tumblr.cardboard.profile;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests stepping between quality tiers.
+ */
+public class QualityGovernorTest extends TestCase {
+
+    private static final long SMOOTH_NANOS = 16000000L;
+    private static final long SLOW_NANOS = 34000000L;
+
+    private QualityGovernor governor;
+    private int changes;
+    private int lastReason;
+    private long time;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        governor = new QualityGovernor(new QualityGovernor.Listener() {
+            @Override
+            public void onTierChanged(int tier, int previousTier, int reason) {
+                changes++;
+                lastReason = reason;
+            }
+        });
+        time = 1000000000L;
+        governor.onFrame(time);
+    }
+
+    /**
+     * Runs a window of frames, with the given number of them slow.
+     */
+    private void window(int slowFrames) {
+        for (int i = 0; i < QualityGovernor.WINDOW_FRAMES; i++) {
+            time += i < slowFrames ? SLOW_NANOS : SMOOTH_NANOS;
+            governor.onFrame(time);
+        }
+    }
+
+    /**
+     * Ensures that dropped frames step down right away, and smooth frames only step back up after
+     * a while.
+     */
+    public void testHysteresis() {
+        window(QualityGovernor.MAX_SLOW_FRAMES - 1);
+        assertEquals(0, governor.getTierIndex());
+
+        window(QualityGovernor.MAX_SLOW_FRAMES);
+        assertEquals(1, governor.getTierIndex());
+        assertEquals(QualityGovernor.REASON_SLOW_FRAMES, lastReason);
+
+        for (int i = 1; i < QualityGovernor.UPGRADE_WINDOWS; i++) {
+            window(0);
+        }
+        assertEquals(1, governor.getTierIndex());
+
+        window(0);
+        assertEquals(0, governor.getTierIndex());
+        assertEquals(QualityGovernor.REASON_SMOOTH_FRAMES, lastReason);
+        assertEquals(2, changes);
+    }
+
+    /**
+     * Ensures that stepping up takes twice as long after a step up had to be taken back.
+     */
+    public void testBackOff() {
+        window(QualityGovernor.MAX_SLOW_FRAMES);
+        for (int i = 0; i < QualityGovernor.UPGRADE_WINDOWS; i++) {
+            window(0);
+        }
+        assertEquals(0, governor.getTierIndex());
+
+        window(QualityGovernor.MAX_SLOW_FRAMES);
+        assertEquals(1, governor.getTierIndex());
+
+        for (int i = 0; i < QualityGovernor.UPGRADE_WINDOWS; i++) {
+            window(0);
+        }
+        assertEquals(1, governor.getTierIndex());
+
+        for (int i = 0; i < QualityGovernor.UPGRADE_WINDOWS; i++) {
+            window(0);
+        }
+        assertEquals(0, governor.getTierIndex());
+    }
+
+    /**
+     * Ensures that a hot battery holds the tier down until it has cooled off.
+     */
+    public void testBattery() {
+        governor.setBattery(44f, 80, false);
+        window(0);
+        assertEquals(2, governor.getTierIndex());
+        assertEquals(QualityGovernor.REASON_BATTERY, lastReason);
+
+        // Still too warm to step up past the first reduced tier.
+        governor.setBattery(39f, 80, false);
+        for (int i = 0; i < 4 * QualityGovernor.UPGRADE_WINDOWS; i++) {
+            window(0);
+        }
+        assertEquals(1, governor.getTierIndex());
+
+        governor.setBattery(37f, 80, false);
+        for (int i = 0; i < QualityGovernor.UPGRADE_WINDOWS; i++) {
+            window(0);
+        }
+        assertEquals(0, governor.getTierIndex());
+
+        governor.setBattery(30f, 10, false);
+        window(0);
+        assertEquals(1, governor.getTierIndex());
+    }
+
+    /**
+     * Ensures that a pause isn't counted as a slow frame.
+     */
+    public void testPause() {
+        for (int i = 0; i < QualityGovernor.MAX_SLOW_FRAMES; i++) {
+            governor.reset();
+            time += 1000000000L;
+            governor.onFrame(time);
+        }
+        window(0);
+        assertEquals(0, governor.getTierIndex());
+    }
+}
@@ -0,0 +1,36 @@
+package com.tumblr.cardboard;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Loads the recorded photos that the benchmarks decode.
+ */
+public final class Fixtures {
+
+	public static final String GIF = "animated.gif";
+	public static final String JPEG = "photo.jpg";
+
+	private Fixtures() {
+	}
+
+	public static byte[] read(String name) throws IOException {
+		final InputStream is = Fixtures.class.getClassLoader().getResourceAsStream(name);
+		if (is == null) {
+			throw new IOException("Missing fixture " + name);
+		}
+
+		try {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[16384];
+			int read;
+			while ((read = is.read(buffer)) != -1) {
+				bytes.write(buffer, 0, read);
+			}
+			return bytes.toByteArray();
+		} finally {
+			is.close();
+		}
+	}
+}
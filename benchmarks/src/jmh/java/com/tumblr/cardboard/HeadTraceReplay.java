@@ -0,0 +1,449 @@
+package com.tumblr.cardboard;
+
+import android.opengl.GLES20;
+
+import com.bumptech.glide.Priority;
+import com.tumblr.cardboard.gif.GifAtlas;
+import com.tumblr.cardboard.gif.GifAtlases;
+import com.tumblr.cardboard.gl.Matrix4;
+import com.tumblr.cardboard.gl.RecordingGl;
+import com.tumblr.cardboard.profile.HeadTrace;
+import com.tumblr.cardboard.profile.Histogram;
+import com.tumblr.jumblr.types.PhotoSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Replays a {@link HeadTrace} through the scene on the JVM: placing the photos as they arrive,
+ * testing the gaze, scheduling downloads, playing gifs and issuing the draw calls into a
+ * {@link RecordingGl}. Reports the CPU time and the allocations of each frame.
+ * <p/>
+ * Run with {@code ./gradlew :benchmarks:replay}, which replays a generated session, or with
+ * {@code -Ptrace=head.trace} to replay one recorded by the app.
+ */
+public final class HeadTraceReplay {
+
+	private static final int NUM_IMAGES_STATIC = 3;
+	private static final int NUM_IMAGES_DYNAMIC = 16;
+	private static final int NUM_TEXTURES = NUM_IMAGES_DYNAMIC + NUM_IMAGES_STATIC;
+	private static final float SPHERE_RADIUS = 40f;
+	private static final float SCALE_TV = 8f;
+	private static final float SCALE_THEATER = 20f;
+	private static final float[] THEATER_DIRECTION = new float[]{0f, 0f, -1f};
+
+	/**
+	 * Passes over the trace before the one that is measured, so that it runs compiled.
+	 */
+	private static final int WARMUP_PASSES = 5;
+
+	private static final long SEED = 46;
+	private static final int SESSION_SECONDS = 60;
+	private static final int FRAME_MILLIS = 16;
+
+	private final RecordingGl gl = new RecordingGl();
+	private final SceneRenderer renderer = new SceneRenderer(gl, NUM_TEXTURES, SceneRenderer.DEFAULT_GIF_BUFFERS);
+	/**
+	 * The trace already has the order in which photos arrived, so every download starts right away.
+	 */
+	private final DownloadScheduler scheduler = new DownloadScheduler(NUM_TEXTURES, NUM_TEXTURES,
+			new DownloadScheduler.Loader() {
+				@Override
+				public void load(int texIndex, PhotoSize size, Priority priority) {
+					downloads++;
+				}
+
+				@Override
+				public boolean isBackedUp() {
+					return false;
+				}
+			});
+
+	private final com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	private final long threadId = Thread.currentThread().getId();
+	private final long allocationOverhead;
+
+	private final float[] perspective = new float[16];
+	private final int[] leftViewport = new int[]{0, 0, 960, 1080};
+	private final int[] rightViewport = new int[]{960, 0, 960, 1080};
+	private final ByteBuffer[] pixels = new ByteBuffer[NUM_TEXTURES];
+	private final int[] widths = new int[NUM_TEXTURES];
+	private final int[] heights = new int[NUM_TEXTURES];
+
+	private final Histogram frameTimes = new Histogram();
+	private int numImages;
+	private int selectedTexIndex = -1;
+	private int nextTextureId = 1000;
+
+	private long pendingNanos;
+	private long pendingBytes;
+	private long allocatedBytes;
+	private int allocatingFrames;
+	private int downloads;
+	private int gazedFrames;
+	private int drawCalls;
+	private int uploads;
+
+	private HeadTraceReplay() {
+		renderer.onSurfaceCreated("", "");
+		setPerspective(perspective, 90f, 960f / 1080f, 0.1f, 100f);
+
+		final long first = allocatedBytes();
+		allocationOverhead = allocatedBytes() - first;
+	}
+
+	public static void main(String[] args) throws IOException {
+		final byte[] trace;
+		final String source;
+		if (args.length > 0) {
+			trace = Files.readAllBytes(Paths.get(args[0]));
+			source = args[0];
+		} else {
+			trace = generate(new Random(SEED), SESSION_SECONDS * 1000);
+			source = "a generated " + SESSION_SECONDS + "s session";
+		}
+
+		final HeadTrace.Reader reader = new HeadTrace.Reader(trace);
+		for (int i = 0; i < WARMUP_PASSES; i++) {
+			reader.rewind();
+			new HeadTraceReplay().replay(reader);
+		}
+
+		reader.rewind();
+		final HeadTraceReplay replay = new HeadTraceReplay();
+		replay.replay(reader);
+		replay.report(source);
+	}
+
+	private void replay(HeadTrace.Reader reader) throws IOException {
+		while (reader.next()) {
+			switch (reader.getType()) {
+				case HeadTrace.FRAME:
+					onFrame(reader.getTimeMillis(), reader.getHeadView(), reader.getForward());
+					break;
+				case HeadTrace.PAGE:
+					onPage(reader.getNumImages());
+					break;
+				case HeadTrace.PHOTO:
+					onPhoto(reader.getTimeMillis(), reader.getTexIndex(), reader.getWidth(), reader.getHeight(),
+							reader.getNumFrames(), reader.getDurationMillis());
+					break;
+				case HeadTrace.SELECT:
+					onSelect(reader.getTexIndex());
+					break;
+				case HeadTrace.UPDATE:
+					onUpdate(reader.getTexIndex());
+					break;
+			}
+		}
+	}
+
+	/**
+	 * The work of onNewFrame and onDrawFrame, along with the uploads that came in before it.
+	 */
+	private void onFrame(int timeMillis, float[] headView, float[] forward) {
+		final long startBytes = allocatedBytes();
+		final long start = System.nanoTime();
+
+		renderer.setHeadView(headView);
+		renderer.setFrameTime(timeMillis);
+
+		scheduler.setGaze(forward);
+		final int gazedTexIndex = scheduler.getGazedSlot();
+		if (gazedTexIndex >= 0 && renderer.isShowing(gazedTexIndex)) {
+			gazedFrames++;
+		}
+
+		renderer.clear();
+		renderer.setEye(0, headView, perspective, leftViewport, false);
+		renderer.setEye(1, headView, perspective, rightViewport, true);
+		renderer.drawScene(2);
+
+		final long nanos = System.nanoTime() - start + pendingNanos;
+		final long bytes = allocatedBytes() - startBytes - allocationOverhead + pendingBytes;
+		pendingNanos = 0;
+		pendingBytes = 0;
+
+		frameTimes.record(nanos);
+		if (bytes > 0) {
+			allocatedBytes += bytes;
+			allocatingFrames++;
+		}
+		drawCalls += gl.getDrawCalls();
+		uploads += gl.getUploads();
+		gl.resetCounts();
+	}
+
+	/**
+	 * A new page of posts, whose downloads are queued on the main thread.
+	 */
+	private void onPage(int numImages) {
+		this.numImages = numImages;
+
+		scheduler.setTheaterIndex(selectedTexIndex >= NUM_IMAGES_STATIC ? selectedTexIndex : -1);
+		for (int texIndex = NUM_IMAGES_STATIC; texIndex < NUM_TEXTURES; texIndex++) {
+			scheduler.setSlotDirection(texIndex, null);
+		}
+
+		for (int i = 0; i < numImages; i++) {
+			final int texIndex = NUM_IMAGES_STATIC + i;
+			scheduler.setSlotDirection(texIndex,
+					texIndex == selectedTexIndex ? THEATER_DIRECTION : RingLayout.getSlotDirection(i, numImages));
+			scheduler.enqueue(texIndex, null);
+		}
+	}
+
+	/**
+	 * A photo that finished downloading and was uploaded, then put in place on the GL thread.
+	 */
+	private void onPhoto(int timeMillis, int texIndex, int width, int height, int numFrames, int durationMillis) {
+		scheduler.onLoadFinished(texIndex);
+
+		// Decoded off the GL thread in the app.
+		final GifAtlas atlas = numFrames > 1 ? GifAtlases.create(numFrames, width, height, durationMillis) : null;
+		if (numFrames == 0 && (pixels[texIndex] == null || widths[texIndex] != width
+				|| heights[texIndex] != height)) {
+			pixels[texIndex] = ByteBuffer.allocateDirect(width * height * 2);
+		}
+		widths[texIndex] = width;
+		heights[texIndex] = height;
+
+		final long startBytes = allocatedBytes();
+		final long start = System.nanoTime();
+
+		if (atlas != null) {
+			renderer.adoptAtlas(texIndex, nextTextureId++, atlas, width * height * numFrames * 2, timeMillis);
+		} else if (numFrames == 0) {
+			// Gifs that are played frame by frame are uploaded on the GL thread, to be updated.
+			renderer.uploadPixels(texIndex, width, height, GLES20.GL_RGB, GLES20.GL_UNSIGNED_SHORT_5_6_5,
+					pixels[texIndex]);
+		} else {
+			renderer.adoptTexture(texIndex, nextTextureId++, width, height, width * height * 2);
+		}
+
+		if (texIndex >= NUM_IMAGES_STATIC) {
+			if (selectedTexIndex < 0) {
+				selectedTexIndex = texIndex;
+				renderer.setSelectedIndex(texIndex);
+				selectPhoto(texIndex - NUM_IMAGES_STATIC);
+			} else if (texIndex == selectedTexIndex) {
+				selectPhoto(texIndex - NUM_IMAGES_STATIC);
+			} else {
+				unselectPhoto(texIndex - NUM_IMAGES_STATIC);
+			}
+		} else {
+			renderer.placePhoto(texIndex, 1, 180 + 30 * (texIndex - 1), 30, SPHERE_RADIUS / 2);
+		}
+
+		addPending(start, startBytes);
+	}
+
+	private void onSelect(int texIndex) {
+		final long startBytes = allocatedBytes();
+		final long start = System.nanoTime();
+
+		final int previousPhotoIndex = selectedTexIndex - NUM_IMAGES_STATIC;
+		if (previousPhotoIndex >= 0 && previousPhotoIndex < numImages) {
+			unselectPhoto(previousPhotoIndex);
+		}
+		selectedTexIndex = texIndex;
+		renderer.setSelectedIndex(texIndex);
+		selectPhoto(texIndex - NUM_IMAGES_STATIC);
+
+		addPending(start, startBytes);
+	}
+
+	/**
+	 * The next frame of a gif that is played frame by frame.
+	 */
+	private void onUpdate(int texIndex) {
+		if (pixels[texIndex] == null || !renderer.hasTexture(texIndex)) {
+			return;
+		}
+
+		final long startBytes = allocatedBytes();
+		final long start = System.nanoTime();
+
+		renderer.updatePixels(texIndex, widths[texIndex], heights[texIndex], GLES20.GL_RGB,
+				GLES20.GL_UNSIGNED_SHORT_5_6_5, pixels[texIndex]);
+
+		addPending(start, startBytes);
+	}
+
+	private void selectPhoto(int photoIndex) {
+		final int texIndex = NUM_IMAGES_STATIC + photoIndex;
+		renderer.placeInFront(texIndex, SCALE_THEATER, SPHERE_RADIUS);
+		scheduler.setSlotDirection(texIndex, THEATER_DIRECTION);
+	}
+
+	private void unselectPhoto(int photoIndex) {
+		final int texIndex = NUM_IMAGES_STATIC + photoIndex;
+		renderer.placePhoto(texIndex, SCALE_TV, RingLayout.getAzimuth(photoIndex, numImages),
+				RingLayout.getInclination(photoIndex), -SPHERE_RADIUS);
+		scheduler.setSlotDirection(texIndex, RingLayout.getSlotDirection(photoIndex, numImages));
+	}
+
+	private void addPending(long start, long startBytes) {
+		pendingNanos += System.nanoTime() - start;
+		pendingBytes += allocatedBytes() - startBytes - allocationOverhead;
+	}
+
+	private long allocatedBytes() {
+		return threads.getThreadAllocatedBytes(threadId);
+	}
+
+	private void report(String source) {
+		final int frames = frameTimes.getCount();
+		if (frames == 0) {
+			System.out.println("No frames in " + source);
+			return;
+		}
+
+		System.out.println("Replayed " + frames + " frames of " + source);
+		System.out.println("frame cpu p50: " + frameTimes.getPercentileMicros(50) + "us p90: "
+				+ frameTimes.getPercentileMicros(90) + "us p99: " + frameTimes.getPercentileMicros(99) + "us max: "
+				+ frameTimes.getMaxMicros() + "us mean: " + frameTimes.getMeanMicros() + "us");
+		System.out.println("allocated: " + allocatedBytes + " bytes in " + allocatingFrames + " frames, "
+				+ allocatedBytes / frames + " bytes per frame");
+		System.out.println("draw calls per frame: " + drawCalls / frames + " uploads: " + uploads
+				+ " downloads: " + downloads + " frames gazing at a photo: " + gazedFrames);
+	}
+
+	/**
+	 * Generates a session: a page of photos arriving over a few seconds, some of them gifs, the head
+	 * turning from photo to photo, a photo put in the theater every few seconds and a new page
+	 * halfway through.
+	 */
+	static byte[] generate(Random random, int durationMillis) throws IOException {
+		final HeadTrace.Recorder recorder = new HeadTrace.Recorder(durationMillis / FRAME_MILLIS * 96 + 4096);
+		final float[] headView = new float[16];
+		final float[] pitchM = new float[16];
+		final float[] yawM = new float[16];
+		final float[] forward = new float[3];
+
+		final int[] photoTimes = new int[NUM_IMAGES_DYNAMIC];
+		final int[] photoOrder = new int[NUM_IMAGES_DYNAMIC];
+		final boolean[] playing = new boolean[NUM_TEXTURES];
+
+		float yaw = 0f;
+		float pitch = 0f;
+		float targetYaw = 0f;
+		float targetPitch = 0f;
+		int nextTarget = 0;
+		int nextSelect = 5000;
+		int nextUpdate = 0;
+		int pageStart = -1;
+		int nextPhoto = 0;
+
+		for (int time = 0; time < durationMillis; time += FRAME_MILLIS) {
+			if (pageStart < 0 || time - pageStart >= durationMillis / 2) {
+				pageStart = time;
+				nextPhoto = 0;
+				recorder.page(time, NUM_IMAGES_DYNAMIC);
+
+				for (int i = 0; i < NUM_IMAGES_DYNAMIC; i++) {
+					photoOrder[i] = i;
+					photoTimes[i] = time + 200 + i * 180 + random.nextInt(120);
+				}
+				for (int i = NUM_IMAGES_DYNAMIC - 1; i > 0; i--) {
+					final int j = random.nextInt(i + 1);
+					final int swap = photoOrder[i];
+					photoOrder[i] = photoOrder[j];
+					photoOrder[j] = swap;
+				}
+				for (int texIndex = 0; texIndex < NUM_TEXTURES; texIndex++) {
+					playing[texIndex] = false;
+				}
+			}
+
+			while (nextPhoto < NUM_IMAGES_DYNAMIC && photoTimes[nextPhoto] <= time) {
+				final int photoIndex = photoOrder[nextPhoto];
+				final int texIndex = NUM_IMAGES_STATIC + photoIndex;
+				if (photoIndex % 5 == 2) {
+					recorder.photo(photoTimes[nextPhoto], texIndex, 240, 180, 12, 1200);
+				} else if (photoIndex % 7 == 3) {
+					recorder.photo(photoTimes[nextPhoto], texIndex, 320, 240, 0, 0);
+					playing[texIndex] = true;
+				} else {
+					recorder.photo(photoTimes[nextPhoto], texIndex, 500, 375 + random.nextInt(250), 1, 0);
+				}
+				nextPhoto++;
+			}
+
+			if (time >= nextUpdate) {
+				for (int texIndex = 0; texIndex < NUM_TEXTURES; texIndex++) {
+					if (playing[texIndex]) {
+						recorder.update(time, texIndex);
+					}
+				}
+				nextUpdate = time + 60;
+			}
+
+			if (time >= nextSelect) {
+				recorder.select(time, NUM_IMAGES_STATIC + random.nextInt(NUM_IMAGES_DYNAMIC));
+				nextSelect = time + 4000 + random.nextInt(4000);
+			}
+
+			// Glance at a photo on the ring, or back at the theater, every second or two.
+			if (time >= nextTarget) {
+				final int photoIndex = random.nextInt(NUM_IMAGES_DYNAMIC + 4);
+				if (photoIndex < NUM_IMAGES_DYNAMIC) {
+					targetYaw = RingLayout.getAzimuth(photoIndex, NUM_IMAGES_DYNAMIC);
+					targetPitch = RingLayout.getInclination(photoIndex);
+				} else {
+					targetYaw = 0f;
+					targetPitch = 0f;
+				}
+				nextTarget = time + 1000 + random.nextInt(1500);
+			}
+
+			// Turn at up to 120 degrees a second, the short way around, with a little tremor.
+			final float maxStep = 120f * FRAME_MILLIS / 1000f;
+			final float yawDelta = ((targetYaw - yaw) % 360f + 540f) % 360f - 180f;
+			yaw = (yaw + Math.max(-maxStep, Math.min(maxStep, yawDelta)) + (float) random.nextGaussian() * 0.05f
+					+ 360f) % 360f;
+			pitch += Math.max(-maxStep, Math.min(maxStep, targetPitch - pitch))
+					+ (float) random.nextGaussian() * 0.05f;
+
+			// The view is the inverse of the head's rotation, which turns by the yaw then the pitch.
+			Matrix4.setRotateM(pitchM, 0, -pitch, 1f, 0f, 0f);
+			Matrix4.setRotateM(yawM, 0, -yaw, 0f, 1f, 0f);
+			Matrix4.multiplyMM(headView, 0, pitchM, 0, yawM, 0);
+
+			final double yawRadians = Math.toRadians(yaw);
+			final double pitchRadians = Math.toRadians(pitch);
+			forward[0] = (float) (-Math.sin(yawRadians) * Math.cos(pitchRadians));
+			forward[1] = (float) Math.sin(pitchRadians);
+			forward[2] = (float) (-Math.cos(yawRadians) * Math.cos(pitchRadians));
+
+			recorder.frame(time, headView, forward);
+		}
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		recorder.writeTo(out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * As {@link android.opengl.Matrix#perspectiveM}, which {@link Matrix4} doesn't have.
+	 */
+	private static void setPerspective(float[] m, float fovy, float aspect, float zNear, float zFar) {
+		final float f = 1f / (float) Math.tan(Math.toRadians(fovy / 2));
+		final float rangeReciprocal = 1f / (zNear - zFar);
+
+		for (int i = 0; i < 16; i++) {
+			m[i] = 0f;
+		}
+		m[0] = f / aspect;
+		m[5] = f;
+		m[10] = (zFar + zNear) * rangeReciprocal;
+		m[11] = -1f;
+		m[14] = 2f * zFar * zNear * rangeReciprocal;
+	}
+}
@@ -0,0 +1,83 @@
+package com.tumblr.cardboard;
+
+import android.opengl.GLES20;
+
+import com.tumblr.cardboard.gl.Matrix4;
+import com.tumblr.cardboard.gl.RecordingGl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per frame work of the renderer on the CPU: placing the rects, finding what the user is
+ * looking at, and issuing the draw calls for both eyes into a {@link RecordingGl}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SceneBenchmark {
+
+	private static final int NUM_RECTS = 19;
+	private static final int NUM_PHOTOS = 16;
+	private static final float SPHERE_RADIUS = 40f;
+
+	private final RecordingGl gl = new RecordingGl();
+	private final SceneRenderer renderer = new SceneRenderer(gl, NUM_RECTS);
+	private final float[] headView = new float[16];
+	private int frame;
+
+	@Setup
+	public void setUp() {
+		renderer.onSurfaceCreated("", "");
+
+		final ByteBuffer pixels = ByteBuffer.allocateDirect(4 * 4 * 2);
+		for (int i = 0; i < NUM_RECTS; i++) {
+			renderer.uploadPixels(i, 4, 4, GLES20.GL_RGB, GLES20.GL_UNSIGNED_SHORT_5_6_5, pixels);
+		}
+		placeRing();
+
+		final float[] identity = new float[16];
+		Matrix4.setIdentityM(identity, 0);
+		renderer.setEye(0, identity, identity, new int[]{0, 0, 960, 1080}, false);
+		renderer.setEye(1, identity, identity, new int[]{960, 0, 960, 1080}, true);
+	}
+
+	/**
+	 * Puts every photo on the ring, as when a page of posts arrives.
+	 */
+	@Benchmark
+	public void placeRing() {
+		for (int photoIndex = 0; photoIndex < NUM_PHOTOS; photoIndex++) {
+			final float azimuth = ((photoIndex + 1) * 300 / (NUM_PHOTOS + 1) + 30) % 360;
+			renderer.placePhoto(NUM_RECTS - NUM_PHOTOS + photoIndex, 8f, azimuth,
+					photoIndex % 2 == 0 ? 20 : -20, -SPHERE_RADIUS);
+		}
+	}
+
+	/**
+	 * Culls and tests the gaze against every rect, with the head turning a degree each frame.
+	 */
+	@Benchmark
+	public int gaze() {
+		Matrix4.setRotateM(headView, 0, frame++ % 360, 0, 1, 0);
+		renderer.setHeadView(headView);
+		return renderer.getLookingAt();
+	}
+
+	@Benchmark
+	public int drawFrame() {
+		gl.resetCounts();
+		gaze();
+		renderer.clear();
+		renderer.drawScene(2);
+		return gl.getDrawCalls();
+	}
+}
@@ -0,0 +1,70 @@
+package com.tumblr.cardboard;
+
+import android.graphics.Bitmap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Decode threads handing photos to the GL thread, which drains the queue once per frame as in
+ * {@link Tumblr3DActivity#onNewFrame}. Compares the synchronized {@link LinkedList} the activity
+ * uses with a lock free queue.
+ */
+@State(Scope.Group)
+public class UploadQueueBenchmark {
+
+	private static final int DECODE_THREADS = 3;
+
+	private final Queue<PhotoTexture> lockedQueue = new LinkedList<>();
+	private final Queue<PhotoTexture> lockFreeQueue = new ConcurrentLinkedQueue<>();
+
+	private final PhotoTexture texture = new PhotoTexture(3, (Bitmap) null, false);
+
+	@Benchmark
+	@Group("locked")
+	@GroupThreads(DECODE_THREADS)
+	public void lockedOffer() {
+		synchronized (lockedQueue) {
+			lockedQueue.add(texture);
+		}
+	}
+
+	@Benchmark
+	@Group("locked")
+	@GroupThreads(1)
+	public int lockedDrain() {
+		int drained = 0;
+		synchronized (lockedQueue) {
+			while (!lockedQueue.isEmpty()) {
+				lockedQueue.remove();
+				drained++;
+			}
+		}
+		return drained;
+	}
+
+	@Benchmark
+	@Group("lockFree")
+	@GroupThreads(DECODE_THREADS)
+	public void lockFreeOffer() {
+		lockFreeQueue.offer(texture);
+	}
+
+	@Benchmark
+	@Group("lockFree")
+	@GroupThreads(1)
+	public int lockFreeDrain() {
+		int drained = 0;
+		while (lockFreeQueue.poll() != null) {
+			drained++;
+		}
+		return drained;
+	}
+}
@@ -0,0 +1,23 @@
+package com.tumblr.cardboard.gif;
+
+/**
+ * Makes atlases for the JVM, where there are no bitmaps to put the frames in.
+ */
+public final class GifAtlases {
+
+	private GifAtlases() {
+	}
+
+	/**
+	 * @return an atlas without a bitmap, which can be adopted by the renderer but not uploaded
+	 */
+	public static GifAtlas create(int numFrames, int frameWidth, int frameHeight, int durationMillis) {
+		final int[] delays = new int[numFrames];
+		for (int i = 0; i < numFrames; i++) {
+			delays[i] = durationMillis / numFrames;
+		}
+
+		final int columns = Math.max(1, GifAtlas.getColumns(numFrames, frameWidth, frameHeight));
+		return new GifAtlas(null, columns, frameWidth, frameHeight, delays);
+	}
+}
@@ -0,0 +1,93 @@
+package com.tumblr.cardboard.gif;
+
+import com.bumptech.glide.gifdecoder.GifHeader;
+import com.bumptech.glide.gifdecoder.GifHeaderParser;
+import com.tumblr.cardboard.Fixtures;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and parsing downloaded gifs, before any frame is decoded.
+ * <p/>
+ * Decoding frames isn't measured here: {@link com.bumptech.glide.gifdecoder.GifDecoder} writes each
+ * frame into an {@link android.graphics.Bitmap}, which needs a device.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GifBenchmark {
+
+	@Param({Fixtures.GIF, Fixtures.JPEG})
+	public String fixture;
+
+	private byte[] data;
+	private byte[] gif;
+	private final GifResourceDecoder.GifHeaderParserPool parserPool = new GifResourceDecoder.GifHeaderParserPool();
+
+	@Setup
+	public void setUp() throws IOException {
+		data = Fixtures.read(fixture);
+		gif = Fixtures.read(Fixtures.GIF);
+	}
+
+	/**
+	 * Walks every frame descriptor, as {@link GifResourceDecoder} does for each download.
+	 */
+	@Benchmark
+	public GifHeader parseHeaderPooled() {
+		final GifHeaderParser parser = parserPool.obtain(gif);
+		try {
+			return parser.parseHeader();
+		} finally {
+			parserPool.release(parser);
+		}
+	}
+
+	@Benchmark
+	public GifHeader parseHeaderUnpooled() {
+		return new GifHeaderParser().setData(gif).parseHeader();
+	}
+
+	/**
+	 * Copies the stream into a growing byte[], as the decoder does now.
+	 */
+	@Benchmark
+	public byte[] readBytes() {
+		return GifResourceDecoder.inputStreamToBytes(new ByteArrayInputStream(data));
+	}
+
+	/**
+	 * Reads the stream through a channel into a buffer that doubles when it fills up.
+	 */
+	@Benchmark
+	public ByteBuffer readBuffer() throws IOException {
+		final ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(data));
+		ByteBuffer buffer = ByteBuffer.allocate(16384);
+
+		while (channel.read(buffer) != -1) {
+			if (!buffer.hasRemaining()) {
+				final ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+				buffer.flip();
+				larger.put(buffer);
+				buffer = larger;
+			}
+		}
+
+		buffer.flip();
+		return buffer;
+	}
+}
@@ -0,0 +1,8 @@
+package android.support.v4.app;
+
+/**
+ * Stands in for the support library's Fragment, which only ships as an aar. Glide's
+ * {@code Glide.with} overloads refer to it, so javac needs it to resolve {@code Glide.with(Context)}.
+ */
+public class Fragment {
+}
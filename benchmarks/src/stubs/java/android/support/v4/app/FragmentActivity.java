@@ -0,0 +1,10 @@
+package android.support.v4.app;
+
+import android.app.Activity;
+
+/**
+ * Stands in for the support library's FragmentActivity, see {@link Fragment}. Glide checks for it
+ * with instanceof, so it is needed at runtime as well.
+ */
+public class FragmentActivity extends Activity {
+}